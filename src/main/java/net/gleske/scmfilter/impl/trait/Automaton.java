@@ -0,0 +1,529 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017-2020, Sam Gleske - https://github.com/samrocketman
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.gleske.scmfilter.impl.trait;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.function.ToIntFunction;
+
+/**
+ * An immutable deterministic finite automaton matching names against one or more regular languages in a single pass.
+ * <p>
+ * Each language is given a tag, its index in the list it was built from. Matching a name returns a value computed
+ * from the set of tags of all the languages containing the name, by default the smallest tag so that an automaton
+ * built from an ordered list of rules answers which rule matches first. The automaton is built completely upfront, so
+ * matching takes time linear in the length of the name whatever the rules are, and does not allocate.
+ */
+final class Automaton {
+
+    /**
+     * The largest number of states of the intermediate non-deterministic automaton.
+     */
+    static final int MAX_NFA_STATES = 20_000;
+
+    /**
+     * The largest number of states.
+     */
+    static final int MAX_STATES = 10_000;
+
+    /**
+     * The largest size of the transition table.
+     */
+    static final int MAX_TRANSITIONS = 1_000_000;
+
+    /**
+     * The lower bounds of the character classes, sorted. Class {@code i} holds the code points from {@code bounds[i]}
+     * up to {@code bounds[i + 1]} excluded. All the code points of a class are treated alike by every state.
+     */
+    @NonNull
+    private final int[] bounds;
+
+    /**
+     * The character class of each ASCII character.
+     */
+    @NonNull
+    private final int[] ascii;
+
+    /**
+     * The transitions: the next state from state {@code s} on a code point of class {@code c} is at
+     * {@code s * bounds.length + c}, negative if the name cannot match any more.
+     */
+    @NonNull
+    private final int[] transitions;
+
+    /**
+     * The value of each state, negative if the state does not accept.
+     */
+    @NonNull
+    private final int[] accepts;
+
+    /**
+     * The value of names no language can contain any more.
+     */
+    private final int dead;
+
+    /**
+     * The transitions compiled to bytecode when {@link GeneratedMatcher#isEnabled() enabled} and supported.
+     */
+    @CheckForNull
+    private final Runner runner;
+
+    private Automaton(@NonNull int[] bounds, @NonNull int[] transitions, @NonNull int[] accepts, int dead) {
+        this.bounds = bounds;
+        this.transitions = transitions;
+        this.accepts = accepts;
+        this.dead = dead;
+        this.ascii = new int[128];
+        for (int c = 0; c < ascii.length; c++) {
+            ascii[c] = classOf(c);
+        }
+        this.runner = GeneratedMatcher.isEnabled() ? AutomatonGenerator.generate(this, ascii, transitions,
+                bounds.length, accepts.length) : null;
+    }
+
+    /**
+     * Builds the automaton for languages tagged with their index in the list, where a match returns the smallest tag
+     * of the languages containing the name.
+     *
+     * @param languages the languages.
+     * @return the automaton.
+     * @throws IllegalArgumentException if the automaton would be too large.
+     */
+    @NonNull
+    static Automaton build(@NonNull List<RegexNode> languages) {
+        return build(languages, tags -> tags.nextSetBit(0));
+    }
+
+    /**
+     * Builds the automaton for languages tagged with their index in the list.
+     *
+     * @param languages the languages.
+     * @param value computes the value returned for a name from the tags of the languages containing it, negative to
+     *              reject the name. It is called while building only, including once for names in no language.
+     * @return the automaton.
+     * @throws IllegalArgumentException if the automaton would be too large.
+     */
+    @NonNull
+    static Automaton build(@NonNull List<RegexNode> languages, @NonNull ToIntFunction<BitSet> value) {
+        Nfa nfa = new Nfa();
+        int start = nfa.state();
+        for (int tag = 0; tag < languages.size(); tag++) {
+            int entry = nfa.state();
+            nfa.epsilon(start, entry);
+            nfa.accept(nfa.build(languages.get(tag), entry), tag);
+        }
+        return nfa.determinize(start, value);
+    }
+
+    /**
+     * Builds the automaton for a single language.
+     *
+     * @param language the language.
+     * @return the automaton, where a match has the tag {@code 0}.
+     * @throws IllegalArgumentException if the automaton would be too large.
+     */
+    @NonNull
+    static Automaton build(@NonNull RegexNode language) {
+        return build(Collections.singletonList(language));
+    }
+
+    /**
+     * Matches a whole name.
+     *
+     * @param name the name.
+     * @return the value for the tags of the languages containing the name, negative if rejected.
+     */
+    int match(@NonNull CharSequence name) {
+        int state = run(0, name);
+        return state < 0 ? dead : accepts[state];
+    }
+
+    /**
+     * Matches two names joined by a separator as if they were concatenated, without building the concatenation.
+     *
+     * @param first the first name.
+     * @param separator the separator, which must not be a surrogate.
+     * @param second the second name.
+     * @return the value for the tags of the languages containing the joined names, negative if rejected.
+     */
+    int match(@NonNull CharSequence first, char separator, @NonNull CharSequence second) {
+        int state = run(0, first);
+        if (state >= 0) {
+            state = transitions[state * bounds.length + (separator < 128 ? ascii[separator] : classOf(separator))];
+        }
+        if (state >= 0) {
+            state = run(state, second);
+        }
+        return state < 0 ? dead : accepts[state];
+    }
+
+    /**
+     * Runs the automaton over a name.
+     *
+     * @param state the state to start from.
+     * @param name the name.
+     * @return the state reached, negative if the name cannot be completed to an accepted one.
+     */
+    private int run(int state, @NonNull CharSequence name) {
+        Runner runner = this.runner;
+        return runner != null ? runner.run(state, name) : run(state, name, 0);
+    }
+
+    /**
+     * Runs the transition table over the end of a name.
+     *
+     * @param state the state to start from.
+     * @param name the name.
+     * @param from the index of the first character to read.
+     * @return the state reached, negative if the name cannot be completed to an accepted one.
+     */
+    private int run(int state, @NonNull CharSequence name, int from) {
+        int classes = bounds.length;
+        for (int i = from, length = name.length(); i < length; i++) {
+            char c = name.charAt(i);
+            int cls;
+            if (c < 128) {
+                cls = ascii[c];
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(name.charAt(i + 1))) {
+                cls = classOf(Character.toCodePoint(c, name.charAt(++i)));
+            } else {
+                cls = classOf(c);
+            }
+            state = transitions[state * classes + cls];
+            if (state < 0) {
+                return state;
+            }
+        }
+        return state;
+    }
+
+    /**
+     * Returns the number of states.
+     *
+     * @return the number of states.
+     */
+    int states() {
+        return accepts.length;
+    }
+
+    /**
+     * Checks if the transitions were compiled to bytecode.
+     *
+     * @return {@code true} if the transitions were compiled to bytecode.
+     */
+    boolean isGenerated() {
+        return runner != null;
+    }
+
+    private int classOf(int codePoint) {
+        return Nfa.classIndex(bounds, codePoint);
+    }
+
+    /**
+     * The transitions of an automaton compiled to bytecode by {@link AutomatonGenerator}. The generated subclass
+     * handles ASCII characters and hands anything else back to the transition table.
+     */
+    abstract static class Runner {
+
+        /**
+         * The automaton.
+         */
+        @NonNull
+        private final Automaton automaton;
+
+        /**
+         * Constructor.
+         *
+         * @param automaton the automaton.
+         */
+        Runner(@NonNull Automaton automaton) {
+            this.automaton = automaton;
+        }
+
+        /**
+         * Runs the automaton over a name.
+         *
+         * @param state the state to start from.
+         * @param name the name.
+         * @return the state reached, negative if the name cannot be completed to an accepted one.
+         */
+        abstract int run(int state, @NonNull CharSequence name);
+
+        /**
+         * Runs the transition table over the end of a name, from its first non-ASCII character.
+         *
+         * @param state the state reached so far.
+         * @param name the name.
+         * @param from the index of the first character to read.
+         * @return the state reached, negative if the name cannot be completed to an accepted one.
+         */
+        final int slow(int state, @NonNull CharSequence name, int from) {
+            return automaton.run(state, name, from);
+        }
+    }
+
+    /**
+     * A non-deterministic automaton with epsilon transitions, built from syntax trees by Thompson's construction.
+     * Every state has at most one character transition.
+     */
+    private static final class Nfa {
+        private final List<int[]> epsilons = new ArrayList<>();
+        private final List<int[]> chars = new ArrayList<>();
+        private final List<Integer> targets = new ArrayList<>();
+        private final List<Integer> tags = new ArrayList<>();
+        private int[][] closures;
+
+        private int state() {
+            if (tags.size() >= MAX_NFA_STATES) {
+                throw new IllegalArgumentException("The rules are too complex for the linear-time engine");
+            }
+            epsilons.add(new int[0]);
+            chars.add(null);
+            targets.add(-1);
+            tags.add(-1);
+            return tags.size() - 1;
+        }
+
+        private void epsilon(int from, int to) {
+            int[] current = epsilons.get(from);
+            int[] updated = Arrays.copyOf(current, current.length + 1);
+            updated[current.length] = to;
+            epsilons.set(from, updated);
+        }
+
+        private void accept(int state, int tag) {
+            int current = tags.get(state);
+            tags.set(state, current < 0 ? tag : Math.min(current, tag));
+        }
+
+        /**
+         * Adds the states for a node.
+         *
+         * @param node the node.
+         * @param in the state to start from.
+         * @return the state reached once the node has matched.
+         */
+        private int build(@NonNull RegexNode node, int in) {
+            if (node instanceof RegexNode.Chars) {
+                int mid = state();
+                int out = state();
+                epsilon(in, mid);
+                chars.set(mid, ((RegexNode.Chars) node).ranges);
+                targets.set(mid, out);
+                return out;
+            }
+            if (node instanceof RegexNode.Concat) {
+                int current = in;
+                for (RegexNode item : ((RegexNode.Concat) node).items) {
+                    current = build(item, current);
+                }
+                return current;
+            }
+            if (node instanceof RegexNode.Alternation) {
+                int out = state();
+                for (RegexNode item : ((RegexNode.Alternation) node).items) {
+                    int branch = state();
+                    epsilon(in, branch);
+                    epsilon(build(item, branch), out);
+                }
+                return out;
+            }
+            RegexNode.Repeat repeat = (RegexNode.Repeat) node;
+            int current = in;
+            for (int i = 0; i < repeat.min; i++) {
+                current = build(repeat.item, current);
+            }
+            if (repeat.max < 0) {
+                int loop = state();
+                epsilon(current, loop);
+                epsilon(build(repeat.item, loop), loop);
+                return loop;
+            }
+            int out = state();
+            epsilon(current, out);
+            for (int i = repeat.min; i < repeat.max; i++) {
+                current = build(repeat.item, current);
+                epsilon(current, out);
+            }
+            return out;
+        }
+
+        /**
+         * Builds the equivalent deterministic automaton by subset construction.
+         *
+         * @param start the start state.
+         * @param value computes the value of a state from the tags it accepts.
+         * @return the deterministic automaton.
+         */
+        @NonNull
+        private Automaton determinize(int start, @NonNull ToIntFunction<BitSet> value) {
+            TreeSet<Integer> boundSet = new TreeSet<>();
+            boundSet.add(0);
+            for (int[] ranges : chars) {
+                if (ranges != null) {
+                    for (int i = 0; i < ranges.length; i += 2) {
+                        boundSet.add(ranges[i]);
+                        if (ranges[i + 1] < RegexNode.MAX_CODE_POINT) {
+                            boundSet.add(ranges[i + 1] + 1);
+                        }
+                    }
+                }
+            }
+            int[] bounds = boundSet.stream().mapToInt(Integer::intValue).toArray();
+            int classes = bounds.length;
+
+            Map<BitSet, Integer> ids = new HashMap<>();
+            List<BitSet> sets = new ArrayList<>();
+            Deque<Integer> pending = new ArrayDeque<>();
+            BitSet initial = closure(single(start));
+            ids.put(initial, 0);
+            sets.add(initial);
+            pending.add(0);
+            int[] transitions = new int[16 * classes];
+            while (!pending.isEmpty()) {
+                int id = pending.poll();
+                // the states reached on each class, only walking the classes each transition covers
+                BitSet[] moves = new BitSet[classes];
+                BitSet set = sets.get(id);
+                for (int s = set.nextSetBit(0); s >= 0; s = set.nextSetBit(s + 1)) {
+                    int[] ranges = chars.get(s);
+                    if (ranges == null) {
+                        continue;
+                    }
+                    for (int i = 0; i < ranges.length; i += 2) {
+                        int last = classIndex(bounds, ranges[i + 1]);
+                        for (int cls = classIndex(bounds, ranges[i]); cls <= last; cls++) {
+                            if (moves[cls] == null) {
+                                moves[cls] = new BitSet();
+                            }
+                            moves[cls].set(targets.get(s));
+                        }
+                    }
+                }
+                if ((long) (id + 1) * classes > transitions.length) {
+                    transitions = Arrays.copyOf(transitions, (int) Math.min(MAX_TRANSITIONS, 2L * transitions.length));
+                }
+                for (int cls = 0; cls < classes; cls++) {
+                    int target = -1;
+                    if (moves[cls] != null) {
+                        BitSet next = closure(moves[cls]);
+                        Integer known = ids.get(next);
+                        if (known == null) {
+                            known = sets.size();
+                            if (known >= MAX_STATES || (long) (known + 1) * classes > MAX_TRANSITIONS) {
+                                throw new IllegalArgumentException(
+                                        "The rules are too complex for the linear-time engine");
+                            }
+                            ids.put(next, known);
+                            sets.add(next);
+                            pending.add(known);
+                        }
+                        target = known;
+                    }
+                    transitions[id * classes + cls] = target;
+                }
+            }
+            int[] accepts = new int[sets.size()];
+            for (int id = 0; id < accepts.length; id++) {
+                BitSet accepted = new BitSet();
+                BitSet set = sets.get(id);
+                for (int s = set.nextSetBit(0); s >= 0; s = set.nextSetBit(s + 1)) {
+                    int tag = tags.get(s);
+                    if (tag >= 0) {
+                        accepted.set(tag);
+                    }
+                }
+                accepts[id] = value.applyAsInt(accepted);
+            }
+            return new Automaton(bounds, Arrays.copyOf(transitions, sets.size() * classes), accepts,
+                    value.applyAsInt(new BitSet()));
+        }
+
+        @NonNull
+        private static BitSet single(int state) {
+            BitSet set = new BitSet();
+            set.set(state);
+            return set;
+        }
+
+        /**
+         * Returns the states reachable through epsilon transitions, keeping only the states with a character
+         * transition or a tag as the others do not matter once the closure is known.
+         *
+         * @param states the states.
+         * @return the closure.
+         */
+        @NonNull
+        private BitSet closure(@NonNull BitSet states) {
+            if (closures == null) {
+                closures = new int[tags.size()][];
+            }
+            BitSet result = new BitSet();
+            for (int s = states.nextSetBit(0); s >= 0; s = states.nextSetBit(s + 1)) {
+                for (int reached : closure(s)) {
+                    result.set(reached);
+                }
+            }
+            return result;
+        }
+
+        @NonNull
+        private int[] closure(int state) {
+            int[] closure = closures[state];
+            if (closure == null) {
+                BitSet seen = new BitSet();
+                Deque<Integer> pending = new ArrayDeque<>();
+                seen.set(state);
+                pending.push(state);
+                while (!pending.isEmpty()) {
+                    for (int next : epsilons.get(pending.pop())) {
+                        if (!seen.get(next)) {
+                            seen.set(next);
+                            pending.push(next);
+                        }
+                    }
+                }
+                closure = seen.stream().filter(s -> chars.get(s) != null || tags.get(s) >= 0).toArray();
+                closures[state] = closure;
+            }
+            return closure;
+        }
+
+        private static int classIndex(@NonNull int[] bounds, int codePoint) {
+            int index = Arrays.binarySearch(bounds, codePoint);
+            return index >= 0 ? index : -index - 2;
+        }
+    }
+}
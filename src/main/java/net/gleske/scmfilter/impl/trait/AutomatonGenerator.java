@@ -0,0 +1,434 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017-2020, Sam Gleske - https://github.com/samrocketman
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.gleske.scmfilter.impl.trait;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Compiles the transitions of an {@link Automaton} into a hidden class, with a block of code per state in place of
+ * the transition table lookups: each block reads a character, checks it against the ranges leading out of the state
+ * and jumps straight to the block of the next state, so the JIT sees straight-line code specialized for the rules.
+ * <p>
+ * Only ASCII characters are compiled, the first other character hands the rest of the name back to the transition
+ * table. Automata whose code would be too large to be compiled by the JIT are not generated.
+ */
+final class AutomatonGenerator {
+
+    private static final Logger LOGGER = Logger.getLogger(AutomatonGenerator.class.getName());
+
+    /**
+     * The largest size of the generated method, the size above which HotSpot does not compile methods by default.
+     */
+    static final int MAX_CODE_LENGTH = 8000;
+
+    /**
+     * The internal name of the package.
+     */
+    private static final String PACKAGE = AutomatonGenerator.class.getPackageName().replace('.', '/') + '/';
+
+    // the few opcodes used
+    private static final int ICONST_M1 = 0x02;
+    private static final int ICONST_0 = 0x03;
+    private static final int BIPUSH = 0x10;
+    private static final int SIPUSH = 0x11;
+    private static final int ILOAD = 0x15;
+    private static final int ILOAD_1 = 0x1b;
+    private static final int ILOAD_3 = 0x1d;
+    private static final int ALOAD_0 = 0x2a;
+    private static final int ALOAD_1 = 0x2b;
+    private static final int ALOAD_2 = 0x2c;
+    private static final int ISTORE = 0x36;
+    private static final int ISTORE_1 = 0x3c;
+    private static final int ISTORE_3 = 0x3e;
+    private static final int ISUB = 0x64;
+    private static final int IINC = 0x84;
+    private static final int IF_ICMPNE = 0xa0;
+    private static final int IF_ICMPLT = 0xa1;
+    private static final int IF_ICMPGT = 0xa3;
+    private static final int GOTO = 0xa7;
+    private static final int TABLESWITCH = 0xaa;
+    private static final int IRETURN = 0xac;
+    private static final int RETURN = 0xb1;
+    private static final int INVOKEVIRTUAL = 0xb6;
+    private static final int INVOKESPECIAL = 0xb7;
+    private static final int INVOKEINTERFACE = 0xb9;
+
+    // the local variables of the generated method besides this, the state in 1, the name in 2 and c in 3
+    private static final int I = 4;
+    private static final int LENGTH = 5;
+
+    private AutomatonGenerator() {
+    }
+
+    /**
+     * Generates the runner of an automaton.
+     *
+     * @param automaton the automaton.
+     * @param ascii the character class of each ASCII character.
+     * @param transitions the transitions.
+     * @param classes the number of character classes.
+     * @param states the number of states.
+     * @return the runner, {@code null} if the automaton is too large or the class could not be defined.
+     */
+    @CheckForNull
+    static Automaton.Runner generate(@NonNull Automaton automaton, @NonNull int[] ascii, @NonNull int[] transitions,
+                                     int classes, int states) {
+        byte[] bytes = bytecode(ascii, transitions, classes, states);
+        if (bytes == null) {
+            LOGGER.log(Level.FINE, "Not generating an automaton with {0} states, its code would be too large", states);
+            return null;
+        }
+        try {
+            Class<?> generated = MethodHandles.lookup().defineHiddenClass(bytes, true).lookupClass();
+            return (Automaton.Runner) generated.getDeclaredConstructor(Automaton.class).newInstance(automaton);
+        } catch (ReflectiveOperationException | LinkageError | RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Could not generate an automaton, using the transition table", e);
+            return null;
+        }
+    }
+
+    /**
+     * Writes the class file of the runner of an automaton.
+     *
+     * @param ascii the character class of each ASCII character.
+     * @param transitions the transitions.
+     * @param classes the number of character classes.
+     * @param states the number of states.
+     * @return the class file, {@code null} if the code would be too large.
+     */
+    @CheckForNull
+    static byte[] bytecode(@NonNull int[] ascii, @NonNull int[] transitions, int classes, int states) {
+        ConstantPool pool = new ConstantPool();
+        int thisClass = pool.type(PACKAGE + "Automaton$Generated");
+        int superClass = pool.type(PACKAGE + "Automaton$Runner");
+        int charSequence = pool.type("java/lang/CharSequence");
+        int length = pool.member(ConstantPool.INTERFACE_METHOD, charSequence, "length", "()I");
+        int charAt = pool.member(ConstantPool.INTERFACE_METHOD, charSequence, "charAt", "(I)C");
+        int slow = pool.member(ConstantPool.METHOD, superClass, "slow", "(ILjava/lang/CharSequence;I)I");
+        int init = pool.member(ConstantPool.METHOD, superClass, "<init>", "(L" + PACKAGE + "Automaton;)V");
+
+        Code code = new Code();
+        int slowPath = code.label();
+        int dead = code.label();
+        int[] blocks = new int[states];
+        for (int state = 0; state < states; state++) {
+            blocks[state] = code.label();
+        }
+        // int length = name.length(), i = 0, c = 0;
+        code.u1(ALOAD_2).u1(INVOKEINTERFACE).u2(length).u1(1).u1(0).u1(ISTORE).u1(LENGTH);
+        code.u1(ICONST_0).u1(ISTORE).u1(I);
+        code.u1(ICONST_0).u1(ISTORE_3);
+        // jump to the block of the initial state, each block then jumps directly to the block of the next state
+        code.u1(ILOAD_1);
+        int switchAt = code.length();
+        code.u1(TABLESWITCH);
+        while (code.length() % 4 != 0) {
+            code.u1(0);
+        }
+        code.offset(switchAt, dead).u4(0).u4(states - 1);
+        for (int state = 0; state < states; state++) {
+            code.offset(switchAt, blocks[state]);
+        }
+        for (int state = 0; state < states; state++) {
+            // state_k: if (i == length) return k;
+            int read = code.label();
+            code.mark(blocks[state]);
+            code.u1(ILOAD).u1(I).u1(ILOAD).u1(LENGTH).jump(IF_ICMPLT, read);
+            code.push(state).u1(IRETURN);
+            //     c = name.charAt(i++);
+            code.mark(read);
+            code.u1(ALOAD_2).u1(ILOAD).u1(I).u1(INVOKEINTERFACE).u2(charAt).u1(2).u1(0).u1(ISTORE_3);
+            code.u1(IINC).u1(I).u1(1);
+            //     if (lo <= c && c <= hi) goto state_target; ...
+            for (int[] range : ranges(ascii, transitions, classes, state)) {
+                int next = code.label();
+                if (range[0] == range[1]) {
+                    code.u1(ILOAD_3).push(range[0]).jump(IF_ICMPNE, next);
+                } else {
+                    if (range[0] > 0) {
+                        code.u1(ILOAD_3).push(range[0]).jump(IF_ICMPLT, next);
+                    }
+                    code.u1(ILOAD_3).push(range[1]).jump(IF_ICMPGT, next);
+                }
+                code.jump(GOTO, blocks[range[2]]);
+                code.mark(next);
+            }
+            //     if (c < 128) return -1; state = k; goto slow;
+            code.u1(ILOAD_3).u1(SIPUSH).u2(128).jump(IF_ICMPLT, dead);
+            code.push(state).u1(ISTORE_1).jump(GOTO, slowPath);
+            if (code.length() > MAX_CODE_LENGTH) {
+                return null;
+            }
+        }
+        // slow: return slow(state, name, i - 1);
+        code.mark(slowPath);
+        code.u1(ALOAD_0).u1(ILOAD_1).u1(ALOAD_2).u1(ILOAD).u1(I).u1(ICONST_0 + 1).u1(ISUB).u1(INVOKEVIRTUAL).u2(slow)
+                .u1(IRETURN);
+        // dead: return -1;
+        code.mark(dead);
+        code.u1(ICONST_M1).u1(IRETURN);
+        if (code.length() > MAX_CODE_LENGTH) {
+            return null;
+        }
+
+        Bytes frames = new Bytes();
+        int previous = -1;
+        for (int position : code.targets) {
+            // every target has the same locals: this, state, name, c, i, length
+            frames.u1(255).u2(position - previous - 1).u2(6);
+            frames.u1(7).u2(thisClass).u1(1).u1(7).u2(charSequence).u1(1).u1(1).u1(1);
+            frames.u2(0);
+            previous = position;
+        }
+        int codeName = pool.utf8("Code");
+        int stackMapName = pool.utf8("StackMapTable");
+        int initName = pool.utf8("<init>");
+        int initDescriptor = pool.utf8("(L" + PACKAGE + "Automaton;)V");
+        int runName = pool.utf8("run");
+        int runDescriptor = pool.utf8("(ILjava/lang/CharSequence;)I");
+
+        Bytes file = new Bytes();
+        file.u4(0xCAFEBABE).u2(0).u2(61);
+        file.u2(pool.count).bytes(pool.bytes);
+        // final class Automaton$Generated extends Automaton.Runner
+        file.u2(0x0030).u2(thisClass).u2(superClass).u2(0).u2(0);
+        file.u2(2);
+        // public Automaton$Generated(Automaton automaton) { super(automaton); }
+        Bytes constructor = new Bytes().u1(ALOAD_0).u1(ALOAD_1).u1(INVOKESPECIAL).u2(init).u1(RETURN);
+        file.u2(0x0001).u2(initName).u2(initDescriptor).u2(1);
+        file.u2(codeName).u4(12 + constructor.length).u2(2).u2(2).u4(constructor.length).bytes(constructor)
+                .u2(0).u2(0);
+        // public final int run(int state, CharSequence name)
+        byte[] body = code.resolve();
+        file.u2(0x0011).u2(runName).u2(runDescriptor).u2(1);
+        file.u2(codeName).u4(12 + body.length + 8 + frames.length).u2(5).u2(6).u4(body.length).bytes(body)
+                .u2(0).u2(1);
+        file.u2(stackMapName).u4(2 + frames.length).u2(code.targets.size()).bytes(frames);
+        file.u2(0);
+        return file.toByteArray();
+    }
+
+    /**
+     * Gets the ASCII ranges leading out of a state to a live state.
+     *
+     * @param ascii the character class of each ASCII character.
+     * @param transitions the transitions.
+     * @param classes the number of character classes.
+     * @param state the state.
+     * @return the ranges as {@code {lo, hi, target}}, sorted.
+     */
+    @NonNull
+    private static List<int[]> ranges(@NonNull int[] ascii, @NonNull int[] transitions, int classes, int state) {
+        List<int[]> ranges = new ArrayList<>();
+        int[] current = null;
+        for (int c = 0; c < 128; c++) {
+            int target = transitions[state * classes + ascii[c]];
+            if (current != null && current[2] == target && current[1] == c - 1) {
+                current[1] = c;
+            } else if (target >= 0) {
+                current = new int[] {c, c, target};
+                ranges.add(current);
+            } else {
+                current = null;
+            }
+        }
+        return ranges;
+    }
+
+    /**
+     * A growable byte array written in the big-endian order of class files.
+     */
+    private static class Bytes {
+        byte[] bytes = new byte[256];
+        int length;
+
+        Bytes u1(int value) {
+            if (length == bytes.length) {
+                bytes = Arrays.copyOf(bytes, bytes.length * 2);
+            }
+            bytes[length++] = (byte) value;
+            return this;
+        }
+
+        Bytes u2(int value) {
+            return u1(value >>> 8).u1(value);
+        }
+
+        Bytes u4(int value) {
+            return u2(value >>> 16).u2(value);
+        }
+
+        Bytes bytes(Bytes other) {
+            return bytes(other.toByteArray());
+        }
+
+        Bytes bytes(byte[] other) {
+            for (byte b : other) {
+                u1(b);
+            }
+            return this;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(bytes, length);
+        }
+    }
+
+    /**
+     * The constant pool, with each constant written once.
+     */
+    private static final class ConstantPool {
+        static final int METHOD = 10;
+        static final int INTERFACE_METHOD = 11;
+
+        final Bytes bytes = new Bytes();
+        final Map<String, Integer> indexes = new HashMap<>();
+        int count = 1;
+
+        int utf8(String value) {
+            // only ASCII names are written, for which modified UTF-8 is ASCII
+            return constant("Utf8:" + value, () -> {
+                bytes.u1(1).u2(value.length());
+                for (int i = 0; i < value.length(); i++) {
+                    bytes.u1(value.charAt(i));
+                }
+            });
+        }
+
+        int type(String name) {
+            int utf8 = utf8(name);
+            return constant("Class:" + name, () -> bytes.u1(7).u2(utf8));
+        }
+
+        int member(int tag, int owner, String name, String descriptor) {
+            int nameIndex = utf8(name);
+            int descriptorIndex = utf8(descriptor);
+            int nameAndType = constant("NameAndType:" + name + ':' + descriptor, () -> bytes.u1(12).u2(nameIndex)
+                    .u2(descriptorIndex));
+            return constant("Member:" + tag + ':' + owner + ':' + name + ':' + descriptor, () -> bytes.u1(tag).u2(owner)
+                    .u2(nameAndType));
+        }
+
+        private int constant(String key, Runnable writer) {
+            Integer index = indexes.get(key);
+            if (index == null) {
+                writer.run();
+                index = count++;
+                indexes.put(key, index);
+            }
+            return index;
+        }
+    }
+
+    /**
+     * The code of a method, with labels for the branch targets.
+     */
+    private static final class Code extends Bytes {
+        /**
+         * The position of each label, negative until marked.
+         */
+        final List<Integer> labels = new ArrayList<>();
+        /**
+         * The offsets to write once the labels are marked, as {@code {at, from, label, width}}.
+         */
+        final List<int[]> fixups = new ArrayList<>();
+        /**
+         * The marked positions, which all need a stack map frame.
+         */
+        final TreeSet<Integer> targets = new TreeSet<>();
+
+        int length() {
+            return length;
+        }
+
+        int label() {
+            labels.add(-1);
+            return labels.size() - 1;
+        }
+
+        void mark(int label) {
+            labels.set(label, length);
+            targets.add(length);
+        }
+
+        @Override
+        Code u1(int value) {
+            super.u1(value);
+            return this;
+        }
+
+        @Override
+        Code u2(int value) {
+            super.u2(value);
+            return this;
+        }
+
+        @Override
+        Code u4(int value) {
+            super.u4(value);
+            return this;
+        }
+
+        Code push(int value) {
+            if (value >= -1 && value <= 5) {
+                return u1(ICONST_0 + value);
+            }
+            return value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE ? u1(BIPUSH).u1(value) : u1(SIPUSH).u2(value);
+        }
+
+        Code jump(int opcode, int label) {
+            int from = length;
+            u1(opcode);
+            fixups.add(new int[] {length, from, label, 2});
+            return u2(0);
+        }
+
+        Code offset(int from, int label) {
+            fixups.add(new int[] {length, from, label, 4});
+            return u4(0);
+        }
+
+        byte[] resolve() {
+            byte[] resolved = toByteArray();
+            for (int[] fixup : fixups) {
+                int offset = labels.get(fixup[2]) - fixup[1];
+                for (int i = fixup[3] - 1, at = fixup[0]; i >= 0; i--) {
+                    resolved[at + fixup[3] - 1 - i] = (byte) (offset >>> (8 * i));
+                }
+            }
+            return resolved;
+        }
+    }
+}
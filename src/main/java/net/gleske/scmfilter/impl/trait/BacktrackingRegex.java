@@ -0,0 +1,107 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017-2020, Sam Gleske - https://github.com/samrocketman
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.gleske.scmfilter.impl.trait;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A regular expression matched by the default {@link Pattern} engine, which supports the whole syntax but may take
+ * exponential time on some expressions. Each thread reuses its own {@link Matcher}, so matching does not allocate.
+ */
+final class BacktrackingRegex implements NameMatcher {
+
+    /**
+     * The compiled regular expression.
+     */
+    @NonNull
+    private final Pattern pattern;
+
+    /**
+     * The matcher of each thread, reset for every name and back to an empty input once done so that it does not hold
+     * on to the last name.
+     */
+    @NonNull
+    private final ThreadLocal<Matcher> matcher;
+
+    private BacktrackingRegex(@NonNull Pattern pattern) {
+        this.pattern = pattern;
+        this.matcher = ThreadLocal.withInitial(() -> pattern.matcher(""));
+    }
+
+    /**
+     * Compiles a regular expression.
+     *
+     * @param regex the regular expression.
+     * @return the compiled regular expression.
+     * @throws java.util.regex.PatternSyntaxException if the regular expression is invalid.
+     */
+    @NonNull
+    static BacktrackingRegex compile(@NonNull String regex) {
+        return new BacktrackingRegex(Pattern.compile(regex));
+    }
+
+    /**
+     * Gets the compiled {@link Pattern}.
+     *
+     * @return the compiled {@link Pattern}.
+     */
+    @NonNull
+    Pattern getPattern() {
+        return pattern;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean matches(@NonNull String name) {
+        return matches((CharSequence) name);
+    }
+
+    /**
+     * Checks if the regular expression matches the whole input.
+     *
+     * @param input the input.
+     * @return {@code true} if the regular expression matches the whole input.
+     */
+    boolean matches(@NonNull CharSequence input) {
+        Matcher matcher = this.matcher.get();
+        try {
+            return matcher.reset(input).matches();
+        } finally {
+            matcher.reset("");
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return pattern.pattern();
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017-2020, Sam Gleske - https://github.com/samrocketman
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.gleske.scmfilter.impl.trait;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import jenkins.scm.api.SCMHead;
+import jenkins.scm.api.SCMSource;
+import jenkins.scm.api.trait.SCMHeadPrefilter;
+import jenkins.scm.api.trait.SCMSourceContext;
+import jenkins.util.SystemProperties;
+
+/**
+ * Filters many heads at once, for SCM implementations listing so many branches and tags that deciding on them one by
+ * one on the scan thread adds noticeable latency.
+ * <p>
+ * Past {@link #THRESHOLD} heads, the prefilters of the filter traits are evaluated in parallel on the common
+ * fork/join pool. Prefilters added by other plugins are not known to be thread-safe, so they are still evaluated on
+ * the calling thread, on the heads the filter traits include.
+ * <p>
+ * When filtering for a request, the decisions are recorded in the filter metrics and head snapshots by the batch,
+ * and the heads that are returned can be processed by the request as usual: the prefilters of the filter traits
+ * decide on them again without recording them a second time. Filtering without a context only matches the heads with
+ * the rules, it records nothing and is not taken for a scan.
+ * <p>
+ * The common pool is shared with every parallel stream of the controller and sized after its processors, so a large
+ * batch holds all of them for its duration and delays other users of the pool, and scans of several sources at once
+ * share it rather than each getting threads of their own. Setting the threshold to {@code 0} keeps all the work on
+ * the calling thread.
+ */
+public final class BatchPrefilter {
+
+    /**
+     * The system property holding the number of heads from which they are filtered in parallel.
+     */
+    static final String THRESHOLD = BatchPrefilter.class.getName() + ".threshold";
+
+    /**
+     * The default number of heads from which they are filtered in parallel.
+     */
+    static final int DEFAULT_THRESHOLD = 10_000;
+
+    private BatchPrefilter() {
+    }
+
+    /**
+     * Filters heads with the filter traits of a source, without recording the decisions.
+     * Large batches are filtered on the common fork/join pool, see the class documentation.
+     *
+     * @param source the source.
+     * @param heads the heads.
+     * @param <H> the type of heads.
+     * @return the heads no prefilter excludes, in iteration order.
+     */
+    @NonNull
+    public static <H extends SCMHead> List<H> included(@NonNull SCMSource source, @NonNull Collection<H> heads) {
+        return included(source, EventPrefilter.prefilters(source), heads, threshold(), false);
+    }
+
+    /**
+     * Filters heads with all the prefilters of a context, usually the one a scan is about to create its request from,
+     * recording the decisions for that request. Large batches are filtered on the common fork/join pool, see the class documentation.
+     *
+     * @param source the source.
+     * @param context the context.
+     * @param heads the heads.
+     * @param <H> the type of heads.
+     * @return the heads no prefilter excludes, in iteration order.
+     */
+    @NonNull
+    public static <H extends SCMHead> List<H> included(@NonNull SCMSource source,
+                                                       @NonNull SCMSourceContext<?, ?> context,
+                                                       @NonNull Collection<H> heads) {
+        return included(source, context.prefilters(), heads, threshold(), true);
+    }
+
+    /**
+     * Filters heads with prefilters.
+     *
+     * @param source the source.
+     * @param prefilters the prefilters.
+     * @param heads the heads.
+     * @param threshold the number of heads from which the prefilters of the filter traits are evaluated in parallel,
+     *                  {@code 0} to never evaluate them in parallel.
+     * @param request {@code true} if the prefilters are the ones of a request, which records the decisions once.
+     * @param <H> the type of heads.
+     * @return the heads no prefilter excludes, in iteration order.
+     */
+    @NonNull
+    static <H extends SCMHead> List<H> included(@NonNull SCMSource source, @NonNull List<SCMHeadPrefilter> prefilters,
+                                                @NonNull Collection<H> heads, int threshold, boolean request) {
+        List<SCMHeadPrefilter> filters = new ArrayList<>();
+        List<SCMHeadPrefilter> others = new ArrayList<>();
+        for (SCMHeadPrefilter prefilter : prefilters) {
+            (prefilter instanceof FilterPrefilter ? filters : others).add(prefilter);
+        }
+        FilterPrefilter.prepare(source, heads, filters);
+        Stream<H> stream = threshold > 0 && heads.size() >= threshold && !filters.isEmpty()
+                ? heads.parallelStream() : heads.stream();
+        List<H> included = stream.filter(head -> request ? !isExcluded(source, head, filters)
+                : !FilterPrefilter.isExcludedQuietly(source, head, filters)).collect(Collectors.toList());
+        if (!others.isEmpty()) {
+            included.removeIf(head -> isExcluded(source, head, others));
+        }
+        if (request) {
+            FilterPrefilter.batched(included, filters);
+        }
+        return included;
+    }
+
+    /**
+     * Gets the configured threshold.
+     *
+     * @return the number of heads from which they are filtered in parallel, {@code 0} if never.
+     */
+    static int threshold() {
+        return Math.max(0, SystemProperties.getInteger(THRESHOLD, DEFAULT_THRESHOLD));
+    }
+
+    private static boolean isExcluded(@NonNull SCMSource source, @NonNull SCMHead head,
+                                      @NonNull List<SCMHeadPrefilter> prefilters) {
+        for (int i = 0, size = prefilters.size(); i < size; i++) {
+            if (prefilters.get(i).isExcluded(source, head)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
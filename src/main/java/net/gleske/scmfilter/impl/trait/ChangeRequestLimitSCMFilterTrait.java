@@ -0,0 +1,204 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017-2020, Sam Gleske - https://github.com/samrocketman
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.gleske.scmfilter.impl.trait;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.model.Item;
+import hudson.util.FormValidation;
+import java.io.IOException;
+import java.util.Comparator;
+import jenkins.scm.api.SCMHead;
+import jenkins.scm.api.SCMSource;
+import jenkins.scm.api.mixin.ChangeRequestSCMHead;
+import jenkins.scm.api.trait.SCMHeadPrefilter;
+import jenkins.scm.api.trait.SCMSourceContext;
+import jenkins.scm.api.trait.SCMSourceTrait;
+import jenkins.scm.api.trait.SCMSourceTraitDescriptor;
+import jenkins.scm.impl.trait.Selection;
+import org.apache.commons.lang3.StringUtils;
+import org.jenkinsci.Symbol;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+import org.kohsuke.stapler.AncestorInPath;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.QueryParameter;
+import org.kohsuke.stapler.StaplerRequest2;
+import org.kohsuke.stapler.StaplerResponse2;
+import org.kohsuke.stapler.interceptor.RequirePOST;
+
+/**
+ * Decorates a {@link SCMSource} with a {@link SCMHeadPrefilter} that only includes the change requests with the
+ * highest numbers, that is the most recently opened ones, up to a number per target branch. Branches and tags are left
+ * to the other filters.
+ * <p>
+ * The change requests are picked in a single pass over the heads of a scan, starting from the ones the previous scan
+ * of the source kept, see {@link StatefulPrefilter}. The first scan of a source after a restart has nothing to start
+ * from: its pick is exact when the source lists change requests newest first, as most do. A closed change request
+ * still counts until the scan after it was closed.
+ */
+public class ChangeRequestLimitSCMFilterTrait extends SCMSourceTrait {
+
+    /**
+     * Orders change request IDs: numbers numerically, before the other IDs which are ordered alphabetically.
+     */
+    static final Comparator<String> ID_ORDER = ChangeRequestLimitSCMFilterTrait::compareIds;
+
+    /**
+     * The latest change request IDs of each target the last scan of each source listed.
+     */
+    private static final SourceStates<LatestPerKey<String, String>> KEPT = new SourceStates<>();
+
+    /**
+     * The number of change requests to keep per target.
+     */
+    private final int count;
+
+    /**
+     * Stapler constructor.
+     *
+     * @param count the number of change requests to keep per target branch.
+     * @throws IllegalArgumentException if the number is not positive.
+     */
+    @DataBoundConstructor
+    public ChangeRequestLimitSCMFilterTrait(int count) {
+        if (count < 1) {
+            throw new IllegalArgumentException("The number of change requests to keep must be positive: " + count);
+        }
+        this.count = count;
+    }
+
+    /**
+     * Gets the number of change requests to keep per target branch.
+     *
+     * @return the number of change requests to keep.
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Compares change request IDs.
+     *
+     * @param id an ID.
+     * @param other another ID.
+     * @return the comparison, see {@link #ID_ORDER}.
+     */
+    private static int compareIds(@NonNull String id, @NonNull String other) {
+        String number = number(id);
+        String otherNumber = number(other);
+        if (number != null && otherNumber != null) {
+            return number.length() != otherNumber.length() ? Integer.compare(number.length(), otherNumber.length())
+                    : number.compareTo(otherNumber);
+        }
+        if (number != null || otherNumber != null) {
+            return number != null ? -1 : 1;
+        }
+        return id.compareTo(other);
+    }
+
+    /**
+     * Gets the digits of a numeric ID without leading zeros.
+     *
+     * @param id the ID.
+     * @return the digits, or {@code null} if the ID is not a number.
+     */
+    private static String number(@NonNull String id) {
+        if (!StringUtils.isNumeric(id)) {
+            return null;
+        }
+        String digits = StringUtils.stripStart(id, "0");
+        return digits.isEmpty() ? "0" : digits;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void decorateContext(SCMSourceContext<?, ?> context) {
+        context.withPrefilter(new StatefulPrefilter<String, String>(this, context, KEPT, count, ID_ORDER) {
+            @Override
+            protected boolean decide(@NonNull SCMSource source, @NonNull SCMHead head) {
+                if (!(head instanceof ChangeRequestSCMHead)) {
+                    return false;
+                }
+                ChangeRequestSCMHead changeRequest = (ChangeRequestSCMHead) head;
+                return !isLatest(source, changeRequest.getTarget().getName(), changeRequest.getId());
+            }
+
+            @Override
+            protected void offer(@NonNull SCMHead head, @NonNull LatestPerKey<String, String> latest) {
+                if (head instanceof ChangeRequestSCMHead) {
+                    ChangeRequestSCMHead changeRequest = (ChangeRequestSCMHead) head;
+                    latest.offer(changeRequest.getTarget().getName(), changeRequest.getId());
+                }
+            }
+        });
+    }
+
+    /**
+     * Our descriptor.
+     */
+    @Symbol("changeRequestLimitFilter")
+    @Extension
+    @Selection
+    public static class DescriptorImpl extends SCMSourceTraitDescriptor {
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String getDisplayName() {
+            return Messages.ChangeRequestLimitSCMFilterTrait_DisplayName();
+        }
+
+        /**
+         * Form validation for the number of change requests to keep.
+         *
+         * @param value the number of change requests to keep.
+         * @return the validation results.
+         */
+        @Restricted(NoExternalUse.class) // stapler
+        public FormValidation doCheckCount(@QueryParameter String value) {
+            return FormChecks.positive(value, "change requests to keep");
+        }
+
+        /**
+         * Previews the decisions of the configuration being edited on candidate names or on the heads a source
+         * last saw, without saving it.
+         *
+         * @param item the job the configuration belongs to, if any.
+         * @param req the request, see {@link FilterPreview}.
+         * @param rsp the response.
+         * @throws IOException if the request could not be read or the response could not be written.
+         */
+        @RequirePOST
+        @Restricted(NoExternalUse.class) // stapler
+        public void doPreview(@AncestorInPath Item item, StaplerRequest2 req, StaplerResponse2 rsp)
+                throws IOException {
+            FilterPreview.serve(ChangeRequestLimitSCMFilterTrait.class, item, req, rsp);
+        }
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017-2020, Sam Gleske - https://github.com/samrocketman
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.gleske.scmfilter.impl.trait;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * An immutable character trie answering whether any of its keys is a prefix (or, when built reversed, a suffix) of a
+ * name. A lookup walks at most the length of the name and does not allocate, no matter how many keys there are.
+ */
+final class CharTrie {
+
+    /**
+     * A trie that contains no keys.
+     */
+    static final CharTrie EMPTY = new CharTrie(new Node(false, new char[0], new Node[0]), false, 0);
+
+    /**
+     * The root node.
+     */
+    @NonNull
+    private final Node root;
+
+    /**
+     * {@code true} if the keys are stored reversed and names are walked from their last character.
+     */
+    private final boolean reversed;
+
+    /**
+     * The number of keys.
+     */
+    private final int size;
+
+    private CharTrie(@NonNull Node root, boolean reversed, int size) {
+        this.root = root;
+        this.reversed = reversed;
+        this.size = size;
+    }
+
+    /**
+     * Builds a trie answering whether any of the keys is a prefix of a name.
+     *
+     * @param keys the keys.
+     * @return the trie.
+     */
+    @NonNull
+    static CharTrie prefixes(@NonNull Collection<String> keys) {
+        return build(keys, false);
+    }
+
+    /**
+     * Builds a trie answering whether any of the keys is a suffix of a name.
+     *
+     * @param keys the keys.
+     * @return the trie.
+     */
+    @NonNull
+    static CharTrie suffixes(@NonNull Collection<String> keys) {
+        return build(keys, true);
+    }
+
+    @NonNull
+    private static CharTrie build(@NonNull Collection<String> keys, boolean reversed) {
+        if (keys.isEmpty()) {
+            return EMPTY;
+        }
+        Builder root = new Builder();
+        for (String key : keys) {
+            Builder node = root;
+            for (int i = 0, length = key.length(); i < length; i++) {
+                node = node.children.computeIfAbsent(key.charAt(reversed ? length - 1 - i : i), c -> new Builder());
+            }
+            node.terminal = true;
+        }
+        return new CharTrie(root.freeze(), reversed, keys.size());
+    }
+
+    /**
+     * Checks if the trie has no keys.
+     *
+     * @return {@code true} if the trie has no keys.
+     */
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns the number of keys.
+     *
+     * @return the number of keys.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Checks if any of the keys is a prefix (or suffix when reversed) of the name.
+     *
+     * @param name the name to check.
+     * @return {@code true} if any of the keys is a prefix (or suffix when reversed) of the name.
+     */
+    boolean matches(@NonNull String name) {
+        Node node = root;
+        for (int i = 0, length = name.length(); !node.terminal; i++) {
+            if (i == length) {
+                return false;
+            }
+            node = node.child(name.charAt(reversed ? length - 1 - i : i));
+            if (node == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * An immutable trie node with its children sorted by character.
+     */
+    private static final class Node {
+        private final boolean terminal;
+        private final char[] keys;
+        private final Node[] children;
+
+        private Node(boolean terminal, char[] keys, Node[] children) {
+            this.terminal = terminal;
+            this.keys = keys;
+            this.children = children;
+        }
+
+        private Node child(char c) {
+            int index = Arrays.binarySearch(keys, c);
+            return index < 0 ? null : children[index];
+        }
+    }
+
+    /**
+     * A mutable trie node used while building.
+     */
+    private static final class Builder {
+        private final Map<Character, Builder> children = new TreeMap<>();
+        private boolean terminal;
+
+        private Node freeze() {
+            char[] keys = new char[children.size()];
+            Node[] nodes = new Node[children.size()];
+            int i = 0;
+            for (Map.Entry<Character, Builder> entry : children.entrySet()) {
+                keys[i] = entry.getKey();
+                nodes[i] = entry.getValue().freeze();
+                i++;
+            }
+            return new Node(terminal, keys, nodes);
+        }
+    }
+}
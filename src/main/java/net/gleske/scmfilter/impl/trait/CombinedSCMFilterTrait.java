@@ -0,0 +1,671 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017-2020, Sam Gleske - https://github.com/samrocketman
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.gleske.scmfilter.impl.trait;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.model.Item;
+import hudson.util.FormValidation;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jenkins.scm.api.SCMHead;
+import jenkins.scm.api.SCMSource;
+import jenkins.scm.api.mixin.ChangeRequestSCMHead2;
+import jenkins.scm.api.mixin.ChangeRequestSCMHead;
+import jenkins.scm.api.mixin.TagSCMHead;
+import jenkins.scm.api.trait.SCMHeadPrefilter;
+import jenkins.scm.api.trait.SCMSourceContext;
+import jenkins.scm.api.trait.SCMSourceTrait;
+import jenkins.scm.api.trait.SCMSourceTraitDescriptor;
+import jenkins.scm.impl.trait.Selection;
+import org.apache.commons.lang3.StringUtils;
+import org.jenkinsci.Symbol;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+import org.kohsuke.stapler.AncestorInPath;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+import org.kohsuke.stapler.QueryParameter;
+import org.kohsuke.stapler.StaplerRequest2;
+import org.kohsuke.stapler.StaplerResponse2;
+import org.kohsuke.stapler.interceptor.RequirePOST;
+
+/**
+ * Decorates a {@link SCMSource} with a single {@link SCMHeadPrefilter} covering the rules for branches, change request
+ * targets, change request origins and tags, which would otherwise take a stack of the other filter traits.
+ * <p>
+ * Each rule field holds lines of space-separated wildcards or of {@code regex:} prefixed regular expressions, see
+ * {@link DecisionAutomaton}. The rules of each kind of head are compiled into one automaton, so a head is decided in a
+ * single pass over its name, or over its target and origin names for a change request.
+ */
+public class CombinedSCMFilterTrait extends SCMSourceTrait implements PrecompiledFilter {
+
+    private static final Logger LOGGER = Logger.getLogger(CombinedSCMFilterTrait.class.getName());
+
+    /**
+     * The branch include lines.
+     */
+    @NonNull
+    private String branchIncludes = "*";
+
+    /**
+     * The branch exclude lines.
+     */
+    @NonNull
+    private String branchExcludes = "";
+
+    /**
+     * The change request target include lines.
+     */
+    @NonNull
+    private String targetIncludes = "*";
+
+    /**
+     * The change request target exclude lines.
+     */
+    @NonNull
+    private String targetExcludes = "";
+
+    /**
+     * The change request origin include lines.
+     */
+    @NonNull
+    private String originIncludes = "*";
+
+    /**
+     * The change request origin exclude lines.
+     */
+    @NonNull
+    private String originExcludes = "";
+
+    /**
+     * The tag include lines.
+     */
+    @NonNull
+    private String tagIncludes = "";
+
+    /**
+     * The tag exclude lines.
+     */
+    @NonNull
+    private String tagExcludes = "";
+
+    /**
+     * The compiled rules, dropped whenever the rules change.
+     */
+    @CheckForNull
+    private transient volatile Compiled compiled;
+
+    /**
+     * The decisions of this trait on branches and tags if caching is enabled, dropped whenever the rules are compiled.
+     */
+    @CheckForNull
+    private transient volatile DecisionCache cache;
+
+    /**
+     * Stapler constructor.
+     */
+    @DataBoundConstructor
+    public CombinedSCMFilterTrait() {
+    }
+
+    /**
+     * Compiles the persisted rules as soon as the trait is loaded so that an invalid rule is reported right away.
+     *
+     * @return this instance.
+     */
+    protected Object readResolve() {
+        try {
+            precompile();
+        } catch (IllegalArgumentException e) {
+            LOGGER.log(Level.WARNING, "Invalid rules in " + getClass().getSimpleName()
+                    + ", scans using them will fail until they are corrected: " + e.getMessage());
+        }
+        return this;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @Restricted(NoExternalUse.class)
+    public void precompile() {
+        getCompiled();
+    }
+
+    /**
+     * Gets the compiled rules, compiling them if needed.
+     *
+     * @return the compiled rules.
+     * @throws IllegalArgumentException if a rule is invalid or the rules are too complex.
+     */
+    @NonNull
+    private Compiled getCompiled() {
+        Compiled compiled = this.compiled;
+        if (compiled == null) {
+            compiled = new Compiled(
+                    CompiledPatterns.decision(branchIncludes, branchExcludes),
+                    CompiledPatterns.decision(tagIncludes, tagExcludes),
+                    CompiledPatterns.decision(targetIncludes, targetExcludes, originIncludes, originExcludes),
+                    CompiledPatterns.decision(tagIncludes, tagExcludes, originIncludes, originExcludes));
+            cache = DecisionCache.create();
+            this.compiled = compiled;
+        }
+        return compiled;
+    }
+
+    /**
+     * Returns the branch include lines.
+     *
+     * @return the branch include lines.
+     */
+    @NonNull
+    public String getBranchIncludes() {
+        return branchIncludes;
+    }
+
+    /**
+     * Sets the branch include lines.
+     *
+     * @param branchIncludes the branch include lines.
+     */
+    @DataBoundSetter
+    public void setBranchIncludes(@CheckForNull String branchIncludes) {
+        this.branchIncludes = StringUtils.defaultString(branchIncludes);
+        compiled = null;
+    }
+
+    /**
+     * Returns the branch exclude lines.
+     *
+     * @return the branch exclude lines.
+     */
+    @NonNull
+    public String getBranchExcludes() {
+        return branchExcludes;
+    }
+
+    /**
+     * Sets the branch exclude lines.
+     *
+     * @param branchExcludes the branch exclude lines.
+     */
+    @DataBoundSetter
+    public void setBranchExcludes(@CheckForNull String branchExcludes) {
+        this.branchExcludes = StringUtils.defaultString(branchExcludes);
+        compiled = null;
+    }
+
+    /**
+     * Returns the change request target include lines.
+     *
+     * @return the change request target include lines.
+     */
+    @NonNull
+    public String getTargetIncludes() {
+        return targetIncludes;
+    }
+
+    /**
+     * Sets the change request target include lines.
+     *
+     * @param targetIncludes the change request target include lines.
+     */
+    @DataBoundSetter
+    public void setTargetIncludes(@CheckForNull String targetIncludes) {
+        this.targetIncludes = StringUtils.defaultString(targetIncludes);
+        compiled = null;
+    }
+
+    /**
+     * Returns the change request target exclude lines.
+     *
+     * @return the change request target exclude lines.
+     */
+    @NonNull
+    public String getTargetExcludes() {
+        return targetExcludes;
+    }
+
+    /**
+     * Sets the change request target exclude lines.
+     *
+     * @param targetExcludes the change request target exclude lines.
+     */
+    @DataBoundSetter
+    public void setTargetExcludes(@CheckForNull String targetExcludes) {
+        this.targetExcludes = StringUtils.defaultString(targetExcludes);
+        compiled = null;
+    }
+
+    /**
+     * Returns the change request origin include lines.
+     *
+     * @return the change request origin include lines.
+     */
+    @NonNull
+    public String getOriginIncludes() {
+        return originIncludes;
+    }
+
+    /**
+     * Sets the change request origin include lines.
+     *
+     * @param originIncludes the change request origin include lines.
+     */
+    @DataBoundSetter
+    public void setOriginIncludes(@CheckForNull String originIncludes) {
+        this.originIncludes = StringUtils.defaultString(originIncludes);
+        compiled = null;
+    }
+
+    /**
+     * Returns the change request origin exclude lines.
+     *
+     * @return the change request origin exclude lines.
+     */
+    @NonNull
+    public String getOriginExcludes() {
+        return originExcludes;
+    }
+
+    /**
+     * Sets the change request origin exclude lines.
+     *
+     * @param originExcludes the change request origin exclude lines.
+     */
+    @DataBoundSetter
+    public void setOriginExcludes(@CheckForNull String originExcludes) {
+        this.originExcludes = StringUtils.defaultString(originExcludes);
+        compiled = null;
+    }
+
+    /**
+     * Returns the tag include lines.
+     *
+     * @return the tag include lines.
+     */
+    @NonNull
+    public String getTagIncludes() {
+        return tagIncludes;
+    }
+
+    /**
+     * Sets the tag include lines.
+     *
+     * @param tagIncludes the tag include lines.
+     */
+    @DataBoundSetter
+    public void setTagIncludes(@CheckForNull String tagIncludes) {
+        this.tagIncludes = StringUtils.defaultString(tagIncludes);
+        compiled = null;
+    }
+
+    /**
+     * Returns the tag exclude lines.
+     *
+     * @return the tag exclude lines.
+     */
+    @NonNull
+    public String getTagExcludes() {
+        return tagExcludes;
+    }
+
+    /**
+     * Sets the tag exclude lines.
+     *
+     * @param tagExcludes the tag exclude lines.
+     */
+    @DataBoundSetter
+    public void setTagExcludes(@CheckForNull String tagExcludes) {
+        this.tagExcludes = StringUtils.defaultString(tagExcludes);
+        compiled = null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void decorateContext(SCMSourceContext<?, ?> context) {
+        // fail before anything is fetched rather than on the first head
+        final Compiled compiled = getCompiled();
+        context.withPrefilter(new NamePrefilter(this, context, NamePrefilter.Subject.TARGET, cache) {
+            @Override
+            protected boolean evaluate(@NonNull SCMSource source, @NonNull SCMHead head) {
+                if (!(head instanceof ChangeRequestSCMHead)) {
+                    return super.evaluate(source, head);
+                }
+                SCMHead target = ((ChangeRequestSCMHead) head).getTarget();
+                String origin = head instanceof ChangeRequestSCMHead2
+                        ? ((ChangeRequestSCMHead2) head).getOriginName() : null;
+                return (target instanceof TagSCMHead ? compiled.tagChangeRequest : compiled.changeRequest)
+                        .isExcluded(target.getName(), origin);
+            }
+
+            @Override
+            protected boolean decide(@NonNull SCMSource source, @NonNull HeadCategory rules, @NonNull String name) {
+                return (rules == HeadCategory.TAG ? compiled.tag : compiled.branch).isExcluded(name);
+            }
+
+            @Override
+            protected Set<String> hint(@NonNull DiscoveryHints.Names names) {
+                switch (names) {
+                    case BRANCH:
+                        return DiscoveryHints.ofIncludeLines(branchIncludes);
+                    case TAG:
+                        return DiscoveryHints.ofIncludeLines(tagIncludes);
+                    case CHANGE_REQUEST_TARGET:
+                        return DiscoveryHints.union(DiscoveryHints.ofIncludeLines(targetIncludes),
+                                DiscoveryHints.ofIncludeLines(tagIncludes));
+                    case CHANGE_REQUEST_ORIGIN:
+                        return DiscoveryHints.ofIncludeLines(originIncludes);
+                    default:
+                        return null;
+                }
+            }
+        });
+    }
+
+    /**
+     * Creates the combined trait with the same rules as the filter traits in a list, so that they can be replaced by
+     * it. Stacked filters must all include a head, so their include lines are all kept and their exclude lines are
+     * all kept. Change requests that do not know their origin name are only matched on their target, and change
+     * requests targeting a tag are matched with the tag rules of all the filters.
+     *
+     * @param traits the traits.
+     * @return the combined trait, or {@code null} if there is no filter trait in the list.
+     * @throws IllegalArgumentException if a regular expression is not supported by the linear-time engine.
+     */
+    @CheckForNull
+    public static CombinedSCMFilterTrait from(@NonNull List<? extends SCMSourceTrait> traits) {
+        Rules branch = new Rules();
+        Rules target = new Rules();
+        Rules origin = new Rules();
+        Rules tag = new Rules();
+        boolean found = false;
+        for (SCMSourceTrait trait : traits) {
+            if (trait instanceof WildcardSCMHeadFilterTrait) {
+                WildcardSCMHeadFilterTrait wildcard = (WildcardSCMHeadFilterTrait) trait;
+                branch.add(wildcard.getIncludes(), wildcard.getExcludes());
+                target.add(wildcard.getIncludes(), wildcard.getExcludes());
+                tag.add(wildcard.getTagIncludes(), wildcard.getTagExcludes());
+            } else if (trait instanceof WildcardSCMOriginFilterTrait) {
+                WildcardSCMOriginFilterTrait wildcard = (WildcardSCMOriginFilterTrait) trait;
+                branch.add(wildcard.getIncludes(), wildcard.getExcludes());
+                origin.add(wildcard.getIncludes(), wildcard.getExcludes());
+                tag.add(wildcard.getTagIncludes(), wildcard.getTagExcludes());
+            } else if (trait instanceof RegexSCMHeadFilterTrait) {
+                RegexSCMHeadFilterTrait regex = (RegexSCMHeadFilterTrait) trait;
+                branch.addRegex(regex.getRegex());
+                target.addRegex(regex.getRegex());
+                tag.addRegex(StringUtils.defaultString(regex.getTagRegex(), "(?!.*)"));
+            } else if (trait instanceof RegexSCMOriginFilterTrait) {
+                RegexSCMOriginFilterTrait regex = (RegexSCMOriginFilterTrait) trait;
+                branch.addRegex(regex.getRegex());
+                origin.addRegex(regex.getRegex());
+                tag.addRegex(StringUtils.defaultString(regex.getTagRegex(), "(?!.*)"));
+            } else {
+                continue;
+            }
+            found = true;
+        }
+        if (!found) {
+            return null;
+        }
+        CombinedSCMFilterTrait combined = new CombinedSCMFilterTrait();
+        combined.setBranchIncludes(branch.includes());
+        combined.setBranchExcludes(branch.excludes());
+        combined.setTargetIncludes(target.includes());
+        combined.setTargetExcludes(target.excludes());
+        combined.setOriginIncludes(origin.includes());
+        combined.setOriginExcludes(origin.excludes());
+        combined.setTagIncludes(tag.includes());
+        combined.setTagExcludes(tag.excludes());
+        combined.precompile();
+        return combined;
+    }
+
+    /**
+     * Replaces the filter traits in a list with the combined trait, at the position of the first of them.
+     *
+     * @param traits the traits.
+     * @return the new list of traits, equal to the original one if there is no filter trait in it.
+     * @throws IllegalArgumentException if a regular expression is not supported by the linear-time engine.
+     */
+    @NonNull
+    public static List<SCMSourceTrait> migrate(@NonNull List<? extends SCMSourceTrait> traits) {
+        CombinedSCMFilterTrait combined = from(traits);
+        List<SCMSourceTrait> result = new ArrayList<>(traits.size());
+        boolean added = false;
+        for (SCMSourceTrait trait : traits) {
+            if (combined != null && (trait instanceof WildcardSCMHeadFilterTrait
+                    || trait instanceof WildcardSCMOriginFilterTrait || trait instanceof RegexSCMHeadFilterTrait
+                    || trait instanceof RegexSCMOriginFilterTrait)) {
+                if (!added) {
+                    result.add(combined);
+                    added = true;
+                }
+            } else {
+                result.add(trait);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * The compiled rules for each kind of head.
+     */
+    private static final class Compiled {
+        private final DecisionAutomaton branch;
+        private final DecisionAutomaton tag;
+        private final DecisionAutomaton changeRequest;
+        private final DecisionAutomaton tagChangeRequest;
+
+        private Compiled(DecisionAutomaton branch, DecisionAutomaton tag, DecisionAutomaton changeRequest,
+                         DecisionAutomaton tagChangeRequest) {
+            this.branch = branch;
+            this.tag = tag;
+            this.changeRequest = changeRequest;
+            this.tagChangeRequest = tagChangeRequest;
+        }
+    }
+
+    /**
+     * The lines of rules collected from the filter traits being migrated.
+     */
+    private static final class Rules {
+        private final Set<String> includes = new LinkedHashSet<>();
+        private final Set<String> excludes = new LinkedHashSet<>();
+        private boolean any;
+
+        private void add(String includes, String excludes) {
+            any = true;
+            // blank wildcard rules include nothing while a blank line is ignored
+            this.includes.add(StringUtils.isBlank(includes) ? DecisionAutomaton.REGEX_PREFIX + "(?!.*)" : includes);
+            if (StringUtils.isNotBlank(excludes)) {
+                this.excludes.add(excludes);
+            }
+        }
+
+        private void addRegex(String regex) {
+            any = true;
+            // validates the regular expression against the linear-time engine
+            RegexParser.parse(regex);
+            includes.add(DecisionAutomaton.REGEX_PREFIX + regex);
+        }
+
+        private String includes() {
+            return any ? String.join("\n", includes) : "*";
+        }
+
+        private String excludes() {
+            return String.join("\n", excludes);
+        }
+    }
+
+    /**
+     * Our descriptor.
+     */
+    @Symbol("combinedFilter")
+    @Extension
+    @Selection
+    public static class DescriptorImpl extends SCMSourceTraitDescriptor {
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String getDisplayName() {
+            return Messages.CombinedSCMFilterTrait_DisplayName();
+        }
+
+        /**
+         * Form validation for rule lines.
+         *
+         * @param value the rule lines.
+         * @return the validation results.
+         */
+        private static FormValidation checkLines(String value) {
+            try {
+                for (String line : DecisionAutomaton.lines(StringUtils.defaultString(value))) {
+                    DecisionAutomaton.parse(line);
+                }
+                return FormValidation.ok();
+            } catch (IllegalArgumentException e) {
+                return FormValidation.error(e.getMessage());
+            }
+        }
+
+        /**
+         * Form validation for the branch include lines.
+         *
+         * @param value the branch include lines.
+         * @return the validation results.
+         */
+        @Restricted(NoExternalUse.class) // stapler
+        public FormValidation doCheckBranchIncludes(@QueryParameter String value) {
+            return checkLines(value);
+        }
+
+        /**
+         * Form validation for the branch exclude lines.
+         *
+         * @param value the branch exclude lines.
+         * @return the validation results.
+         */
+        @Restricted(NoExternalUse.class) // stapler
+        public FormValidation doCheckBranchExcludes(@QueryParameter String value) {
+            return checkLines(value);
+        }
+
+        /**
+         * Form validation for the change request target include lines.
+         *
+         * @param value the change request target include lines.
+         * @return the validation results.
+         */
+        @Restricted(NoExternalUse.class) // stapler
+        public FormValidation doCheckTargetIncludes(@QueryParameter String value) {
+            return checkLines(value);
+        }
+
+        /**
+         * Form validation for the change request target exclude lines.
+         *
+         * @param value the change request target exclude lines.
+         * @return the validation results.
+         */
+        @Restricted(NoExternalUse.class) // stapler
+        public FormValidation doCheckTargetExcludes(@QueryParameter String value) {
+            return checkLines(value);
+        }
+
+        /**
+         * Form validation for the change request origin include lines.
+         *
+         * @param value the change request origin include lines.
+         * @return the validation results.
+         */
+        @Restricted(NoExternalUse.class) // stapler
+        public FormValidation doCheckOriginIncludes(@QueryParameter String value) {
+            return checkLines(value);
+        }
+
+        /**
+         * Form validation for the change request origin exclude lines.
+         *
+         * @param value the change request origin exclude lines.
+         * @return the validation results.
+         */
+        @Restricted(NoExternalUse.class) // stapler
+        public FormValidation doCheckOriginExcludes(@QueryParameter String value) {
+            return checkLines(value);
+        }
+
+        /**
+         * Form validation for the tag include lines.
+         *
+         * @param value the tag include lines.
+         * @return the validation results.
+         */
+        @Restricted(NoExternalUse.class) // stapler
+        public FormValidation doCheckTagIncludes(@QueryParameter String value) {
+            return checkLines(value);
+        }
+
+        /**
+         * Form validation for the tag exclude lines.
+         *
+         * @param value the tag exclude lines.
+         * @return the validation results.
+         */
+        @Restricted(NoExternalUse.class) // stapler
+        public FormValidation doCheckTagExcludes(@QueryParameter String value) {
+            return checkLines(value);
+        }
+
+        /**
+         * Previews the decisions of the configuration being edited on candidate names or on the heads a source
+         * last saw, without saving it.
+         *
+         * @param item the job the configuration belongs to, if any.
+         * @param req the request, see {@link FilterPreview}.
+         * @param rsp the response.
+         * @throws IOException if the request could not be read or the response could not be written.
+         */
+        @RequirePOST
+        @Restricted(NoExternalUse.class) // stapler
+        public void doPreview(@AncestorInPath Item item, StaplerRequest2 req, StaplerResponse2 rsp)
+                throws IOException {
+            FilterPreview.serve(CombinedSCMFilterTrait.class, item, req, rsp);
+        }
+    }
+}
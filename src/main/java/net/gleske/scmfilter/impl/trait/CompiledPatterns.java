@@ -0,0 +1,243 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017-2020, Sam Gleske - https://github.com/samrocketman
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.gleske.scmfilter.impl.trait;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+
+/**
+ * A process-wide registry of compiled filter rules keyed by the kind of rule and the rule text.
+ * <p>
+ * Many jobs are usually created from a handful of templates, so thousands of traits end up with the same rule text.
+ * They all share one immutable compiled instance from this registry. The registry only holds its values weakly so a
+ * compiled instance goes away once the last trait using it is gone.
+ */
+final class CompiledPatterns {
+
+    /**
+     * The kinds of compiled rules.
+     */
+    enum Kind {
+        /**
+         * A {@link BacktrackingRegex} compiled from a regular expression.
+         */
+        REGEX,
+        /**
+         * A {@link LinearRegex} compiled from a regular expression.
+         */
+        LINEAR_REGEX,
+        /**
+         * {@link WildcardRules} compiled from space-separated wildcard rules.
+         */
+        WILDCARD,
+        /**
+         * A {@link DecisionAutomaton} compiled from include and exclude lines.
+         */
+        DECISION,
+        /**
+         * A {@link DecisionAutomaton} compiled from ordered lines.
+         */
+        ORDERED,
+        /**
+         * A {@link GeneratedMatcher} compiled from space-separated wildcard rules, or {@link WildcardRules} if they
+         * could not be generated.
+         */
+        GENERATED_WILDCARD
+    }
+
+    /**
+     * The compiled rules.
+     */
+    private static final ConcurrentMap<Key, Value> REGISTRY = new ConcurrentHashMap<>();
+
+    /**
+     * The compiled rules that have been garbage collected.
+     */
+    private static final ReferenceQueue<Object> COLLECTED = new ReferenceQueue<>();
+
+    private CompiledPatterns() {
+    }
+
+    /**
+     * Returns the shared {@link BacktrackingRegex} for a regular expression.
+     *
+     * @param regex the regular expression.
+     * @return the compiled regular expression.
+     * @throws java.util.regex.PatternSyntaxException if the regular expression is invalid.
+     */
+    @NonNull
+    static BacktrackingRegex regex(@NonNull String regex) {
+        return (BacktrackingRegex) intern(Kind.REGEX, regex, BacktrackingRegex::compile);
+    }
+
+    /**
+     * Returns the shared {@link LinearRegex} for a regular expression.
+     *
+     * @param regex the regular expression.
+     * @return the compiled regular expression.
+     * @throws java.util.regex.PatternSyntaxException if the regular expression is invalid.
+     * @throws IllegalArgumentException if the regular expression is not supported by the linear-time engine.
+     */
+    @NonNull
+    static LinearRegex linearRegex(@NonNull String regex) {
+        return (LinearRegex) intern(Kind.LINEAR_REGEX, regex, LinearRegex::compile);
+    }
+
+    /**
+     * Returns the shared {@link WildcardRules} for space-separated wildcard rules, or their {@link GeneratedMatcher}
+     * when enabled.
+     *
+     * @param rules the wildcard rules.
+     * @return the compiled rules.
+     */
+    @NonNull
+    static NameMatcher wildcard(@NonNull String rules) {
+        return GeneratedMatcher.isEnabled()
+                ? (NameMatcher) intern(Kind.GENERATED_WILDCARD, rules, GeneratedMatcher::wildcard)
+                : (NameMatcher) intern(Kind.WILDCARD, rules, WildcardRules::compile);
+    }
+
+    /**
+     * Returns the shared {@link DecisionAutomaton} for include and exclude lines.
+     *
+     * @param lines the include and exclude lines, as expected by one of the {@code DecisionAutomaton.compile}
+     *              methods.
+     * @return the compiled rules.
+     * @throws IllegalArgumentException if a line is invalid or the rules are too complex.
+     */
+    @NonNull
+    static DecisionAutomaton decision(@NonNull String... lines) {
+        StringBuilder key = new StringBuilder();
+        for (String text : lines) {
+            key.append(text.length()).append(':').append(text);
+        }
+        return (DecisionAutomaton) intern(Kind.DECISION, key.toString(), text -> lines.length == 2
+                ? DecisionAutomaton.compile(lines[0], lines[1])
+                : DecisionAutomaton.compile(lines[0], lines[1], lines[2], lines[3]));
+    }
+
+    /**
+     * Returns the shared {@link DecisionAutomaton} for ordered lines.
+     *
+     * @param rules the ordered lines.
+     * @return the compiled rules.
+     * @throws IllegalArgumentException if a line is invalid or the rules are too complex.
+     */
+    @NonNull
+    static DecisionAutomaton ordered(@NonNull String rules) {
+        return (DecisionAutomaton) intern(Kind.ORDERED, rules, DecisionAutomaton::compileOrdered);
+    }
+
+    /**
+     * Returns the number of compiled rules currently held.
+     *
+     * @return the number of compiled rules currently held.
+     */
+    static int size() {
+        expunge();
+        return REGISTRY.size();
+    }
+
+    @NonNull
+    private static Object intern(@NonNull Kind kind, @NonNull String text, @NonNull Function<String, ?> compiler) {
+        expunge();
+        Key key = new Key(kind, text);
+        Value value = REGISTRY.get(key);
+        Object compiled = value == null ? null : value.get();
+        if (compiled != null) {
+            return compiled;
+        }
+        // hold the compiled instance strongly until it has been returned to the caller
+        Object[] result = new Object[1];
+        REGISTRY.compute(key, (k, existing) -> {
+            Object current = existing == null ? null : existing.get();
+            if (current != null) {
+                result[0] = current;
+                return existing;
+            }
+            result[0] = compiler.apply(k.text);
+            return new Value(k, result[0]);
+        });
+        return result[0];
+    }
+
+    /**
+     * Removes the entries whose compiled rules have been garbage collected.
+     */
+    private static void expunge() {
+        Object collected;
+        while ((collected = COLLECTED.poll()) != null) {
+            Value value = (Value) collected;
+            REGISTRY.remove(value.key, value);
+        }
+    }
+
+    /**
+     * The registry key.
+     */
+    private static final class Key {
+        private final Kind kind;
+        private final String text;
+
+        private Key(Kind kind, String text) {
+            this.kind = kind;
+            this.text = text;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key that = (Key) o;
+            return kind == that.kind && text.equals(that.text);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(kind, text);
+        }
+    }
+
+    /**
+     * A weak reference to the compiled rules that remembers its key so it can be removed once collected.
+     */
+    private static final class Value extends WeakReference<Object> {
+        private final Key key;
+
+        private Value(Key key, Object compiled) {
+            super(compiled, COLLECTED);
+            this.key = key;
+        }
+    }
+}
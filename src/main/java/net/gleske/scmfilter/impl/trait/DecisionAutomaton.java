@@ -0,0 +1,239 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017-2020, Sam Gleske - https://github.com/samrocketman
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.gleske.scmfilter.impl.trait;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Include and exclude rules compiled into a single {@link Automaton}, so that deciding on a head takes one pass over
+ * its name however many rules there are.
+ * <p>
+ * Rules are given one per line. A line holds either space-separated wildcards, with the same meaning as in
+ * {@link WildcardRules}, or a regular expression supported by {@link RegexParser} when prefixed with
+ * {@value #REGEX_PREFIX}. Blank lines are ignored. A name is included when there is at least one include line, it
+ * matches every include line and it matches no exclude line.
+ * <p>
+ * Rules can also be ordered, see {@link #compileOrdered(String)}.
+ * <p>
+ * The rules for the target and the origin of a change request are compiled together: the automaton reads the target
+ * name, {@link #SEPARATOR} and the origin name in a single pass.
+ */
+final class DecisionAutomaton {
+
+    /**
+     * The prefix of lines written as a regular expression rather than wildcards.
+     */
+    static final String REGEX_PREFIX = "regex:";
+
+    /**
+     * Separates the target name from the origin name of a change request. SCMs do not allow it in names.
+     */
+    static final char SEPARATOR = '\u0000';
+
+    /**
+     * The automaton, accepting the included names.
+     */
+    @NonNull
+    private final Automaton automaton;
+
+    private DecisionAutomaton(@NonNull Automaton automaton) {
+        this.automaton = automaton;
+    }
+
+    /**
+     * Compiles include and exclude rules.
+     *
+     * @param includes the include lines.
+     * @param excludes the exclude lines.
+     * @return the compiled rules.
+     * @throws IllegalArgumentException if a line is invalid or the rules are too complex.
+     */
+    @NonNull
+    static DecisionAutomaton compile(@NonNull String includes, @NonNull String excludes) {
+        List<RegexNode> languages = new ArrayList<>();
+        for (String line : lines(includes)) {
+            languages.add(parse(line));
+        }
+        int includeCount = languages.size();
+        for (String line : lines(excludes)) {
+            languages.add(parse(line));
+        }
+        return new DecisionAutomaton(Automaton.build(languages, matched -> included(matched, 0, includeCount,
+                languages.size()) ? 0 : -1));
+    }
+
+    /**
+     * Compiles the rules for the target and the origin of change requests.
+     *
+     * @param targetIncludes the include lines for the target name.
+     * @param targetExcludes the exclude lines for the target name.
+     * @param originIncludes the include lines for the origin name.
+     * @param originExcludes the exclude lines for the origin name.
+     * @return the compiled rules, to be used with {@link #isExcluded(String, String)}.
+     * @throws IllegalArgumentException if a line is invalid or the rules are too complex.
+     */
+    @NonNull
+    static DecisionAutomaton compile(@NonNull String targetIncludes, @NonNull String targetExcludes,
+                                     @NonNull String originIncludes, @NonNull String originExcludes) {
+        RegexNode separator = RegexNode.literal(String.valueOf(SEPARATOR));
+        RegexNode name = RegexNode.anyWithout(SEPARATOR);
+        // the target lines match the name up to the separator, if any
+        RegexNode rest = new RegexNode.Repeat(
+                new RegexNode.Concat(Arrays.asList(separator, new RegexNode.Repeat(RegexNode.Chars.of(0,
+                        RegexNode.MAX_CODE_POINT), 0, -1))), 0, 1);
+        List<RegexNode> languages = new ArrayList<>();
+        for (String line : lines(targetIncludes)) {
+            languages.add(new RegexNode.Concat(Arrays.asList(RegexNode.without(parse(line), SEPARATOR), rest)));
+        }
+        int targetIncludeCount = languages.size();
+        for (String line : lines(targetExcludes)) {
+            languages.add(new RegexNode.Concat(Arrays.asList(RegexNode.without(parse(line), SEPARATOR), rest)));
+        }
+        int targetCount = languages.size();
+        for (String line : lines(originIncludes)) {
+            languages.add(new RegexNode.Concat(Arrays.asList(name, separator, RegexNode.without(parse(line),
+                    SEPARATOR))));
+        }
+        int originIncludeCount = languages.size();
+        for (String line : lines(originExcludes)) {
+            languages.add(new RegexNode.Concat(Arrays.asList(name, separator, RegexNode.without(parse(line),
+                    SEPARATOR))));
+        }
+        int originCount = languages.size();
+        // tells apart names with an origin
+        languages.add(new RegexNode.Concat(Arrays.asList(name, separator, name)));
+        return new DecisionAutomaton(Automaton.build(languages, matched ->
+                included(matched, 0, targetIncludeCount, targetCount)
+                        && (!matched.get(originCount)
+                        || included(matched, targetCount, originIncludeCount, originCount)) ? 0 : -1));
+    }
+
+    /**
+     * Compiles ordered rules, where the first line matching a name decides and names matching no line are excluded.
+     * Lines start with {@code +} to include or {@code -} to exclude the names they match, and lines starting with
+     * {@code #} are comments.
+     *
+     * @param rules the ordered lines.
+     * @return the compiled rules.
+     * @throws IllegalArgumentException if a line is invalid or the rules are too complex.
+     */
+    @NonNull
+    static DecisionAutomaton compileOrdered(@NonNull String rules) {
+        List<RegexNode> languages = new ArrayList<>();
+        BitSet includes = new BitSet();
+        for (String line : lines(rules)) {
+            String rule = line.trim();
+            if (rule.startsWith("#")) {
+                continue;
+            }
+            if (rule.charAt(0) != '+' && rule.charAt(0) != '-') {
+                throw new IllegalArgumentException("Rules must start with + or -: " + rule);
+            }
+            includes.set(languages.size(), rule.charAt(0) == '+');
+            languages.add(parse(rule.substring(1)));
+        }
+        return new DecisionAutomaton(Automaton.build(languages, matched -> {
+            int first = matched.nextSetBit(0);
+            return first >= 0 && includes.get(first) ? first : -1;
+        }));
+    }
+
+    /**
+     * Decides on the lines matched by a name.
+     *
+     * @param matched the lines matched by the name.
+     * @param from the first include line.
+     * @param excludes the first exclude line.
+     * @param to the line after the last exclude line.
+     * @return {@code true} if the name is included.
+     */
+    private static boolean included(@NonNull BitSet matched, int from, int excludes, int to) {
+        int unmatched = matched.nextClearBit(from);
+        int excluded = matched.nextSetBit(excludes);
+        return excludes > from && unmatched >= excludes && (excluded < 0 || excluded >= to);
+    }
+
+    /**
+     * Splits rules into their non-blank lines.
+     *
+     * @param rules the rules.
+     * @return the lines.
+     */
+    @NonNull
+    static List<String> lines(@NonNull String rules) {
+        List<String> lines = new ArrayList<>();
+        for (String line : rules.split("\\r?\\n")) {
+            if (StringUtils.isNotBlank(line)) {
+                lines.add(line);
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * Parses a line.
+     *
+     * @param line the line.
+     * @return the language of the line.
+     * @throws IllegalArgumentException if the line is invalid.
+     */
+    @NonNull
+    static RegexNode parse(@NonNull String line) {
+        if (line.startsWith(REGEX_PREFIX)) {
+            return RegexParser.parse(line.substring(REGEX_PREFIX.length()));
+        }
+        return RegexNode.globs(line);
+    }
+
+    /**
+     * Decides on a name.
+     *
+     * @param name the name.
+     * @return {@code true} if the name is excluded.
+     */
+    boolean isExcluded(@NonNull String name) {
+        return automaton.match(name) < 0;
+    }
+
+    /**
+     * Decides on a change request, with rules compiled by {@link #compile(String, String, String, String)}.
+     *
+     * @param target the target name.
+     * @param origin the origin name, {@code null} if unknown in which case only the target is matched.
+     * @return {@code true} if the change request is excluded.
+     */
+    boolean isExcluded(@NonNull String target, @CheckForNull String origin) {
+        if (target.indexOf(SEPARATOR) >= 0 || origin != null && origin.indexOf(SEPARATOR) >= 0) {
+            return true;
+        }
+        return (origin == null ? automaton.match(target) : automaton.match(target, SEPARATOR, origin)) < 0;
+    }
+}
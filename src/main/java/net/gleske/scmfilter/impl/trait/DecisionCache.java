@@ -0,0 +1,135 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017-2020, Sam Gleske - https://github.com/samrocketman
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.gleske.scmfilter.impl.trait;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import jenkins.util.SystemProperties;
+
+/**
+ * A bounded, least recently used cache of the decisions of a filter trait, keyed by the rules used (branch or tag
+ * rules) and the name matched. The decisions only depend on the configuration of the trait, so sources re-indexed
+ * every few minutes mostly hit the cache. Each trait owns its cache and drops it whenever its rules are compiled.
+ * <p>
+ * The cache is disabled by default, enable it with
+ * {@code -Dnet.gleske.scmfilter.impl.trait.DecisionCache.size=<entries per trait and rule category>}.
+ */
+final class DecisionCache {
+
+    /**
+     * The system property holding the number of entries per trait and rule category.
+     */
+    static final String SIZE = DecisionCache.class.getName() + ".size";
+
+    /**
+     * The decisions per rule category, only {@link HeadCategory#BRANCH} and {@link HeadCategory#TAG} are used.
+     */
+    @NonNull
+    private final Lru[] decisions;
+
+    private DecisionCache(int size) {
+        decisions = new Lru[HeadCategory.values().length];
+        for (int i = 0; i < decisions.length; i++) {
+            decisions[i] = new Lru(size);
+        }
+    }
+
+    /**
+     * Creates a cache with the configured size.
+     *
+     * @return the cache, {@code null} if caching is disabled.
+     */
+    @CheckForNull
+    static DecisionCache create() {
+        int size = SystemProperties.getInteger(SIZE, 0);
+        return size > 0 ? new DecisionCache(size) : null;
+    }
+
+    /**
+     * Gets a cached decision.
+     *
+     * @param rules the rule category.
+     * @param name the name.
+     * @return {@code true} if the name was excluded, {@code false} if it was included, {@code null} if unknown.
+     */
+    @CheckForNull
+    Boolean get(@NonNull HeadCategory rules, @NonNull String name) {
+        Lru lru = decisions[rules.ordinal()];
+        synchronized (lru) {
+            return lru.get(name);
+        }
+    }
+
+    /**
+     * Caches a decision.
+     *
+     * @param rules the rule category.
+     * @param name the name.
+     * @param excluded {@code true} if the name was excluded.
+     */
+    void put(@NonNull HeadCategory rules, @NonNull String name, boolean excluded) {
+        Lru lru = decisions[rules.ordinal()];
+        synchronized (lru) {
+            lru.put(name, excluded);
+        }
+    }
+
+    /**
+     * Returns the number of cached decisions.
+     *
+     * @return the number of cached decisions.
+     */
+    int size() {
+        int size = 0;
+        for (Lru lru : decisions) {
+            synchronized (lru) {
+                size += lru.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * A map evicting its least recently used entry once full.
+     */
+    private static final class Lru extends LinkedHashMap<String, Boolean> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int capacity;
+
+        private Lru(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+            return size() > capacity;
+        }
+    }
+}
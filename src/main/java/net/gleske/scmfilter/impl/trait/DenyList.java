@@ -0,0 +1,324 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017-2020, Sam Gleske - https://github.com/samrocketman
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.gleske.scmfilter.impl.trait;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Collection;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * An immutable set of exact names, checked against a Bloom filter first so that the names which are not in the set,
+ * almost all of them, are rejected after a handful of bit tests. Names passing the Bloom filter are confirmed by a
+ * binary search. The names are stored back to back in a single {@code char} array rather than as strings, so that
+ * even a list of 100,000 names takes a few megabytes, and checking a name does not allocate.
+ */
+final class DenyList {
+
+    /**
+     * The number of Bloom filter bits per name, at least, for about 1% of false positives.
+     */
+    private static final int BITS_PER_NAME = 10;
+
+    /**
+     * The number of bits tested per name.
+     */
+    private static final int HASHES = 7;
+
+    /**
+     * The lists loaded from files, reloaded when the file changes. They are only held softly, so that the lists no
+     * trait uses anymore, such as the ones of moved jobs or of replaced files, go away when memory runs low.
+     */
+    private static final ConcurrentMap<Path, Loaded> LOADED = new ConcurrentHashMap<>();
+
+    /**
+     * The loaded lists that have been garbage collected.
+     */
+    private static final ReferenceQueue<DenyList> COLLECTED = new ReferenceQueue<>();
+
+    /**
+     * The Bloom filter, with a power of two number of bits.
+     */
+    @NonNull
+    private final long[] bits;
+
+    /**
+     * The mask giving the index of a bit from a hash.
+     */
+    private final int mask;
+
+    /**
+     * The sorted names, back to back.
+     */
+    @NonNull
+    private final char[] chars;
+
+    /**
+     * The start of each name in {@link #chars}, followed by the end of the last one.
+     */
+    @NonNull
+    private final int[] offsets;
+
+    /**
+     * The modification time of the file the list was loaded from, if any.
+     */
+    @CheckForNull
+    private final FileTime modified;
+
+    /**
+     * The size of the file the list was loaded from.
+     */
+    private final long length;
+
+    private DenyList(@NonNull SortedSet<String> names, @CheckForNull FileTime modified, long length) {
+        int size = Math.max(64, Integer.highestOneBit(Math.max(1, names.size() * BITS_PER_NAME - 1)) << 1);
+        this.bits = new long[size / 64];
+        this.mask = size - 1;
+        this.offsets = new int[names.size() + 1];
+        int total = 0;
+        for (String name : names) {
+            total += name.length();
+        }
+        this.chars = new char[total];
+        int index = 0;
+        int offset = 0;
+        for (String name : names) {
+            offsets[index++] = offset;
+            name.getChars(0, name.length(), chars, offset);
+            offset += name.length();
+            long hash = hash(name);
+            for (int i = 0; i < HASHES; i++) {
+                int bit = bit(hash, i);
+                bits[bit >>> 6] |= 1L << bit;
+            }
+        }
+        offsets[index] = offset;
+        this.modified = modified;
+        this.length = length;
+    }
+
+    /**
+     * Creates a list from names.
+     *
+     * @param names the names.
+     * @return the list.
+     */
+    @NonNull
+    static DenyList of(@NonNull Collection<String> names) {
+        return new DenyList(new TreeSet<>(names), null, 0L);
+    }
+
+    /**
+     * Loads the list of a file, with one name per line. Blank lines and lines starting with {@code #} are ignored, and
+     * names are trimmed. The list of a file is shared and only read again once the file changes.
+     *
+     * @param file the file.
+     * @return the list.
+     * @throws IOException if the file cannot be read.
+     */
+    @NonNull
+    static DenyList load(@NonNull Path file) throws IOException {
+        expunge();
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        Loaded reference = LOADED.get(file);
+        DenyList loaded = reference == null ? null : reference.get();
+        if (loaded != null && attributes.lastModifiedTime().equals(loaded.modified)
+                && attributes.size() == loaded.length) {
+            return loaded;
+        }
+        SortedSet<String> names = new TreeSet<>();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String name = line.trim();
+                if (!name.isEmpty() && !name.startsWith("#")) {
+                    names.add(name);
+                }
+            }
+        }
+        loaded = new DenyList(names, attributes.lastModifiedTime(), attributes.size());
+        LOADED.put(file, new Loaded(file, loaded));
+        return loaded;
+    }
+
+    /**
+     * Forgets the lists loaded from the files of a directory, such as the one of a deleted job.
+     *
+     * @param directory the directory.
+     */
+    static void forget(@NonNull Path directory) {
+        expunge();
+        LOADED.keySet().removeIf(path -> path.startsWith(directory));
+    }
+
+    /**
+     * Returns the number of lists currently held.
+     *
+     * @return the number of lists currently held.
+     */
+    static int loaded() {
+        expunge();
+        return LOADED.size();
+    }
+
+    /**
+     * Forgets the lists loaded from files.
+     */
+    static void reset() {
+        LOADED.clear();
+    }
+
+    /**
+     * Removes the entries whose lists have been garbage collected.
+     */
+    private static void expunge() {
+        Object collected;
+        while ((collected = COLLECTED.poll()) != null) {
+            Loaded loaded = (Loaded) collected;
+            LOADED.remove(loaded.file, loaded);
+        }
+    }
+
+    /**
+     * Checks if a name is in the list.
+     *
+     * @param name the name.
+     * @return {@code true} if the name is in the list.
+     */
+    boolean contains(@NonNull String name) {
+        if (!mayContain(name)) {
+            return false;
+        }
+        int low = 0;
+        int high = offsets.length - 2;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int comparison = compare(middle, name);
+            if (comparison < 0) {
+                low = middle + 1;
+            } else if (comparison > 0) {
+                high = middle - 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks if a name passes the Bloom filter, which it does if it is in the list and for about 1% of the other names.
+     *
+     * @param name the name.
+     * @return {@code false} if the name is not in the list.
+     */
+    boolean mayContain(@NonNull String name) {
+        long hash = hash(name);
+        for (int i = 0; i < HASHES; i++) {
+            int bit = bit(hash, i);
+            if ((bits[bit >>> 6] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the number of names.
+     *
+     * @return the number of names.
+     */
+    int size() {
+        return offsets.length - 1;
+    }
+
+    /**
+     * Compares a name of the list with a name, like {@link String#compareTo(String)}.
+     *
+     * @param index the index of the name of the list.
+     * @param name the name.
+     * @return the comparison.
+     */
+    private int compare(int index, @NonNull String name) {
+        int start = offsets[index];
+        int length = offsets[index + 1] - start;
+        for (int i = 0, common = Math.min(length, name.length()); i < common; i++) {
+            int difference = chars[start + i] - name.charAt(i);
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        return length - name.length();
+    }
+
+    /**
+     * Hashes a name with 64-bit FNV-1a over its characters.
+     *
+     * @param name the name.
+     * @return the hash.
+     */
+    private static long hash(@NonNull String name) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < name.length(); i++) {
+            hash ^= name.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * Gets the bit tested for a name, by double hashing.
+     *
+     * @param hash the hash of the name.
+     * @param i the index of the bit, from {@code 0} to {@link #HASHES} excluded.
+     * @return the index of the bit.
+     */
+    private int bit(long hash, int i) {
+        return ((int) hash + i * ((int) (hash >>> 32) | 1)) & mask;
+    }
+
+    /**
+     * A soft reference to a loaded list that remembers its file so it can be removed once collected.
+     */
+    private static final class Loaded extends SoftReference<DenyList> {
+        private final Path file;
+
+        private Loaded(Path file, DenyList list) {
+            super(list, COLLECTED);
+            this.file = file;
+        }
+    }
+}
@@ -0,0 +1,422 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017-2020, Sam Gleske - https://github.com/samrocketman
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.gleske.scmfilter.impl.trait;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.model.Descriptor;
+import hudson.model.Item;
+import hudson.model.listeners.ItemListener;
+import hudson.util.FormValidation;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jenkins.model.Jenkins;
+import jenkins.scm.api.SCMHead;
+import jenkins.scm.api.SCMNavigator;
+import jenkins.scm.api.SCMNavigatorOwner;
+import jenkins.scm.api.SCMSource;
+import jenkins.scm.api.SCMSourceOwner;
+import jenkins.scm.api.trait.SCMHeadPrefilter;
+import jenkins.scm.api.trait.SCMSourceContext;
+import jenkins.scm.api.trait.SCMSourceTrait;
+import jenkins.scm.api.trait.SCMSourceTraitDescriptor;
+import jenkins.scm.api.trait.SCMTrait;
+import jenkins.scm.impl.trait.Selection;
+import net.sf.json.JSONObject;
+import org.apache.commons.lang3.StringUtils;
+import org.jenkinsci.Symbol;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+import org.kohsuke.stapler.AncestorInPath;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+import org.kohsuke.stapler.QueryParameter;
+import org.kohsuke.stapler.StaplerRequest2;
+import org.kohsuke.stapler.verb.POST;
+
+/**
+ * Decorates a {@link SCMSource} with a {@link SCMHeadPrefilter} that excludes the {@link SCMHead} instances whose name
+ * is listed in a file, one exact name per line, and the change requests targeting them. The file is kept in a
+ * {@link DenyList}, so that lists of many thousands of abandoned branches neither bloat the job configuration nor slow
+ * down scans.
+ * <p>
+ * Lists shared by several jobs live in the {@value #DIRECTORY} directory of the Jenkins home directory, which only
+ * administrators can select in the job configuration form. Whatever way the trait was configured, the file is only
+ * read inside its directory, so that configuring a job does not give access to any other file of the controller.
+ */
+public class DenyListSCMFilterTrait extends SCMSourceTrait implements PrecompiledFilter {
+
+    private static final Logger LOGGER = Logger.getLogger(DenyListSCMFilterTrait.class.getName());
+
+    /**
+     * The directory of the Jenkins home directory holding the lists shared by several jobs.
+     */
+    static final String DIRECTORY = "scm-filter-deny-lists";
+
+    /**
+     * The directories the file can be relative to.
+     */
+    public enum Root {
+        /**
+         * The directory of the job.
+         */
+        JOB,
+        /**
+         * The {@value DenyListSCMFilterTrait#DIRECTORY} directory of the Jenkins home directory.
+         */
+        CONTROLLER;
+
+        /**
+         * Gets the name of the directory.
+         *
+         * @return the name of the directory.
+         */
+        public String getDisplayName() {
+            return this == JOB ? Messages.DenyListSCMFilterTrait_Root_JOB()
+                    : Messages.DenyListSCMFilterTrait_Root_CONTROLLER();
+        }
+    }
+
+    /**
+     * The path of the file, relative to {@link #root}.
+     */
+    @NonNull
+    private final String file;
+
+    /**
+     * The directory the file is relative to.
+     */
+    @NonNull
+    private Root root = Root.JOB;
+
+    /**
+     * Stapler constructor.
+     *
+     * @param file the path of the file, relative to the directory of the job unless {@link #setRoot(Root)} says
+     *             otherwise.
+     * @throws IllegalArgumentException if the path is absolute or leaves the directory.
+     */
+    @DataBoundConstructor
+    public DenyListSCMFilterTrait(@NonNull String file) {
+        this.file = check(file);
+    }
+
+    /**
+     * Gets the path of the file.
+     *
+     * @return the path of the file, relative to {@link #getRoot()}.
+     */
+    @NonNull
+    public String getFile() {
+        return file;
+    }
+
+    /**
+     * Gets the directory the file is relative to.
+     *
+     * @return the directory the file is relative to.
+     */
+    @NonNull
+    public Root getRoot() {
+        return root;
+    }
+
+    /**
+     * Sets the directory the file is relative to.
+     *
+     * @param root the directory the file is relative to.
+     */
+    @DataBoundSetter
+    public void setRoot(@CheckForNull Root root) {
+        this.root = root == null ? Root.JOB : root;
+    }
+
+    /**
+     * Fills in the default of configurations saved without a root.
+     *
+     * @return this instance.
+     */
+    protected Object readResolve() {
+        if (root == null) {
+            root = Root.JOB;
+        }
+        return this;
+    }
+
+    /**
+     * Checks that a path stays inside the directory it is relative to.
+     *
+     * @param file the path.
+     * @return the path.
+     * @throws IllegalArgumentException if the path is empty, absolute or leaves the directory.
+     */
+    @NonNull
+    static String check(@CheckForNull String file) {
+        if (StringUtils.isBlank(file)) {
+            throw new IllegalArgumentException("The deny list file is required");
+        }
+        Path path = Paths.get(file).normalize();
+        if (path.isAbsolute() || path.startsWith("..")) {
+            throw new IllegalArgumentException("The deny list file must be inside the directory: " + file);
+        }
+        return file;
+    }
+
+    /**
+     * Resolves the file for a job.
+     *
+     * @param owner the job, if any.
+     * @return the file.
+     * @throws IllegalStateException if the file is relative to the job and there is no job, or if it is outside of
+     *                               its directory, which only a configuration not bound from a form can be.
+     */
+    @NonNull
+    Path resolve(@CheckForNull Item owner) {
+        Path directory;
+        if (root == Root.CONTROLLER) {
+            directory = Jenkins.get().getRootDir().toPath().resolve(DIRECTORY);
+        } else if (owner != null) {
+            directory = owner.getRootDir().toPath();
+        } else {
+            throw new IllegalStateException("The deny list " + file + " is relative to a job");
+        }
+        Path path = directory.resolve(file).normalize();
+        if (!path.startsWith(directory) || path.equals(directory)) {
+            throw new IllegalStateException("The deny list " + file + " is outside of its directory");
+        }
+        return path;
+    }
+
+    /**
+     * Loads the list for a source.
+     *
+     * @param source the source.
+     * @return the list.
+     * @throws IllegalStateException if the list cannot be read, so that the scan fails rather than including every
+     *                               listed head.
+     */
+    @NonNull
+    private DenyList load(@NonNull SCMSource source) {
+        Path path = resolve(source.getOwner());
+        try {
+            return DenyList.load(path);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not read the deny list " + path, e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @Restricted(NoExternalUse.class)
+    public void precompile() {
+        if (root == Root.CONTROLLER) {
+            Path path = resolve(null);
+            try {
+                DenyList.load(path);
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Could not read the deny list " + path
+                        + ", scans using it will fail until it is readable: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void decorateContext(SCMSourceContext<?, ?> context) {
+        context.withPrefilter(new NamePrefilter(this, context, NamePrefilter.Subject.TARGET, null) {
+            /**
+             * The list of the source last seen.
+             */
+            private volatile Loaded loaded;
+
+            @Override
+            protected boolean decide(@NonNull SCMSource source, @NonNull HeadCategory rules, @NonNull String name) {
+                Loaded loaded = this.loaded;
+                if (loaded == null || loaded.source != source) {
+                    loaded = new Loaded(source, load(source));
+                    this.loaded = loaded;
+                }
+                return loaded.list.contains(name);
+            }
+        });
+    }
+
+    /**
+     * The list loaded for a source.
+     */
+    private static final class Loaded {
+        private final SCMSource source;
+        private final DenyList list;
+
+        private Loaded(SCMSource source, DenyList list) {
+            this.source = source;
+            this.list = list;
+        }
+    }
+
+    /**
+     * Forgets the lists of deleted jobs.
+     */
+    @Extension
+    @Restricted(NoExternalUse.class)
+    public static class Listener extends ItemListener {
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void onDeleted(Item item) {
+            // also forgets the lists of the jobs inside a deleted folder
+            DenyList.forget(item.getRootDir().toPath());
+        }
+    }
+
+    /**
+     * Our descriptor.
+     */
+    @Symbol("denyListFilter")
+    @Extension
+    @Selection
+    public static class DescriptorImpl extends SCMSourceTraitDescriptor {
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String getDisplayName() {
+            return Messages.DenyListSCMFilterTrait_DisplayName();
+        }
+
+        /**
+         * {@inheritDoc}
+         *
+         * @throws org.springframework.security.access.AccessDeniedException if someone else than an administrator
+         *                                                                   selects a list shared by several jobs
+         *                                                                   the job did not already use.
+         */
+        @Override
+        public SCMSourceTrait newInstance(@CheckForNull StaplerRequest2 req, @NonNull JSONObject formData)
+                throws Descriptor.FormException {
+            DenyListSCMFilterTrait trait = (DenyListSCMFilterTrait) super.newInstance(req, formData);
+            // saving a job an administrator configured must not need more than Item/CONFIGURE
+            if (trait.root == Root.CONTROLLER
+                    && !isConfigured(req == null ? null : req.findAncestorObject(Item.class), trait.file)) {
+                Jenkins.get().checkPermission(Jenkins.ADMINISTER);
+            }
+            return trait;
+        }
+
+        /**
+         * Checks if a job already uses a list shared by several jobs.
+         *
+         * @param item the job, if any.
+         * @param file the path of the list.
+         * @return {@code true} if the job has a filter using the list.
+         */
+        private static boolean isConfigured(@CheckForNull Item item, @NonNull String file) {
+            if (item instanceof SCMSourceOwner) {
+                for (SCMSource source : ((SCMSourceOwner) item).getSCMSources()) {
+                    if (isConfigured(source.getTraits(), file)) {
+                        return true;
+                    }
+                }
+            }
+            if (item instanceof SCMNavigatorOwner) {
+                for (SCMNavigator navigator : ((SCMNavigatorOwner) item).getSCMNavigators()) {
+                    if (isConfigured(navigator.getTraits(), file)) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        private static boolean isConfigured(@NonNull List<? extends SCMTrait<?>> traits, @NonNull String file) {
+            for (SCMTrait<?> trait : traits) {
+                if (trait instanceof DenyListSCMFilterTrait && ((DenyListSCMFilterTrait) trait).root == Root.CONTROLLER
+                        && ((DenyListSCMFilterTrait) trait).file.equals(file)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Form validation for the file.
+         *
+         * @param item the job being configured, if any.
+         * @param value the path of the file.
+         * @param root the directory the file is relative to.
+         * @return the validation results.
+         */
+        @POST
+        @Restricted(NoExternalUse.class) // stapler
+        public FormValidation doCheckFile(@AncestorInPath Item item, @QueryParameter String value,
+                                          @QueryParameter String root) {
+            if (item != null) {
+                item.checkPermission(Item.CONFIGURE);
+            } else {
+                Jenkins.get().checkPermission(Jenkins.ADMINISTER);
+            }
+            Root directory;
+            try {
+                check(value);
+                directory = StringUtils.isEmpty(root) ? Root.JOB : Root.valueOf(root);
+            } catch (IllegalArgumentException e) {
+                return FormValidation.error(e.getMessage());
+            }
+            if (directory == Root.CONTROLLER && !Jenkins.get().hasPermission(Jenkins.ADMINISTER)) {
+                return FormValidation.error("Only administrators can use the lists shared by several jobs");
+            }
+            if (directory == Root.JOB && item == null) {
+                return FormValidation.ok();
+            }
+            DenyListSCMFilterTrait trait = new DenyListSCMFilterTrait(value);
+            trait.root = directory;
+            Path path = trait.resolve(item);
+            // the path relative to the root, as typed, so that the location of the Jenkins home is not disclosed
+            String shown = directory == Root.CONTROLLER ? DIRECTORY + "/" + value : value;
+            if (!Files.isRegularFile(path)) {
+                return FormValidation.warning("The file " + shown + " does not exist yet, scans will fail until it"
+                        + " does");
+            }
+            try {
+                return FormValidation.ok(DenyList.load(path).size() + " names");
+            } catch (IOException e) {
+                return FormValidation.error("Could not read " + shown);
+            }
+        }
+    }
+}
@@ -0,0 +1,336 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017-2020, Sam Gleske - https://github.com/samrocketman
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.gleske.scmfilter.impl.trait;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import jenkins.scm.api.trait.SCMHeadPrefilter;
+import jenkins.scm.api.trait.SCMSourceContext;
+
+/**
+ * Hints for {@link jenkins.scm.api.SCMSource} implementations about the names the filter traits of a context can
+ * include, so that they can narrow the listing of branches, tags or change requests on the remote instead of fetching
+ * everything only for the prefilters to discard most of it.
+ * <p>
+ * The hints are literal prefixes: every name the filters include starts with one of them. They are derived from the
+ * rules, for instance {@code release/} from the wildcard {@code release/*} or {@code hotfix-} from the regular
+ * expression {@code ^hotfix-\d+}. Names starting with a prefix may still be excluded, so the prefilters must still be
+ * applied.
+ */
+public final class DiscoveryHints {
+
+    /**
+     * The largest number of prefixes in a hint, past which prefixes are shortened.
+     */
+    static final int MAX_PREFIXES = 64;
+
+    /**
+     * The largest number of characters a character class is expanded to.
+     */
+    private static final int MAX_CLASS_SIZE = 4;
+
+    /**
+     * The names a hint is about.
+     */
+    public enum Names {
+        /**
+         * Branch names.
+         */
+        BRANCH,
+        /**
+         * Tag names.
+         */
+        TAG,
+        /**
+         * The names of the branches or tags change requests target.
+         */
+        CHANGE_REQUEST_TARGET,
+        /**
+         * The names of the branches change requests originate from.
+         */
+        CHANGE_REQUEST_ORIGIN
+    }
+
+    private DiscoveryHints() {
+    }
+
+    /**
+     * Gets the literal prefixes of the names the filter traits applied to a context can include.
+     *
+     * @param context the context, decorated by its traits.
+     * @param names the names the hint is about.
+     * @return the prefixes, empty if no name can be included, or {@code null} if any name can be included.
+     */
+    @CheckForNull
+    public static SortedSet<String> prefixes(@NonNull SCMSourceContext<?, ?> context, @NonNull Names names) {
+        Set<String> result = null;
+        boolean constrained = false;
+        for (SCMHeadPrefilter prefilter : context.prefilters()) {
+            if (prefilter instanceof FilterPrefilter) {
+                Set<String> prefixes = ((FilterPrefilter) prefilter).hint(names);
+                if (prefixes != null) {
+                    result = constrained ? intersect(result, prefixes) : prefixes;
+                    constrained = true;
+                }
+            }
+        }
+        return result == null ? null : Collections.unmodifiableSortedSet(minimize(result));
+    }
+
+    /**
+     * Gets the prefixes of the names matched by space-separated wildcard rules.
+     *
+     * @param rules the wildcard rules.
+     * @return the prefixes, or {@code null} if any name can match.
+     */
+    @CheckForNull
+    static Set<String> ofWildcards(@CheckForNull String rules) {
+        return of(RegexNode.globs(rules == null ? "" : rules));
+    }
+
+    /**
+     * Gets the prefixes of the names matched by a regular expression.
+     *
+     * @param regex the regular expression.
+     * @return the prefixes, or {@code null} if any name can match or the regular expression cannot be analyzed.
+     */
+    @CheckForNull
+    static Set<String> ofRegex(@CheckForNull String regex) {
+        try {
+            return regex == null ? null : of(RegexParser.parse(regex));
+        } catch (IllegalArgumentException e) {
+            // lookaround and the like, no hint
+            return null;
+        }
+    }
+
+    /**
+     * Gets the prefixes of the names matching all include lines, as read by {@link DecisionAutomaton}.
+     *
+     * @param includes the include lines.
+     * @return the prefixes, or {@code null} if any name can match or a line cannot be analyzed.
+     */
+    @CheckForNull
+    static Set<String> ofIncludeLines(@NonNull String includes) {
+        List<String> lines = DecisionAutomaton.lines(includes);
+        if (lines.isEmpty()) {
+            return Collections.emptySet();
+        }
+        Set<String> result = null;
+        for (String line : lines) {
+            Set<String> prefixes = ofLine(line);
+            if (prefixes != null) {
+                result = result == null ? prefixes : intersect(result, prefixes);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Gets the prefixes of the names an ordered rule list can include, see
+     * {@link DecisionAutomaton#compileOrdered(String)}.
+     *
+     * @param rules the ordered rules.
+     * @return the prefixes, or {@code null} if any name can match or a line cannot be analyzed.
+     */
+    @CheckForNull
+    static Set<String> ofOrderedRules(@NonNull String rules) {
+        Set<String> result = Collections.emptySet();
+        for (String line : DecisionAutomaton.lines(rules)) {
+            String rule = line.trim();
+            if (rule.startsWith("+")) {
+                result = union(result, ofLine(rule.substring(1)));
+            }
+        }
+        return result;
+    }
+
+    @CheckForNull
+    private static Set<String> ofLine(@NonNull String line) {
+        return line.startsWith(DecisionAutomaton.REGEX_PREFIX)
+                ? ofRegex(line.substring(DecisionAutomaton.REGEX_PREFIX.length()))
+                : ofWildcards(line);
+    }
+
+    /**
+     * Gets the prefixes of the names matched by a syntax tree.
+     *
+     * @param node the syntax tree.
+     * @return the prefixes, or {@code null} if any name can match.
+     */
+    @CheckForNull
+    static Set<String> of(@NonNull RegexNode node) {
+        Set<String> prefixes = minimize(analyze(node).prefixes);
+        return prefixes.contains("") ? null : prefixes;
+    }
+
+    /**
+     * Combines two hints where names must satisfy either of them.
+     *
+     * @param a the first hint, {@code null} for any name.
+     * @param b the second hint, {@code null} for any name.
+     * @return the combined hint.
+     */
+    @CheckForNull
+    static Set<String> union(@CheckForNull Set<String> a, @CheckForNull Set<String> b) {
+        if (a == null || b == null) {
+            return null;
+        }
+        Set<String> result = new TreeSet<>(a);
+        result.addAll(b);
+        return result;
+    }
+
+    /**
+     * Combines two hints where names must satisfy both of them.
+     *
+     * @param a the first hint.
+     * @param b the second hint.
+     * @return the combined hint.
+     */
+    @NonNull
+    private static Set<String> intersect(@NonNull Set<String> a, @NonNull Set<String> b) {
+        Set<String> result = new TreeSet<>();
+        for (String p : a) {
+            for (String q : b) {
+                if (p.startsWith(q)) {
+                    result.add(p);
+                } else if (q.startsWith(p)) {
+                    result.add(q);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Removes the prefixes that start with another prefix.
+     *
+     * @param prefixes the prefixes.
+     * @return the remaining prefixes, sorted.
+     */
+    @NonNull
+    private static SortedSet<String> minimize(@NonNull Set<String> prefixes) {
+        SortedSet<String> result = new TreeSet<>();
+        String last = null;
+        // a prefix sorts right before the strings starting with it
+        for (String prefix : new TreeSet<>(prefixes)) {
+            if (last == null || !prefix.startsWith(last)) {
+                result.add(prefix);
+                last = prefix;
+            }
+        }
+        return result;
+    }
+
+    @NonNull
+    private static Analysis analyze(@NonNull RegexNode node) {
+        if (node instanceof RegexNode.Chars) {
+            int[] ranges = ((RegexNode.Chars) node).ranges;
+            long size = 0;
+            for (int i = 0; i < ranges.length; i += 2) {
+                size += ranges[i + 1] - ranges[i] + 1L;
+            }
+            if (size > MAX_CLASS_SIZE) {
+                return Analysis.ANY;
+            }
+            Set<String> chars = new TreeSet<>();
+            for (int i = 0; i < ranges.length; i += 2) {
+                for (int c = ranges[i]; c <= ranges[i + 1]; c++) {
+                    chars.add(new String(Character.toChars(c)));
+                }
+            }
+            return new Analysis(chars, true);
+        }
+        if (node instanceof RegexNode.Repeat) {
+            RegexNode.Repeat repeat = (RegexNode.Repeat) node;
+            if (repeat.min == 0) {
+                return repeat.max == 0 ? new Analysis(Collections.singleton(""), true) : Analysis.ANY;
+            }
+            Analysis item = analyze(repeat.item);
+            return new Analysis(item.prefixes, item.exact && repeat.min == 1 && repeat.max == 1);
+        }
+        if (node instanceof RegexNode.Alternation) {
+            Set<String> prefixes = new TreeSet<>();
+            boolean exact = true;
+            for (RegexNode item : ((RegexNode.Alternation) node).items) {
+                Analysis analysis = analyze(item);
+                prefixes.addAll(analysis.prefixes);
+                exact &= analysis.exact;
+            }
+            return prefixes.size() > MAX_PREFIXES ? Analysis.ANY : new Analysis(prefixes, exact);
+        }
+        List<RegexNode> items = ((RegexNode.Concat) node).items;
+        Set<String> prefixes = Collections.singleton("");
+        for (RegexNode item : items) {
+            Analysis analysis = analyze(item);
+            if (analysis.prefixes.size() * (long) prefixes.size() > MAX_PREFIXES) {
+                return new Analysis(prefixes, false);
+            }
+            Set<String> next = new TreeSet<>();
+            for (String prefix : prefixes) {
+                for (String suffix : analysis.prefixes) {
+                    next.add(prefix + suffix);
+                }
+            }
+            prefixes = next;
+            if (!analysis.exact) {
+                return new Analysis(prefixes, false);
+            }
+        }
+        return new Analysis(prefixes, true);
+    }
+
+    /**
+     * What is known of the names matched by a syntax tree.
+     */
+    private static final class Analysis {
+
+        /**
+         * Nothing is known.
+         */
+        private static final Analysis ANY = new Analysis(Collections.singleton(""), false);
+
+        /**
+         * Every matched name starts with one of these prefixes.
+         */
+        private final Set<String> prefixes;
+
+        /**
+         * {@code true} if the prefixes are exactly the matched names.
+         */
+        private final boolean exact;
+
+        private Analysis(Set<String> prefixes, boolean exact) {
+            this.prefixes = prefixes;
+            this.exact = exact;
+        }
+    }
+}
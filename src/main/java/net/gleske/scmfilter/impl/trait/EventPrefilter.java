@@ -0,0 +1,195 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017-2020, Sam Gleske - https://github.com/samrocketman
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.gleske.scmfilter.impl.trait;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.model.TaskListener;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jenkins.scm.api.SCMHead;
+import jenkins.scm.api.SCMHeadEvent;
+import jenkins.scm.api.SCMHeadObserver;
+import jenkins.scm.api.SCMRevision;
+import jenkins.scm.api.SCMSource;
+import jenkins.scm.api.trait.SCMHeadPrefilter;
+import jenkins.scm.api.trait.SCMSourceContext;
+import jenkins.scm.api.trait.SCMSourceRequest;
+import jenkins.scm.api.trait.SCMSourceTrait;
+
+/**
+ * Matches {@link SCMHeadEvent}s against the filter traits of a source, so that events only concerning excluded heads
+ * can be dropped before anything is fetched from the remote.
+ * <p>
+ * The SCM API does not let a listener veto an event, so dropping is up to the SCM implementations: they can call
+ * {@link #isExcluded(SCMSource, SCMHeadEvent)} before doing any remote call for an event, which also counts the
+ * events checked and the ones that could be dropped in the filter metrics.
+ */
+public final class EventPrefilter {
+
+    private static final Logger LOGGER = Logger.getLogger(EventPrefilter.class.getName());
+
+    private EventPrefilter() {
+    }
+
+    /**
+     * Checks if the filter traits of a source exclude all the heads an event is about. The heads are the ones of
+     * {@link SCMHeadEvent#heads(SCMSource)}, which implementations derive from the event payload, and they are matched
+     * with the prefilters the traits add in {@code decorateContext}, so with the same compiled rules as a scan.
+     *
+     * @param source the source.
+     * @param event the event.
+     * @return {@code true} if the event is about at least one head of the source and all of them are excluded,
+     *         {@code false} as well if the filters of the source could not be applied.
+     */
+    public static boolean isExcluded(@NonNull SCMSource source, @NonNull SCMHeadEvent<?> event) {
+        boolean excluded;
+        try {
+            // the heads first, the event matches few sources
+            Set<SCMHead> heads = event.heads(source).keySet();
+            if (heads.isEmpty()) {
+                return false;
+            }
+            List<SCMHeadPrefilter> prefilters = prefilters(source);
+            if (prefilters.isEmpty()) {
+                return false;
+            }
+            excluded = isExcluded(source, heads, prefilters);
+        } catch (RuntimeException e) {
+            // a broken filter must not make the source miss the event, the next scan reports it
+            LOGGER.log(Level.FINE, "Could not apply the filters of " + source.getId() + " to "
+                    + event.getClass().getSimpleName() + " event from " + event.getSourceName(), e);
+            return false;
+        }
+        FilterMetrics.recordEvent(excluded);
+        if (excluded) {
+            LOGGER.log(Level.FINE, "The filters exclude all the heads of {0} {1} event from {2}",
+                    new Object[] {event.getType(), event.getClass().getSimpleName(), event.getSourceName()});
+        }
+        return excluded;
+    }
+
+    /**
+     * Checks if prefilters exclude heads, without recording the decisions like a scan would.
+     *
+     * @param source the source.
+     * @param heads the heads.
+     * @param prefilters the prefilters.
+     * @return {@code true} if all the heads are excluded.
+     */
+    private static boolean isExcluded(@NonNull SCMSource source, @NonNull Set<SCMHead> heads,
+                                      @NonNull List<SCMHeadPrefilter> prefilters) {
+        for (SCMHead head : heads) {
+            if (!FilterPrefilter.isExcludedQuietly(source, head, prefilters)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Gets the prefilters the filter traits of a source add.
+     *
+     * @param source the source.
+     * @return the prefilters, empty if the source has no filter trait.
+     */
+    @NonNull
+    static List<SCMHeadPrefilter> prefilters(@NonNull SCMSource source) {
+        return prefilters(source.getTraits());
+    }
+
+    /**
+     * Gets the prefilters filter traits add.
+     *
+     * @param traits the traits.
+     * @return the prefilters, empty if there is no filter trait.
+     */
+    @NonNull
+    static List<SCMHeadPrefilter> prefilters(@NonNull List<SCMSourceTrait> traits) {
+        Context context = null;
+        for (SCMSourceTrait trait : traits) {
+            if (trait instanceof StatelessFilter) {
+                if (context == null) {
+                    context = new Context();
+                }
+                trait.applyToContext(context);
+            }
+        }
+        return context == null ? Collections.emptyList() : context.prefilters();
+    }
+
+    /**
+     * Gets the prefilters a trait adds, whether it takes part in events or not.
+     *
+     * @param trait the trait.
+     * @return the prefilters.
+     */
+    @NonNull
+    static List<SCMHeadPrefilter> prefilters(@NonNull SCMSourceTrait trait) {
+        Context context = new Context();
+        trait.applyToContext(context);
+        return context.prefilters();
+    }
+
+    /**
+     * A context that only collects the prefilters. Its prefilters decide on some heads only, never for a scan.
+     */
+    private static final class Context extends SCMSourceContext<Context, SCMSourceRequest> {
+
+        private Context() {
+            super(null, new NoHeads());
+        }
+
+        @NonNull
+        @Override
+        public SCMSourceRequest newRequest(@NonNull SCMSource source, TaskListener listener) {
+            throw new IllegalStateException("This context only collects the prefilters of the filter traits");
+        }
+    }
+
+    /**
+     * An observer including no head, so that the prefilters of a {@link Context} are not taken for the ones of a scan
+     * listing all the heads.
+     */
+    private static final class NoHeads extends SCMHeadObserver {
+
+        @Override
+        public void observe(@NonNull SCMHead head, @NonNull SCMRevision revision) {
+        }
+
+        @Override
+        public boolean isObserving() {
+            return false;
+        }
+
+        @NonNull
+        @Override
+        public Set<SCMHead> getIncludes() {
+            return Collections.emptySet();
+        }
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017-2020, Sam Gleske - https://github.com/samrocketman
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.gleske.scmfilter.impl.trait;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.init.InitMilestone;
+import hudson.init.Initializer;
+import hudson.init.Terminator;
+import java.util.Map;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Period;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+import jdk.jfr.Timespan;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+/**
+ * Java Flight Recorder events describing the work of the filter prefilters, so that indexing time can be attributed
+ * to specific filter configurations when profiling. Slow decisions are recorded as {@link Decision} events, and the
+ * {@link FilterMetrics} of each trait type are recorded periodically as {@link Summary} events. Nothing is recorded,
+ * nor allocated, unless a recording enables these events.
+ */
+@Restricted(NoExternalUse.class)
+public final class FilterEvents {
+
+    /**
+     * The type of {@link Decision} events.
+     */
+    private static final EventType DECISION = EventType.getEventType(Decision.class);
+
+    /**
+     * Emits the {@link Summary} events when a recording asks for them.
+     */
+    private static final Runnable SUMMARY = FilterEvents::emitSummaries;
+
+    private FilterEvents() {
+    }
+
+    /**
+     * Starts timing a decision.
+     *
+     * @return the event to pass to {@link #end(Decision, String, HeadCategory, boolean)}, {@code null} if decisions
+     *         are not recorded.
+     */
+    @CheckForNull
+    static Decision begin() {
+        if (!DECISION.isEnabled()) {
+            return null;
+        }
+        Decision event = new Decision();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Ends timing a decision and records it if it took longer than the threshold of the recording.
+     *
+     * @param event the event returned by {@link #begin()}.
+     * @param traitType the type of the trait that decided.
+     * @param category the category of the head.
+     * @param excluded {@code true} if the head was excluded.
+     */
+    static void end(@CheckForNull Decision event, @NonNull String traitType, @NonNull HeadCategory category,
+                    boolean excluded) {
+        if (event == null) {
+            return;
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.traitType = traitType;
+            event.category = category.getKey();
+            event.excluded = excluded;
+            event.commit();
+        }
+    }
+
+    /**
+     * Registers the {@link Summary} events.
+     */
+    @Initializer(after = InitMilestone.PLUGINS_STARTED)
+    public static void register() {
+        FlightRecorder.addPeriodicEvent(Summary.class, SUMMARY);
+    }
+
+    /**
+     * Unregisters the {@link Summary} events.
+     */
+    @Terminator
+    public static void unregister() {
+        FlightRecorder.removePeriodicEvent(SUMMARY);
+    }
+
+    private static void emitSummaries() {
+        for (Map.Entry<String, FilterMetrics.Counters> entry : FilterMetrics.byTrait().entrySet()) {
+            FilterMetrics.Counters counters = entry.getValue();
+            Summary event = new Summary();
+            event.traitType = entry.getKey();
+            event.evaluations = counters.getEvaluations();
+            event.excluded = counters.getExcluded();
+            event.totalTime = counters.getNanos();
+            event.maxTime = counters.getMaxNanos();
+            event.commit();
+        }
+    }
+
+    /**
+     * A head filter decision that took longer than the threshold.
+     */
+    @Name("net.gleske.scmfilter.Decision")
+    @Label("SCM Filter Decision")
+    @Description("A branch, tag or change request evaluated by an SCM filter trait")
+    @Category({"Jenkins", "SCM Filter"})
+    @Threshold("1 ms")
+    @StackTrace(false)
+    static final class Decision extends Event {
+
+        @Label("Trait Type")
+        String traitType;
+
+        @Label("Head Category")
+        String category;
+
+        @Label("Excluded")
+        boolean excluded;
+    }
+
+    /**
+     * The cumulative work of a filter trait type since startup.
+     */
+    @Name("net.gleske.scmfilter.Summary")
+    @Label("SCM Filter Summary")
+    @Description("The heads evaluated by an SCM filter trait type since startup")
+    @Category({"Jenkins", "SCM Filter"})
+    @Period("60 s")
+    @StackTrace(false)
+    static final class Summary extends Event {
+
+        @Label("Trait Type")
+        String traitType;
+
+        @Label("Evaluations")
+        long evaluations;
+
+        @Label("Excluded")
+        long excluded;
+
+        @Label("Total Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long totalTime;
+
+        @Label("Max Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long maxTime;
+    }
+}
@@ -0,0 +1,351 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017-2020, Sam Gleske - https://github.com/samrocketman
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.gleske.scmfilter.impl.trait;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import net.sf.json.JSONObject;
+
+/**
+ * Process-wide counters of the work done by the filter prefilters, aggregated per trait type and per job and reported
+ * by {@link FilterMetricsAction}. The counters are striped so that concurrent scans do not contend on them.
+ */
+final class FilterMetrics {
+
+    /**
+     * The counters per trait type.
+     */
+    private static final ConcurrentMap<String, Counters> BY_TRAIT = new ConcurrentHashMap<>();
+
+    /**
+     * The counters per job full name and trait type.
+     */
+    private static final ConcurrentMap<String, ConcurrentMap<String, Counters>> BY_JOB = new ConcurrentHashMap<>();
+
+    /**
+     * The number of head events checked against the filters of a source.
+     */
+    private static final LongAdder EVENTS = new LongAdder();
+
+    /**
+     * The number of head events checked against the filters of a source that exclude all their heads, which the SCM
+     * implementation could drop.
+     */
+    private static final LongAdder DROPPABLE_EVENTS = new LongAdder();
+
+    private FilterMetrics() {
+    }
+
+    /**
+     * Gets the counters of a trait type.
+     *
+     * @param traitType the trait type.
+     * @return the counters.
+     */
+    @NonNull
+    static Counters forTrait(@NonNull String traitType) {
+        return BY_TRAIT.computeIfAbsent(traitType, k -> new Counters());
+    }
+
+    /**
+     * Gets the counters of a trait type in a job.
+     *
+     * @param job the full name of the job.
+     * @param traitType the trait type.
+     * @return the counters.
+     */
+    @NonNull
+    static Counters forJob(@NonNull String job, @NonNull String traitType) {
+        return BY_JOB.computeIfAbsent(job, k -> new ConcurrentHashMap<>())
+                .computeIfAbsent(traitType, k -> new Counters());
+    }
+
+    /**
+     * Forgets the counters of a deleted job and of the jobs it contained.
+     *
+     * @param job the full name of the job.
+     */
+    static void forgetJob(@NonNull String job) {
+        BY_JOB.keySet().removeIf(key -> key.equals(job) || key.startsWith(job + "/"));
+    }
+
+    /**
+     * Keeps the counters of a renamed or moved job under its new full name.
+     *
+     * @param oldJob the former full name of the job.
+     * @param newJob the new full name of the job.
+     */
+    static void moveJob(@NonNull String oldJob, @NonNull String newJob) {
+        ConcurrentMap<String, Counters> counters = BY_JOB.remove(oldJob);
+        if (counters != null) {
+            BY_JOB.putIfAbsent(newJob, counters);
+        }
+    }
+
+    /**
+     * Gets the counters of all trait types.
+     *
+     * @return a snapshot of the counters per trait type.
+     */
+    @NonNull
+    static Map<String, Counters> byTrait() {
+        return new TreeMap<>(BY_TRAIT);
+    }
+
+    /**
+     * Records a head event checked against the filters of a source.
+     *
+     * @param droppable {@code true} if the filters exclude all the heads of the event.
+     */
+    static void recordEvent(boolean droppable) {
+        EVENTS.increment();
+        if (droppable) {
+            DROPPABLE_EVENTS.increment();
+        }
+    }
+
+    /**
+     * Gets the number of head events checked against the filters of a source.
+     *
+     * @return the number of head events.
+     */
+    static long getEvents() {
+        return EVENTS.sum();
+    }
+
+    /**
+     * Gets the number of head events checked against the filters of a source that exclude all their heads, which the
+     * SCM implementation could drop.
+     *
+     * @return the number of head events.
+     */
+    static long getDroppableEvents() {
+        return DROPPABLE_EVENTS.sum();
+    }
+
+    /**
+     * Forgets all counters.
+     */
+    static void reset() {
+        BY_TRAIT.clear();
+        BY_JOB.clear();
+        EVENTS.reset();
+        DROPPABLE_EVENTS.reset();
+    }
+
+    /**
+     * Reports all counters.
+     *
+     * @return the counters as JSON, per trait type, per job and for head events.
+     */
+    @NonNull
+    static JSONObject toJSON() {
+        JSONObject traits = new JSONObject();
+        for (Map.Entry<String, Counters> entry : new TreeMap<>(BY_TRAIT).entrySet()) {
+            traits.element(entry.getKey(), entry.getValue().toJSON());
+        }
+        JSONObject jobs = new JSONObject();
+        for (Map.Entry<String, ConcurrentMap<String, Counters>> job : new TreeMap<>(BY_JOB).entrySet()) {
+            JSONObject perTrait = new JSONObject();
+            for (Map.Entry<String, Counters> entry : new TreeMap<>(job.getValue()).entrySet()) {
+                perTrait.element(entry.getKey(), entry.getValue().toJSON());
+            }
+            jobs.element(job.getKey(), perTrait);
+        }
+        JSONObject events = new JSONObject()
+                .element("checked", getEvents())
+                .element("droppable", getDroppableEvents());
+        return new JSONObject().element("traits", traits).element("jobs", jobs).element("events", events);
+    }
+
+    /**
+     * The counters of one trait type, or of one trait type in one job.
+     */
+    static final class Counters {
+
+        /**
+         * The number of heads evaluated, per {@link HeadCategory}.
+         */
+        private final LongAdder[] evaluations = adders();
+
+        /**
+         * The number of heads excluded, per {@link HeadCategory}.
+         */
+        private final LongAdder[] excluded = adders();
+
+        /**
+         * The cumulative time spent evaluating heads.
+         */
+        private final LongAdder nanos = new LongAdder();
+
+        /**
+         * The longest time spent evaluating a single head.
+         */
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0L);
+
+        /**
+         * The number of decisions found in a {@link DecisionCache}.
+         */
+        private final LongAdder cacheHits = new LongAdder();
+
+        /**
+         * The number of decisions not found in a {@link DecisionCache}.
+         */
+        private final LongAdder cacheMisses = new LongAdder();
+
+        /**
+         * Records the evaluation of a head.
+         *
+         * @param category the category of the head.
+         * @param excluded {@code true} if the head was excluded.
+         * @param nanos the time spent.
+         */
+        void record(@NonNull HeadCategory category, boolean excluded, long nanos) {
+            evaluations[category.ordinal()].increment();
+            if (excluded) {
+                this.excluded[category.ordinal()].increment();
+            }
+            this.nanos.add(nanos);
+            maxNanos.accumulate(nanos);
+        }
+
+        /**
+         * Records a lookup in a {@link DecisionCache}.
+         *
+         * @param hit {@code true} if the decision was cached.
+         */
+        void recordCache(boolean hit) {
+            (hit ? cacheHits : cacheMisses).increment();
+        }
+
+        /**
+         * Gets the number of decisions found in a {@link DecisionCache}.
+         *
+         * @return the number of decisions found in a {@link DecisionCache}.
+         */
+        long getCacheHits() {
+            return cacheHits.sum();
+        }
+
+        /**
+         * Gets the number of decisions not found in a {@link DecisionCache}.
+         *
+         * @return the number of decisions not found in a {@link DecisionCache}.
+         */
+        long getCacheMisses() {
+            return cacheMisses.sum();
+        }
+
+        /**
+         * Gets the number of heads evaluated.
+         *
+         * @return the number of heads evaluated.
+         */
+        long getEvaluations() {
+            return sum(evaluations);
+        }
+
+        /**
+         * Gets the number of heads excluded.
+         *
+         * @return the number of heads excluded.
+         */
+        long getExcluded() {
+            return sum(excluded);
+        }
+
+        /**
+         * Gets the number of heads of a category excluded.
+         *
+         * @param category the category.
+         * @return the number of heads of the category excluded.
+         */
+        long getExcluded(@NonNull HeadCategory category) {
+            return excluded[category.ordinal()].sum();
+        }
+
+        /**
+         * Gets the cumulative time spent evaluating heads.
+         *
+         * @return the cumulative time in nanoseconds.
+         */
+        long getNanos() {
+            return nanos.sum();
+        }
+
+        /**
+         * Gets the longest time spent evaluating a single head.
+         *
+         * @return the longest time in nanoseconds.
+         */
+        long getMaxNanos() {
+            return maxNanos.get();
+        }
+
+        @NonNull
+        private JSONObject toJSON() {
+            JSONObject json = new JSONObject()
+                    .element("evaluations", getEvaluations())
+                    .element("excluded", getExcluded());
+            for (HeadCategory category : HeadCategory.values()) {
+                json.element(category.getKey(), new JSONObject()
+                        .element("evaluations", evaluations[category.ordinal()].sum())
+                        .element("excluded", excluded[category.ordinal()].sum()));
+            }
+            json.element("totalNanos", getNanos()).element("maxNanos", getMaxNanos());
+            long hits = getCacheHits();
+            long lookups = hits + getCacheMisses();
+            if (lookups > 0) {
+                json.element("cache", new JSONObject()
+                        .element("hits", hits)
+                        .element("misses", lookups - hits)
+                        .element("hitRate", (double) hits / lookups));
+            }
+            return json;
+        }
+
+        @NonNull
+        private static LongAdder[] adders() {
+            LongAdder[] adders = new LongAdder[HeadCategory.values().length];
+            for (int i = 0; i < adders.length; i++) {
+                adders[i] = new LongAdder();
+            }
+            return adders;
+        }
+
+        private static long sum(@NonNull LongAdder[] adders) {
+            long sum = 0;
+            for (LongAdder adder : adders) {
+                sum += adder.sum();
+            }
+            return sum;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017-2020, Sam Gleske - https://github.com/samrocketman
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.gleske.scmfilter.impl.trait;
+
+import hudson.Extension;
+import hudson.model.Item;
+import hudson.model.RootAction;
+import hudson.model.listeners.ItemListener;
+import java.io.IOException;
+import jenkins.model.Jenkins;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+import org.kohsuke.stapler.StaplerRequest2;
+import org.kohsuke.stapler.StaplerResponse2;
+
+/**
+ * Reports {@link FilterMetrics} as JSON to administrators at {@code /scm-filter-metrics/}: how many heads each filter
+ * trait type evaluated and excluded, per head category, and how long it took, overall and per job.
+ */
+@Extension
+@Restricted(NoExternalUse.class)
+public class FilterMetricsAction implements RootAction {
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getIconFileName() {
+        // not shown in the side panel
+        return null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getDisplayName() {
+        return "SCM Filter Metrics";
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getUrlName() {
+        return "scm-filter-metrics";
+    }
+
+    /**
+     * Writes the metrics.
+     *
+     * @param req the request.
+     * @param rsp the response.
+     * @throws IOException if the response could not be written.
+     */
+    public void doIndex(StaplerRequest2 req, StaplerResponse2 rsp) throws IOException {
+        Jenkins.get().checkPermission(Jenkins.ADMINISTER);
+        rsp.setContentType("application/json;charset=UTF-8");
+        rsp.getWriter().print(FilterMetrics.toJSON().toString(2));
+    }
+
+    /**
+     * Keeps the counters per job in line with the jobs, so that deleted jobs do not accumulate.
+     */
+    @Extension
+    @Restricted(NoExternalUse.class)
+    public static class Listener extends ItemListener {
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void onDeleted(Item item) {
+            FilterMetrics.forgetJob(item.getFullName());
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void onLocationChanged(Item item, String oldFullName, String newFullName) {
+            // also called for every job inside a moved folder
+            FilterMetrics.moveJob(oldFullName, newFullName);
+        }
+    }
+}
@@ -0,0 +1,256 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017-2020, Sam Gleske - https://github.com/samrocketman
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.gleske.scmfilter.impl.trait;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import jenkins.scm.api.SCMHead;
+import jenkins.scm.api.SCMSource;
+import jenkins.scm.api.SCMSourceOwner;
+import jenkins.scm.api.trait.SCMHeadPrefilter;
+import jenkins.scm.api.trait.SCMSourceContext;
+import jenkins.scm.api.trait.SCMSourceTrait;
+
+/**
+ * The base class of the prefilters added by the filter traits. It records every decision in {@link FilterMetrics}
+ * and slow ones as {@link FilterEvents.Decision} events. Heads are also remembered in {@link HeadSnapshots} when
+ * enabled. Name filters extend {@link NamePrefilter}, filters deciding on a head by the other heads of the scan extend
+ * {@link StatefulPrefilter}.
+ */
+abstract class FilterPrefilter extends SCMHeadPrefilter {
+
+    /**
+     * The type of the trait that created this prefilter.
+     */
+    @NonNull
+    private final String traitType;
+
+    /**
+     * The context of the scan this prefilter decides for when the scan lists all heads, {@code null} when only some
+     * heads are observed, for example for an event.
+     */
+    @CheckForNull
+    private final SCMSourceContext<?, ?> scan;
+
+    /**
+     * The counters of the trait type.
+     */
+    @NonNull
+    private final FilterMetrics.Counters traitCounters;
+
+    /**
+     * The counters of the job last seen, as the prefilters of a request only decide for its source.
+     */
+    @CheckForNull
+    private volatile JobCounters jobCounters;
+
+    /**
+     * The heads {@link BatchPrefilter} included and recorded for the request created from the context of this
+     * prefilter, which decides on them again without recording them a second time. Created by the first batch.
+     */
+    @CheckForNull
+    private volatile Set<SCMHead> batched;
+
+    /**
+     * Constructor.
+     *
+     * @param trait the trait that creates this prefilter.
+     * @param context the context the trait decorates with this prefilter.
+     */
+    FilterPrefilter(@NonNull SCMSourceTrait trait, @NonNull SCMSourceContext<?, ?> context) {
+        this.traitType = trait.getClass().getSimpleName();
+        this.scan = context.observer().getIncludes() == null ? context : null;
+        this.traitCounters = FilterMetrics.forTrait(traitType);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final boolean isExcluded(@NonNull SCMSource source, @NonNull SCMHead head) {
+        Set<SCMHead> batched = this.batched;
+        if (batched != null && batched.remove(head)) {
+            return evaluate(source, head);
+        }
+        FilterEvents.Decision event = FilterEvents.begin();
+        long start = System.nanoTime();
+        boolean excluded = evaluate(source, head);
+        long elapsed = System.nanoTime() - start;
+        if (scan != null && HeadSnapshots.isEnabled()) {
+            HeadSnapshots.record(source, scan, head);
+        }
+        HeadCategory category = HeadCategory.of(head);
+        FilterEvents.end(event, traitType, category, excluded);
+        FilterMetrics.Counters counters = jobCounters(source);
+        traitCounters.record(category, excluded, elapsed);
+        if (counters != null) {
+            counters.record(category, excluded, elapsed);
+        }
+        return excluded;
+    }
+
+    /**
+     * Decides if a head should be excluded.
+     *
+     * @param source the source the head belongs to.
+     * @param head the head.
+     * @return {@code true} if the head should be excluded.
+     */
+    protected abstract boolean evaluate(@NonNull SCMSource source, @NonNull SCMHead head);
+
+    /**
+     * Records a lookup in the decision cache of the trait.
+     *
+     * @param source the source the head belongs to.
+     * @param hit {@code true} if the decision was cached.
+     */
+    protected final void recordCache(@NonNull SCMSource source, boolean hit) {
+        traitCounters.recordCache(hit);
+        FilterMetrics.Counters counters = jobCounters(source);
+        if (counters != null) {
+            counters.recordCache(hit);
+        }
+    }
+
+    /**
+     * Shows the prefilter all the heads it is about to decide on, when they are known up front. Prefilters whose
+     * decisions depend on the other heads of the source, rather than on a single name, use it to decide exactly from
+     * the first head on.
+     *
+     * @param source the source the heads belong to.
+     * @param heads the heads.
+     */
+    protected void prepare(@NonNull SCMSource source, @NonNull Collection<? extends SCMHead> heads) {
+    }
+
+    /**
+     * Gets the literal prefixes of the names this prefilter can include, see {@link DiscoveryHints}.
+     *
+     * @param names the names the hint is about.
+     * @return the prefixes, or {@code null} if any name can be included.
+     */
+    @CheckForNull
+    protected Set<String> hint(@NonNull DiscoveryHints.Names names) {
+        return null;
+    }
+
+    /**
+     * Checks if this prefilter decides for a scan listing all the heads, rather than for some heads only, for example
+     * those of an event.
+     *
+     * @return {@code true} if this prefilter decides for a scan listing all the heads.
+     */
+    protected final boolean isScan() {
+        return scan != null;
+    }
+
+    /**
+     * Shows the prefilters of the filter traits all the heads they are about to decide on.
+     *
+     * @param source the source the heads belong to.
+     * @param heads the heads.
+     * @param prefilters the prefilters.
+     */
+    static void prepare(@NonNull SCMSource source, @NonNull Collection<? extends SCMHead> heads,
+                        @NonNull List<SCMHeadPrefilter> prefilters) {
+        for (SCMHeadPrefilter prefilter : prefilters) {
+            if (prefilter instanceof FilterPrefilter) {
+                ((FilterPrefilter) prefilter).prepare(source, heads);
+            }
+        }
+    }
+
+    /**
+     * Remembers heads a batch included and recorded, so that the request deciding on them again does not record them
+     * a second time.
+     *
+     * @param heads the heads.
+     * @param prefilters the prefilters of the context of the request.
+     */
+    static void batched(@NonNull Collection<? extends SCMHead> heads, @NonNull List<SCMHeadPrefilter> prefilters) {
+        for (SCMHeadPrefilter prefilter : prefilters) {
+            if (prefilter instanceof FilterPrefilter) {
+                ((FilterPrefilter) prefilter).batched(heads);
+            }
+        }
+    }
+
+    private synchronized void batched(@NonNull Collection<? extends SCMHead> heads) {
+        Set<SCMHead> batched = this.batched;
+        if (batched == null) {
+            batched = ConcurrentHashMap.newKeySet();
+            this.batched = batched;
+        }
+        batched.addAll(heads);
+    }
+
+    /**
+     * Decides on a head like a scan would, without recording it in the metrics or the snapshots.
+     *
+     * @param source the source.
+     * @param head the head.
+     * @param prefilters the prefilters.
+     * @return {@code true} if any prefilter excludes the head.
+     */
+    static boolean isExcludedQuietly(@NonNull SCMSource source, @NonNull SCMHead head,
+                                     @NonNull List<SCMHeadPrefilter> prefilters) {
+        for (SCMHeadPrefilter prefilter : prefilters) {
+            if (prefilter instanceof FilterPrefilter
+                    ? ((FilterPrefilter) prefilter).evaluate(source, head) : prefilter.isExcluded(source, head)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @CheckForNull
+    private FilterMetrics.Counters jobCounters(@NonNull SCMSource source) {
+        JobCounters jobCounters = this.jobCounters;
+        if (jobCounters == null || jobCounters.source != source) {
+            SCMSourceOwner owner = source.getOwner();
+            jobCounters = new JobCounters(source,
+                    owner == null ? null : FilterMetrics.forJob(owner.getFullName(), traitType));
+            this.jobCounters = jobCounters;
+        }
+        return jobCounters.counters;
+    }
+
+    /**
+     * The counters of the job a source belongs to.
+     */
+    private static final class JobCounters {
+        private final SCMSource source;
+        private final FilterMetrics.Counters counters;
+
+        private JobCounters(SCMSource source, FilterMetrics.Counters counters) {
+            this.source = source;
+            this.counters = counters;
+        }
+    }
+}
@@ -0,0 +1,283 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017-2020, Sam Gleske - https://github.com/samrocketman
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.gleske.scmfilter.impl.trait;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.model.Item;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import jenkins.model.Jenkins;
+import jenkins.scm.api.SCMHead;
+import jenkins.scm.api.SCMHeadOrigin;
+import jenkins.scm.api.SCMSource;
+import jenkins.scm.api.SCMSourceOwner;
+import jenkins.scm.api.mixin.ChangeRequestCheckoutStrategy;
+import jenkins.scm.api.mixin.ChangeRequestSCMHead2;
+import jenkins.scm.api.mixin.ChangeRequestSCMHead;
+import jenkins.scm.api.mixin.TagSCMHead;
+import jenkins.scm.api.trait.SCMHeadPrefilter;
+import jenkins.scm.api.trait.SCMSourceTrait;
+import jenkins.scm.impl.NullSCMSource;
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+import org.kohsuke.stapler.StaplerRequest2;
+import org.kohsuke.stapler.StaplerResponse2;
+
+/**
+ * Evaluates filter rules that are being edited against candidate names or the heads a source last saw, so that
+ * users can tune a filter without saving it and scanning the remote. Served by the {@code preview} endpoint of the
+ * descriptor of each filter trait.
+ * <p>
+ * The request body is a JSON object with the {@code trait} configuration as submitted by its form, and any of
+ * {@code branches} and {@code tags} (arrays of names), {@code changeRequests} (an array of objects with a
+ * {@code target}, an {@code origin} and an optional {@code targetTag} flag) and {@code source} (the id of a source of
+ * the job, whose heads are added when {@link HeadSnapshots} are enabled). The decisions are streamed back as they are
+ * made.
+ */
+final class FilterPreview {
+
+    /**
+     * How many decisions are written between flushes of the response.
+     */
+    private static final int FLUSH_EVERY = 1000;
+
+    private FilterPreview() {
+    }
+
+    /**
+     * Serves a preview request.
+     *
+     * @param type the type of the trait.
+     * @param item the job the request is made from, if any.
+     * @param req the request.
+     * @param rsp the response.
+     * @throws IOException if the request could not be read or the response could not be written.
+     */
+    static void serve(@NonNull Class<? extends SCMSourceTrait> type, @CheckForNull Item item,
+                      @NonNull StaplerRequest2 req, @NonNull StaplerResponse2 rsp) throws IOException {
+        if (item != null) {
+            item.checkPermission(Item.CONFIGURE);
+        } else {
+            Jenkins.get().checkPermission(Jenkins.ADMINISTER);
+        }
+        String text = req.getReader().lines().collect(Collectors.joining("\n"));
+        rsp.setContentType("application/json;charset=UTF-8");
+        List<SCMHeadPrefilter> prefilters;
+        List<SCMHead> heads;
+        try {
+            JSONObject body = JSONObject.fromObject(text);
+            prefilters = prefilters(req.bindJSON(type, body.getJSONObject("trait")));
+            heads = heads(body, item);
+        } catch (RuntimeException e) {
+            // malformed body, invalid rules or unknown heads
+            rsp.setStatus(400);
+            rsp.getWriter().print(new JSONObject().element("error", String.valueOf(e.getMessage())).toString());
+            return;
+        }
+        write(prefilters, heads, rsp.getWriter());
+    }
+
+    /**
+     * Gets the prefilters of a trait being previewed.
+     *
+     * @param trait the trait.
+     * @return the prefilters.
+     * @throws RuntimeException if the trait cannot decorate a context, for example because of an invalid rule.
+     */
+    @NonNull
+    static List<SCMHeadPrefilter> prefilters(@NonNull SCMSourceTrait trait) {
+        return EventPrefilter.prefilters(trait);
+    }
+
+    /**
+     * Gets the heads a preview request is about.
+     *
+     * @param body the request body.
+     * @param item the job the request is made from, if any.
+     * @return the heads.
+     * @throws IllegalArgumentException if the request asks for the heads of a source that are not known.
+     */
+    @NonNull
+    static List<SCMHead> heads(@NonNull JSONObject body, @CheckForNull Item item) {
+        List<SCMHead> heads = new ArrayList<>();
+        for (String name : strings(body, "branches")) {
+            heads.add(new SCMHead(name));
+        }
+        for (String name : strings(body, "tags")) {
+            heads.add(new Tag(name));
+        }
+        JSONArray changeRequests = body.optJSONArray("changeRequests");
+        if (changeRequests != null) {
+            for (int i = 0; i < changeRequests.size(); i++) {
+                JSONObject changeRequest = changeRequests.getJSONObject(i);
+                String target = changeRequest.getString("target");
+                heads.add(new ChangeRequest(String.valueOf(i + 1),
+                        changeRequest.optBoolean("targetTag") ? new Tag(target) : new SCMHead(target),
+                        changeRequest.getString("origin")));
+            }
+        }
+        String sourceId = body.optString("source", null);
+        if (sourceId != null) {
+            if (!HeadSnapshots.isEnabled()) {
+                throw new IllegalArgumentException("The heads of a source are only known when the "
+                        + HeadSnapshots.ENABLED + " system property is set to true");
+            }
+            SCMSource source = item instanceof SCMSourceOwner ? ((SCMSourceOwner) item).getSCMSource(sourceId) : null;
+            if (source == null) {
+                throw new IllegalArgumentException("No source " + sourceId + " in this job");
+            }
+            heads.addAll(HeadSnapshots.heads(source));
+        }
+        return heads;
+    }
+
+    @NonNull
+    private static List<String> strings(@NonNull JSONObject body, @NonNull String key) {
+        JSONArray array = body.optJSONArray(key);
+        if (array == null) {
+            return Collections.emptyList();
+        }
+        List<String> strings = new ArrayList<>(array.size());
+        for (int i = 0; i < array.size(); i++) {
+            strings.add(array.getString(i));
+        }
+        return strings;
+    }
+
+    /**
+     * Writes the decisions of the prefilters of a trait on heads as a JSON object with a {@code decisions} array
+     * followed by the totals.
+     *
+     * @param prefilters the prefilters of the trait, see {@link #prefilters(SCMSourceTrait)}.
+     * @param heads the heads.
+     * @param out where to write.
+     */
+    static void write(@NonNull List<SCMHeadPrefilter> prefilters, @NonNull List<SCMHead> heads,
+                      @NonNull PrintWriter out) {
+        SCMSource source = new NullSCMSource();
+        long start = System.nanoTime();
+        FilterPrefilter.prepare(source, heads, prefilters);
+        int excluded = 0;
+        out.print("{\"decisions\":[");
+        for (int i = 0; i < heads.size(); i++) {
+            SCMHead head = heads.get(i);
+            boolean isExcluded = FilterPrefilter.isExcludedQuietly(source, head, prefilters);
+            if (isExcluded) {
+                excluded++;
+            }
+            JSONObject decision = new JSONObject()
+                    .element("category", HeadCategory.of(head).getKey())
+                    .element("name", head.getName());
+            if (head instanceof ChangeRequestSCMHead) {
+                decision.element("target", ((ChangeRequestSCMHead) head).getTarget().getName());
+            }
+            if (head instanceof ChangeRequestSCMHead2) {
+                decision.element("origin", ((ChangeRequestSCMHead2) head).getOriginName());
+            }
+            decision.element("excluded", isExcluded);
+            if (i > 0) {
+                out.print(',');
+            }
+            out.print(decision.toString());
+            if (i % FLUSH_EVERY == FLUSH_EVERY - 1) {
+                out.flush();
+            }
+        }
+        out.print("],");
+        out.print(new JSONObject()
+                .element("total", heads.size())
+                .element("excluded", excluded)
+                .element("nanos", System.nanoTime() - start)
+                .toString().substring(1));
+        out.flush();
+    }
+
+    /**
+     * A candidate tag.
+     */
+    private static final class Tag extends SCMHead implements TagSCMHead {
+
+        private Tag(@NonNull String name) {
+            super(name);
+        }
+
+        @Override
+        public long getTimestamp() {
+            return 0L;
+        }
+    }
+
+    /**
+     * A candidate change request.
+     */
+    private static final class ChangeRequest extends SCMHead implements ChangeRequestSCMHead2 {
+
+        private final String id;
+        private final SCMHead target;
+        private final String originName;
+
+        private ChangeRequest(@NonNull String id, @NonNull SCMHead target, @NonNull String originName) {
+            super("PR-" + id);
+            this.id = id;
+            this.target = target;
+            this.originName = originName;
+        }
+
+        @NonNull
+        @Override
+        public String getId() {
+            return id;
+        }
+
+        @NonNull
+        @Override
+        public SCMHead getTarget() {
+            return target;
+        }
+
+        @NonNull
+        @Override
+        public ChangeRequestCheckoutStrategy getCheckoutStrategy() {
+            return ChangeRequestCheckoutStrategy.HEAD;
+        }
+
+        @NonNull
+        @Override
+        public String getOriginName() {
+            return originName;
+        }
+
+        @NonNull
+        @Override
+        public SCMHeadOrigin getOrigin() {
+            return new SCMHeadOrigin.Fork(originName);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017-2020, Sam Gleske - https://github.com/samrocketman
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.gleske.scmfilter.impl.trait;
+
+import hudson.init.InitMilestone;
+import hudson.init.Initializer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jenkins.scm.api.SCMNavigator;
+import jenkins.scm.api.SCMNavigatorOwner;
+import jenkins.scm.api.SCMNavigatorOwners;
+import jenkins.scm.api.SCMSource;
+import jenkins.scm.api.SCMSourceOwner;
+import jenkins.scm.api.SCMSourceOwners;
+import jenkins.scm.api.trait.SCMTrait;
+import jenkins.util.SystemProperties;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+/**
+ * An optional pass at startup which compiles the rules of every configured {@link PrecompiledFilter} once all jobs
+ * are loaded and reports invalid rules together with the job they belong to. Wildcard rules are always valid and
+ * compiled as soon as their trait is loaded, so they are left out. Enable it with
+ * {@code -Dnet.gleske.scmfilter.impl.trait.FilterPrewarmer.enabled=true}.
+ */
+@Restricted(NoExternalUse.class)
+public final class FilterPrewarmer {
+
+    private static final Logger LOGGER = Logger.getLogger(FilterPrewarmer.class.getName());
+
+    /**
+     * Whether the pass runs at startup.
+     */
+    static final String ENABLED = FilterPrewarmer.class.getName() + ".enabled";
+
+    private FilterPrewarmer() {
+    }
+
+    /**
+     * Compiles the rules of all configured filter traits.
+     */
+    @Initializer(after = InitMilestone.JOB_LOADED)
+    public static void prewarm() {
+        if (!SystemProperties.getBoolean(ENABLED)) {
+            return;
+        }
+        long start = System.nanoTime();
+        int count = 0;
+        for (SCMSourceOwner owner : SCMSourceOwners.all()) {
+            for (SCMSource source : owner.getSCMSources()) {
+                for (SCMTrait<?> trait : source.getTraits()) {
+                    count += precompile(owner.getFullName(), trait);
+                }
+            }
+        }
+        for (SCMNavigatorOwner owner : SCMNavigatorOwners.all()) {
+            for (SCMNavigator navigator : owner.getSCMNavigators()) {
+                for (SCMTrait<?> trait : navigator.getTraits()) {
+                    count += precompile(owner.getFullName(), trait);
+                }
+            }
+        }
+        LOGGER.log(Level.FINE, "Compiled {0} filter traits in {1} ms",
+                new Object[] {count, (System.nanoTime() - start) / 1000000L});
+    }
+
+    private static int precompile(String owner, SCMTrait<?> trait) {
+        if (!(trait instanceof PrecompiledFilter)) {
+            return 0;
+        }
+        try {
+            ((PrecompiledFilter) trait).precompile();
+        } catch (IllegalArgumentException e) {
+            LOGGER.log(Level.WARNING, "Invalid {0} rules in {1}: {2}",
+                    new Object[] {trait.getClass().getSimpleName(), owner, e.getMessage()});
+        }
+        return 1;
+    }
+}
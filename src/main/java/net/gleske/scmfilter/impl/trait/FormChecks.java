@@ -0,0 +1,57 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017-2020, Sam Gleske - https://github.com/samrocketman
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.gleske.scmfilter.impl.trait;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.util.FormValidation;
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Form validations shared by the descriptors of the filter traits.
+ */
+final class FormChecks {
+
+    private FormChecks() {
+    }
+
+    /**
+     * Checks that a form value is a positive integer.
+     *
+     * @param value the value.
+     * @param quantity what the number counts, such as {@code "tags to keep"}.
+     * @return the validation results.
+     */
+    @NonNull
+    static FormValidation positive(String value, @NonNull String quantity) {
+        try {
+            if (Integer.parseInt(StringUtils.trim(value)) >= 1) {
+                return FormValidation.ok();
+            }
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        return FormValidation.error("The number of " + quantity + " must be a positive integer");
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017-2020, Sam Gleske - https://github.com/samrocketman
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.gleske.scmfilter.impl.trait;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import jenkins.util.SystemProperties;
+
+/**
+ * Wildcard rules matched by an {@link Automaton} whose transitions are compiled to bytecode by
+ * {@link AutomatonGenerator}.
+ * <p>
+ * Generation is off by default and turned on with
+ * {@code -Dnet.gleske.scmfilter.impl.trait.GeneratedMatcher.enabled=true}. It then also applies to the other rules
+ * already matched by an automaton: the linear-time regular expressions, the combined filter and the ordered rules.
+ * Regular expressions matched by the default engine keep its exact semantics and are never generated. Automata too
+ * large to generate keep being matched by the generic engines.
+ */
+final class GeneratedMatcher implements NameMatcher {
+
+    /**
+     * The system property enabling generation.
+     */
+    static final String ENABLED = GeneratedMatcher.class.getName() + ".enabled";
+
+    /**
+     * {@code true} to generate the automata compiled from now on.
+     */
+    private static volatile boolean enabled = SystemProperties.getBoolean(ENABLED);
+
+    /**
+     * The rules, for display.
+     */
+    @NonNull
+    private final String rules;
+
+    /**
+     * The automaton.
+     */
+    @NonNull
+    private final Automaton automaton;
+
+    private GeneratedMatcher(@NonNull String rules, @NonNull Automaton automaton) {
+        this.rules = rules;
+        this.automaton = automaton;
+    }
+
+    /**
+     * Checks if generation is enabled.
+     *
+     * @return {@code true} if generation is enabled.
+     */
+    static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Enables or disables generation for the automata compiled from now on.
+     *
+     * @param enabled {@code true} to enable generation.
+     */
+    static void setEnabled(boolean enabled) {
+        GeneratedMatcher.enabled = enabled;
+    }
+
+    /**
+     * Compiles space-separated wildcard rules.
+     *
+     * @param rules the wildcard rules.
+     * @return the generated rules, or {@link WildcardRules} if they could not be generated.
+     */
+    @NonNull
+    static NameMatcher wildcard(@NonNull String rules) {
+        try {
+            Automaton automaton = Automaton.build(RegexNode.globs(rules));
+            if (automaton.isGenerated()) {
+                return new GeneratedMatcher(rules, automaton);
+            }
+        } catch (IllegalArgumentException e) {
+            // too complex for an automaton
+        }
+        return WildcardRules.compile(rules);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean matches(@NonNull String name) {
+        return automaton.match(name) >= 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return rules;
+    }
+}
@@ -0,0 +1,261 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017-2020, Sam Gleske - https://github.com/samrocketman
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.gleske.scmfilter.impl.trait;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * A single wildcard rule where {@code *} matches any run of characters and everything else is literal text.
+ * <p>
+ * The rule is split once into a literal prefix, a literal suffix and the literal segments between the wildcards.
+ * Matching checks the prefix and suffix in place and then places each middle segment at its leftmost possible
+ * position, which never needs to backtrack and does not allocate.
+ * <p>
+ * The results are identical to matching {@link WildcardRules#toRegex(String)} of the single rule, including the
+ * fact that a {@code *} (being translated to {@code .*}) does not match line terminators.
+ */
+final class GlobPattern {
+
+    /**
+     * The rule this pattern was compiled from.
+     */
+    @NonNull
+    private final String glob;
+
+    /**
+     * {@code true} if the rule contains at least one wildcard.
+     */
+    private final boolean wildcard;
+
+    /**
+     * The literal text before the first wildcard, or the whole rule if there is no wildcard.
+     */
+    @NonNull
+    private final String prefix;
+
+    /**
+     * The literal text after the last wildcard.
+     */
+    @NonNull
+    private final String suffix;
+
+    /**
+     * The non-empty literal segments between the first and last wildcard.
+     */
+    @NonNull
+    private final String[] segments;
+
+    /**
+     * The minimum length of a matching name.
+     */
+    private final int minLength;
+
+    /**
+     * The regular expression used for the rare rules whose literal text contains line terminators or surrogates,
+     * where leftmost placement would not reproduce the regular expression semantics.
+     */
+    @CheckForNull
+    private final BacktrackingRegex fallback;
+
+    private GlobPattern(@NonNull String glob) {
+        this.glob = glob;
+        int first = glob.indexOf('*');
+        this.wildcard = first >= 0;
+        if (wildcard) {
+            int last = glob.lastIndexOf('*');
+            this.prefix = glob.substring(0, first);
+            this.suffix = glob.substring(last + 1);
+            List<String> middle = new ArrayList<>();
+            int start = first + 1;
+            while (start <= last) {
+                int end = glob.indexOf('*', start);
+                if (end > start) {
+                    middle.add(glob.substring(start, end));
+                }
+                start = end + 1;
+            }
+            this.segments = middle.toArray(new String[0]);
+        } else {
+            this.prefix = glob;
+            this.suffix = "";
+            this.segments = new String[0];
+        }
+        int length = prefix.length() + suffix.length();
+        for (String segment : segments) {
+            length += segment.length();
+        }
+        this.minLength = length;
+        this.fallback = wildcard && !isPlain(glob) ? BacktrackingRegex.compile(WildcardRules.toRegex(glob)) : null;
+    }
+
+    /**
+     * Compiles a single wildcard rule.
+     *
+     * @param glob the rule, which must not contain spaces.
+     * @return the compiled rule.
+     */
+    @NonNull
+    static GlobPattern compile(@NonNull String glob) {
+        return new GlobPattern(glob);
+    }
+
+    /**
+     * Returns the rule this pattern was compiled from.
+     *
+     * @return the rule this pattern was compiled from.
+     */
+    @NonNull
+    String getGlob() {
+        return glob;
+    }
+
+    /**
+     * Checks if the rule contains at least one wildcard.
+     *
+     * @return {@code true} if the rule contains at least one wildcard.
+     */
+    boolean isWildcard() {
+        return wildcard;
+    }
+
+    /**
+     * Returns the literal prefix if this rule is a pure prefix rule such as {@code release*}.
+     *
+     * @return the literal prefix or {@code null} if this is not a pure prefix rule.
+     */
+    @CheckForNull
+    String getPrefixRule() {
+        return wildcard && fallback == null && segments.length == 0 && suffix.isEmpty() ? prefix : null;
+    }
+
+    /**
+     * Returns the literal suffix if this rule is a pure suffix rule such as {@code *-lts}.
+     *
+     * @return the literal suffix or {@code null} if this is not a pure suffix rule.
+     */
+    @CheckForNull
+    String getSuffixRule() {
+        return wildcard && fallback == null && segments.length == 0 && prefix.isEmpty() ? suffix : null;
+    }
+
+    /**
+     * Checks if the supplied name matches this rule.
+     *
+     * @param name the name to check.
+     * @return {@code true} if the name matches this rule.
+     */
+    boolean matches(@NonNull String name) {
+        return matches(name, wildcard && hasLineTerminator(name));
+    }
+
+    /**
+     * Checks if the supplied name matches this rule when the caller has already scanned the name for line
+     * terminators, so that a list of rules only needs to scan each name once.
+     *
+     * @param name the name to check.
+     * @param lineTerminator {@code true} if the name contains a line terminator.
+     * @return {@code true} if the name matches this rule.
+     */
+    boolean matches(@NonNull String name, boolean lineTerminator) {
+        if (!wildcard) {
+            return glob.equals(name);
+        }
+        if (fallback != null) {
+            return fallback.matches(name);
+        }
+        if (lineTerminator) {
+            // the literal text of this rule has no line terminators so a wildcard would have to match one
+            return false;
+        }
+        int length = name.length();
+        if (length < minLength || !name.startsWith(prefix) || !name.endsWith(suffix)) {
+            return false;
+        }
+        int position = prefix.length();
+        int end = length - suffix.length();
+        for (String segment : segments) {
+            int index = name.indexOf(segment, position);
+            if (index < 0 || index + segment.length() > end) {
+                return false;
+            }
+            position = index + segment.length();
+        }
+        return true;
+    }
+
+    /**
+     * Checks if a name contains any of the characters that {@code .} does not match in a {@link Pattern}.
+     *
+     * @param name the name to check.
+     * @return {@code true} if the name contains a line terminator.
+     */
+    static boolean hasLineTerminator(@NonNull CharSequence name) {
+        for (int i = 0, length = name.length(); i < length; i++) {
+            if (isLineTerminator(name.charAt(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks if a character is a line terminator as defined by {@link Pattern}.
+     *
+     * @param c the character.
+     * @return {@code true} if the character is a line terminator.
+     */
+    static boolean isLineTerminator(char c) {
+        return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+    }
+
+    /**
+     * Checks that the literal text of a rule can be matched character by character with the same results as the
+     * regular expression translation.
+     *
+     * @param glob the rule.
+     * @return {@code true} if the rule has no line terminators or surrogate characters.
+     */
+    private static boolean isPlain(@NonNull String glob) {
+        for (int i = 0; i < glob.length(); i++) {
+            char c = glob.charAt(i);
+            if (isLineTerminator(c) || Character.isSurrogate(c)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return glob;
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017-2020, Sam Gleske - https://github.com/samrocketman
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.gleske.scmfilter.impl.trait;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import jenkins.scm.api.SCMHead;
+import jenkins.scm.api.mixin.ChangeRequestSCMHead;
+import jenkins.scm.api.mixin.TagSCMHead;
+
+/**
+ * The categories of heads the filters tell apart.
+ */
+enum HeadCategory {
+    /**
+     * A branch, or any head that is neither a tag nor a change request.
+     */
+    BRANCH("branch"),
+    /**
+     * A {@link TagSCMHead}.
+     */
+    TAG("tag"),
+    /**
+     * A {@link ChangeRequestSCMHead}.
+     */
+    CHANGE_REQUEST("changeRequest");
+
+    /**
+     * The name used when reporting.
+     */
+    @NonNull
+    private final String key;
+
+    HeadCategory(@NonNull String key) {
+        this.key = key;
+    }
+
+    /**
+     * Gets the name used when reporting.
+     *
+     * @return the name used when reporting.
+     */
+    @NonNull
+    String getKey() {
+        return key;
+    }
+
+    /**
+     * Gets the category of a head.
+     *
+     * @param head the head.
+     * @return the category of the head.
+     */
+    @NonNull
+    static HeadCategory of(@NonNull SCMHead head) {
+        if (head instanceof ChangeRequestSCMHead) {
+            return CHANGE_REQUEST;
+        }
+        return head instanceof TagSCMHead ? TAG : BRANCH;
+    }
+}
@@ -0,0 +1,495 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017-2020, Sam Gleske - https://github.com/samrocketman
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.gleske.scmfilter.impl.trait;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.model.Item;
+import hudson.model.ItemGroup;
+import hudson.model.Items;
+import hudson.model.listeners.ItemListener;
+import java.lang.ref.Reference;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import jenkins.scm.api.SCMHead;
+import jenkins.scm.api.SCMNavigator;
+import jenkins.scm.api.SCMNavigatorOwner;
+import jenkins.scm.api.SCMSource;
+import jenkins.scm.api.SCMSourceOwner;
+import jenkins.scm.api.trait.SCMHeadPrefilter;
+import jenkins.scm.api.trait.SCMSourceTrait;
+import jenkins.scm.api.trait.SCMTrait;
+import jenkins.util.SystemProperties;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+/**
+ * Remembers the heads the filters of each source saw during the last scans, together with the traits they were
+ * decided with, so that the effect of a change of the filter rules can be computed without listing the heads on the
+ * remote again. Enable it with {@code -Dnet.gleske.scmfilter.impl.trait.HeadSnapshots.enabled=true}.
+ * <p>
+ * Only scans listing all the heads are recorded. A snapshot holds the heads of the last complete scan and of the scan
+ * in progress, so heads deleted on the remote are forgotten once a scan after the deletion has completed.
+ * <p>
+ * When a job or an organization folder is saved with different filter rules, {@link Listener} logs the heads whose
+ * decision changed. The delta is only reported: creating and orphaning the jobs belongs to the multibranch projects,
+ * which index their sources again after a save anyway.
+ */
+public final class HeadSnapshots {
+
+    private static final Logger LOGGER = Logger.getLogger(HeadSnapshots.class.getName());
+
+    /**
+     * Whether the snapshots are kept.
+     */
+    static final String ENABLED = HeadSnapshots.class.getName() + ".enabled";
+
+    /**
+     * The largest number of names listed in a log message.
+     */
+    private static final int MAX_LOGGED_NAMES = 20;
+
+    /**
+     * Whether the snapshots are kept, read at startup.
+     */
+    private static volatile boolean enabled = SystemProperties.getBoolean(ENABLED);
+
+    /**
+     * The snapshots per job full name and source id.
+     */
+    private static final ConcurrentMap<String, Snapshot> SNAPSHOTS = new ConcurrentHashMap<>();
+
+    private HeadSnapshots() {
+    }
+
+    /**
+     * Checks if the snapshots are kept.
+     *
+     * @return {@code true} if the snapshots are kept.
+     */
+    static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Sets whether the snapshots are kept.
+     *
+     * @param enabled {@code true} to keep the snapshots.
+     */
+    static void setEnabled(boolean enabled) {
+        HeadSnapshots.enabled = enabled;
+    }
+
+    /**
+     * Records a head seen by the filters of a source during a scan listing all the heads.
+     *
+     * @param source the source.
+     * @param scan the scan, any object identifying it such as the context of its request.
+     * @param head the head.
+     */
+    static void record(@NonNull SCMSource source, @NonNull Object scan, @NonNull SCMHead head) {
+        String key = key(source);
+        if (key != null) {
+            record(key, scan, source, head);
+        }
+    }
+
+    /**
+     * Records a head seen by the filters of a source during a scan listing all the heads.
+     *
+     * @param key the key of the source.
+     * @param scan the scan, any object identifying it such as the context of its request.
+     * @param source the source.
+     * @param head the head.
+     */
+    static void record(@NonNull String key, @NonNull Object scan, @NonNull SCMSource source,
+                       @NonNull SCMHead head) {
+        Snapshot snapshot = SNAPSHOTS.computeIfAbsent(key, k -> new Snapshot());
+        snapshot.record(scan, head);
+        snapshot.traits = source.getTraits();
+    }
+
+    /**
+     * Gets the heads last seen by the filters of a source.
+     *
+     * @param source the source.
+     * @return the heads, empty if there is no snapshot of the source.
+     */
+    @NonNull
+    static Collection<SCMHead> heads(@NonNull SCMSource source) {
+        String key = key(source);
+        Snapshot snapshot = key == null ? null : SNAPSHOTS.get(key);
+        return snapshot == null ? Collections.emptyList() : new ArrayList<>(snapshot.heads().values());
+    }
+
+    /**
+     * Forgets all snapshots.
+     */
+    static void reset() {
+        SNAPSHOTS.clear();
+    }
+
+    /**
+     * Computes how the heads of the snapshot of a source are decided by its current filter traits compared with the
+     * traits they were last decided with, and makes the current traits the reference for the next change.
+     *
+     * @param source the source, with its current traits.
+     * @return the delta, or {@code null} if there is no snapshot of the source or its traits did not change.
+     */
+    @CheckForNull
+    public static Delta update(@NonNull SCMSource source) {
+        String key = key(source);
+        return key == null ? null : update(key, source);
+    }
+
+    /**
+     * Computes the delta of a source, see {@link #update(SCMSource)}.
+     *
+     * @param key the key of the source.
+     * @param source the source, with its current traits.
+     * @return the delta, or {@code null} if there is no snapshot of the source or its traits did not change.
+     */
+    @CheckForNull
+    static Delta update(@NonNull String key, @NonNull SCMSource source) {
+        return update(key, source, source.getTraits());
+    }
+
+    /**
+     * Computes how the heads of the snapshot of a source are decided by some traits compared with the traits they were
+     * last decided with, and makes those traits the reference for the next change. The traits of the sources of an
+     * organization folder only change when the folder indexes them again, so the delta of a save of the folder is
+     * computed with the traits of its navigator instead.
+     *
+     * @param key the key of the source.
+     * @param source the source.
+     * @param after the traits the source is about to have.
+     * @return the delta, or {@code null} if there is no snapshot of the source or its traits did not change.
+     */
+    @CheckForNull
+    static Delta update(@NonNull String key, @NonNull SCMSource source, @NonNull List<SCMSourceTrait> after) {
+        Snapshot snapshot = SNAPSHOTS.get(key);
+        if (snapshot == null) {
+            return null;
+        }
+        List<SCMSourceTrait> before = snapshot.traits;
+        // saving a job binds new trait instances, which do not implement equals()
+        if (before.equals(after) || rules(before).equals(rules(after))) {
+            snapshot.traits = after;
+            return null;
+        }
+        snapshot.traits = after;
+        List<SCMHeadPrefilter> beforePrefilters = EventPrefilter.prefilters(before);
+        List<SCMHeadPrefilter> afterPrefilters = EventPrefilter.prefilters(after);
+        NavigableMap<String, SCMHead> included = new TreeMap<>();
+        NavigableMap<String, SCMHead> excluded = new TreeMap<>();
+        for (Map.Entry<String, SCMHead> entry : snapshot.heads().entrySet()) {
+            boolean wasExcluded = FilterPrefilter.isExcludedQuietly(source, entry.getValue(), beforePrefilters);
+            boolean isExcluded = FilterPrefilter.isExcludedQuietly(source, entry.getValue(), afterPrefilters);
+            if (wasExcluded && !isExcluded) {
+                included.put(entry.getKey(), entry.getValue());
+            } else if (!wasExcluded && isExcluded) {
+                excluded.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return new Delta(included, excluded);
+    }
+
+    /**
+     * Gets the configuration of the filter traits taking part in snapshot deltas, as they are saved.
+     *
+     * @param traits the traits.
+     * @return the configuration of each filter trait, in order.
+     */
+    @NonNull
+    static List<String> rules(@NonNull List<SCMSourceTrait> traits) {
+        List<String> rules = new ArrayList<>();
+        for (SCMSourceTrait trait : traits) {
+            if (trait instanceof StatelessFilter) {
+                rules.add(Items.XSTREAM2.toXML(trait));
+            }
+        }
+        return rules;
+    }
+
+    /**
+     * Forgets the snapshots of a job, and of the jobs inside it if it is a folder.
+     *
+     * @param job the full name of the job.
+     */
+    static void forgetJob(@NonNull String job) {
+        SNAPSHOTS.keySet().removeIf(key -> key.startsWith(job + "::") || key.startsWith(job + "/"));
+    }
+
+    /**
+     * Keeps the snapshots of a renamed or moved job under its new full name.
+     *
+     * @param oldJob the former full name of the job.
+     * @param newJob the new full name of the job.
+     */
+    static void moveJob(@NonNull String oldJob, @NonNull String newJob) {
+        String prefix = oldJob + "::";
+        for (String key : new ArrayList<>(SNAPSHOTS.keySet())) {
+            if (key.startsWith(prefix)) {
+                Snapshot snapshot = SNAPSHOTS.remove(key);
+                if (snapshot != null) {
+                    SNAPSHOTS.putIfAbsent(newJob + "::" + key.substring(prefix.length()), snapshot);
+                }
+            }
+        }
+    }
+
+    @CheckForNull
+    private static String key(@NonNull SCMSource source) {
+        SCMSourceOwner owner = source.getOwner();
+        return owner == null ? null : owner.getFullName() + "::" + source.getId();
+    }
+
+    /**
+     * The heads seen for a source.
+     */
+    private static final class Snapshot {
+
+        /**
+         * The scan in progress, held weakly so that the snapshot does not keep its request alive.
+         */
+        @NonNull
+        private Reference<Object> scan = new WeakReference<>(null);
+
+        /**
+         * The heads of the last complete scan by name.
+         */
+        @NonNull
+        private Map<String, SCMHead> previous = Collections.emptyMap();
+
+        /**
+         * The heads of the scan in progress by name.
+         */
+        @NonNull
+        private Map<String, SCMHead> current = new HashMap<>();
+
+        /**
+         * The traits the heads were last decided with.
+         */
+        private volatile List<SCMSourceTrait> traits = Collections.emptyList();
+
+        /**
+         * Records a head, replacing the heads of the last complete scan when a new scan starts.
+         *
+         * @param scan the scan.
+         * @param head the head.
+         */
+        synchronized void record(@NonNull Object scan, @NonNull SCMHead head) {
+            if (this.scan.get() != scan) {
+                if (!current.isEmpty()) {
+                    previous = current;
+                    current = new HashMap<>();
+                }
+                this.scan = new WeakReference<>(scan);
+            }
+            current.put(head.getName(), head);
+        }
+
+        /**
+         * Gets the heads of the last complete scan and of the scan in progress.
+         *
+         * @return the heads by name.
+         */
+        @NonNull
+        synchronized Map<String, SCMHead> heads() {
+            Map<String, SCMHead> heads = new HashMap<>(previous);
+            heads.putAll(current);
+            return heads;
+        }
+    }
+
+    /**
+     * How a change of the filter rules affects the known heads of a source.
+     */
+    public static final class Delta {
+
+        /**
+         * The heads the new rules include while the previous ones excluded them, by name.
+         */
+        @NonNull
+        private final NavigableMap<String, SCMHead> included;
+
+        /**
+         * The heads the new rules exclude while the previous ones included them, by name.
+         */
+        @NonNull
+        private final NavigableMap<String, SCMHead> excluded;
+
+        Delta(@NonNull NavigableMap<String, SCMHead> included, @NonNull NavigableMap<String, SCMHead> excluded) {
+            this.included = Collections.unmodifiableNavigableMap(included);
+            this.excluded = Collections.unmodifiableNavigableMap(excluded);
+        }
+
+        /**
+         * Gets the names of the heads the new rules include while the previous ones excluded them.
+         *
+         * @return the head names.
+         */
+        @NonNull
+        public SortedSet<String> getIncluded() {
+            return included.navigableKeySet();
+        }
+
+        /**
+         * Gets the names of the heads the new rules exclude while the previous ones included them, whose jobs can be
+         * orphaned without asking the remote.
+         *
+         * @return the head names.
+         */
+        @NonNull
+        public SortedSet<String> getExcluded() {
+            return excluded.navigableKeySet();
+        }
+
+        /**
+         * Checks if the change needs a scan of the remote, which is the case when new heads are included as their
+         * revisions are unknown, while the jobs of newly excluded heads can be orphaned without one.
+         *
+         * @return {@code true} if a scan is needed.
+         */
+        public boolean isScanNeeded() {
+            return !included.isEmpty();
+        }
+
+        /**
+         * Checks if the change does not affect any known head.
+         *
+         * @return {@code true} if no known head is affected.
+         */
+        public boolean isEmpty() {
+            return included.isEmpty() && excluded.isEmpty();
+        }
+    }
+
+    /**
+     * Logs the delta of the sources of a job or of the jobs of an organization folder when it is saved with different
+     * filter rules, and keeps the snapshots in line with the jobs.
+     */
+    @Extension
+    @Restricted(NoExternalUse.class)
+    public static class Listener extends ItemListener {
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void onUpdated(Item item) {
+            if (!enabled) {
+                return;
+            }
+            if (item instanceof SCMNavigatorOwner) {
+                List<SCMNavigator> navigators = ((SCMNavigatorOwner) item).getSCMNavigators();
+                if (navigators.size() != 1 || !(item instanceof ItemGroup)) {
+                    // the jobs do not tell which navigator their source comes from
+                    return;
+                }
+                List<SCMSourceTrait> traits = sourceTraits(navigators.get(0));
+                for (Item child : ((ItemGroup<?>) item).getItems()) {
+                    if (child instanceof SCMSourceOwner) {
+                        for (SCMSource source : ((SCMSourceOwner) child).getSCMSources()) {
+                            String key = key(source);
+                            if (key != null) {
+                                log(child, update(key, source, traits));
+                            }
+                        }
+                    }
+                }
+            } else if (item instanceof SCMSourceOwner) {
+                for (SCMSource source : ((SCMSourceOwner) item).getSCMSources()) {
+                    log(item, update(source));
+                }
+            }
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void onDeleted(Item item) {
+            forgetJob(item.getFullName());
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void onLocationChanged(Item item, String oldFullName, String newFullName) {
+            // also called for every job inside a moved folder
+            moveJob(oldFullName, newFullName);
+        }
+
+        @NonNull
+        private static List<SCMSourceTrait> sourceTraits(@NonNull SCMNavigator navigator) {
+            List<SCMSourceTrait> traits = new ArrayList<>();
+            for (SCMTrait<?> trait : navigator.getTraits()) {
+                if (trait instanceof SCMSourceTrait) {
+                    traits.add((SCMSourceTrait) trait);
+                }
+            }
+            return traits;
+        }
+
+        private static void log(@NonNull Item job, @CheckForNull Delta delta) {
+            if (delta == null) {
+                return;
+            }
+            if (delta.isEmpty()) {
+                LOGGER.log(Level.INFO, "The new filter rules of {0} do not change any known head", job.getFullName());
+            } else {
+                LOGGER.log(Level.INFO, "The new filter rules of {0} include {1} and exclude {2}, {3}",
+                        new Object[] {job.getFullName(), names(delta.getIncluded()), names(delta.getExcluded()),
+                                delta.isScanNeeded() ? "the next scan fetches the included heads"
+                                        : "their jobs can be orphaned without a scan"});
+            }
+        }
+
+        @NonNull
+        private static String names(@NonNull SortedSet<String> names) {
+            if (names.size() <= MAX_LOGGED_NAMES) {
+                return names.toString();
+            }
+            return names.size() + " heads including "
+                    + names.stream().limit(MAX_LOGGED_NAMES).collect(Collectors.toList());
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017-2020, Sam Gleske - https://github.com/samrocketman
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.gleske.scmfilter.impl.trait;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.function.BiConsumer;
+
+/**
+ * The latest values seen so far for each key, bounded to a number of values per key, so that the latest values among
+ * many can be picked in a single pass. Values are offered one at a time and the oldest of a key is dropped once there
+ * are too many.
+ *
+ * @param <K> the type of keys.
+ * @param <V> the type of values.
+ */
+final class LatestPerKey<K, V> {
+
+    /**
+     * The number of values to keep per key.
+     */
+    private final int count;
+
+    /**
+     * The order of the values, latest last.
+     */
+    @NonNull
+    private final Comparator<? super V> order;
+
+    /**
+     * The latest values of each key.
+     */
+    private final Map<K, TreeSet<V>> latest = new HashMap<>();
+
+    /**
+     * Constructor.
+     *
+     * @param count the number of values to keep per key.
+     * @param order the order of the values, latest last.
+     */
+    LatestPerKey(int count, @NonNull Comparator<? super V> order) {
+        this.count = count;
+        this.order = order;
+    }
+
+    /**
+     * Adds a value, dropping the oldest of its key if there are too many.
+     *
+     * @param key the key.
+     * @param value the value.
+     * @return {@code true} if the value is one of the latest of its key so far.
+     */
+    synchronized boolean offer(@NonNull K key, @NonNull V value) {
+        TreeSet<V> values = latest.computeIfAbsent(key, k -> new TreeSet<>(order));
+        values.add(value);
+        if (values.size() > count) {
+            values.pollFirst();
+        }
+        return values.contains(value);
+    }
+
+    /**
+     * Checks if a value would be one of the latest of its key, without adding it.
+     *
+     * @param key the key.
+     * @param value the value.
+     * @return {@code true} if the value would be one of the latest of its key so far.
+     */
+    synchronized boolean isLatest(@NonNull K key, @NonNull V value) {
+        TreeSet<V> values = latest.get(key);
+        return values == null || values.size() < count || order.compare(value, values.first()) >= 0;
+    }
+
+    /**
+     * Passes the latest values of each key to an action, for example to offer them to another instance.
+     *
+     * @param action the action.
+     */
+    synchronized void forEach(@NonNull BiConsumer<? super K, ? super V> action) {
+        for (Map.Entry<K, TreeSet<V>> entry : latest.entrySet()) {
+            for (V value : entry.getValue()) {
+                action.accept(entry.getKey(), value);
+            }
+        }
+    }
+}
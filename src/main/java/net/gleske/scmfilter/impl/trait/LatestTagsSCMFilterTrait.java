@@ -0,0 +1,287 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017-2020, Sam Gleske - https://github.com/samrocketman
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.gleske.scmfilter.impl.trait;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.model.Item;
+import hudson.util.FormValidation;
+import java.io.IOException;
+import java.util.Comparator;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import jenkins.scm.api.SCMHead;
+import jenkins.scm.api.SCMSource;
+import jenkins.scm.api.mixin.TagSCMHead;
+import jenkins.scm.api.trait.SCMHeadPrefilter;
+import jenkins.scm.api.trait.SCMSourceContext;
+import jenkins.scm.api.trait.SCMSourceTrait;
+import jenkins.scm.api.trait.SCMSourceTraitDescriptor;
+import jenkins.scm.impl.trait.Selection;
+import org.jenkinsci.Symbol;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+import org.kohsuke.stapler.AncestorInPath;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+import org.kohsuke.stapler.QueryParameter;
+import org.kohsuke.stapler.StaplerRequest2;
+import org.kohsuke.stapler.StaplerResponse2;
+import org.kohsuke.stapler.interceptor.RequirePOST;
+
+/**
+ * Decorates a {@link SCMSource} with a {@link SCMHeadPrefilter} that only includes the tags with the latest
+ * {@link TagVersion semantic versions}, optionally per major version, and excludes the other tags. Branches and change
+ * requests are left to the other filters.
+ * <p>
+ * Each scan starts from the tags the previous scan of the source kept, see {@link StatefulPrefilter}. The first scan
+ * of a source after a restart has nothing to start from and keeps every tag that is the latest seen so far, unless
+ * the heads are known up front through {@link BatchPrefilter}. A deleted tag still counts until the scan after its
+ * deletion. Tags with equal versions, such as {@code v1.0} and {@code 1.0}, are ordered by name.
+ */
+public class LatestTagsSCMFilterTrait extends SCMSourceTrait {
+
+    /**
+     * The most tag names whose version is remembered, past which they are forgotten and parsed again.
+     */
+    private static final int MAX_PARSED = 100_000;
+
+    /**
+     * The latest tags the last scan of each source listed.
+     */
+    private static final SourceStates<LatestPerKey<Long, Tag>> KEPT = new SourceStates<>();
+
+    /**
+     * The number of tags to keep.
+     */
+    private final int count;
+
+    /**
+     * {@code true} to keep {@link #count} tags per major version.
+     */
+    private boolean perMajor;
+
+    /**
+     * The version of the tag names seen so far, empty if the name is not a version.
+     */
+    @CheckForNull
+    private transient volatile ConcurrentMap<String, Optional<TagVersion>> versions;
+
+    /**
+     * Stapler constructor.
+     *
+     * @param count the number of tags to keep.
+     * @throws IllegalArgumentException if the number is not positive.
+     */
+    @DataBoundConstructor
+    public LatestTagsSCMFilterTrait(int count) {
+        if (count < 1) {
+            throw new IllegalArgumentException("The number of tags to keep must be positive: " + count);
+        }
+        this.count = count;
+        readResolve();
+    }
+
+    /**
+     * Gets the number of tags to keep.
+     *
+     * @return the number of tags to keep.
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Checks if the number of tags is kept per major version.
+     *
+     * @return {@code true} if the number of tags is kept per major version.
+     */
+    public boolean isPerMajor() {
+        return perMajor;
+    }
+
+    /**
+     * Sets whether the number of tags is kept per major version, for instance the latest 3 tags of each of the
+     * {@code 1.x} and {@code 2.x} lines rather than the latest 3 tags overall.
+     *
+     * @param perMajor {@code true} to keep the number of tags per major version.
+     */
+    @DataBoundSetter
+    public void setPerMajor(boolean perMajor) {
+        this.perMajor = perMajor;
+    }
+
+    /**
+     * Creates the versions seen so far, which are not persisted.
+     *
+     * @return this instance.
+     */
+    protected Object readResolve() {
+        versions = new ConcurrentHashMap<>();
+        return this;
+    }
+
+    /**
+     * Gets the version of a tag name, parsing it only the first time.
+     *
+     * @param name the tag name.
+     * @return the version, or {@code null} if the name is not a version.
+     */
+    @CheckForNull
+    TagVersion version(@NonNull String name) {
+        ConcurrentMap<String, Optional<TagVersion>> versions = this.versions;
+        Optional<TagVersion> version = versions.get(name);
+        if (version == null) {
+            if (versions.size() >= MAX_PARSED) {
+                versions.clear();
+            }
+            version = Optional.ofNullable(TagVersion.parse(name));
+            versions.put(name, version);
+        }
+        return version.orElse(null);
+    }
+
+    /**
+     * Gets the tag a name stands for.
+     *
+     * @param name the tag name.
+     * @return the tag, or {@code null} if the name is not a version.
+     */
+    @CheckForNull
+    private Tag tag(@NonNull String name) {
+        TagVersion version = version(name);
+        return version == null ? null : new Tag(version, name);
+    }
+
+    /**
+     * Gets the line of a tag.
+     *
+     * @param tag the tag.
+     * @return the major version if the tags are kept per major version, else the same line for all tags.
+     */
+    private long key(@NonNull Tag tag) {
+        return perMajor ? tag.version.getMajor() : 0L;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void decorateContext(SCMSourceContext<?, ?> context) {
+        context.withPrefilter(new StatefulPrefilter<Long, Tag>(this, context, KEPT, count, Tag.ORDER) {
+            @Override
+            protected boolean decide(@NonNull SCMSource source, @NonNull SCMHead head) {
+                if (!(head instanceof TagSCMHead)) {
+                    return false;
+                }
+                Tag tag = tag(head.getName());
+                return tag == null || !isLatest(source, key(tag), tag);
+            }
+
+            @Override
+            protected void offer(@NonNull SCMHead head, @NonNull LatestPerKey<Long, Tag> latest) {
+                if (head instanceof TagSCMHead) {
+                    Tag tag = tag(head.getName());
+                    if (tag != null) {
+                        latest.offer(key(tag), tag);
+                    }
+                }
+            }
+
+            @NonNull
+            @Override
+            protected Long keyOf(@NonNull Long key, @NonNull Tag tag) {
+                // the tags of the last scan may be from before perMajor changed
+                return key(tag);
+            }
+        });
+    }
+
+    /**
+     * A tag with a version.
+     */
+    private static final class Tag {
+
+        /**
+         * Orders tags by version, then by name so that tags with equal versions are kept or dropped one by one.
+         */
+        private static final Comparator<Tag> ORDER = Comparator.<Tag, TagVersion>comparing(tag -> tag.version)
+                .thenComparing(tag -> tag.name);
+
+        private final TagVersion version;
+        private final String name;
+
+        private Tag(TagVersion version, String name) {
+            this.version = version;
+            this.name = name;
+        }
+    }
+
+    /**
+     * Our descriptor.
+     */
+    @Symbol("latestTagsFilter")
+    @Extension
+    @Selection
+    public static class DescriptorImpl extends SCMSourceTraitDescriptor {
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String getDisplayName() {
+            return Messages.LatestTagsSCMFilterTrait_DisplayName();
+        }
+
+        /**
+         * Form validation for the number of tags to keep.
+         *
+         * @param value the number of tags to keep.
+         * @return the validation results.
+         */
+        @Restricted(NoExternalUse.class) // stapler
+        public FormValidation doCheckCount(@QueryParameter String value) {
+            return FormChecks.positive(value, "tags to keep");
+        }
+
+        /**
+         * Previews the decisions of the configuration being edited on candidate names or on the heads a source
+         * last saw, without saving it.
+         *
+         * @param item the job the configuration belongs to, if any.
+         * @param req the request, see {@link FilterPreview}.
+         * @param rsp the response.
+         * @throws IOException if the request could not be read or the response could not be written.
+         */
+        @RequirePOST
+        @Restricted(NoExternalUse.class) // stapler
+        public void doPreview(@AncestorInPath Item item, StaplerRequest2 req, StaplerResponse2 rsp)
+                throws IOException {
+            FilterPreview.serve(LatestTagsSCMFilterTrait.class, item, req, rsp);
+        }
+    }
+}
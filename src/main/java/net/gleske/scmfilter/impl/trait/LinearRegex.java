@@ -0,0 +1,81 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017-2020, Sam Gleske - https://github.com/samrocketman
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.gleske.scmfilter.impl.trait;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+/**
+ * A regular expression matched by an {@link Automaton} in time linear in the length of the name, whatever the
+ * expression is. Only the subset of the syntax described in {@link RegexParser} is supported, in exchange a
+ * malicious or careless expression cannot stall a scan.
+ */
+final class LinearRegex implements NameMatcher {
+
+    /**
+     * The regular expression.
+     */
+    @NonNull
+    private final String regex;
+
+    /**
+     * The automaton.
+     */
+    @NonNull
+    private final Automaton automaton;
+
+    private LinearRegex(@NonNull String regex, @NonNull Automaton automaton) {
+        this.regex = regex;
+        this.automaton = automaton;
+    }
+
+    /**
+     * Compiles a regular expression.
+     *
+     * @param regex the regular expression.
+     * @return the compiled regular expression.
+     * @throws java.util.regex.PatternSyntaxException if the regular expression is invalid.
+     * @throws IllegalArgumentException if the regular expression is not supported by the linear-time engine.
+     */
+    @NonNull
+    static LinearRegex compile(@NonNull String regex) {
+        return new LinearRegex(regex, Automaton.build(RegexParser.parse(regex)));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean matches(@NonNull String name) {
+        return automaton.match(name) >= 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return regex;
+    }
+}
@@ -0,0 +1,222 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017-2020, Sam Gleske - https://github.com/samrocketman
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.gleske.scmfilter.impl.trait;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jenkins.scm.api.SCMSource;
+import jenkins.scm.api.SCMSourceOwner;
+import jenkins.util.SystemProperties;
+
+/**
+ * Bounds the time the default regular expression engine may spend matching a single head name.
+ * <p>
+ * Names of heads, and of forks in particular, are chosen by whoever can push to the repository, so a name crafted
+ * against a backtracking regular expression could otherwise keep a scan busy for minutes. Once the budget is spent,
+ * matching gives up and the name is considered not to match, which excludes the head. The budget defaults to one
+ * second per name and can be changed with {@code -Dnet.gleske.scmfilter.impl.trait.MatchBudget.millis=...}, a value
+ * of {@code 0} disables it.
+ */
+final class MatchBudget {
+
+    private static final Logger LOGGER = Logger.getLogger(MatchBudget.class.getName());
+
+    /**
+     * The system property holding the budget in milliseconds.
+     */
+    static final String MILLIS = MatchBudget.class.getName() + ".millis";
+
+    /**
+     * The default budget in milliseconds.
+     */
+    static final long DEFAULT_MILLIS = 1000L;
+
+    /**
+     * The number of characters read between two checks of the clock.
+     */
+    private static final int CHECK_INTERVAL = 1024;
+
+    /**
+     * Thrown when the budget is spent. Pre-allocated without a stack trace since it is only used for control flow.
+     */
+    private static final Exceeded EXCEEDED = new Exceeded();
+
+    /**
+     * The name being matched by each thread, reused so that matching does not allocate.
+     */
+    private static final ThreadLocal<Deadline> DEADLINE = ThreadLocal.withInitial(Deadline::new);
+
+    private MatchBudget() {
+    }
+
+    /**
+     * Gets the configured budget.
+     *
+     * @return the budget in nanoseconds, {@code 0} if disabled.
+     */
+    static long nanos() {
+        long millis = SystemProperties.getLong(MILLIS, DEFAULT_MILLIS);
+        return millis <= 0 ? 0 : TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    /**
+     * Checks if the rules match the whole name within the budget. Only the default regular expression engine can take
+     * more than linear time, other rules are matched without any budget.
+     *
+     * @param matcher the rules.
+     * @param name the name.
+     * @param budget the budget in nanoseconds as returned by {@link #nanos()}.
+     * @param source the source the head belongs to, for logging.
+     * @return {@code true} if the rules match the whole name, {@code false} if they do not or the budget was spent.
+     */
+    static boolean matches(@NonNull NameMatcher matcher, @NonNull String name, long budget,
+                           @NonNull SCMSource source) {
+        if (budget <= 0 || !(matcher instanceof BacktrackingRegex)) {
+            return matcher.matches(name);
+        }
+        Deadline deadline = DEADLINE.get().start(name, budget);
+        try {
+            return ((BacktrackingRegex) matcher).matches(deadline);
+        } catch (Exceeded e) {
+            deadline.spent = true;
+            SCMSourceOwner owner = source.getOwner();
+            LOGGER.log(Level.WARNING, "Gave up matching {0} against {1} after {2} ms in {3}, excluding it",
+                    new Object[] {name, matcher, TimeUnit.NANOSECONDS.toMillis(budget),
+                            owner == null ? source.getId() : owner.getFullName()});
+            return false;
+        } finally {
+            deadline.start("", 0L);
+        }
+    }
+
+    /**
+     * Checks if the budget was spent by the current thread since the last check, in which case the decision depends
+     * on how busy the controller was and must not be cached.
+     *
+     * @return {@code true} if a match gave up since the last call.
+     */
+    static boolean spent() {
+        Deadline deadline = DEADLINE.get();
+        boolean spent = deadline.spent;
+        deadline.spent = false;
+        return spent;
+    }
+
+    /**
+     * Signals that the budget is spent.
+     */
+    private static final class Exceeded extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        private Exceeded() {
+            super("match budget exceeded", null, false, false);
+        }
+    }
+
+    /**
+     * A name that checks the clock every {@link #CHECK_INTERVAL} characters read and throws once the deadline has
+     * passed. The regular expression engine reads the name for every step of backtracking, so this bounds the time it
+     * spends without needing another thread. Instances are confined to a thread and reused for every name.
+     */
+    static final class Deadline implements CharSequence {
+
+        /**
+         * The name.
+         */
+        @NonNull
+        private String text = "";
+
+        /**
+         * The value of {@link System#nanoTime()} after which reading fails.
+         */
+        private long deadline;
+
+        /**
+         * The number of characters that can still be read before the clock is checked.
+         */
+        private int countdown = CHECK_INTERVAL;
+
+        /**
+         * {@code true} if a match gave up since {@link MatchBudget#spent()} was last called.
+         */
+        private boolean spent;
+
+        /**
+         * Starts matching a name.
+         *
+         * @param text the name.
+         * @param budget the budget in nanoseconds.
+         * @return this instance.
+         */
+        @NonNull
+        Deadline start(@NonNull String text, long budget) {
+            this.text = text;
+            this.deadline = System.nanoTime() + budget;
+            this.countdown = CHECK_INTERVAL;
+            return this;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int length() {
+            return text.length();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public char charAt(int index) {
+            if (--countdown == 0) {
+                countdown = CHECK_INTERVAL;
+                if (System.nanoTime() - deadline > 0) {
+                    throw EXCEEDED;
+                }
+            }
+            return text.charAt(index);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return text.subSequence(start, end);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String toString() {
+            return text;
+        }
+    }
+}
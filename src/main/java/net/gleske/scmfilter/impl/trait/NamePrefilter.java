@@ -0,0 +1,163 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017-2020, Sam Gleske - https://github.com/samrocketman
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.gleske.scmfilter.impl.trait;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import java.util.Set;
+import jenkins.scm.api.SCMHead;
+import jenkins.scm.api.SCMSource;
+import jenkins.scm.api.mixin.ChangeRequestSCMHead2;
+import jenkins.scm.api.mixin.ChangeRequestSCMHead;
+import jenkins.scm.api.mixin.TagSCMHead;
+import jenkins.scm.api.trait.SCMSourceContext;
+import jenkins.scm.api.trait.SCMSourceTrait;
+
+/**
+ * The base class of the prefilters of the name filter traits, which decide on a head by its name alone. It picks the
+ * rules and the name a head is matched with, looks the decision up in the optional {@link DecisionCache} of the
+ * trait, and tells {@link DiscoveryHints} the literal prefixes of the names the rules can include.
+ */
+abstract class NamePrefilter extends FilterPrefilter {
+
+    /**
+     * Which name of a change request is matched.
+     */
+    enum Subject {
+        /**
+         * The target of a change request is matched, with the tag rules if it is a tag.
+         */
+        TARGET,
+        /**
+         * The origin name of a change request is matched with the branch rules.
+         */
+        ORIGIN
+    }
+
+    /**
+     * Which name of a change request is matched.
+     */
+    @NonNull
+    private final Subject subject;
+
+    /**
+     * The decisions of the trait, if caching is enabled.
+     */
+    @CheckForNull
+    private final DecisionCache cache;
+
+    /**
+     * Constructor.
+     *
+     * @param trait the trait that creates this prefilter.
+     * @param context the context the trait decorates with this prefilter.
+     * @param subject which name of a change request is matched.
+     * @param cache the decisions of the trait, if caching is enabled.
+     */
+    NamePrefilter(@NonNull SCMSourceTrait trait, @NonNull SCMSourceContext<?, ?> context, @NonNull Subject subject,
+                  @CheckForNull DecisionCache cache) {
+        super(trait, context);
+        this.subject = subject;
+        this.cache = cache;
+    }
+
+    /**
+     * Decides if a head should be excluded by picking the rules and the name it is matched with.
+     *
+     * @param source the source the head belongs to.
+     * @param head the head.
+     * @return {@code true} if the head should be excluded.
+     */
+    @Override
+    protected boolean evaluate(@NonNull SCMSource source, @NonNull SCMHead head) {
+        HeadCategory rules;
+        String name;
+        if (subject == Subject.ORIGIN && head instanceof ChangeRequestSCMHead2) {
+            rules = HeadCategory.BRANCH;
+            name = ((ChangeRequestSCMHead2) head).getOriginName();
+        } else {
+            SCMHead matched = subject == Subject.TARGET && head instanceof ChangeRequestSCMHead
+                    ? ((ChangeRequestSCMHead) head).getTarget() : head;
+            rules = matched instanceof TagSCMHead ? HeadCategory.TAG : HeadCategory.BRANCH;
+            name = matched.getName();
+        }
+        Boolean cached = cache == null ? null : cache.get(rules, name);
+        boolean excluded;
+        if (cached != null) {
+            excluded = cached;
+        } else {
+            excluded = decide(source, rules, name);
+            if (cache != null && !MatchBudget.spent()) {
+                cache.put(rules, name, excluded);
+            }
+        }
+        if (cache != null) {
+            recordCache(source, cached != null);
+        }
+        return excluded;
+    }
+
+    /**
+     * Decides if a name should be excluded.
+     *
+     * @param source the source the head belongs to.
+     * @param rules the rules to use, either {@link HeadCategory#BRANCH} or {@link HeadCategory#TAG}.
+     * @param name the name to match.
+     * @return {@code true} if the head should be excluded.
+     */
+    protected abstract boolean decide(@NonNull SCMSource source, @NonNull HeadCategory rules, @NonNull String name);
+
+    /**
+     * {@inheritDoc}
+     */
+    @CheckForNull
+    @Override
+    protected Set<String> hint(@NonNull DiscoveryHints.Names names) {
+        switch (names) {
+            case BRANCH:
+                return prefixes(HeadCategory.BRANCH);
+            case TAG:
+                return prefixes(HeadCategory.TAG);
+            case CHANGE_REQUEST_TARGET:
+                return subject == Subject.TARGET
+                        ? DiscoveryHints.union(prefixes(HeadCategory.BRANCH), prefixes(HeadCategory.TAG)) : null;
+            case CHANGE_REQUEST_ORIGIN:
+                return subject == Subject.ORIGIN ? prefixes(HeadCategory.BRANCH) : null;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Gets the literal prefixes of the names the rules can include.
+     *
+     * @param rules the rules, either {@link HeadCategory#BRANCH} or {@link HeadCategory#TAG}.
+     * @return the prefixes, or {@code null} if any name can be included or the rules cannot be analyzed.
+     */
+    @CheckForNull
+    protected Set<String> prefixes(@NonNull HeadCategory rules) {
+        return null;
+    }
+}
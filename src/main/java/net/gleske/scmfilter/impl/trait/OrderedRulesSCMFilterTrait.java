@@ -0,0 +1,247 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017-2020, Sam Gleske - https://github.com/samrocketman
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.gleske.scmfilter.impl.trait;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.model.Item;
+import hudson.util.FormValidation;
+import java.io.IOException;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jenkins.scm.api.SCMHead;
+import jenkins.scm.api.SCMSource;
+import jenkins.scm.api.trait.SCMHeadPrefilter;
+import jenkins.scm.api.trait.SCMSourceContext;
+import jenkins.scm.api.trait.SCMSourceTrait;
+import jenkins.scm.api.trait.SCMSourceTraitDescriptor;
+import jenkins.scm.impl.trait.Selection;
+import org.apache.commons.lang3.StringUtils;
+import org.jenkinsci.Symbol;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+import org.kohsuke.stapler.AncestorInPath;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.QueryParameter;
+import org.kohsuke.stapler.StaplerRequest2;
+import org.kohsuke.stapler.StaplerResponse2;
+import org.kohsuke.stapler.interceptor.RequirePOST;
+
+/**
+ * Decorates a {@link SCMSource} with a {@link SCMHeadPrefilter} that filters {@link SCMHead} instances with ordered
+ * {@code +pattern} and {@code -pattern} rules, where the first rule matching a name decides, like in a
+ * {@code .gitignore} file. Change requests are matched on their target. All the rules are compiled into a single
+ * {@link DecisionAutomaton}, so long rule lists cost no more per head than short ones.
+ */
+public class OrderedRulesSCMFilterTrait extends SCMSourceTrait implements PrecompiledFilter {
+
+    private static final Logger LOGGER = Logger.getLogger(OrderedRulesSCMFilterTrait.class.getName());
+
+    /**
+     * The ordered branch rules.
+     */
+    @NonNull
+    private final String rules;
+
+    /**
+     * The ordered tag rules.
+     */
+    @NonNull
+    private final String tagRules;
+
+    /**
+     * The compiled branch rules.
+     */
+    @CheckForNull
+    private transient volatile DecisionAutomaton compiledRules;
+
+    /**
+     * The compiled tag rules.
+     */
+    @CheckForNull
+    private transient volatile DecisionAutomaton compiledTagRules;
+
+    /**
+     * The decisions of this trait if caching is enabled, dropped whenever the rules are compiled.
+     */
+    @CheckForNull
+    private transient volatile DecisionCache cache;
+
+    /**
+     * Stapler constructor.
+     *
+     * @param rules the ordered branch rules.
+     * @param tagRules the ordered tag rules.
+     * @throws IllegalArgumentException if a rule is invalid.
+     */
+    @DataBoundConstructor
+    public OrderedRulesSCMFilterTrait(@CheckForNull String rules, @CheckForNull String tagRules) {
+        this.rules = StringUtils.defaultString(rules);
+        this.tagRules = StringUtils.defaultString(tagRules);
+        compileRules();
+    }
+
+    /**
+     * Returns the ordered branch rules.
+     *
+     * @return the ordered branch rules.
+     */
+    @NonNull
+    public String getRules() {
+        return rules;
+    }
+
+    /**
+     * Returns the ordered tag rules.
+     *
+     * @return the ordered tag rules.
+     */
+    @NonNull
+    public String getTagRules() {
+        return tagRules;
+    }
+
+    /**
+     * Compiles the persisted rules as soon as the trait is loaded so that an invalid rule is reported right away.
+     *
+     * @return this instance.
+     */
+    protected Object readResolve() {
+        try {
+            compileRules();
+        } catch (IllegalArgumentException e) {
+            LOGGER.log(Level.WARNING, "Invalid rules in " + getClass().getSimpleName()
+                    + ", scans using them will fail until they are corrected: " + e.getMessage());
+        }
+        return this;
+    }
+
+    /**
+     * Compiles the rules. Identical rules are shared with all other traits through {@link CompiledPatterns}.
+     *
+     * @throws IllegalArgumentException if a rule is invalid.
+     */
+    private void compileRules() {
+        compiledTagRules = CompiledPatterns.ordered(StringUtils.defaultString(tagRules));
+        compiledRules = CompiledPatterns.ordered(StringUtils.defaultString(rules));
+        cache = DecisionCache.create();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @Restricted(NoExternalUse.class)
+    public void precompile() {
+        if (compiledRules == null || compiledTagRules == null) {
+            compileRules();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void decorateContext(SCMSourceContext<?, ?> context) {
+        // fail before anything is fetched rather than on the first head
+        precompile();
+        final DecisionAutomaton branchRules = compiledRules;
+        final DecisionAutomaton tagRules = compiledTagRules;
+        context.withPrefilter(new NamePrefilter(this, context, NamePrefilter.Subject.TARGET, cache) {
+            @Override
+            protected boolean decide(@NonNull SCMSource source, @NonNull HeadCategory rules, @NonNull String name) {
+                return (rules == HeadCategory.TAG ? tagRules : branchRules).isExcluded(name);
+            }
+
+            @Override
+            protected Set<String> prefixes(@NonNull HeadCategory rules) {
+                return DiscoveryHints.ofOrderedRules(rules == HeadCategory.TAG
+                        ? OrderedRulesSCMFilterTrait.this.tagRules : OrderedRulesSCMFilterTrait.this.rules);
+            }
+        });
+    }
+
+    /**
+     * Our descriptor.
+     */
+    @Symbol("orderedRulesFilter")
+    @Extension
+    @Selection
+    public static class DescriptorImpl extends SCMSourceTraitDescriptor {
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String getDisplayName() {
+            return Messages.OrderedRulesSCMFilterTrait_DisplayName();
+        }
+
+        /**
+         * Form validation for the ordered branch rules.
+         *
+         * @param value the ordered branch rules.
+         * @return the validation results.
+         */
+        @Restricted(NoExternalUse.class) // stapler
+        public FormValidation doCheckRules(@QueryParameter String value) {
+            try {
+                DecisionAutomaton.compileOrdered(StringUtils.defaultString(value));
+                return FormValidation.ok();
+            } catch (IllegalArgumentException e) {
+                return FormValidation.error(e.getMessage());
+            }
+        }
+
+        /**
+         * Form validation for the ordered tag rules.
+         *
+         * @param value the ordered tag rules.
+         * @return the validation results.
+         */
+        @Restricted(NoExternalUse.class) // stapler
+        public FormValidation doCheckTagRules(@QueryParameter String value) {
+            return doCheckRules(value);
+        }
+
+        /**
+         * Previews the decisions of the configuration being edited on candidate names or on the heads a source
+         * last saw, without saving it.
+         *
+         * @param item the job the configuration belongs to, if any.
+         * @param req the request, see {@link FilterPreview}.
+         * @param rsp the response.
+         * @throws IOException if the request could not be read or the response could not be written.
+         */
+        @RequirePOST
+        @Restricted(NoExternalUse.class) // stapler
+        public void doPreview(@AncestorInPath Item item, StaplerRequest2 req, StaplerResponse2 rsp)
+                throws IOException {
+            FilterPreview.serve(OrderedRulesSCMFilterTrait.class, item, req, rsp);
+        }
+    }
+}
@@ -0,0 +1,297 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017-2020, Sam Gleske - https://github.com/samrocketman
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.gleske.scmfilter.impl.trait;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A node of the syntax tree of a regular language as understood by {@link Automaton}. Regular expressions are parsed
+ * into this tree by {@link RegexParser} and wildcard rules are translated into it by {@link #glob(String)}.
+ */
+abstract class RegexNode {
+
+    /**
+     * The largest code point.
+     */
+    static final int MAX_CODE_POINT = Character.MAX_CODE_POINT;
+
+    /**
+     * The characters that {@code .} does not match, as sorted inclusive ranges.
+     */
+    private static final int[] LINE_TERMINATORS = {'\n', '\n', '\r', '\r', 0x85, 0x85, 0x2028, 0x2029};
+
+    private RegexNode() {
+    }
+
+    /**
+     * Returns a node matching the empty string only.
+     *
+     * @return a node matching the empty string only.
+     */
+    @NonNull
+    static RegexNode empty() {
+        return new Concat(Collections.emptyList());
+    }
+
+    /**
+     * Returns a node matching nothing at all.
+     *
+     * @return a node matching nothing at all.
+     */
+    @NonNull
+    static RegexNode nothing() {
+        return new Chars(new int[0]);
+    }
+
+    /**
+     * Returns a node matching any single character except line terminators, like {@code .} does.
+     *
+     * @return a node matching any single character except line terminators.
+     */
+    @NonNull
+    static RegexNode dot() {
+        return new Chars(Chars.complement(LINE_TERMINATORS));
+    }
+
+    /**
+     * Returns a node matching any string made of characters other than the given one.
+     *
+     * @param excluded the code point the strings never contain.
+     * @return a node matching any string without the code point.
+     */
+    @NonNull
+    static RegexNode anyWithout(int excluded) {
+        return new Repeat(new Chars(Chars.complement(new int[] {excluded, excluded})), 0, -1);
+    }
+
+    /**
+     * Restricts a node to the strings it matches that do not contain a code point.
+     *
+     * @param node the node.
+     * @param excluded the code point.
+     * @return a node matching the strings of {@code node} without the code point.
+     */
+    @NonNull
+    static RegexNode without(@NonNull RegexNode node, int excluded) {
+        if (node instanceof Chars) {
+            int[] ranges = ((Chars) node).ranges;
+            int[] others = Chars.complement(new int[] {excluded, excluded});
+            // intersect the ranges with the two ranges around the code point
+            List<Integer> result = new ArrayList<>();
+            for (int i = 0; i < ranges.length; i += 2) {
+                for (int j = 0; j < others.length; j += 2) {
+                    int from = Math.max(ranges[i], others[j]);
+                    int to = Math.min(ranges[i + 1], others[j + 1]);
+                    if (from <= to) {
+                        result.add(from);
+                        result.add(to);
+                    }
+                }
+            }
+            return new Chars(result.stream().mapToInt(Integer::intValue).toArray());
+        }
+        if (node instanceof Repeat) {
+            Repeat repeat = (Repeat) node;
+            return new Repeat(without(repeat.item, excluded), repeat.min, repeat.max);
+        }
+        List<RegexNode> items = new ArrayList<>();
+        for (RegexNode item : node instanceof Concat ? ((Concat) node).items : ((Alternation) node).items) {
+            items.add(without(item, excluded));
+        }
+        return node instanceof Concat ? new Concat(items) : new Alternation(items);
+    }
+
+    /**
+     * Returns a node matching a literal string.
+     *
+     * @param literal the literal string.
+     * @return a node matching the literal string.
+     */
+    @NonNull
+    static RegexNode literal(@NonNull String literal) {
+        List<RegexNode> items = new ArrayList<>();
+        literal.codePoints().forEach(c -> items.add(Chars.of(c, c)));
+        return items.size() == 1 ? items.get(0) : new Concat(items);
+    }
+
+    /**
+     * Translates a single wildcard rule into a node with the same semantics as {@link GlobPattern}.
+     *
+     * @param glob the wildcard rule.
+     * @return the node.
+     */
+    @NonNull
+    static RegexNode glob(@NonNull String glob) {
+        List<RegexNode> items = new ArrayList<>();
+        int start = 0;
+        for (int star = glob.indexOf('*'); star >= 0; star = glob.indexOf('*', start)) {
+            if (star > start) {
+                items.add(literal(glob.substring(start, star)));
+            }
+            items.add(new Repeat(dot(), 0, -1));
+            start = star + 1;
+        }
+        if (start < glob.length()) {
+            items.add(literal(glob.substring(start)));
+        }
+        return new Concat(items);
+    }
+
+    /**
+     * Translates space-separated wildcard rules into a node with the same semantics as {@link WildcardRules}.
+     *
+     * @param rules the wildcard rules.
+     * @return the node.
+     */
+    @NonNull
+    static RegexNode globs(@NonNull String rules) {
+        List<RegexNode> items = new ArrayList<>();
+        for (String rule : rules.split(" ")) {
+            // same as WildcardRules: leading empty rules are ignored
+            if (!rule.isEmpty() || !items.isEmpty()) {
+                items.add(glob(rule));
+            }
+        }
+        return items.isEmpty() ? empty() : new Alternation(items);
+    }
+
+    /**
+     * A set of characters, stored as sorted, non-overlapping inclusive code point ranges.
+     */
+    static final class Chars extends RegexNode {
+
+        /**
+         * The ranges as pairs of inclusive bounds.
+         */
+        final int[] ranges;
+
+        Chars(@NonNull int[] ranges) {
+            this.ranges = ranges;
+        }
+
+        @NonNull
+        static Chars of(int from, int to) {
+            return new Chars(new int[] {from, to});
+        }
+
+        /**
+         * Normalizes arbitrary ranges into sorted, merged ranges.
+         *
+         * @param ranges the ranges as pairs of inclusive bounds.
+         * @return the normalized ranges.
+         */
+        @NonNull
+        static int[] normalize(@NonNull int[] ranges) {
+            int count = ranges.length / 2;
+            long[] pairs = new long[count];
+            for (int i = 0; i < count; i++) {
+                pairs[i] = ((long) ranges[2 * i] << 32) | ranges[2 * i + 1];
+            }
+            Arrays.sort(pairs);
+            int[] result = new int[ranges.length];
+            int size = 0;
+            for (long pair : pairs) {
+                int from = (int) (pair >>> 32);
+                int to = (int) pair;
+                if (size > 0 && from <= result[size - 1] + 1) {
+                    result[size - 1] = Math.max(result[size - 1], to);
+                } else {
+                    result[size++] = from;
+                    result[size++] = to;
+                }
+            }
+            return Arrays.copyOf(result, size);
+        }
+
+        /**
+         * Returns the complement of normalized ranges.
+         *
+         * @param ranges the normalized ranges.
+         * @return the ranges of all other code points.
+         */
+        @NonNull
+        static int[] complement(@NonNull int[] ranges) {
+            int[] result = new int[ranges.length + 2];
+            int size = 0;
+            int next = 0;
+            for (int i = 0; i < ranges.length; i += 2) {
+                if (ranges[i] > next) {
+                    result[size++] = next;
+                    result[size++] = ranges[i] - 1;
+                }
+                next = ranges[i + 1] + 1;
+            }
+            if (next <= MAX_CODE_POINT) {
+                result[size++] = next;
+                result[size++] = MAX_CODE_POINT;
+            }
+            return Arrays.copyOf(result, size);
+        }
+    }
+
+    /**
+     * A sequence of nodes. An empty sequence matches the empty string.
+     */
+    static final class Concat extends RegexNode {
+
+        final List<RegexNode> items;
+
+        Concat(@NonNull List<RegexNode> items) {
+            this.items = items;
+        }
+    }
+
+    /**
+     * A choice between nodes.
+     */
+    static final class Alternation extends RegexNode {
+
+        final List<RegexNode> items;
+
+        Alternation(@NonNull List<RegexNode> items) {
+            this.items = items;
+        }
+    }
+
+    /**
+     * A node repeated between {@code min} and {@code max} times, where a negative {@code max} means unbounded.
+     */
+    static final class Repeat extends RegexNode {
+
+        final RegexNode item;
+        final int min;
+        final int max;
+
+        Repeat(@NonNull RegexNode item, int min, int max) {
+            this.item = item;
+            this.min = min;
+            this.max = max;
+        }
+    }
+}
@@ -0,0 +1,399 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017-2020, Sam Gleske - https://github.com/samrocketman
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.gleske.scmfilter.impl.trait;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Parses the subset of the {@link Pattern} syntax that can be matched by an {@link Automaton}, that is everything
+ * that describes a regular language: literals, escapes, character classes, {@code .}, groups, alternation, greedy and
+ * lazy quantifiers, and {@code ^}/{@code $} at the very start/end of the expression. Constructs that need
+ * backtracking (back references, lookaround, possessive quantifiers, atomic groups) and those whose meaning depends
+ * on matching flags are rejected, except for the {@code (?!.*)} idiom used to match nothing.
+ * <p>
+ * The expression is always matched against the whole name, like {@link java.util.regex.Matcher#matches()} does, and
+ * the resulting language is the same as the one {@link Pattern} accepts.
+ */
+final class RegexParser {
+
+    /**
+     * The largest supported bound of a counted repetition such as {@code {2,5}}.
+     */
+    static final int MAX_REPETITION = 1000;
+
+    /**
+     * The characters matched by {@code \d}.
+     */
+    private static final int[] DIGITS = {'0', '9'};
+
+    /**
+     * The characters matched by {@code \w}.
+     */
+    private static final int[] WORD = {'0', '9', 'A', 'Z', '_', '_', 'a', 'z'};
+
+    /**
+     * The characters matched by {@code \s}.
+     */
+    private static final int[] SPACE = {'\t', '\r', ' ', ' '};
+
+    /**
+     * The expression.
+     */
+    private final String regex;
+
+    /**
+     * The position of the next character to parse.
+     */
+    private int pos;
+
+    private RegexParser(@NonNull String regex) {
+        this.regex = regex;
+    }
+
+    /**
+     * Parses a regular expression.
+     *
+     * @param regex the regular expression.
+     * @return the syntax tree.
+     * @throws java.util.regex.PatternSyntaxException if the regular expression is invalid.
+     * @throws IllegalArgumentException if the regular expression uses a construct that is not supported.
+     */
+    @NonNull
+    static RegexNode parse(@NonNull String regex) {
+        // report syntax errors exactly like the default engine would
+        Pattern.compile(regex);
+        RegexParser parser = new RegexParser(unquote(regex));
+        RegexNode node = parser.alternation();
+        if (parser.pos < parser.regex.length()) {
+            throw parser.unsupported("unbalanced parenthesis");
+        }
+        return node;
+    }
+
+    /**
+     * Replaces the quoted sections of a regular expression with escaped characters, the way the default engine does
+     * before parsing, so a quantifier after {@code \E} applies to the last quoted character only.
+     *
+     * @param regex the regular expression.
+     * @return the regular expression without {@code \Q...\E} sections.
+     */
+    @NonNull
+    private static String unquote(@NonNull String regex) {
+        if (!regex.contains("\\Q")) {
+            return regex;
+        }
+        StringBuilder result = new StringBuilder(regex.length() * 2);
+        int i = 0;
+        while (i < regex.length()) {
+            char c = regex.charAt(i++);
+            if (c != '\\' || i == regex.length()) {
+                result.append(c);
+            } else if (regex.charAt(i) != 'Q') {
+                result.append(c).append(regex.charAt(i++));
+            } else {
+                int end = regex.indexOf("\\E", ++i);
+                for (char q : regex.substring(i, end < 0 ? regex.length() : end).toCharArray()) {
+                    if (q < 0x80 && !Character.isLetterOrDigit(q)) {
+                        result.append('\\');
+                    }
+                    result.append(q);
+                }
+                i = end < 0 ? regex.length() : end + 2;
+            }
+        }
+        return result.toString();
+    }
+
+    @NonNull
+    private RegexNode alternation() {
+        List<RegexNode> items = new ArrayList<>();
+        items.add(concatenation());
+        while (peek() == '|') {
+            pos++;
+            items.add(concatenation());
+        }
+        return items.size() == 1 ? items.get(0) : new RegexNode.Alternation(items);
+    }
+
+    @NonNull
+    private RegexNode concatenation() {
+        List<RegexNode> items = new ArrayList<>();
+        while (pos < regex.length() && peek() != '|' && peek() != ')') {
+            items.add(quantified(atom()));
+        }
+        return items.size() == 1 ? items.get(0) : new RegexNode.Concat(items);
+    }
+
+    @NonNull
+    private RegexNode quantified(@NonNull RegexNode atom) {
+        int min;
+        int max;
+        switch (peek()) {
+            case '*':
+                pos++;
+                min = 0;
+                max = -1;
+                break;
+            case '+':
+                pos++;
+                min = 1;
+                max = -1;
+                break;
+            case '?':
+                pos++;
+                min = 0;
+                max = 1;
+                break;
+            case '{':
+                pos++;
+                min = number();
+                max = min;
+                if (peek() == ',') {
+                    pos++;
+                    max = peek() == '}' ? -1 : number();
+                }
+                pos++; // the closing brace
+                if (Math.max(min, max) > MAX_REPETITION) {
+                    throw unsupported("repetitions above " + MAX_REPETITION);
+                }
+                break;
+            default:
+                return atom;
+        }
+        if (peek() == '?') {
+            // a lazy quantifier matches the same whole names as a greedy one
+            pos++;
+        } else if (peek() == '+') {
+            throw unsupported("possessive quantifiers");
+        }
+        return new RegexNode.Repeat(atom, min, max);
+    }
+
+    private int number() {
+        int start = pos;
+        while (Character.isDigit(peek())) {
+            pos++;
+        }
+        try {
+            return Integer.parseInt(regex.substring(start, pos));
+        } catch (NumberFormatException e) {
+            throw unsupported("repetitions above " + MAX_REPETITION);
+        }
+    }
+
+    @NonNull
+    private RegexNode atom() {
+        int c = next();
+        switch (c) {
+            case '(':
+                return group();
+            case '[':
+                return new RegexNode.Chars(characterClass());
+            case '.':
+                return RegexNode.dot();
+            case '^':
+                if (pos != 1) {
+                    throw unsupported("'^' anywhere but at the start");
+                }
+                return RegexNode.empty();
+            case '$':
+                if (pos != regex.length()) {
+                    throw unsupported("'$' anywhere but at the end");
+                }
+                return RegexNode.empty();
+            case '\\':
+                return escape();
+            default:
+                return RegexNode.Chars.of(c, c);
+        }
+    }
+
+    @NonNull
+    private RegexNode group() {
+        if (peek() == '?') {
+            if (regex.startsWith("?!.*)", pos)) {
+                // the negative lookahead of something that always matches: the idiom to match nothing
+                pos += 5;
+                return RegexNode.nothing();
+            }
+            pos++;
+            int kind = next();
+            if (kind == '<' && Character.isLetter(peek())) {
+                // named group
+                pos = regex.indexOf('>', pos) + 1;
+            } else if (kind != ':') {
+                throw unsupported("lookaround, atomic groups and inline flags");
+            }
+        }
+        RegexNode node = alternation();
+        pos++; // the closing parenthesis
+        return node;
+    }
+
+    @NonNull
+    private int[] characterClass() {
+        boolean negated = peek() == '^';
+        if (negated) {
+            pos++;
+        }
+        List<Integer> ranges = new ArrayList<>();
+        boolean first = true;
+        while (first || peek() != ']') {
+            first = false;
+            int c = next();
+            if (c == '[' || c == '&' && peek() == '&') {
+                throw unsupported("nested classes and class intersections");
+            }
+            int[] set;
+            if (c == '\\') {
+                set = classEscape();
+            } else {
+                set = new int[] {c, c};
+            }
+            if (set.length == 2 && set[0] == set[1] && peek() == '-' && pos + 1 < regex.length()
+                    && regex.charAt(pos + 1) != ']') {
+                pos++;
+                int to = next();
+                if (to == '[') {
+                    throw unsupported("nested classes and class intersections");
+                }
+                if (to == '\\') {
+                    int[] escaped = classEscape();
+                    if (escaped.length != 2 || escaped[0] != escaped[1]) {
+                        throw unsupported("ranges ending with a predefined class");
+                    }
+                    to = escaped[0];
+                }
+                set = new int[] {set[0], to};
+            }
+            for (int bound : set) {
+                ranges.add(bound);
+            }
+        }
+        pos++; // the closing bracket
+        int[] result = RegexNode.Chars.normalize(ranges.stream().mapToInt(Integer::intValue).toArray());
+        return negated ? RegexNode.Chars.complement(result) : result;
+    }
+
+    @NonNull
+    private int[] classEscape() {
+        RegexNode node = escape();
+        if (!(node instanceof RegexNode.Chars)) {
+            throw unsupported("escape sequence inside a character class");
+        }
+        return ((RegexNode.Chars) node).ranges;
+    }
+
+    @NonNull
+    private RegexNode escape() {
+        int c = next();
+        switch (c) {
+            case 'd':
+                return new RegexNode.Chars(DIGITS);
+            case 'D':
+                return new RegexNode.Chars(RegexNode.Chars.complement(DIGITS));
+            case 'w':
+                return new RegexNode.Chars(WORD);
+            case 'W':
+                return new RegexNode.Chars(RegexNode.Chars.complement(WORD));
+            case 's':
+                return new RegexNode.Chars(SPACE);
+            case 'S':
+                return new RegexNode.Chars(RegexNode.Chars.complement(SPACE));
+            case 't':
+                return RegexNode.Chars.of('\t', '\t');
+            case 'n':
+                return RegexNode.Chars.of('\n', '\n');
+            case 'r':
+                return RegexNode.Chars.of('\r', '\r');
+            case 'f':
+                return RegexNode.Chars.of('\f', '\f');
+            case 'a':
+                return RegexNode.Chars.of(0x07, 0x07);
+            case 'e':
+                return RegexNode.Chars.of(0x1B, 0x1B);
+            case 'x':
+                return hex(peek() == '{' ? regex.indexOf('}', pos) : pos + 2, peek() == '{');
+            case 'u':
+                return unicode();
+            default:
+                if (Character.isLetterOrDigit(c)) {
+                    throw unsupported("the escape sequence \\" + new String(Character.toChars(c)));
+                }
+                return RegexNode.Chars.of(c, c);
+        }
+    }
+
+    /**
+     * Parses a four digit hexadecimal escape, combining a high surrogate with a following escaped low surrogate into a
+     * single code point like the default engine does.
+     *
+     * @return the escaped character.
+     */
+    @NonNull
+    private RegexNode unicode() {
+        int high = Integer.parseInt(regex.substring(pos, pos + 4), 16);
+        pos += 4;
+        if (Character.isHighSurrogate((char) high) && regex.startsWith("\\u", pos) && pos + 6 <= regex.length()) {
+            try {
+                int low = Integer.parseInt(regex.substring(pos + 2, pos + 6), 16);
+                if (Character.isLowSurrogate((char) low)) {
+                    pos += 6;
+                    int value = Character.toCodePoint((char) high, (char) low);
+                    return RegexNode.Chars.of(value, value);
+                }
+            } catch (NumberFormatException e) {
+                // not a complete escape, left for the next atom
+            }
+        }
+        return RegexNode.Chars.of(high, high);
+    }
+
+    @NonNull
+    private RegexNode hex(int end, boolean braces) {
+        int value = Integer.parseInt(regex.substring(braces ? pos + 1 : pos, end), 16);
+        pos = braces ? end + 1 : end;
+        return RegexNode.Chars.of(value, value);
+    }
+
+    private int peek() {
+        return pos < regex.length() ? regex.codePointAt(pos) : -1;
+    }
+
+    private int next() {
+        int c = regex.codePointAt(pos);
+        pos += Character.charCount(c);
+        return c;
+    }
+
+    @NonNull
+    private IllegalArgumentException unsupported(@NonNull String construct) {
+        return new IllegalArgumentException("The linear-time engine does not support " + construct + " (at index "
+                + pos + " of " + regex + ")");
+    }
+}
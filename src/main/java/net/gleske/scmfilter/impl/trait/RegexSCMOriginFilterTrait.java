@@ -28,24 +28,32 @@ package net.gleske.scmfilter.impl.trait;
 import edu.umd.cs.findbugs.annotations.CheckForNull;
 import edu.umd.cs.findbugs.annotations.NonNull;
 import hudson.Extension;
+import hudson.model.Item;
 import hudson.util.FormValidation;
+import java.io.IOException;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
 import jenkins.scm.api.SCMHead;
 import jenkins.scm.api.SCMSource;
-import jenkins.scm.api.mixin.ChangeRequestSCMHead2;
-import jenkins.scm.api.mixin.ChangeRequestSCMHead;
-import jenkins.scm.api.mixin.TagSCMHead;
 import jenkins.scm.api.trait.SCMHeadPrefilter;
 import jenkins.scm.api.trait.SCMSourceContext;
 import jenkins.scm.api.trait.SCMSourceTrait;
 import jenkins.scm.api.trait.SCMSourceTraitDescriptor;
 import jenkins.scm.impl.trait.Selection;
+import org.apache.commons.lang3.StringUtils;
 import org.jenkinsci.Symbol;
 import org.kohsuke.accmod.Restricted;
 import org.kohsuke.accmod.restrictions.NoExternalUse;
+import org.kohsuke.stapler.AncestorInPath;
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
 import org.kohsuke.stapler.QueryParameter;
+import org.kohsuke.stapler.StaplerRequest2;
+import org.kohsuke.stapler.StaplerResponse2;
+import org.kohsuke.stapler.interceptor.RequirePOST;
 
 /**
  * Decorates a {@link SCMSource} with a {@link SCMHeadPrefilter} that excludes {@link SCMHead} instances with names that
@@ -53,7 +61,9 @@ import org.kohsuke.stapler.QueryParameter;
  *
  * @since 0.5
  */
-public class RegexSCMOriginFilterTrait extends SCMSourceTrait {
+public class RegexSCMOriginFilterTrait extends SCMSourceTrait implements PrecompiledFilter {
+
+    private static final Logger LOGGER = Logger.getLogger(RegexSCMOriginFilterTrait.class.getName());
 
     /**
      * The branch regular expression.
@@ -68,16 +78,33 @@ public class RegexSCMOriginFilterTrait extends SCMSourceTrait {
     private final String tagRegex;
 
     /**
-     * The compiled branch {@link Pattern}.
+     * {@code true} to match with the linear-time engine.
+     */
+    private boolean linearTime;
+
+    /**
+     * The compiled branch regular expression, shared with all other traits using the same regular expression.
+     */
+    @CheckForNull
+    private transient volatile NameMatcher pattern;
+
+    /**
+     * The compiled tag regular expression, shared with all other traits using the same regular expression.
+     */
+    @CheckForNull
+    private transient volatile NameMatcher tagPattern;
+
+    /**
+     * The error compiling the persisted regular expressions, if any.
      */
     @CheckForNull
-    private transient Pattern pattern;
+    private transient volatile IllegalArgumentException syntaxError;
 
     /**
-     * The compiled tag {@link Pattern}.
+     * The decisions of this trait if caching is enabled, dropped whenever the rules are compiled.
      */
     @CheckForNull
-    private transient Pattern tagPattern;
+    private transient volatile DecisionCache cache;
 
     /**
      * Stapler constructor.
@@ -87,10 +114,9 @@ public class RegexSCMOriginFilterTrait extends SCMSourceTrait {
      */
     @DataBoundConstructor
     public RegexSCMOriginFilterTrait(@NonNull String regex, @NonNull String tagRegex) {
-        pattern = Pattern.compile(regex);
         this.regex = regex;
-        tagPattern = Pattern.compile(tagRegex);
         this.tagRegex = tagRegex;
+        compilePatterns();
     }
 
     /**
@@ -100,10 +126,7 @@ public class RegexSCMOriginFilterTrait extends SCMSourceTrait {
      */
     @Deprecated
     public RegexSCMOriginFilterTrait(@NonNull String regex) {
-        pattern = Pattern.compile(regex);
-        this.regex = regex;
-        tagPattern = Pattern.compile("(?!.*)");
-        this.tagRegex = "(?!.*)";
+        this(regex, "(?!.*)");
     }
 
     /**
@@ -127,54 +150,152 @@ public class RegexSCMOriginFilterTrait extends SCMSourceTrait {
     }
 
     /**
-     * Gets the compiled branch {@link Pattern}.
+     * Checks if the regular expressions are matched with the linear-time engine.
+     *
+     * @return {@code true} if the regular expressions are matched with the linear-time engine.
+     */
+    public boolean isLinearTime() {
+        return linearTime;
+    }
+
+    /**
+     * Sets whether the regular expressions are matched with the linear-time engine, which guarantees matching in time
+     * linear in the length of the name but only supports regular expressions describing a regular language.
+     *
+     * A regular expression the linear-time engine does not support is reported by the form validation and fails the
+     * scans until it is corrected, the same as an invalid persisted regular expression.
+     *
+     * @param linearTime {@code true} to match with the linear-time engine.
+     */
+    @DataBoundSetter
+    public void setLinearTime(boolean linearTime) {
+        this.linearTime = linearTime;
+        tryCompilePatterns();
+    }
+
+    /**
+     * Compiles the persisted regular expressions as soon as the trait is loaded, so that the first scan after a
+     * restart does not pay for the compilation and an invalid regular expression is reported right away.
+     *
+     * @return this instance.
+     */
+    protected Object readResolve() {
+        tryCompilePatterns();
+        return this;
+    }
+
+    /**
+     * Compiles the regular expressions, keeping the error to report it when the trait is used.
+     */
+    private void tryCompilePatterns() {
+        try {
+            compilePatterns();
+        } catch (IllegalArgumentException e) {
+            pattern = null;
+            tagPattern = null;
+            syntaxError = e;
+            LOGGER.log(Level.WARNING, "Invalid or unsupported regular expression in " + getClass().getSimpleName()
+                    + ", scans using it will fail until it is corrected: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Compiles the regular expressions.
+     *
+     * @throws PatternSyntaxException if a regular expression is invalid.
+     * @throws IllegalArgumentException if a regular expression is not supported by the linear-time engine.
+     */
+    private void compilePatterns() {
+        // the tag regular expression is missing from configurations saved before tags were supported
+        tagPattern = compile(StringUtils.defaultString(tagRegex, "(?!.*)"));
+        pattern = compile(regex);
+        syntaxError = null;
+        cache = DecisionCache.create();
+    }
+
+    /**
+     * Compiles a regular expression with the configured engine.
      *
-     * @return the compiled branch {@link Pattern}.
+     * @param regex the regular expression.
+     * @return the compiled regular expression.
+     * @throws PatternSyntaxException if the regular expression is invalid.
+     * @throws IllegalArgumentException if the regular expression is not supported by the linear-time engine.
      */
     @NonNull
-    private Pattern getPattern() {
+    private NameMatcher compile(@NonNull String regex) {
+        return linearTime ? CompiledPatterns.linearRegex(regex) : CompiledPatterns.regex(regex);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @Restricted(NoExternalUse.class)
+    public void precompile() {
+        if (pattern == null || tagPattern == null) {
+            compilePatterns();
+        }
+    }
+
+    /**
+     * Gets the compiled branch regular expression.
+     *
+     * @return the compiled branch regular expression.
+     * @throws IllegalStateException if the persisted regular expression is invalid.
+     */
+    @NonNull
+    private NameMatcher getPattern() {
+        NameMatcher pattern = this.pattern;
         if (pattern == null) {
-            // idempotent
-            pattern = Pattern.compile(regex);
+            throw invalid();
         }
         return pattern;
     }
 
     /**
-     * Gets the compiled tag {@link Pattern}.
+     * Gets the compiled tag regular expression.
      *
-     * @return the compiled tag {@link Pattern}.
+     * @return the compiled tag regular expression.
+     * @throws IllegalStateException if the persisted regular expression is invalid.
      */
     @NonNull
-    private Pattern getTagPattern() {
+    private NameMatcher getTagPattern() {
+        NameMatcher tagPattern = this.tagPattern;
         if (tagPattern == null) {
-            // idempotent
-            tagPattern = Pattern.compile(tagRegex);
+            throw invalid();
         }
         return tagPattern;
     }
 
+    /**
+     * Creates the exception reporting the invalid persisted regular expression.
+     *
+     * @return the exception to throw.
+     */
+    @NonNull
+    private IllegalStateException invalid() {
+        return new IllegalStateException("Invalid regular expression in " + getClass().getSimpleName(), syntaxError);
+    }
+
     /**
      * {@inheritDoc}
      */
     @Override
     protected void decorateContext(SCMSourceContext<?, ?> context) {
-        context.withPrefilter(new SCMHeadPrefilter() {
+        // fail before anything is fetched rather than on the first head
+        final NameMatcher branchPattern = getPattern();
+        final NameMatcher tagPattern = getTagPattern();
+        final long budget = MatchBudget.nanos();
+        context.withPrefilter(new NamePrefilter(this, context, NamePrefilter.Subject.ORIGIN, cache) {
             @Override
-            public boolean isExcluded(@NonNull SCMSource source, @NonNull SCMHead head) {
-                if (head instanceof ChangeRequestSCMHead2) {
-                    // change request
-                    String origin = ((ChangeRequestSCMHead2)head).getOriginName();
-                    return !getPattern().matcher(origin).matches();
-                }
+            protected boolean decide(@NonNull SCMSource source, @NonNull HeadCategory rules, @NonNull String name) {
+                return !MatchBudget.matches(rules == HeadCategory.TAG ? tagPattern : branchPattern, name, budget,
+                        source);
+            }
 
-                if (head instanceof TagSCMHead) {
-                    // tag
-                    return !getTagPattern().matcher(head.getName()).matches();
-                } else {
-                    // branch
-                    return !getPattern().matcher(head.getName()).matches();
-                }
+            @Override
+            protected Set<String> prefixes(@NonNull HeadCategory rules) {
+                return DiscoveryHints.ofRegex(rules == HeadCategory.TAG ? tagRegex : regex);
             }
         });
     }
@@ -199,16 +320,49 @@ public class RegexSCMOriginFilterTrait extends SCMSourceTrait {
          * Form validation for the regular expression.
          *
          * @param value the regular expression.
+         * @param linearTime {@code true} if the regular expression is matched with the linear-time engine.
          * @return the validation results.
          */
         @Restricted(NoExternalUse.class) // stapler
-        public FormValidation doCheckRegex(@QueryParameter String value) {
+        public FormValidation doCheckRegex(@QueryParameter String value, @QueryParameter boolean linearTime) {
             try {
-                Pattern.compile(value);
+                if (linearTime) {
+                    LinearRegex.compile(value);
+                } else {
+                    Pattern.compile(value);
+                }
                 return FormValidation.ok();
-            } catch (PatternSyntaxException e) {
+            } catch (IllegalArgumentException e) {
                 return FormValidation.error(e.getMessage());
             }
         }
+
+        /**
+         * Form validation for the tag regular expression.
+         *
+         * @param value the tag regular expression.
+         * @param linearTime {@code true} if the regular expression is matched with the linear-time engine.
+         * @return the validation results.
+         */
+        @Restricted(NoExternalUse.class) // stapler
+        public FormValidation doCheckTagRegex(@QueryParameter String value, @QueryParameter boolean linearTime) {
+            return doCheckRegex(value, linearTime);
+        }
+
+        /**
+         * Previews the decisions of the configuration being edited on candidate names or on the heads a source
+         * last saw, without saving it.
+         *
+         * @param item the job the configuration belongs to, if any.
+         * @param req the request, see {@link FilterPreview}.
+         * @param rsp the response.
+         * @throws IOException if the request could not be read or the response could not be written.
+         */
+        @RequirePOST
+        @Restricted(NoExternalUse.class) // stapler
+        public void doPreview(@AncestorInPath Item item, StaplerRequest2 req, StaplerResponse2 rsp)
+                throws IOException {
+            FilterPreview.serve(RegexSCMOriginFilterTrait.class, item, req, rsp);
+        }
     }
 }
@@ -0,0 +1,193 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017-2020, Sam Gleske - https://github.com/samrocketman
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.gleske.scmfilter.impl.trait;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.model.Item;
+import hudson.util.FormValidation;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+import jenkins.model.Jenkins;
+import jenkins.scm.api.SCMHead;
+import jenkins.scm.api.SCMSource;
+import jenkins.scm.api.trait.SCMHeadPrefilter;
+import jenkins.scm.api.trait.SCMSourceContext;
+import jenkins.scm.api.trait.SCMSourceTrait;
+import jenkins.scm.api.trait.SCMSourceTraitDescriptor;
+import jenkins.scm.impl.trait.Selection;
+import org.jenkinsci.Symbol;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+import org.kohsuke.stapler.AncestorInPath;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.QueryParameter;
+import org.kohsuke.stapler.StaplerRequest2;
+import org.kohsuke.stapler.StaplerResponse2;
+import org.kohsuke.stapler.interceptor.RequirePOST;
+import org.kohsuke.stapler.verb.POST;
+
+/**
+ * Decorates a {@link SCMSource} with a {@link SCMHeadPrefilter} that excludes {@link SCMHead} instances according to
+ * a rule set shared by many jobs, see {@link RuleSets}. Changes to the rule set apply from the next scan on, without
+ * saving the job, and a scan decides all of its heads with the rules it started with.
+ */
+public class RuleSetSCMFilterTrait extends SCMSourceTrait implements PrecompiledFilter {
+
+    /**
+     * The ID of the rule set.
+     */
+    @NonNull
+    private final String id;
+
+    /**
+     * Stapler constructor.
+     *
+     * @param id the ID of the rule set.
+     * @throws IllegalArgumentException if the ID is invalid.
+     */
+    @DataBoundConstructor
+    public RuleSetSCMFilterTrait(@NonNull String id) {
+        if (!RuleSets.isValid(id)) {
+            throw new IllegalArgumentException("Invalid rule set ID: " + id);
+        }
+        this.id = id;
+    }
+
+    /**
+     * Gets the ID of the rule set.
+     *
+     * @return the ID of the rule set.
+     */
+    @NonNull
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @Restricted(NoExternalUse.class)
+    public void precompile() {
+        RuleSets.get(id);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void decorateContext(SCMSourceContext<?, ?> context) {
+        // fails before anything is fetched rather than on the first head
+        final RuleSets.Rules current = RuleSets.get(id).rules();
+        context.withPrefilter(new NamePrefilter(this, context, NamePrefilter.Subject.TARGET, null) {
+            @Override
+            protected boolean decide(@NonNull SCMSource source, @NonNull HeadCategory rules, @NonNull String name) {
+                return (rules == HeadCategory.TAG ? current.tags : current.branches).isExcluded(name);
+            }
+
+            @Override
+            protected Set<String> prefixes(@NonNull HeadCategory rules) {
+                return DiscoveryHints.ofOrderedRules(rules == HeadCategory.TAG ? current.tagRules
+                        : current.branchRules);
+            }
+        });
+    }
+
+    /**
+     * Our descriptor.
+     */
+    @Symbol("ruleSetFilter")
+    @Extension
+    @Selection
+    public static class DescriptorImpl extends SCMSourceTraitDescriptor {
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String getDisplayName() {
+            return Messages.RuleSetSCMFilterTrait_DisplayName();
+        }
+
+        /**
+         * Form validation for the rule set ID.
+         *
+         * @param item the job being configured, if any.
+         * @param value the ID of the rule set.
+         * @return the validation results.
+         */
+        @POST
+        @Restricted(NoExternalUse.class) // stapler
+        public FormValidation doCheckId(@AncestorInPath Item item, @QueryParameter String value) {
+            if (item != null) {
+                item.checkPermission(Item.CONFIGURE);
+            } else {
+                Jenkins.get().checkPermission(Jenkins.ADMINISTER);
+            }
+            if (!RuleSets.isValid(value)) {
+                return FormValidation.error("Invalid rule set ID: " + value);
+            }
+            // the path relative to the Jenkins home, so that its location is not disclosed
+            String shown = RuleSets.DIRECTORY + "/" + value + RuleSets.EXTENSION;
+            Path file = RuleSets.directory().resolve(value + RuleSets.EXTENSION);
+            if (!Files.isRegularFile(file)) {
+                return FormValidation.warning("There is no rule set " + value + " yet, scans will fail until "
+                        + shown + " is created");
+            }
+            String text;
+            try {
+                text = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+            } catch (IOException e) {
+                return FormValidation.error("Could not read " + shown);
+            }
+            try {
+                RuleSets.Rules.parse(text);
+                return FormValidation.ok();
+            } catch (IllegalArgumentException e) {
+                return FormValidation.error("Could not compile " + shown + ": " + e.getMessage());
+            }
+        }
+
+        /**
+         * Previews the decisions of the configuration being edited on candidate names or on the heads a source
+         * last saw, without saving it.
+         *
+         * @param item the job the configuration belongs to, if any.
+         * @param req the request, see {@link FilterPreview}.
+         * @param rsp the response.
+         * @throws IOException if the request could not be read or the response could not be written.
+         */
+        @RequirePOST
+        @Restricted(NoExternalUse.class) // stapler
+        public void doPreview(@AncestorInPath Item item, StaplerRequest2 req, StaplerResponse2 rsp)
+                throws IOException {
+            FilterPreview.serve(RuleSetSCMFilterTrait.class, item, req, rsp);
+        }
+    }
+}
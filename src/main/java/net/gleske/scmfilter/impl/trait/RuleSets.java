@@ -0,0 +1,389 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017-2020, Sam Gleske - https://github.com/samrocketman
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.gleske.scmfilter.impl.trait;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.init.Terminator;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+import jenkins.model.Jenkins;
+
+/**
+ * The rule sets shared by jobs, stored as files in the {@value #DIRECTORY} directory of the Jenkins home directory
+ * and named after their ID with the {@value #EXTENSION} extension.
+ * <p>
+ * A rule set holds ordered rules, like {@link OrderedRulesSCMFilterTrait}: branch rules first, then, after a
+ * {@value #TAGS} line, tag rules. Each rule set is compiled once however many jobs use it, and the directory is
+ * watched so that a changed file is compiled again and replaces the rules of every job using it at once, without
+ * saving the jobs. A file that no longer compiles leaves the previous rules in place.
+ * <p>
+ * Editors and copies write a file in several steps, each reported as a change, so a file is compiled again only once
+ * the directory has been quiet for {@value #QUIET_MILLIS} milliseconds. A file written elsewhere and moved into place
+ * is never seen half written; one written in place slower than that may be, in which case it most likely does not
+ * compile and the previous rules stay in place until the write completes.
+ */
+final class RuleSets {
+
+    private static final Logger LOGGER = Logger.getLogger(RuleSets.class.getName());
+
+    /**
+     * The directory of the rule sets, relative to the Jenkins home directory.
+     */
+    static final String DIRECTORY = "scm-filter-rule-sets";
+
+    /**
+     * The extension of the rule set files.
+     */
+    static final String EXTENSION = ".rules";
+
+    /**
+     * The line separating the branch rules from the tag rules.
+     */
+    static final String TAGS = "[tags]";
+
+    /**
+     * How long the directory must be quiet after a change before the changed files are compiled again.
+     */
+    static final long QUIET_MILLIS = 200;
+
+    /**
+     * The valid rule set IDs, which are also valid file names.
+     */
+    private static final Pattern ID = Pattern.compile("[A-Za-z0-9][A-Za-z0-9._-]*");
+
+    /**
+     * The rule sets used so far, by ID.
+     */
+    private static final ConcurrentMap<String, Entry> ENTRIES = new ConcurrentHashMap<>();
+
+    /**
+     * The watcher of the directory, if started.
+     */
+    @CheckForNull
+    private static WatchService watcher;
+
+    /**
+     * Whether the watcher was started, even if it could not be.
+     */
+    private static boolean watching;
+
+    private RuleSets() {
+    }
+
+    /**
+     * Checks if a rule set ID is valid.
+     *
+     * @param id the ID.
+     * @return {@code true} if the ID is valid.
+     */
+    static boolean isValid(@CheckForNull String id) {
+        return id != null && ID.matcher(id).matches();
+    }
+
+    /**
+     * Gets the directory of the rule sets.
+     *
+     * @return the directory of the rule sets.
+     */
+    @NonNull
+    static Path directory() {
+        return Jenkins.get().getRootDir().toPath().resolve(DIRECTORY);
+    }
+
+    /**
+     * Gets a rule set, loading it the first time and watching the directory for changes from then on.
+     *
+     * @param id the ID of the rule set.
+     * @return the rule set, whose rules change along with its file.
+     * @throws IllegalArgumentException if the ID is invalid.
+     */
+    @NonNull
+    static Entry get(@NonNull String id) {
+        if (!isValid(id)) {
+            throw new IllegalArgumentException("Invalid rule set ID: " + id);
+        }
+        watch();
+        return ENTRIES.computeIfAbsent(id, key -> {
+            Entry entry = new Entry(key);
+            entry.load();
+            return entry;
+        });
+    }
+
+    /**
+     * Starts watching the directory of the rule sets, unless already done.
+     */
+    private static synchronized void watch() {
+        if (watching) {
+            return;
+        }
+        watching = true;
+        Path directory = directory();
+        try {
+            Files.createDirectories(directory);
+            WatchService service = directory.getFileSystem().newWatchService();
+            directory.register(service, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY,
+                    StandardWatchEventKinds.ENTRY_DELETE);
+            watcher = service;
+            Thread thread = new Thread(() -> run(service), "SCM filter rule set watcher");
+            thread.setDaemon(true);
+            thread.start();
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Could not watch " + directory
+                    + ", changed rule sets will only be picked up after a restart", e);
+        }
+    }
+
+    /**
+     * Loads the rule sets in use again as their files change, until the watcher is closed or the directory can no
+     * longer be watched, in which case the directory is watched again.
+     *
+     * @param service the watcher.
+     */
+    private static void run(@NonNull WatchService service) {
+        while (true) {
+            Set<Entry> changed = new LinkedHashSet<>();
+            try {
+                WatchKey key = service.take();
+                // the changes of a file written in several steps are compiled once, when they stop
+                while (key != null) {
+                    if (!changed(key, changed)) {
+                        rewatch(service);
+                        return;
+                    }
+                    key = service.poll(QUIET_MILLIS, TimeUnit.MILLISECONDS);
+                }
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+            changed.forEach(Entry::load);
+        }
+    }
+
+    /**
+     * Watches the directory again once it can no longer be watched, for example because it was deleted or replaced,
+     * and loads all the rule sets in use again as their files may have changed meanwhile.
+     *
+     * @param service the watcher that can no longer watch the directory.
+     */
+    private static void rewatch(@NonNull WatchService service) {
+        synchronized (RuleSets.class) {
+            if (watcher != service) {
+                // stopped meanwhile
+                return;
+            }
+            LOGGER.log(Level.WARNING, "Stopped watching {0}, it was probably deleted or replaced, watching it again",
+                    directory());
+            try {
+                service.close();
+            } catch (IOException e) {
+                LOGGER.log(Level.FINE, "Could not close the rule set watcher", e);
+            }
+            watcher = null;
+            watching = false;
+            watch();
+        }
+        ENTRIES.values().forEach(Entry::load);
+    }
+
+    /**
+     * Collects the rule sets in use whose files changed.
+     *
+     * @param key the changes.
+     * @param changed the rule sets whose files changed so far.
+     * @return {@code false} if the directory can no longer be watched.
+     */
+    private static boolean changed(@NonNull WatchKey key, @NonNull Set<Entry> changed) {
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                changed.addAll(ENTRIES.values());
+                continue;
+            }
+            String name = event.context().toString();
+            if (name.endsWith(EXTENSION)) {
+                Entry entry = ENTRIES.get(name.substring(0, name.length() - EXTENSION.length()));
+                if (entry != null) {
+                    changed.add(entry);
+                }
+            }
+        }
+        return key.reset();
+    }
+
+    /**
+     * Stops watching the directory and forgets the rule sets.
+     */
+    @Terminator
+    public static synchronized void stop() {
+        if (watcher != null) {
+            try {
+                watcher.close();
+            } catch (IOException e) {
+                LOGGER.log(Level.FINE, "Could not close the rule set watcher", e);
+            }
+            watcher = null;
+        }
+        watching = false;
+        ENTRIES.clear();
+    }
+
+    /**
+     * A rule set in use, whose compiled rules are replaced as a whole whenever its file changes.
+     */
+    static final class Entry {
+
+        /**
+         * The ID of the rule set.
+         */
+        @NonNull
+        private final String id;
+
+        /**
+         * The last rules compiled successfully, if any.
+         */
+        @CheckForNull
+        private volatile Rules rules;
+
+        /**
+         * Why the file could not be compiled the last time, if it could not.
+         */
+        @CheckForNull
+        private volatile String problem;
+
+        private Entry(@NonNull String id) {
+            this.id = id;
+        }
+
+        /**
+         * Gets the current rules.
+         *
+         * @return the current rules.
+         * @throws IllegalStateException if the rule set was never compiled or its file was deleted.
+         */
+        @NonNull
+        Rules rules() {
+            Rules rules = this.rules;
+            if (rules == null) {
+                throw new IllegalStateException("Rule set " + id + " is unavailable: " + problem);
+            }
+            return rules;
+        }
+
+        /**
+         * Compiles the file of the rule set, keeping the previous rules if it does not compile.
+         */
+        synchronized void load() {
+            Path file = directory().resolve(id + EXTENSION);
+            try {
+                rules = Rules.parse(new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+                problem = null;
+                LOGGER.log(Level.FINE, "Loaded rule set {0}", id);
+            } catch (NoSuchFileException e) {
+                rules = null;
+                problem = "no such file " + file;
+            } catch (IOException | IllegalArgumentException e) {
+                problem = e.getMessage();
+                LOGGER.log(Level.WARNING, "Could not compile rule set " + id + (rules == null ? ""
+                        : ", keeping its previous rules") + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * The compiled rules of a rule set.
+     */
+    static final class Rules {
+
+        /**
+         * The ordered branch rules.
+         */
+        @NonNull
+        final String branchRules;
+
+        /**
+         * The ordered tag rules.
+         */
+        @NonNull
+        final String tagRules;
+
+        /**
+         * The compiled branch rules.
+         */
+        @NonNull
+        final DecisionAutomaton branches;
+
+        /**
+         * The compiled tag rules.
+         */
+        @NonNull
+        final DecisionAutomaton tags;
+
+        private Rules(@NonNull String branchRules, @NonNull String tagRules) {
+            this.branchRules = branchRules;
+            this.tagRules = tagRules;
+            this.branches = CompiledPatterns.ordered(branchRules);
+            this.tags = CompiledPatterns.ordered(tagRules);
+        }
+
+        /**
+         * Compiles the content of a rule set file.
+         *
+         * @param text the content of the file.
+         * @return the compiled rules.
+         * @throws IllegalArgumentException if a rule is invalid.
+         */
+        @NonNull
+        static Rules parse(@NonNull String text) {
+            StringBuilder branchRules = new StringBuilder();
+            StringBuilder tagRules = new StringBuilder();
+            StringBuilder current = branchRules;
+            for (String line : DecisionAutomaton.lines(text)) {
+                if (line.trim().equals(TAGS)) {
+                    current = tagRules;
+                } else {
+                    current.append(line).append('\n');
+                }
+            }
+            return new Rules(branchRules.toString(), tagRules.toString());
+        }
+    }
+}
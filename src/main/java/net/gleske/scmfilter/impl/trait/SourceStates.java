@@ -0,0 +1,168 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017-2020, Sam Gleske - https://github.com/samrocketman
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.gleske.scmfilter.impl.trait;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.model.Item;
+import hudson.model.listeners.ItemListener;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Supplier;
+import jenkins.scm.api.SCMSource;
+import jenkins.scm.api.SCMSourceOwner;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+/**
+ * The state a filter trait keeps for each source from one scan to the next, such as the heads it kept. Trait
+ * instances are replaced whenever a job is saved, so the state is kept per job and source rather than on the trait.
+ * It is held in memory only, and forgotten when the job is deleted.
+ * <p>
+ * Sources without a job, such as the ones of previews, have no state.
+ *
+ * @param <T> the type of the state.
+ */
+@Restricted(NoExternalUse.class)
+public final class SourceStates<T> {
+
+    /**
+     * All the states, so that the states of deleted or moved jobs follow them.
+     */
+    private static final List<SourceStates<?>> ALL = new CopyOnWriteArrayList<>();
+
+    /**
+     * The state per job full name and source id.
+     */
+    private final ConcurrentMap<String, ConcurrentMap<String, T>> byJob = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor, meant for static fields.
+     */
+    SourceStates() {
+        ALL.add(this);
+    }
+
+    /**
+     * Gets the state of a source.
+     *
+     * @param source the source.
+     * @return the state, or {@code null} if there is none.
+     */
+    @CheckForNull
+    T get(@NonNull SCMSource source) {
+        SCMSourceOwner owner = source.getOwner();
+        ConcurrentMap<String, T> states = owner == null ? null : byJob.get(owner.getFullName());
+        return states == null ? null : states.get(source.getId());
+    }
+
+    /**
+     * Gets the state of a source, creating it the first time.
+     *
+     * @param source the source.
+     * @param create creates the state.
+     * @return the state, which is not kept if the source has no job.
+     */
+    @NonNull
+    T computeIfAbsent(@NonNull SCMSource source, @NonNull Supplier<? extends T> create) {
+        SCMSourceOwner owner = source.getOwner();
+        if (owner == null) {
+            return create.get();
+        }
+        return byJob.computeIfAbsent(owner.getFullName(), k -> new ConcurrentHashMap<>())
+                .computeIfAbsent(source.getId(), k -> create.get());
+    }
+
+    /**
+     * Replaces the state of a source.
+     *
+     * @param source the source.
+     * @param state the state, not kept if the source has no job.
+     */
+    void put(@NonNull SCMSource source, @NonNull T state) {
+        SCMSourceOwner owner = source.getOwner();
+        if (owner != null) {
+            byJob.computeIfAbsent(owner.getFullName(), k -> new ConcurrentHashMap<>()).put(source.getId(), state);
+        }
+    }
+
+    /**
+     * Forgets the states of a job, and of the jobs inside it if it is a folder.
+     *
+     * @param job the full name of the job.
+     */
+    static void forgetJob(@NonNull String job) {
+        for (SourceStates<?> states : ALL) {
+            states.byJob.keySet().removeIf(key -> key.equals(job) || key.startsWith(job + "/"));
+        }
+    }
+
+    /**
+     * Keeps the states of a renamed or moved job under its new full name.
+     *
+     * @param oldJob the former full name of the job.
+     * @param newJob the new full name of the job.
+     */
+    static void moveJob(@NonNull String oldJob, @NonNull String newJob) {
+        for (SourceStates<?> states : ALL) {
+            states.move(oldJob, newJob);
+        }
+    }
+
+    private void move(@NonNull String oldJob, @NonNull String newJob) {
+        ConcurrentMap<String, T> states = byJob.remove(oldJob);
+        if (states != null) {
+            byJob.putIfAbsent(newJob, states);
+        }
+    }
+
+    /**
+     * Keeps the states in line with the jobs.
+     */
+    @Extension
+    @Restricted(NoExternalUse.class)
+    public static class Listener extends ItemListener {
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void onDeleted(Item item) {
+            forgetJob(item.getFullName());
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void onLocationChanged(Item item, String oldFullName, String newFullName) {
+            // also called for every job inside a moved folder
+            moveJob(oldFullName, newFullName);
+        }
+    }
+}
@@ -0,0 +1,330 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017-2020, Sam Gleske - https://github.com/samrocketman
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.gleske.scmfilter.impl.trait;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.model.TaskListener;
+import hudson.util.FormValidation;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import jenkins.scm.api.SCMHead;
+import jenkins.scm.api.SCMSource;
+import jenkins.scm.api.SCMSourceCriteria;
+import jenkins.scm.api.trait.SCMHeadFilter;
+import jenkins.scm.api.trait.SCMHeadPrefilter;
+import jenkins.scm.api.trait.SCMSourceContext;
+import jenkins.scm.api.trait.SCMSourceRequest;
+import jenkins.scm.api.trait.SCMSourceTrait;
+import jenkins.scm.api.trait.SCMSourceTraitDescriptor;
+import jenkins.scm.impl.trait.Selection;
+import jenkins.util.SystemProperties;
+import org.apache.commons.lang3.StringUtils;
+import org.jenkinsci.Symbol;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+import org.kohsuke.stapler.QueryParameter;
+
+/**
+ * Decorates a {@link SCMSource} so that the branches and change requests whose last commit is older than a number of
+ * days are not considered heads, unless their name matches exemption wildcards. Tags are left to the other filters.
+ * <p>
+ * The time of the last commit is only known to the {@link SCMSourceCriteria.Probe probe} of a head, which the source
+ * builds after the head passed the prefilters and filters, when the source provides it at all. The times seen are
+ * remembered per source and head category, see {@link SourceStates}, and a {@link SCMHeadFilter} excludes the heads
+ * already known to be stale from full scans before the source spends any request on them, checking them again every
+ * {@link #RECHECK_HOURS} hours in case they got new commits. Events about some heads only are always probed, so that a
+ * commit pushed to a stale head revives it at once.
+ */
+public class StaleHeadSCMFilterTrait extends SCMSourceTrait {
+
+    /**
+     * The system property holding the number of hours after which a head known to be stale is probed again.
+     */
+    static final String RECHECK_HOURS = StaleHeadSCMFilterTrait.class.getName() + ".recheckHours";
+
+    /**
+     * The default number of hours after which a head known to be stale is probed again.
+     */
+    static final long DEFAULT_RECHECK_HOURS = 24;
+
+    /**
+     * The most heads of a source whose last commit is remembered, past which they are forgotten and probed again.
+     */
+    static final int MAX_HEADS = 100_000;
+
+    /**
+     * The last commit of the heads of each source probed so far, by category and name, see {@link #key}.
+     */
+    private static final SourceStates<ConcurrentMap<String, Activity>> ACTIVITY = new SourceStates<>();
+
+    /**
+     * The number of days without commits after which a head is stale.
+     */
+    private final int days;
+
+    /**
+     * The wildcards matching the names of the heads which are never stale.
+     */
+    @NonNull
+    private String exemptions = "";
+
+    /**
+     * The compiled exemptions, {@code null} if there are none.
+     */
+    @CheckForNull
+    private transient volatile NameMatcher exempt;
+
+    /**
+     * Stapler constructor.
+     *
+     * @param days the number of days without commits after which a branch or change request is stale.
+     * @throws IllegalArgumentException if the number is not positive.
+     */
+    @DataBoundConstructor
+    public StaleHeadSCMFilterTrait(int days) {
+        if (days < 1) {
+            throw new IllegalArgumentException("The number of days must be positive: " + days);
+        }
+        this.days = days;
+        readResolve();
+    }
+
+    /**
+     * Gets the number of days without commits after which a head is stale.
+     *
+     * @return the number of days.
+     */
+    public int getDays() {
+        return days;
+    }
+
+    /**
+     * Gets the wildcards matching the names of the heads which are never stale.
+     *
+     * @return the space-separated wildcards.
+     */
+    @NonNull
+    public String getExemptions() {
+        return exemptions;
+    }
+
+    /**
+     * Sets the wildcards matching the names of the heads which are never stale, such as {@code main release-*}.
+     *
+     * @param exemptions the space-separated wildcards.
+     */
+    @DataBoundSetter
+    public void setExemptions(@CheckForNull String exemptions) {
+        this.exemptions = StringUtils.defaultString(exemptions).trim();
+        readResolve();
+    }
+
+    /**
+     * Compiles the exemptions.
+     *
+     * @return this instance.
+     */
+    protected Object readResolve() {
+        if (exemptions == null) {
+            exemptions = "";
+        }
+        exempt = exemptions.isEmpty() ? null : CompiledPatterns.wildcard(exemptions);
+        return this;
+    }
+
+    /**
+     * Gets the configured recheck delay.
+     *
+     * @return the number of milliseconds after which a head known to be stale is probed again, {@code 0} to always
+     *         probe.
+     */
+    static long recheckMillis() {
+        return TimeUnit.HOURS.toMillis(Math.max(0, SystemProperties.getLong(RECHECK_HOURS, DEFAULT_RECHECK_HOURS)));
+    }
+
+    /**
+     * Checks if a head is exempted.
+     *
+     * @param name the name of the head.
+     * @return {@code true} if the head is never stale.
+     */
+    private boolean isExempt(@NonNull String name) {
+        NameMatcher exempt = this.exempt;
+        return exempt != null && exempt.matches(name);
+    }
+
+    /**
+     * Gets the key of a head in the activity of a source, so that a branch and a tag with the same name are told
+     * apart.
+     *
+     * @param category the category of the head.
+     * @param name the name of the head.
+     * @return the key.
+     */
+    @NonNull
+    private static String key(@NonNull HeadCategory category, @NonNull String name) {
+        return category.getKey() + ':' + name;
+    }
+
+    /**
+     * Gets the activity of the source of a request.
+     *
+     * @param activity the activity, set once the prefilter saw the source.
+     * @return the activity.
+     */
+    @NonNull
+    private static ConcurrentMap<String, Activity> activity(
+            @NonNull AtomicReference<ConcurrentMap<String, Activity>> activity) {
+        ConcurrentMap<String, Activity> known = activity.get();
+        if (known == null) {
+            activity.compareAndSet(null, new ConcurrentHashMap<>());
+            known = activity.get();
+        }
+        return known;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void decorateContext(SCMSourceContext<?, ?> context) {
+        final long maxAge = TimeUnit.DAYS.toMillis(days);
+        final long recheck = recheckMillis();
+        // a request for some heads only, such as an event, probes them so that new commits are seen at once
+        final boolean scan = context.observer().getIncludes() == null;
+        // the filter and the criteria do not know the source, the prefilter sees it first
+        final AtomicReference<ConcurrentMap<String, Activity>> activity = new AtomicReference<>();
+        // probes only know the name of their head, the filter sees each head right before its probe
+        final ConcurrentMap<String, HeadCategory> categories = new ConcurrentHashMap<>();
+        context.withPrefilter(new SCMHeadPrefilter() {
+            @Override
+            public boolean isExcluded(@NonNull SCMSource source, @NonNull SCMHead head) {
+                if (activity.get() == null) {
+                    activity.compareAndSet(null, ACTIVITY.computeIfAbsent(source, ConcurrentHashMap::new));
+                }
+                return false;
+            }
+        });
+        context.withFilter(new SCMHeadFilter() {
+            @Override
+            public boolean isExcluded(@NonNull SCMSourceRequest request, @NonNull SCMHead head) {
+                String name = head.getName();
+                HeadCategory category = HeadCategory.of(head);
+                categories.put(name, category);
+                if (category == HeadCategory.TAG || !scan) {
+                    return false;
+                }
+                Activity known = activity(activity).get(key(category, name));
+                long now = System.currentTimeMillis();
+                return known != null && now - known.checked < recheck && now - known.lastModified > maxAge
+                        && !isExempt(name);
+            }
+        });
+        context.withCriteria(new SCMSourceCriteria() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public boolean isHead(@NonNull Probe probe, @NonNull TaskListener listener) {
+                String name = probe.name();
+                HeadCategory category = categories.getOrDefault(name, HeadCategory.BRANCH);
+                if (category == HeadCategory.TAG || isExempt(name)) {
+                    return true;
+                }
+                long lastModified = probe.lastModified();
+                if (lastModified <= 0) {
+                    // the source does not tell
+                    return true;
+                }
+                long now = System.currentTimeMillis();
+                ConcurrentMap<String, Activity> known = activity(activity);
+                String key = key(category, name);
+                if (known.size() >= MAX_HEADS && !known.containsKey(key)) {
+                    known.clear();
+                }
+                known.put(key, new Activity(lastModified, now));
+                if (now - lastModified > maxAge) {
+                    listener.getLogger().format("      No commit in the last %d days%n", days);
+                    return false;
+                }
+                return true;
+            }
+        });
+    }
+
+    /**
+     * The last commit of a head.
+     */
+    private static final class Activity {
+
+        /**
+         * The time of the last commit, in milliseconds since the epoch.
+         */
+        private final long lastModified;
+
+        /**
+         * When the head was probed, in milliseconds since the epoch.
+         */
+        private final long checked;
+
+        private Activity(long lastModified, long checked) {
+            this.lastModified = lastModified;
+            this.checked = checked;
+        }
+    }
+
+    /**
+     * Our descriptor.
+     */
+    @Symbol("staleHeadFilter")
+    @Extension
+    @Selection
+    public static class DescriptorImpl extends SCMSourceTraitDescriptor {
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String getDisplayName() {
+            return Messages.StaleHeadSCMFilterTrait_DisplayName();
+        }
+
+        /**
+         * Form validation for the number of days.
+         *
+         * @param value the number of days.
+         * @return the validation results.
+         */
+        @Restricted(NoExternalUse.class) // stapler
+        public FormValidation doCheckDays(@QueryParameter String value) {
+            return FormChecks.positive(value, "days");
+        }
+    }
+}
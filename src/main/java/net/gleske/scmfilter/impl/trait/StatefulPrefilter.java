@@ -0,0 +1,214 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017-2020, Sam Gleske - https://github.com/samrocketman
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.gleske.scmfilter.impl.trait;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import java.util.Collection;
+import java.util.Comparator;
+import jenkins.scm.api.SCMHead;
+import jenkins.scm.api.SCMSource;
+import jenkins.scm.api.trait.SCMSourceContext;
+import jenkins.scm.api.trait.SCMSourceTrait;
+
+/**
+ * The base class of the prefilters whose decision on a head depends on the other heads of the source, such as the
+ * latest tags, rather than on its name alone. They decide on whole heads, their decisions are never cached, and they
+ * keep the latest values of each key, such as the latest change request IDs of each target branch.
+ * <p>
+ * A scan starts from the values the previous scan of the source kept, see {@link SourceStates}, and adds the values
+ * it lists, so the pick does not depend on the order the source lists the heads in. {@link #prepare} shows the
+ * prefilter all the heads when they are known up front, which makes the pick exact from the first head on. Only
+ * prefilters deciding for a full scan, see {@link #isScan()}, learn from the heads they decide on, the others compare
+ * the heads with the values the previous scan kept.
+ * <p>
+ * Their traits are not {@link StatelessFilter stateless filters}: events and head snapshot deltas decide on heads
+ * one at a time, without the other heads, so they leave these prefilters out. Previews show them all the heads.
+ *
+ * @param <K> the type of keys.
+ * @param <V> the type of values.
+ */
+abstract class StatefulPrefilter<K, V> extends FilterPrefilter {
+
+    /**
+     * The values the last scan of each source listed.
+     */
+    @NonNull
+    private final SourceStates<LatestPerKey<K, V>> kept;
+
+    /**
+     * The number of values to keep per key.
+     */
+    private final int count;
+
+    /**
+     * The order of the values, latest last.
+     */
+    @NonNull
+    private final Comparator<? super V> order;
+
+    /**
+     * The latest values of the source last seen.
+     */
+    @CheckForNull
+    private volatile Latest<K, V> latest;
+
+    /**
+     * Constructor.
+     *
+     * @param trait the trait that creates this prefilter.
+     * @param context the context the trait decorates with this prefilter.
+     * @param kept the values the last scan of each source listed, shared by the prefilters of the trait type.
+     * @param count the number of values to keep per key.
+     * @param order the order of the values, latest last.
+     */
+    StatefulPrefilter(@NonNull SCMSourceTrait trait, @NonNull SCMSourceContext<?, ?> context,
+                      @NonNull SourceStates<LatestPerKey<K, V>> kept, int count,
+                      @NonNull Comparator<? super V> order) {
+        super(trait, context);
+        this.kept = kept;
+        this.count = count;
+        this.order = order;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected final boolean evaluate(@NonNull SCMSource source, @NonNull SCMHead head) {
+        return decide(source, head);
+    }
+
+    /**
+     * Decides if a head should be excluded, usually with {@link #isLatest}.
+     *
+     * @param source the source the head belongs to.
+     * @param head the head.
+     * @return {@code true} if the head should be excluded.
+     */
+    protected abstract boolean decide(@NonNull SCMSource source, @NonNull SCMHead head);
+
+    /**
+     * Offers the value of a head, if it has one.
+     *
+     * @param head the head.
+     * @param latest the latest values.
+     */
+    protected abstract void offer(@NonNull SCMHead head, @NonNull LatestPerKey<K, V> latest);
+
+    /**
+     * Gets the key a value the previous scan kept is offered under.
+     *
+     * @param key the key the value was kept under.
+     * @param value the value.
+     * @return the key, the one the value was kept under unless the configuration changed how values are keyed.
+     */
+    @NonNull
+    protected K keyOf(@NonNull K key, @NonNull V value) {
+        return key;
+    }
+
+    /**
+     * Checks if a value is one of the latest of its key, adding it to the latest values when deciding for a scan.
+     *
+     * @param source the source the value belongs to.
+     * @param key the key.
+     * @param value the value.
+     * @return {@code true} if the value is one of the latest of its key.
+     */
+    protected final boolean isLatest(@NonNull SCMSource source, @NonNull K key, @NonNull V value) {
+        Latest<K, V> latest = this.latest;
+        if (latest == null || latest.source != source) {
+            LatestPerKey<K, V> values = new LatestPerKey<>(count, order);
+            LatestPerKey<K, V> kept = this.kept.get(source);
+            if (kept != null) {
+                kept.forEach((k, v) -> values.offer(keyOf(k, v), v));
+            }
+            latest = start(source, values);
+        }
+        if (!isScan()) {
+            return latest.values.isLatest(key, value);
+        }
+        latest.listed.offer(key, value);
+        return latest.values.offer(key, value);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected final void prepare(@NonNull SCMSource source, @NonNull Collection<? extends SCMHead> heads) {
+        // all the heads are known, the values the last scan kept do not matter
+        LatestPerKey<K, V> values = new LatestPerKey<>(count, order);
+        for (SCMHead head : heads) {
+            offer(head, values);
+        }
+        start(source, values);
+    }
+
+    /**
+     * Starts deciding on the heads of a source, making the values this scan lists the ones the next scan starts from.
+     *
+     * @param source the source.
+     * @param values the latest values known so far.
+     * @return the latest values of the source.
+     */
+    @NonNull
+    private Latest<K, V> start(@NonNull SCMSource source, @NonNull LatestPerKey<K, V> values) {
+        LatestPerKey<K, V> listed = new LatestPerKey<>(count, order);
+        if (isScan()) {
+            kept.put(source, listed);
+        }
+        Latest<K, V> latest = new Latest<>(source, values, listed);
+        this.latest = latest;
+        return latest;
+    }
+
+    /**
+     * The latest values of a source.
+     *
+     * @param <K> the type of keys.
+     * @param <V> the type of values.
+     */
+    private static final class Latest<K, V> {
+        private final SCMSource source;
+
+        /**
+         * The latest values of each key, including the ones kept by the last scan.
+         */
+        private final LatestPerKey<K, V> values;
+
+        /**
+         * The latest values of each key listed by this scan only.
+         */
+        private final LatestPerKey<K, V> listed;
+
+        private Latest(SCMSource source, LatestPerKey<K, V> values, LatestPerKey<K, V> listed) {
+            this.source = source;
+            this.values = values;
+            this.listed = listed;
+        }
+    }
+}
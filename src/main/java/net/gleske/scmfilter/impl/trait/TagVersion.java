@@ -0,0 +1,230 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017-2020, Sam Gleske - https://github.com/samrocketman
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.gleske.scmfilter.impl.trait;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The semantic version of a tag name such as {@code v1.2.3} or {@code 2.0.0-rc.1+build.5}: an optional {@code v},
+ * two or three numbers, an optional pre-release and an optional build metadata, which is ignored. Versions are ordered
+ * by semantic versioning precedence, a missing patch number counting as {@code 0}.
+ */
+final class TagVersion implements Comparable<TagVersion> {
+
+    /**
+     * The most digits of a number, so that it fits in a {@code long}.
+     */
+    private static final int MAX_DIGITS = 18;
+
+    /**
+     * The major, minor and patch numbers.
+     */
+    @NonNull
+    private final long[] numbers;
+
+    /**
+     * The pre-release identifiers, empty for a release.
+     */
+    @NonNull
+    private final String[] prerelease;
+
+    private TagVersion(@NonNull long[] numbers, @NonNull String[] prerelease) {
+        this.numbers = numbers;
+        this.prerelease = prerelease;
+    }
+
+    /**
+     * Parses the version of a tag name.
+     *
+     * @param name the tag name.
+     * @return the version, or {@code null} if the name is not a version.
+     */
+    @CheckForNull
+    static TagVersion parse(@NonNull String name) {
+        int i = name.startsWith("v") || name.startsWith("V") ? 1 : 0;
+        long[] numbers = new long[3];
+        int count = 0;
+        while (count < 3) {
+            int start = i;
+            while (i < name.length() && name.charAt(i) >= '0' && name.charAt(i) <= '9') {
+                i++;
+            }
+            if (i == start || i - start > MAX_DIGITS) {
+                return null;
+            }
+            numbers[count++] = Long.parseLong(name, start, i, 10);
+            if (count == 3 || i == name.length() || name.charAt(i) != '.') {
+                break;
+            }
+            i++;
+        }
+        if (count < 2) {
+            return null;
+        }
+        String[] prerelease = new String[0];
+        if (i < name.length() && name.charAt(i) == '-') {
+            int end = name.indexOf('+', i);
+            prerelease = identifiers(name.substring(i + 1, end < 0 ? name.length() : end));
+            if (prerelease == null) {
+                return null;
+            }
+            i = end < 0 ? name.length() : end;
+        }
+        if (i < name.length() && (name.charAt(i) != '+' || identifiers(name.substring(i + 1)) == null)) {
+            return null;
+        }
+        return new TagVersion(numbers, prerelease);
+    }
+
+    /**
+     * Splits dot-separated identifiers.
+     *
+     * @param text the identifiers.
+     * @return the identifiers, or {@code null} if one is empty or has characters other than ASCII letters, digits and
+     *         hyphens.
+     */
+    @CheckForNull
+    private static String[] identifiers(@NonNull String text) {
+        List<String> identifiers = new ArrayList<>();
+        for (String identifier : text.split("\\.", -1)) {
+            if (identifier.isEmpty()) {
+                return null;
+            }
+            for (int i = 0; i < identifier.length(); i++) {
+                char c = identifier.charAt(i);
+                if (!(c >= '0' && c <= '9' || c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c == '-')) {
+                    return null;
+                }
+            }
+            identifiers.add(identifier);
+        }
+        return identifiers.toArray(new String[0]);
+    }
+
+    /**
+     * Gets the major number.
+     *
+     * @return the major number.
+     */
+    long getMajor() {
+        return numbers[0];
+    }
+
+    /**
+     * Checks if this is a pre-release.
+     *
+     * @return {@code true} if this is a pre-release.
+     */
+    boolean isPrerelease() {
+        return prerelease.length > 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int compareTo(@NonNull TagVersion other) {
+        for (int i = 0; i < numbers.length; i++) {
+            int comparison = Long.compare(numbers[i], other.numbers[i]);
+            if (comparison != 0) {
+                return comparison;
+            }
+        }
+        if (prerelease.length == 0 || other.prerelease.length == 0) {
+            // a release has precedence over its pre-releases
+            return Boolean.compare(prerelease.length == 0, other.prerelease.length == 0);
+        }
+        for (int i = 0; i < Math.min(prerelease.length, other.prerelease.length); i++) {
+            int comparison = compare(prerelease[i], other.prerelease[i]);
+            if (comparison != 0) {
+                return comparison;
+            }
+        }
+        return Integer.compare(prerelease.length, other.prerelease.length);
+    }
+
+    /**
+     * Compares pre-release identifiers: numeric identifiers numerically and before alphanumeric ones, which are
+     * compared in ASCII order.
+     *
+     * @param identifier an identifier.
+     * @param other another identifier.
+     * @return the comparison.
+     */
+    private static int compare(@NonNull String identifier, @NonNull String other) {
+        boolean numeric = isNumeric(identifier);
+        boolean otherNumeric = isNumeric(other);
+        if (numeric && otherNumeric) {
+            return identifier.length() != other.length() ? Integer.compare(identifier.length(), other.length())
+                    : identifier.compareTo(other);
+        }
+        if (numeric != otherNumeric) {
+            return numeric ? -1 : 1;
+        }
+        return identifier.compareTo(other);
+    }
+
+    private static boolean isNumeric(@NonNull String identifier) {
+        for (int i = 0; i < identifier.length(); i++) {
+            if (identifier.charAt(i) < '0' || identifier.charAt(i) > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof TagVersion && compareTo((TagVersion) o) == 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(numbers) * 31 + Arrays.hashCode(prerelease);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder().append(numbers[0]).append('.').append(numbers[1]).append('.')
+                .append(numbers[2]);
+        if (prerelease.length > 0) {
+            result.append('-').append(String.join(".", prerelease));
+        }
+        return result.toString();
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017, CloudBees, Inc.
+ * Copyright (c) 2017-2020, Sam Gleske - https://github.com/samrocketman
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.gleske.scmfilter.impl.trait;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * An immutable, compiled form of a space-separated list of wildcard rules such as {@code master release*}.
+ * The rules are parsed once into {@link GlobPattern} instances so that matching a head name does not need to rebuild
+ * or recompile anything and does not go through the regular expression engine.
+ * <p>
+ * Rules are indexed by shape: exact names go into a hash set, pure prefix rules ({@code release*}) and pure suffix
+ * rules ({@code *-lts}) go into tries, and only the remaining general rules are checked one by one. Matching a name is
+ * therefore close to linear in the length of the name no matter how many exact, prefix or suffix rules there are.
+ */
+final class WildcardRules implements NameMatcher {
+
+    /**
+     * The rules this instance was compiled from.
+     */
+    @NonNull
+    private final String rules;
+
+    /**
+     * The rules without wildcards.
+     */
+    @NonNull
+    private final Set<String> exact;
+
+    /**
+     * The literal prefixes of the rules such as {@code release*}.
+     */
+    @NonNull
+    private final CharTrie prefixes;
+
+    /**
+     * The literal suffixes of the rules such as {@code *-lts}.
+     */
+    @NonNull
+    private final CharTrie suffixes;
+
+    /**
+     * The remaining rules, which have to be checked one by one.
+     */
+    @NonNull
+    private final GlobPattern[] globs;
+
+    /**
+     * {@code true} if any of the rules contains a wildcard.
+     */
+    private final boolean wildcard;
+
+    private WildcardRules(@NonNull String rules) {
+        this.rules = rules;
+        Set<String> exact = new HashSet<>();
+        Set<String> prefixes = new HashSet<>();
+        Set<String> suffixes = new HashSet<>();
+        List<GlobPattern> globs = new ArrayList<>();
+        boolean nonEmpty = false;
+        boolean wildcard = false;
+        for (String rule : rules.split(" ")) {
+            // the regular expression translation only gets an empty alternative (matching an empty name) for an
+            // empty rule that follows a non-empty one, e.g. "a  b", so leading empty rules are ignored
+            if (rule.isEmpty() && !nonEmpty) {
+                continue;
+            }
+            nonEmpty = true;
+            GlobPattern glob = GlobPattern.compile(rule);
+            wildcard |= glob.isWildcard();
+            if (!glob.isWildcard()) {
+                exact.add(rule);
+            } else if (glob.getPrefixRule() != null) {
+                prefixes.add(glob.getPrefixRule());
+            } else if (glob.getSuffixRule() != null) {
+                suffixes.add(glob.getSuffixRule());
+            } else {
+                globs.add(glob);
+            }
+        }
+        if (!nonEmpty) {
+            // an empty regular expression only matches an empty name
+            exact.add("");
+        }
+        this.exact = exact;
+        this.prefixes = CharTrie.prefixes(prefixes);
+        this.suffixes = CharTrie.suffixes(suffixes);
+        this.globs = globs.toArray(new GlobPattern[0]);
+        this.wildcard = wildcard;
+    }
+
+    /**
+     * Compiles a space-separated list of wildcard rules.
+     *
+     * @param rules the wildcard rules, {@code null} is treated as an empty list.
+     * @return the compiled rules.
+     */
+    @NonNull
+    static WildcardRules compile(@CheckForNull String rules) {
+        return new WildcardRules(rules == null ? "" : rules);
+    }
+
+    /**
+     * Returns the rules this instance was compiled from.
+     *
+     * @return the rules this instance was compiled from.
+     */
+    @NonNull
+    String getRules() {
+        return rules;
+    }
+
+    /**
+     * Checks if the supplied name matches any of the rules.
+     *
+     * @param name the name to check.
+     * @return {@code true} if the name matches any of the rules.
+     */
+    @Override
+    public boolean matches(@NonNull String name) {
+        if (exact.contains(name)) {
+            return true;
+        }
+        // a wildcard never matches a line terminator, only the rare rules containing one can still match
+        boolean lineTerminator = wildcard && GlobPattern.hasLineTerminator(name);
+        if (!lineTerminator && (prefixes.matches(name) || suffixes.matches(name))) {
+            return true;
+        }
+        for (GlobPattern glob : globs) {
+            if (glob.matches(name, lineTerminator)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the regular expression corresponding to the branches containing wildcards. This is the reference
+     * translation that {@link GlobPattern} reproduces without using the regular expression engine.
+     *
+     * @param branches the names of branches to create a pattern for
+     * @return regular expression corresponding to the branches containing wildcards
+     */
+    @NonNull
+    static String toRegex(@NonNull String branches) {
+        StringBuilder quotedBranches = new StringBuilder();
+        for (String wildcard : branches.split(" ")) {
+            StringBuilder quotedBranch = new StringBuilder();
+            for (String branch : wildcard.split("(?=[*])|(?<=[*])")) {
+                if (branch.equals("*")) {
+                    quotedBranch.append(".*");
+                } else if (!branch.isEmpty()) {
+                    quotedBranch.append(Pattern.quote(branch));
+                }
+            }
+            if (quotedBranches.length() > 0) {
+                quotedBranches.append("|");
+            }
+            quotedBranches.append(quotedBranch);
+        }
+        return quotedBranches.toString();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return rules;
+    }
+}
@@ -28,11 +28,11 @@ package net.gleske.scmfilter.impl.trait;
 import edu.umd.cs.findbugs.annotations.CheckForNull;
 import edu.umd.cs.findbugs.annotations.NonNull;
 import hudson.Extension;
-import java.util.regex.Pattern;
+import hudson.model.Item;
+import java.io.IOException;
+import java.util.Set;
 import jenkins.scm.api.SCMHead;
 import jenkins.scm.api.SCMSource;
-import jenkins.scm.api.mixin.ChangeRequestSCMHead;
-import jenkins.scm.api.mixin.TagSCMHead;
 import jenkins.scm.api.trait.SCMHeadPrefilter;
 import jenkins.scm.api.trait.SCMSourceContext;
 import jenkins.scm.api.trait.SCMSourceTrait;
@@ -40,7 +40,13 @@ import jenkins.scm.api.trait.SCMSourceTraitDescriptor;
 import jenkins.scm.impl.trait.Selection;
 import org.apache.commons.lang3.StringUtils;
 import org.jenkinsci.Symbol;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+import org.kohsuke.stapler.AncestorInPath;
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.StaplerRequest2;
+import org.kohsuke.stapler.StaplerResponse2;
+import org.kohsuke.stapler.interceptor.RequirePOST;
 
 /**
  * Decorates a {@link SCMSource} with a {@link SCMHeadPrefilter} that filters {@link SCMHead} instances based on
@@ -48,7 +54,7 @@ import org.kohsuke.stapler.DataBoundConstructor;
  *
  * @since 0.1
  */
-public class WildcardSCMHeadFilterTrait extends SCMSourceTrait {
+public class WildcardSCMHeadFilterTrait extends SCMSourceTrait implements StatelessFilter {
 
     /**
      * The branch include rules.
@@ -74,6 +80,32 @@ public class WildcardSCMHeadFilterTrait extends SCMSourceTrait {
     @NonNull
     private final String tagExcludes;
 
+    /**
+     * The compiled branch include rules.
+     */
+    private transient NameMatcher includeRules;
+
+    /**
+     * The compiled branch exclude rules.
+     */
+    private transient NameMatcher excludeRules;
+
+    /**
+     * The compiled tag include rules.
+     */
+    private transient NameMatcher tagIncludeRules;
+
+    /**
+     * The compiled tag exclude rules.
+     */
+    private transient NameMatcher tagExcludeRules;
+
+    /**
+     * The decisions of this trait if caching is enabled, dropped whenever the rules are compiled.
+     */
+    @CheckForNull
+    private transient volatile DecisionCache cache;
+
     /**
      * Stapler constructor.
      *
@@ -88,6 +120,7 @@ public class WildcardSCMHeadFilterTrait extends SCMSourceTrait {
         this.excludes = StringUtils.defaultIfBlank(excludes, "");
         this.tagIncludes = StringUtils.defaultIfBlank(tagIncludes, "");
         this.tagExcludes = StringUtils.defaultIfBlank(tagExcludes, "");
+        compileRules();
     }
 
     /**
@@ -102,6 +135,29 @@ public class WildcardSCMHeadFilterTrait extends SCMSourceTrait {
         this.excludes = StringUtils.defaultIfBlank(excludes, "");
         this.tagIncludes = "";
         this.tagExcludes = "*";
+        compileRules();
+    }
+
+    /**
+     * Compiles the rules after deserialization.
+     *
+     * @return this instance.
+     */
+    protected Object readResolve() {
+        compileRules();
+        return this;
+    }
+
+    /**
+     * Compiles the include/exclude rules so that the prefilter only needs to match. Identical rules are shared with
+     * all other traits through {@link CompiledPatterns}.
+     */
+    private void compileRules() {
+        cache = DecisionCache.create();
+        includeRules = CompiledPatterns.wildcard(StringUtils.defaultString(includes));
+        excludeRules = CompiledPatterns.wildcard(StringUtils.defaultString(excludes));
+        tagIncludeRules = CompiledPatterns.wildcard(StringUtils.defaultString(tagIncludes));
+        tagExcludeRules = CompiledPatterns.wildcard(StringUtils.defaultString(tagExcludes));
     }
 
     /**
@@ -145,47 +201,23 @@ public class WildcardSCMHeadFilterTrait extends SCMSourceTrait {
      */
     @Override
     protected void decorateContext(SCMSourceContext<?, ?> context) {
-        context.withPrefilter(new SCMHeadPrefilter() {
+        context.withPrefilter(new NamePrefilter(this, context, NamePrefilter.Subject.TARGET, cache) {
             @Override
-            public boolean isExcluded(@NonNull SCMSource request, @NonNull SCMHead head) {
-                if (head instanceof ChangeRequestSCMHead) {
-                    head = ((ChangeRequestSCMHead)head).getTarget();
-                }
-
-                if(head instanceof TagSCMHead) {
-                    return !Pattern.matches(getPattern(getTagIncludes()), head.getName())
-                         || Pattern.matches(getPattern(getTagExcludes()), head.getName());
+            protected boolean decide(@NonNull SCMSource source, @NonNull HeadCategory rules, @NonNull String name) {
+                if (rules == HeadCategory.TAG) {
+                    return !tagIncludeRules.matches(name)
+                         || tagExcludeRules.matches(name);
                 } else {
-                    return !Pattern.matches(getPattern(getIncludes()), head.getName())
-                         || Pattern.matches(getPattern(getExcludes()), head.getName());
+                    return !includeRules.matches(name)
+                         || excludeRules.matches(name);
                 }
             }
-        });
-    }
 
-    /**
-     * Returns the pattern corresponding to the branches containing wildcards.
-     *
-     * @param branches the names of branches to create a pattern for
-     * @return pattern corresponding to the branches containing wildcards
-     */
-    private String getPattern(String branches) {
-        StringBuilder quotedBranches = new StringBuilder();
-        for (String wildcard : branches.split(" ")) {
-            StringBuilder quotedBranch = new StringBuilder();
-            for (String branch : wildcard.split("(?=[*])|(?<=[*])")) {
-                if (branch.equals("*")) {
-                    quotedBranch.append(".*");
-                } else if (!branch.isEmpty()) {
-                    quotedBranch.append(Pattern.quote(branch));
-                }
-            }
-            if (quotedBranches.length() > 0) {
-                quotedBranches.append("|");
+            @Override
+            protected Set<String> prefixes(@NonNull HeadCategory rules) {
+                return DiscoveryHints.ofWildcards(rules == HeadCategory.TAG ? tagIncludes : includes);
             }
-            quotedBranches.append(quotedBranch);
-        }
-        return quotedBranches.toString();
+        });
     }
 
     /**
@@ -203,5 +235,21 @@ public class WildcardSCMHeadFilterTrait extends SCMSourceTrait {
         public String getDisplayName() {
             return Messages.WildcardSCMHeadFilterTrait_DisplayName();
         }
+
+        /**
+         * Previews the decisions of the configuration being edited on candidate names or on the heads a source
+         * last saw, without saving it.
+         *
+         * @param item the job the configuration belongs to, if any.
+         * @param req the request, see {@link FilterPreview}.
+         * @param rsp the response.
+         * @throws IOException if the request could not be read or the response could not be written.
+         */
+        @RequirePOST
+        @Restricted(NoExternalUse.class) // stapler
+        public void doPreview(@AncestorInPath Item item, StaplerRequest2 req, StaplerResponse2 rsp)
+                throws IOException {
+            FilterPreview.serve(WildcardSCMHeadFilterTrait.class, item, req, rsp);
+        }
     }
 }
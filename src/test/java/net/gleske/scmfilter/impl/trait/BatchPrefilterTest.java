@@ -0,0 +1,129 @@
+package net.gleske.scmfilter.impl.trait;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import jenkins.scm.api.SCMHead;
+import jenkins.scm.api.SCMSource;
+import jenkins.scm.api.trait.SCMHeadPrefilter;
+import jenkins.scm.impl.NullSCMSource;
+import org.junit.jupiter.api.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+
+@WithJenkins
+public class BatchPrefilterTest {
+
+    private final SCMSource source = new NullSCMSource();
+
+    @Test
+    void shouldReturnTheIncludedHeadsInOrder() {
+        TestSCMSourceContext context = TestSCMSourceContext.of(new WildcardSCMHeadFilterTrait("main release-*", "",
+                "v*", ""));
+        List<SCMHead> heads = Arrays.asList(TestHeads.branch("release-2"), TestHeads.branch("feature"),
+                TestHeads.tag("v1.0"), TestHeads.branch("main"), TestHeads.changeRequest("1", "main", "fix"),
+                TestHeads.changeRequest("2", "develop", "fix"));
+        assertThat(BatchPrefilter.included(source, context, heads), is(Arrays.asList(heads.get(0), heads.get(2),
+                heads.get(3), heads.get(4))));
+    }
+
+    @Test
+    void shouldDecideInParallelLikeOneByOne() {
+        TestSCMSourceContext context = TestSCMSourceContext.of(new RegexSCMHeadFilterTrait("(main|release-\\d+)",
+                "v\\d+\\.\\d+\\.0"), new WildcardSCMOriginFilterTrait("*", "*-wip", "*", ""));
+        List<SCMHead> heads = heads(50_000);
+        List<SCMHead> expected = new ArrayList<>();
+        for (SCMHead head : heads) {
+            if (!context.isExcluded(source, head)) {
+                expected.add(head);
+            }
+        }
+        assertThat(expected.size(), greaterThan(0));
+        assertThat(BatchPrefilter.included(source, context.prefilters(), heads, 1000, true), is(expected));
+        assertThat(BatchPrefilter.included(source, context.prefilters(), heads, 0, true), is(expected));
+    }
+
+    @Test
+    void shouldApplyOtherPrefiltersOnTheCallingThread() {
+        Set<Thread> threads = ConcurrentHashMap.newKeySet();
+        SCMHeadPrefilter other = new SCMHeadPrefilter() {
+            @Override
+            public boolean isExcluded(SCMSource source, SCMHead head) {
+                threads.add(Thread.currentThread());
+                return head.getName().endsWith("0");
+            }
+        };
+        List<SCMHeadPrefilter> prefilters = new ArrayList<>(TestSCMSourceContext.of(
+                new WildcardSCMHeadFilterTrait("release-*", "", "", "")).prefilters());
+        prefilters.add(other);
+        List<SCMHead> included = BatchPrefilter.included(source, prefilters, heads(20_000), 1000, true);
+        assertThat(threads, is(Set.of(Thread.currentThread())));
+        for (SCMHead head : included) {
+            assertThat(head.getName(), head.getName().startsWith("release-") && !head.getName().endsWith("0"),
+                    is(true));
+        }
+        assertThat(included.size(), is(4000));
+    }
+
+    @Test
+    void shouldRecordEachDecisionOnceForTheRequest() {
+        FilterMetrics.reset();
+        TestSCMSourceContext context = TestSCMSourceContext.of(new WildcardSCMHeadFilterTrait("release-*", "", "", ""));
+        List<SCMHead> heads = heads(2000);
+        List<SCMHead> included = BatchPrefilter.included(source, context, heads);
+        // the request decides on the included heads again
+        for (SCMHead head : included) {
+            assertThat(context.isExcluded(source, head), is(false));
+        }
+        FilterMetrics.Counters counters = FilterMetrics.forTrait("WildcardSCMHeadFilterTrait");
+        assertThat(counters.getEvaluations(), is((long) heads.size()));
+        assertThat(counters.getExcluded(), is((long) (heads.size() - included.size())));
+    }
+
+    @Test
+    void shouldFilterWithTheTraitsOfASourceWithoutRecording(JenkinsRule jenkinsRule) {
+        FilterMetrics.reset();
+        HeadSnapshots.setEnabled(true);
+        try {
+            SCMSource owned = TestSCMSourceContext.sourceOf("batch-without-context",
+                    new WildcardSCMHeadFilterTrait("release-*", "", "", ""));
+            List<SCMHead> heads = Arrays.asList(TestHeads.branch("release-1"), TestHeads.branch("feature"),
+                    TestHeads.tag("v1.0"), TestHeads.changeRequest("1", "release-1", "fix"));
+            assertThat(BatchPrefilter.included(owned, heads), is(Arrays.asList(heads.get(0), heads.get(3))));
+            assertThat(FilterMetrics.forTrait("WildcardSCMHeadFilterTrait").getEvaluations(), is(0L));
+            // a batch without a context is not a scan, the snapshot of the source is left alone
+            assertThat(HeadSnapshots.heads(owned).isEmpty(), is(true));
+        } finally {
+            HeadSnapshots.setEnabled(false);
+            HeadSnapshots.reset();
+        }
+    }
+
+    private static List<SCMHead> heads(int count) {
+        List<SCMHead> heads = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            switch (i % 4) {
+                case 0:
+                    heads.add(TestHeads.branch("release-" + i));
+                    break;
+                case 1:
+                    heads.add(TestHeads.branch("feature-" + i));
+                    break;
+                case 2:
+                    heads.add(TestHeads.tag("v" + i % 7 + "." + i % 3 + ".0"));
+                    break;
+                default:
+                    heads.add(TestHeads.changeRequest(Integer.toString(i), i % 8 == 3 ? "main" : "develop",
+                            i % 3 == 0 ? "fix-wip" : "fix"));
+                    break;
+            }
+        }
+        return heads;
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017-2020, Sam Gleske - https://github.com/samrocketman
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.gleske.scmfilter.impl.trait;
+
+import org.junit.jupiter.api.Test;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the JMH benchmarks. This class does not match the surefire test name patterns so it only runs on demand:
+ * <pre>
+ * mvn test -Dtest=BenchmarkRunner -Dsurefire.failIfNoSpecifiedTests=false
+ * </pre>
+ * The benchmarks to run can be narrowed with {@code -Dbenchmark.include=<regex>} and {@code -Dbenchmark.params=heads=1000}.
+ * Results are written to {@code target/jmh-report.json}.
+ */
+public class BenchmarkRunner {
+
+    @Test
+    void runJmhBenchmarks() throws Exception {
+        OptionsBuilder options = new OptionsBuilder();
+        options.include(System.getProperty("benchmark.include", PrefilterBenchmark.class.getName()))
+                .addProfiler(GCProfiler.class)
+                .shouldFailOnError(true)
+                .resultFormat(ResultFormatType.JSON)
+                .result("target/jmh-report.json");
+        String params = System.getProperty("benchmark.params");
+        if (params != null) {
+            for (String param : params.split(";")) {
+                String[] pair = param.split("=", 2);
+                options.param(pair[0], pair[1].split(","));
+            }
+        }
+        new Runner(options.build()).run();
+    }
+}
@@ -0,0 +1,107 @@
+package net.gleske.scmfilter.impl.trait;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import jenkins.scm.api.SCMHead;
+import jenkins.scm.api.SCMHeadObserver;
+import jenkins.scm.api.SCMSource;
+import jenkins.scm.impl.NullSCMSource;
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class ChangeRequestLimitSCMFilterTraitTest {
+
+    private final SCMSource source = new NullSCMSource();
+
+    @Test
+    void shouldKeepTheLatestChangeRequestsOfEachTarget() {
+        List<SCMHead> heads = new ArrayList<>();
+        for (int i = 1; i <= 1500; i++) {
+            heads.add(TestHeads.changeRequest(String.valueOf(i), i % 3 == 0 ? "main" : "develop", "fix-" + i));
+        }
+        heads.add(TestHeads.branch("main"));
+        heads.add(TestHeads.tag("v1.0"));
+        Collections.shuffle(heads);
+        TestSCMSourceContext context = TestSCMSourceContext.of(new ChangeRequestLimitSCMFilterTrait(3));
+        List<String> included = new ArrayList<>();
+        for (SCMHead head : BatchPrefilter.included(source, context, heads)) {
+            included.add(head.getName());
+        }
+        Collections.sort(included);
+        assertThat(included, is(Arrays.asList("PR-1494", "PR-1496", "PR-1497", "PR-1498", "PR-1499", "PR-1500",
+                "main", "v1.0")));
+    }
+
+    @Test
+    void shouldPickExactlyInOnePassWhenListedNewestFirst() {
+        TestSCMSourceContext context = TestSCMSourceContext.of(new ChangeRequestLimitSCMFilterTrait(2));
+        assertThat(context.isExcluded(source, TestHeads.changeRequest("12", "main", "a")), is(false));
+        assertThat(context.isExcluded(source, TestHeads.changeRequest("9", "main", "b")), is(false));
+        assertThat(context.isExcluded(source, TestHeads.changeRequest("10", "develop", "c")), is(false));
+        assertThat(context.isExcluded(source, TestHeads.changeRequest("8", "main", "d")), is(true));
+        assertThat(context.isExcluded(source, TestHeads.changeRequest("2", "main", "e")), is(true));
+        // deciding again does not change the pick
+        assertThat(context.isExcluded(source, TestHeads.changeRequest("12", "main", "a")), is(false));
+        // a source without a job starts over every scan
+        TestSCMSourceContext next = TestSCMSourceContext.of(new ChangeRequestLimitSCMFilterTrait(2));
+        assertThat(next.isExcluded(source, TestHeads.changeRequest("8", "main", "d")), is(false));
+    }
+
+    @Test
+    void shouldLimitChangeRequestsListedOldestFirstFromTheSecondScanOn() {
+        SCMSource owned = TestSCMSourceContext.sourceOf("change-request-limit-ascending");
+        List<SCMHead> heads = new ArrayList<>();
+        for (int i = 1; i <= 5; i++) {
+            heads.add(TestHeads.changeRequest(String.valueOf(i), "main", "fix-" + i));
+        }
+        heads.add(TestHeads.changeRequest("6", "develop", "fix-6"));
+        // the first scan has nothing to start from, every change request listed oldest first is the newest so far
+        assertThat(included(owned, heads), is(heads));
+        // the next scans start from the change requests the last one kept
+        for (int scan = 0; scan < 2; scan++) {
+            assertThat(included(owned, heads), is(Arrays.asList(heads.get(3), heads.get(4), heads.get(5))));
+        }
+        // a closed change request counts until the scan after it was closed
+        List<SCMHead> open = heads.subList(0, 4);
+        assertThat(included(owned, open), is(Collections.singletonList(heads.get(3))));
+        assertThat(included(owned, open), is(Arrays.asList(heads.get(2), heads.get(3))));
+        // events compare their change requests with the ones the last scan kept
+        TestSCMSourceContext event = new TestSCMSourceContext(SCMHeadObserver.select(heads.get(0)))
+                .decoratedWith(new ChangeRequestLimitSCMFilterTrait(2));
+        assertThat(event.isExcluded(owned, heads.get(1)), is(true));
+        assertThat(event.isExcluded(owned, TestHeads.changeRequest("7", "main", "fix-7")), is(false));
+    }
+
+    private static List<SCMHead> included(SCMSource source, List<SCMHead> heads) {
+        // saving the job binds a new trait, the state is kept per source
+        TestSCMSourceContext context = TestSCMSourceContext.of(new ChangeRequestLimitSCMFilterTrait(2));
+        List<SCMHead> included = new ArrayList<>();
+        for (SCMHead head : heads) {
+            if (!context.isExcluded(source, head)) {
+                included.add(head);
+            }
+        }
+        return included;
+    }
+
+    @Test
+    void shouldNotFilterEvents() {
+        assertThat(EventPrefilter.prefilters(Arrays.asList(new ChangeRequestLimitSCMFilterTrait(1),
+                new LatestTagsSCMFilterTrait(1))), is(Collections.emptyList()));
+    }
+
+    @Test
+    void shouldOrderIdsNumerically() {
+        List<String> ids = Arrays.asList("2", "010", "11", "100", "abc", "abd");
+        List<String> sorted = new ArrayList<>(ids);
+        Collections.shuffle(sorted);
+        sorted.sort(ChangeRequestLimitSCMFilterTrait.ID_ORDER);
+        assertThat(sorted, is(ids));
+        assertThrows(IllegalArgumentException.class, () -> new ChangeRequestLimitSCMFilterTrait(0));
+    }
+}
@@ -0,0 +1,117 @@
+package net.gleske.scmfilter.impl.trait;
+
+import java.util.Arrays;
+import java.util.List;
+import jenkins.scm.api.SCMHead;
+import jenkins.scm.api.SCMSource;
+import jenkins.scm.api.trait.SCMSourceTrait;
+import jenkins.scm.impl.NullSCMSource;
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class CombinedSCMFilterTraitTest {
+
+    private static final List<String> NAMES = Arrays.asList(
+            "main", "develop", "release-1.0", "release-0.9", "feature-1", "feature-x", "bugfix-1", "v1", "v1.0",
+            "v1.0-rc1", "PR-1");
+
+    private final SCMSource source = new NullSCMSource();
+
+    @Test
+    void shouldMatchEachKindOfHead() {
+        CombinedSCMFilterTrait trait = new CombinedSCMFilterTrait();
+        trait.setBranchIncludes("main release-*\nregex:[a-z]+(-\\d+(\\.\\d+)*)?");
+        trait.setBranchExcludes("release-0.*");
+        trait.setTargetIncludes("main develop");
+        trait.setOriginExcludes("bugfix-*");
+        trait.setTagIncludes("v*");
+        trait.setTagExcludes("*-rc*");
+        TestSCMSourceContext context = TestSCMSourceContext.of(trait);
+        assertThat(context.isExcluded(source, TestHeads.branch("main")), is(false));
+        assertThat(context.isExcluded(source, TestHeads.branch("release-1.0")), is(false));
+        assertThat(context.isExcluded(source, TestHeads.branch("release-0.9")), is(true));
+        assertThat(context.isExcluded(source, TestHeads.branch("release-x")), is(true));
+        assertThat(context.isExcluded(source, TestHeads.tag("v1.0")), is(false));
+        assertThat(context.isExcluded(source, TestHeads.tag("v1.0-rc1")), is(true));
+        assertThat(context.isExcluded(source, TestHeads.changeRequest("1", "develop", "feature-1")), is(false));
+        assertThat(context.isExcluded(source, TestHeads.changeRequest("2", "release-1.0", "feature-1")), is(true));
+        assertThat(context.isExcluded(source, TestHeads.changeRequest("3", "main", "bugfix-1")), is(true));
+        assertThat(context.isExcluded(source, TestHeads.changeRequestToTag("4", "v1.0", "feature-1")), is(false));
+        assertThat(context.isExcluded(source, TestHeads.changeRequestToTag("5", "v1.0-rc1", "feature-1")), is(true));
+    }
+
+    @Test
+    void shouldExcludeEverythingWithoutIncludeLines() {
+        CombinedSCMFilterTrait trait = new CombinedSCMFilterTrait();
+        trait.setBranchIncludes("\n  \n");
+        TestSCMSourceContext context = TestSCMSourceContext.of(trait);
+        assertThat(context.isExcluded(source, TestHeads.branch("main")), is(true));
+        assertThat(context.isExcluded(source, TestHeads.tag("v1.0")), is(true));
+        assertThat(context.isExcluded(source, TestHeads.changeRequest("1", "main", "feature")), is(false));
+    }
+
+    @Test
+    void shouldNotLetTargetRulesMatchTheOrigin() {
+        DecisionAutomaton rules = DecisionAutomaton.compile("*-lts", "", "*", "feature");
+        assertThat(rules.isExcluded("1.0-lts", "fix"), is(false));
+        assertThat(rules.isExcluded("main", "fix-lts"), is(true));
+        assertThat(rules.isExcluded("1.0-lts", "feature"), is(true));
+        assertThat(rules.isExcluded("1.0-lts", null), is(false));
+        assertThat(rules.isExcluded("1.0-lts\u0000x", "fix"), is(true));
+    }
+
+    @Test
+    void shouldRejectInvalidLines() {
+        CombinedSCMFilterTrait trait = new CombinedSCMFilterTrait();
+        trait.setBranchIncludes("regex:(a)\\1");
+        assertThrows(IllegalArgumentException.class, trait::precompile);
+    }
+
+    @Test
+    void shouldMigrateStackedTraits() {
+        List<SCMSourceTrait> traits = Arrays.asList(
+                new WildcardSCMHeadFilterTrait("main release-* develop", "release-0.*", "v*", "*-rc*"),
+                new RegexSCMOriginFilterTrait("main|develop|release-.*|feature-.*", "v\\d+(\\.\\d+)*"));
+        assertMigrated(traits);
+        List<SCMSourceTrait> migrated = CombinedSCMFilterTrait.migrate(traits);
+        assertThat(migrated.size(), is(1));
+        assertThat(migrated.get(0), instanceOf(CombinedSCMFilterTrait.class));
+    }
+
+    @Test
+    void shouldMigrateEachTrait() {
+        assertMigrated(Arrays.asList(new WildcardSCMHeadFilterTrait("main release-*", "release-0.*", "", "")));
+        assertMigrated(Arrays.asList(new WildcardSCMOriginFilterTrait("main feature-*", "", "v*", "")));
+        assertMigrated(Arrays.asList(new RegexSCMHeadFilterTrait("main|release-.*", "v\\d+")));
+        assertMigrated(Arrays.asList(new RegexSCMOriginFilterTrait("main|feature-.*", "(?!.*)")));
+    }
+
+    @Test
+    void shouldNotMigrateWithoutFilterTraits() {
+        assertThat(CombinedSCMFilterTrait.from(Arrays.asList()), nullValue());
+        assertThrows(IllegalArgumentException.class, () -> CombinedSCMFilterTrait.from(
+                Arrays.asList(new RegexSCMHeadFilterTrait("(?=main).*", "(?!.*)"))));
+    }
+
+    private void assertMigrated(List<SCMSourceTrait> traits) {
+        TestSCMSourceContext stacked = TestSCMSourceContext.of(traits.toArray(new SCMSourceTrait[0]));
+        TestSCMSourceContext combined = TestSCMSourceContext.of(CombinedSCMFilterTrait.from(traits));
+        int id = 0;
+        for (String name : NAMES) {
+            assertSame(stacked, combined, TestHeads.branch(name));
+            assertSame(stacked, combined, TestHeads.tag(name));
+            for (String other : NAMES) {
+                assertSame(stacked, combined, TestHeads.changeRequest(String.valueOf(id++), name, other));
+            }
+        }
+    }
+
+    private void assertSame(TestSCMSourceContext stacked, TestSCMSourceContext combined, SCMHead head) {
+        assertThat(head.toString(), combined.isExcluded(source, head), is(stacked.isExcluded(source, head)));
+    }
+}
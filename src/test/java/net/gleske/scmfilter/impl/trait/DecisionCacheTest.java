@@ -0,0 +1,86 @@
+package net.gleske.scmfilter.impl.trait;
+
+import jenkins.scm.api.SCMSource;
+import jenkins.scm.impl.NullSCMSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class DecisionCacheTest {
+
+    private final SCMSource source = new NullSCMSource();
+
+    @BeforeEach
+    void enableCache() {
+        System.setProperty(DecisionCache.SIZE, "2");
+        FilterMetrics.reset();
+    }
+
+    @AfterEach
+    void disableCache() {
+        System.clearProperty(DecisionCache.SIZE);
+    }
+
+    @Test
+    void shouldBeDisabledByDefault() {
+        System.clearProperty(DecisionCache.SIZE);
+        assertThat(DecisionCache.create(), is(nullValue()));
+    }
+
+    @Test
+    void shouldEvictLeastRecentlyUsed() {
+        DecisionCache cache = DecisionCache.create();
+        cache.put(HeadCategory.BRANCH, "a", true);
+        cache.put(HeadCategory.BRANCH, "b", false);
+        cache.get(HeadCategory.BRANCH, "a");
+        cache.put(HeadCategory.BRANCH, "c", false);
+        assertThat(cache.get(HeadCategory.BRANCH, "a"), is(true));
+        assertThat(cache.get(HeadCategory.BRANCH, "b"), is(nullValue()));
+        assertThat(cache.get(HeadCategory.TAG, "a"), is(nullValue()));
+    }
+
+    @Test
+    void shouldReuseDecisionsAcrossScans() {
+        WildcardSCMOriginFilterTrait trait = new WildcardSCMOriginFilterTrait("main feature-*", "", "v*", "");
+        for (int scan = 0; scan < 3; scan++) {
+            TestSCMSourceContext context = TestSCMSourceContext.of(trait);
+            assertThat(context.isExcluded(source, TestHeads.branch("main")), is(false));
+            assertThat(context.isExcluded(source, TestHeads.tag("main")), is(true));
+            assertThat(context.isExcluded(source, TestHeads.changeRequest("1", "main", "bugfix-1")), is(true));
+        }
+        FilterMetrics.Counters counters = FilterMetrics.forTrait("WildcardSCMOriginFilterTrait");
+        assertThat(counters.getCacheMisses(), is(3L));
+        assertThat(counters.getCacheHits(), is(6L));
+    }
+
+    @Test
+    void shouldDropDecisionsWhenRulesChange() {
+        RegexSCMHeadFilterTrait trait = new RegexSCMHeadFilterTrait("main", "(?!.*)");
+        TestSCMSourceContext.of(trait).isExcluded(source, TestHeads.branch("main"));
+        TestSCMSourceContext.of(trait).isExcluded(source, TestHeads.branch("main"));
+        assertThat(FilterMetrics.forTrait("RegexSCMHeadFilterTrait").getCacheHits(), is(1L));
+        trait.setLinearTime(true);
+        TestSCMSourceContext.of(trait).isExcluded(source, TestHeads.branch("main"));
+        assertThat(FilterMetrics.forTrait("RegexSCMHeadFilterTrait").getCacheHits(), is(1L));
+        assertThat(FilterMetrics.forTrait("RegexSCMHeadFilterTrait").getCacheMisses(), is(2L));
+    }
+
+    @Test
+    void shouldNotCacheDecisionsPastTheMatchBudget() {
+        System.setProperty(MatchBudget.MILLIS, "1");
+        try {
+            RegexSCMHeadFilterTrait trait = new RegexSCMHeadFilterTrait("((a+)+)+b", "(?!.*)");
+            String name = "a".repeat(40) + "!";
+            for (int scan = 0; scan < 2; scan++) {
+                assertThat(TestSCMSourceContext.of(trait).isExcluded(source, TestHeads.branch(name)), is(true));
+            }
+            assertThat(FilterMetrics.forTrait("RegexSCMHeadFilterTrait").getCacheHits(), is(0L));
+        } finally {
+            System.clearProperty(MatchBudget.MILLIS);
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package net.gleske.scmfilter.impl.trait;
+
+import hudson.model.FreeStyleProject;
+import hudson.model.Items;
+import hudson.util.FormValidation;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import jenkins.model.Jenkins;
+import jenkins.scm.api.SCMSource;
+import jenkins.scm.impl.NullSCMSource;
+import org.junit.jupiter.api.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@WithJenkins
+public class DenyListSCMFilterTraitTest {
+
+    private final SCMSource source = new NullSCMSource();
+
+    @Test
+    void shouldContainExactlyTheListedNames() {
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < 100_000; i++) {
+            names.add("stale/" + i);
+        }
+        DenyList list = DenyList.of(names);
+        assertThat(list.size(), is(100_000));
+        for (String name : names) {
+            assertThat(name, list.contains(name), is(true));
+        }
+        assertThat(list.contains("stale/"), is(false));
+        assertThat(list.contains("stale/100000"), is(false));
+        assertThat(list.contains("stale/1 "), is(false));
+        assertThat(list.contains(""), is(false));
+        assertThat(DenyList.of(Arrays.asList()).contains("main"), is(false));
+    }
+
+    @Test
+    void shouldRejectMostUnlistedNamesWithTheBloomFilter() {
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < 100_000; i++) {
+            names.add("feature/JIRA-" + i);
+        }
+        DenyList list = DenyList.of(names);
+        int passed = 0;
+        for (int i = 0; i < 100_000; i++) {
+            String name = "bugfix/JIRA-" + i;
+            assertThat(name, list.contains(name), is(false));
+            if (list.mayContain(name)) {
+                passed++;
+            }
+        }
+        // about 1% of the names get past the Bloom filter to the binary search
+        assertThat(passed, lessThan(2_000));
+    }
+
+    @Test
+    void shouldLoadAFileAndReloadItWhenItChanges() throws IOException {
+        Path directory = Files.createTempDirectory("deny-list");
+        try {
+            Path file = directory.resolve("stale.txt");
+            Files.write(file, "# abandoned\nold-feature\n\n  spike  \n".getBytes(StandardCharsets.UTF_8));
+            DenyList list = DenyList.load(file);
+            assertThat(list.size(), is(2));
+            assertThat(list.contains("old-feature"), is(true));
+            assertThat(list.contains("spike"), is(true));
+            assertThat(list.contains("# abandoned"), is(false));
+            assertThat(DenyList.load(file) == list, is(true));
+
+            Files.write(file, "old-feature\nexperiment\n".getBytes(StandardCharsets.UTF_8));
+            Files.setLastModifiedTime(file, FileTime.fromMillis(Files.getLastModifiedTime(file).toMillis() + 2000));
+            DenyList reloaded = DenyList.load(file);
+            assertThat(reloaded.contains("spike"), is(false));
+            assertThat(reloaded.contains("experiment"), is(true));
+        } finally {
+            DenyList.reset();
+            try (var files = Files.list(directory)) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    Files.delete(file);
+                }
+            }
+            Files.delete(directory);
+        }
+    }
+
+    @Test
+    void shouldForgetTheListsOfDeletedJobs(JenkinsRule jenkinsRule) throws Exception {
+        FreeStyleProject job = jenkinsRule.createFreeStyleProject("deny-list-job");
+        FreeStyleProject other = jenkinsRule.createFreeStyleProject("deny-list-job-2");
+        try {
+            DenyListSCMFilterTrait trait = new DenyListSCMFilterTrait("stale.txt");
+            for (FreeStyleProject project : Arrays.asList(job, other)) {
+                Files.write(trait.resolve(project), "old-feature\n".getBytes(StandardCharsets.UTF_8));
+                DenyList.load(trait.resolve(project));
+            }
+            assertThat(DenyList.loaded(), is(2));
+            job.delete();
+            // the list of the job whose name starts with the one of the deleted job is kept
+            assertThat(DenyList.loaded(), is(1));
+            assertThat(DenyList.load(trait.resolve(other)).contains("old-feature"), is(true));
+        } finally {
+            DenyList.reset();
+        }
+    }
+
+    @Test
+    void shouldExcludeListedHeadsAndChangeRequestsTargetingThem(JenkinsRule jenkinsRule) throws IOException {
+        Path file = Jenkins.get().getRootDir().toPath().resolve(DenyListSCMFilterTrait.DIRECTORY)
+                .resolve("deny-list-test.txt");
+        Files.createDirectories(file.getParent());
+        Files.write(file, "old-feature\nv0.1\n".getBytes(StandardCharsets.UTF_8));
+        try {
+            DenyListSCMFilterTrait trait = new DenyListSCMFilterTrait("deny-list-test.txt");
+            trait.setRoot(DenyListSCMFilterTrait.Root.CONTROLLER);
+            TestSCMSourceContext context = TestSCMSourceContext.of(trait);
+            assertThat(context.isExcluded(source, TestHeads.branch("old-feature")), is(true));
+            assertThat(context.isExcluded(source, TestHeads.branch("main")), is(false));
+            assertThat(context.isExcluded(source, TestHeads.tag("v0.1")), is(true));
+            assertThat(context.isExcluded(source, TestHeads.tag("v1.0")), is(false));
+            assertThat(context.isExcluded(source, TestHeads.changeRequest("1", "old-feature", "fix")), is(true));
+            assertThat(context.isExcluded(source, TestHeads.changeRequest("2", "main", "old-feature")), is(false));
+        } finally {
+            Files.delete(file);
+            DenyList.reset();
+        }
+    }
+
+    @Test
+    void shouldFailTheScanWhenTheListCannotBeRead(JenkinsRule jenkinsRule) {
+        DenyListSCMFilterTrait trait = new DenyListSCMFilterTrait("missing.txt");
+        trait.setRoot(DenyListSCMFilterTrait.Root.CONTROLLER);
+        TestSCMSourceContext context = TestSCMSourceContext.of(trait);
+        assertThrows(IllegalStateException.class, () -> context.isExcluded(source, TestHeads.branch("main")));
+        // a source without a job has no job directory
+        TestSCMSourceContext job = TestSCMSourceContext.of(new DenyListSCMFilterTrait("stale.txt"));
+        assertThrows(IllegalStateException.class, () -> job.isExcluded(source, TestHeads.branch("main")));
+    }
+
+    @Test
+    void shouldKeepSharedListsInTheirDirectory(JenkinsRule jenkinsRule) {
+        DenyListSCMFilterTrait trait = new DenyListSCMFilterTrait("lists/../stale.txt");
+        trait.setRoot(DenyListSCMFilterTrait.Root.CONTROLLER);
+        Path directory = Jenkins.get().getRootDir().toPath().resolve(DenyListSCMFilterTrait.DIRECTORY);
+        assertThat(trait.resolve(null), is(directory.resolve("stale.txt")));
+        FormValidation validation = new DenyListSCMFilterTrait.DescriptorImpl()
+                .doCheckFile(null, "config.xml", "CONTROLLER");
+        assertThat(validation.kind, is(FormValidation.Kind.WARNING));
+        assertThat(validation.getMessage(), not(containsString(Jenkins.get().getRootDir().getPath())));
+    }
+
+    @Test
+    void shouldKeepListsLoadedFromXmlInTheirDirectory(JenkinsRule jenkinsRule) {
+        DenyListSCMFilterTrait trait = (DenyListSCMFilterTrait) Items.XSTREAM2.fromXML(
+                "<net.gleske.scmfilter.impl.trait.DenyListSCMFilterTrait>"
+                        + "<file>../secrets/master.key</file><root>CONTROLLER</root>"
+                        + "</net.gleske.scmfilter.impl.trait.DenyListSCMFilterTrait>");
+        assertThrows(IllegalStateException.class, () -> trait.resolve(null));
+        TestSCMSourceContext context = TestSCMSourceContext.of(trait);
+        assertThrows(IllegalStateException.class, () -> context.isExcluded(source, TestHeads.branch("main")));
+    }
+
+    @Test
+    void shouldRejectFilesOutsideTheDirectory() {
+        assertThrows(IllegalArgumentException.class, () -> new DenyListSCMFilterTrait(""));
+        assertThrows(IllegalArgumentException.class, () -> new DenyListSCMFilterTrait("../secrets/master.key"));
+        assertThrows(IllegalArgumentException.class, () -> new DenyListSCMFilterTrait("lists/../../config.xml"));
+        assertThrows(IllegalArgumentException.class, () -> new DenyListSCMFilterTrait("/etc/passwd"));
+        assertThat(new DenyListSCMFilterTrait("lists/stale.txt").getFile(), is("lists/stale.txt"));
+    }
+}
@@ -0,0 +1,61 @@
+package net.gleske.scmfilter.impl.trait;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.TreeSet;
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class DiscoveryHintsTest {
+
+    @Test
+    void shouldDerivePrefixesFromWildcards() {
+        assertThat(DiscoveryHints.ofWildcards("release/*"), is(set("release/")));
+        assertThat(DiscoveryHints.ofWildcards("main release-* release-1*"), is(set("main", "release-")));
+        assertThat(DiscoveryHints.ofWildcards("main *-lts"), nullValue());
+    }
+
+    @Test
+    void shouldDerivePrefixesFromRegularExpressions() {
+        assertThat(DiscoveryHints.ofRegex("^hotfix-\\d+"), is(set("hotfix-")));
+        assertThat(DiscoveryHints.ofRegex("main|release/.*"), is(set("main", "release/")));
+        assertThat(DiscoveryHints.ofRegex("v[12]\\..*"), is(set("v1.", "v2.")));
+        assertThat(DiscoveryHints.ofRegex("(?:feature|bugfix)/[A-Z]+-\\d+"), is(set("bugfix/", "feature/")));
+        assertThat(DiscoveryHints.ofRegex("(?!.*)"), is(set()));
+        assertThat(DiscoveryHints.ofRegex(".*-lts"), nullValue());
+        assertThat(DiscoveryHints.ofRegex("(?=main).*"), nullValue());
+    }
+
+    @Test
+    void shouldCombineTheFiltersOfAContext() {
+        TestSCMSourceContext context = TestSCMSourceContext.of(
+                new WildcardSCMHeadFilterTrait("release/* main", "", "v*", ""),
+                new RegexSCMOriginFilterTrait("release/1\\..*|feature/.*", "(?!.*)"));
+        assertThat(DiscoveryHints.prefixes(context, DiscoveryHints.Names.BRANCH), is(set("release/1.")));
+        assertThat(DiscoveryHints.prefixes(context, DiscoveryHints.Names.TAG), is(set()));
+        assertThat(DiscoveryHints.prefixes(context, DiscoveryHints.Names.CHANGE_REQUEST_TARGET),
+                is(set("main", "release/", "v")));
+        assertThat(DiscoveryHints.prefixes(context, DiscoveryHints.Names.CHANGE_REQUEST_ORIGIN),
+                is(set("feature/", "release/1.")));
+        assertThat(DiscoveryHints.prefixes(TestSCMSourceContext.of(), DiscoveryHints.Names.BRANCH), nullValue());
+    }
+
+    @Test
+    void shouldDerivePrefixesFromRuleLines() {
+        CombinedSCMFilterTrait combined = new CombinedSCMFilterTrait();
+        combined.setBranchIncludes("release/*\nregex:.*/1\\..*");
+        combined.setOriginIncludes("*-ci");
+        TestSCMSourceContext context = TestSCMSourceContext.of(combined,
+                new OrderedRulesSCMFilterTrait("-release/0*\n+release/1*\n+main", "+v*\n-*"));
+        assertThat(DiscoveryHints.prefixes(context, DiscoveryHints.Names.BRANCH), is(set("release/1")));
+        assertThat(DiscoveryHints.prefixes(context, DiscoveryHints.Names.TAG), is(set()));
+        assertThat(DiscoveryHints.prefixes(context, DiscoveryHints.Names.CHANGE_REQUEST_ORIGIN), nullValue());
+    }
+
+    private static TreeSet<String> set(String... prefixes) {
+        return new TreeSet<>(prefixes.length == 0 ? Collections.emptyList() : Arrays.asList(prefixes));
+    }
+}
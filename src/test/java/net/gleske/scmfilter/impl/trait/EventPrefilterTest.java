@@ -0,0 +1,122 @@
+package net.gleske.scmfilter.impl.trait;
+
+import hudson.scm.SCM;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import jenkins.scm.api.SCMHead;
+import jenkins.scm.api.SCMHeadEvent;
+import jenkins.scm.api.SCMNavigator;
+import jenkins.scm.api.SCMRevision;
+import jenkins.scm.api.SCMSource;
+import jenkins.scm.api.trait.SCMSourceTrait;
+import jenkins.scm.impl.NullSCMSource;
+import org.junit.jupiter.api.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+@WithJenkins
+public class EventPrefilterTest {
+
+    @Test
+    void shouldExcludeEventsAboutExcludedHeadsOnly(JenkinsRule jenkinsRule) {
+        SCMSource source = new FilteredSource(new WildcardSCMHeadFilterTrait("main release-*", "", "v*", ""));
+        assertThat(EventPrefilter.isExcluded(source, new TestEvent(TestHeads.branch("feature"))), is(true));
+        assertThat(EventPrefilter.isExcluded(source, new TestEvent(TestHeads.branch("main"))), is(false));
+        assertThat(EventPrefilter.isExcluded(source, new TestEvent(TestHeads.branch("feature"),
+                TestHeads.branch("release-1"))), is(false));
+        assertThat(EventPrefilter.isExcluded(source, new TestEvent(TestHeads.tag("1.0"))), is(true));
+        assertThat(EventPrefilter.isExcluded(source, new TestEvent(TestHeads.changeRequest("1", "develop", "fix"))),
+                is(true));
+        assertThat(EventPrefilter.isExcluded(source, new TestEvent(TestHeads.changeRequest("2", "main", "fix"))),
+                is(false));
+        assertThat(EventPrefilter.isExcluded(source, new TestEvent()), is(false));
+    }
+
+    @Test
+    void shouldApplyEveryFilterTrait(JenkinsRule jenkinsRule) {
+        SCMSource source = new FilteredSource(new WildcardSCMHeadFilterTrait("*", "", "", ""),
+                new RegexSCMOriginFilterTrait("main|feature-.*", "(?!.*)"));
+        assertThat(EventPrefilter.isExcluded(source, new TestEvent(TestHeads.changeRequest("1", "main", "fix"))),
+                is(true));
+        assertThat(EventPrefilter.isExcluded(source, new TestEvent(TestHeads.changeRequest("2", "main",
+                "feature-1"))), is(false));
+    }
+
+    @Test
+    void shouldCountCheckedEvents(JenkinsRule jenkinsRule) {
+        FilterMetrics.reset();
+        SCMSource source = new FilteredSource(new WildcardSCMHeadFilterTrait("main", "", "", ""));
+        EventPrefilter.isExcluded(source, new TestEvent(TestHeads.branch("feature")));
+        EventPrefilter.isExcluded(source, new TestEvent(TestHeads.branch("main")));
+        EventPrefilter.isExcluded(source, new TestEvent());
+        EventPrefilter.isExcluded(new NullSCMSource(), new TestEvent(TestHeads.branch("feature")));
+        assertThat(FilterMetrics.getEvents(), is(2L));
+        assertThat(FilterMetrics.getDroppableEvents(), is(1L));
+        assertThat(FilterMetrics.forTrait("WildcardSCMHeadFilterTrait").getEvaluations(), is(0L));
+    }
+
+    @Test
+    void shouldNotExcludeEventsWhenFiltersAreBroken(JenkinsRule jenkinsRule) {
+        RegexSCMHeadFilterTrait unsupported = new RegexSCMHeadFilterTrait("(a)\\1", "(?!.*)");
+        unsupported.setLinearTime(true);
+        SCMSource source = new FilteredSource(unsupported);
+        assertThat(EventPrefilter.isExcluded(source, new TestEvent(TestHeads.branch("feature"))), is(false));
+    }
+
+    @Test
+    void shouldNotExcludeEventsForUnfilteredSources(JenkinsRule jenkinsRule) {
+        assertThat(EventPrefilter.isExcluded(new NullSCMSource(), new TestEvent(TestHeads.branch("feature"))),
+                is(false));
+    }
+
+    private static final class FilteredSource extends NullSCMSource {
+        private final List<SCMSourceTrait> traits;
+
+        private FilteredSource(SCMSourceTrait... traits) {
+            this.traits = Arrays.asList(traits);
+        }
+
+        @Override
+        public List<SCMSourceTrait> getTraits() {
+            return traits;
+        }
+    }
+
+    private static final class TestEvent extends SCMHeadEvent<Object> {
+        private final SCMHead[] heads;
+
+        private TestEvent(SCMHead... heads) {
+            super(Type.UPDATED, new Object(), "test");
+            this.heads = heads;
+        }
+
+        @Override
+        public boolean isMatch(SCMNavigator navigator) {
+            return false;
+        }
+
+        @Override
+        public String getSourceName() {
+            return "test";
+        }
+
+        @Override
+        public Map<SCMHead, SCMRevision> heads(SCMSource source) {
+            Map<SCMHead, SCMRevision> result = new LinkedHashMap<>();
+            for (SCMHead head : heads) {
+                result.put(head, null);
+            }
+            return result;
+        }
+
+        @Override
+        public boolean isMatch(SCM scm) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package net.gleske.scmfilter.impl.trait;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import jenkins.scm.impl.NullSCMSource;
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class FilterEventsTest {
+
+    @Test
+    void shouldRecordDecisionsAndSummaries() throws Exception {
+        FilterEvents.register();
+        Path file = Files.createTempFile("scm-filter", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable(FilterEvents.Decision.class).withThreshold(Duration.ZERO);
+            recording.enable(FilterEvents.Summary.class).with("period", "endChunk");
+            recording.start();
+            TestSCMSourceContext.of(new WildcardSCMOriginFilterTrait("main", "", "v*", ""))
+                    .isExcluded(new NullSCMSource(), TestHeads.tag("v1.0"));
+            recording.stop();
+            recording.dump(file);
+
+            List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+            boolean decision = false;
+            boolean summary = false;
+            for (RecordedEvent event : events) {
+                if (!event.getEventType().getName().startsWith("net.gleske.scmfilter.")
+                        || !"WildcardSCMOriginFilterTrait".equals(event.getString("traitType"))) {
+                    continue;
+                }
+                if (event.getEventType().getName().equals("net.gleske.scmfilter.Decision")) {
+                    decision = true;
+                    assertThat(event.getString("category"), is("tag"));
+                    assertThat(event.getBoolean("excluded"), is(false));
+                } else if (event.getEventType().getName().equals("net.gleske.scmfilter.Summary")) {
+                    summary = true;
+                    assertThat(event.getLong("evaluations") > 0, is(true));
+                }
+            }
+            assertThat(decision, is(true));
+            assertThat(summary, is(true));
+        } finally {
+            FilterEvents.unregister();
+            Files.deleteIfExists(file);
+        }
+    }
+}
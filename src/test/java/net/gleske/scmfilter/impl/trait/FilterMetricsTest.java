@@ -0,0 +1,63 @@
+package net.gleske.scmfilter.impl.trait;
+
+import java.util.Set;
+import jenkins.scm.api.SCMSource;
+import jenkins.scm.impl.NullSCMSource;
+import net.sf.json.JSONObject;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+
+public class FilterMetricsTest {
+
+    private final SCMSource source = new NullSCMSource();
+
+    @BeforeEach
+    void resetMetrics() {
+        FilterMetrics.reset();
+    }
+
+    @Test
+    void shouldCountDecisionsPerCategory() {
+        TestSCMSourceContext context = TestSCMSourceContext.of(
+                new WildcardSCMHeadFilterTrait("main", "", "v*", ""));
+        context.isExcluded(source, TestHeads.branch("main"));
+        context.isExcluded(source, TestHeads.branch("feature"));
+        context.isExcluded(source, TestHeads.tag("v1.0"));
+        context.isExcluded(source, TestHeads.changeRequest("1", "develop", "feature"));
+
+        FilterMetrics.Counters counters = FilterMetrics.forTrait("WildcardSCMHeadFilterTrait");
+        assertThat(counters.getEvaluations(), is(4L));
+        assertThat(counters.getExcluded(), is(2L));
+        assertThat(counters.getExcluded(HeadCategory.BRANCH), is(1L));
+        assertThat(counters.getExcluded(HeadCategory.TAG), is(0L));
+        assertThat(counters.getExcluded(HeadCategory.CHANGE_REQUEST), is(1L));
+        assertThat(counters.getNanos(), greaterThan(0L));
+        assertThat(counters.getMaxNanos() <= counters.getNanos(), is(true));
+    }
+
+    @Test
+    void shouldReportPerTraitType() {
+        TestSCMSourceContext.of(new RegexSCMHeadFilterTrait("main", "(?!.*)"))
+                .isExcluded(source, TestHeads.branch("main"));
+        JSONObject regex = FilterMetrics.toJSON().getJSONObject("traits").getJSONObject("RegexSCMHeadFilterTrait");
+        assertThat(regex.getLong("evaluations"), is(1L));
+        assertThat(regex.getJSONObject("branch").getLong("excluded"), is(0L));
+    }
+
+    @Test
+    void shouldFollowJobsMovedAndDeleted() {
+        FilterMetrics.forJob("folder/repo", "RegexSCMHeadFilterTrait").record(HeadCategory.BRANCH, true, 1L);
+        FilterMetrics.forJob("folder/other", "RegexSCMHeadFilterTrait");
+        FilterMetrics.forJob("folder-2/repo", "RegexSCMHeadFilterTrait");
+        FilterMetrics.moveJob("folder/repo", "folder/renamed");
+        assertThat(FilterMetrics.toJSON().getJSONObject("jobs").getJSONObject("folder/renamed")
+                .getJSONObject("RegexSCMHeadFilterTrait").getLong("evaluations"), is(1L));
+
+        FilterMetrics.forgetJob("folder");
+        assertThat(FilterMetrics.toJSON().getJSONObject("jobs").keySet(), is(Set.of("folder-2/repo")));
+    }
+}
@@ -0,0 +1,111 @@
+package net.gleske.scmfilter.impl.trait;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.net.URL;
+import java.util.List;
+import jenkins.scm.api.SCMHead;
+import jenkins.scm.api.mixin.ChangeRequestSCMHead;
+import jenkins.scm.api.mixin.TagSCMHead;
+import jenkins.scm.api.trait.SCMSourceTrait;
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+import org.htmlunit.HttpMethod;
+import org.htmlunit.Page;
+import org.htmlunit.WebRequest;
+import org.htmlunit.WebResponse;
+import org.junit.jupiter.api.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.endsWith;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.startsWith;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@WithJenkins
+public class FilterPreviewTest {
+
+    @Test
+    void shouldReadCandidateHeads(JenkinsRule jenkinsRule) {
+        List<SCMHead> heads = FilterPreview.heads(body(), null);
+        assertThat(heads.size(), is(5));
+        assertThat(HeadCategory.of(heads.get(0)), is(HeadCategory.BRANCH));
+        assertThat(HeadCategory.of(heads.get(2)), is(HeadCategory.TAG));
+        assertThat(HeadCategory.of(heads.get(3)), is(HeadCategory.CHANGE_REQUEST));
+        assertThat(HeadCategory.of(heads.get(4)), is(HeadCategory.CHANGE_REQUEST));
+        assertThat(((ChangeRequestSCMHead) heads.get(4)).getTarget(), instanceOf(TagSCMHead.class));
+    }
+
+    @Test
+    void shouldStreamTheDecisionsOfTheTrait(JenkinsRule jenkinsRule) {
+        String preview = preview(new WildcardSCMHeadFilterTrait("main", "", "v*", ""));
+        assertThat(preview, startsWith("{\"decisions\":["));
+        assertThat(preview, containsString("\"name\":\"main\",\"excluded\":false"));
+        assertThat(preview, containsString("\"name\":\"feature\",\"excluded\":true"));
+        assertThat(preview, containsString("\"name\":\"v1.0\",\"excluded\":false"));
+        assertThat(preview, containsString("\"name\":\"PR-1\",\"target\":\"main\",\"origin\":\"fix\","
+                + "\"excluded\":false"));
+        assertThat(preview, containsString("\"name\":\"PR-2\",\"target\":\"v1.0\",\"origin\":\"fix\","
+                + "\"excluded\":false"));
+        assertThat(preview, containsString("],\"total\":5,\"excluded\":1,\"nanos\":"));
+        assertThat(preview, endsWith("}"));
+    }
+
+    @Test
+    void shouldUseTheSameRulesAsScans(JenkinsRule jenkinsRule) {
+        String preview = preview(new RegexSCMOriginFilterTrait("main", "(?!.*)"));
+        assertThat(preview, containsString("\"name\":\"PR-1\",\"target\":\"main\",\"origin\":\"fix\","
+                + "\"excluded\":true"));
+        assertThat(preview, containsString("\"name\":\"main\",\"excluded\":false"));
+        assertThat(preview, containsString("\"excluded\":4,"));
+    }
+
+    @Test
+    void shouldRejectSourcesWithoutSnapshots(JenkinsRule jenkinsRule) {
+        assertThrows(IllegalArgumentException.class,
+                () -> FilterPreview.heads(body().element("source", "origin"), null));
+    }
+
+    @Test
+    void shouldRejectInvalidTraitsBeforeWriting(JenkinsRule jenkinsRule) {
+        RegexSCMHeadFilterTrait unsupported = new RegexSCMHeadFilterTrait("(a)\\1", "(?!.*)");
+        unsupported.setLinearTime(true);
+        assertThrows(IllegalStateException.class, () -> FilterPreview.prefilters(unsupported));
+    }
+
+    @Test
+    void shouldAnswerMalformedBodiesWithAnError(JenkinsRule jenkinsRule) throws Exception {
+        JenkinsRule.WebClient client = jenkinsRule.createWebClient();
+        client.setThrowExceptionOnFailingStatusCode(false);
+        WebRequest request = new WebRequest(new URL(jenkinsRule.getURL(), "descriptorByName/"
+                + WildcardSCMHeadFilterTrait.class.getName() + "/preview"), HttpMethod.POST);
+        request.setAdditionalHeader("Content-Type", "application/json");
+        for (String body : new String[] {"not json", "[\"main\"]", "{\"branches\": [\"main\"]"}) {
+            request.setRequestBody(body);
+            Page page = client.getPage(client.addCrumb(request));
+            WebResponse response = page.getWebResponse();
+            assertThat(body, response.getStatusCode(), is(400));
+            assertThat(body, JSONObject.fromObject(response.getContentAsString()).has("error"), is(true));
+        }
+    }
+
+    private static String preview(SCMSourceTrait trait) {
+        StringWriter out = new StringWriter();
+        FilterPreview.write(FilterPreview.prefilters(trait), FilterPreview.heads(body(), null), new PrintWriter(out));
+        return out.toString();
+    }
+
+    private static JSONObject body() {
+        return new JSONObject()
+                .element("branches", new JSONArray().element("main").element("feature"))
+                .element("tags", new JSONArray().element("v1.0"))
+                .element("changeRequests", new JSONArray()
+                        .element(new JSONObject().element("target", "main").element("origin", "fix"))
+                        .element(new JSONObject().element("target", "v1.0").element("origin", "fix")
+                                .element("targetTag", true)));
+    }
+}
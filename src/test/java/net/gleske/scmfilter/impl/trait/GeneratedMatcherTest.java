@@ -0,0 +1,148 @@
+package net.gleske.scmfilter.impl.trait;
+
+import java.util.Random;
+import java.util.regex.Pattern;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class GeneratedMatcherTest {
+
+    private static final String ALPHABET = "abcxyz019-_/.*\n\r\u0000é 😀\ud83d";
+
+    private static final String[] REGEXES = {
+            "main", "release-.*", "(main|develop|release/[0-9]+\\.[0-9]+)", "[a-c]*x?z+", "feature/.*-[0-9]{1,3}",
+            ".*é.*", "[^a]*", "(?!.*)", "\\w+(-\\d+)*", ".😀?"
+    };
+
+    private static final String[] WILDCARDS = {
+            "*", "main release-*", "*-rc* v*", "a*b*c", "  main", "x* *é *z", ""
+    };
+
+    @BeforeEach
+    void enable() {
+        GeneratedMatcher.setEnabled(true);
+    }
+
+    @AfterEach
+    void disable() {
+        GeneratedMatcher.setEnabled(false);
+    }
+
+    @Test
+    void shouldMatchRegularExpressionsLikeTheDefaultEngine() {
+        Random random = new Random(42);
+        for (String regex : REGEXES) {
+            Automaton automaton = Automaton.build(RegexParser.parse(regex));
+            assertThat(regex, automaton.isGenerated(), is(true));
+            Pattern pattern = Pattern.compile(regex);
+            for (int i = 0; i < 2000; i++) {
+                String name = name(random);
+                assertThat(regex + " on " + name, automaton.match(name) >= 0, is(pattern.matcher(name).matches()));
+            }
+        }
+    }
+
+    @Test
+    void shouldGenerateVerifiedCodeForRandomAutomata() {
+        // hidden classes go through the bytecode verifier when defined, a rejected class falls back to the table
+        Random random = new Random(42);
+        for (int i = 0; i < 500; i++) {
+            String regex = regex(random, 3);
+            Automaton automaton = Automaton.build(RegexParser.parse(regex));
+            assertThat(regex, automaton.isGenerated(), is(true));
+            Pattern pattern = Pattern.compile(regex);
+            for (int j = 0; j < 200; j++) {
+                String name = name(random);
+                assertThat(regex + " on " + name, automaton.match(name) >= 0, is(pattern.matcher(name).matches()));
+            }
+        }
+    }
+
+    @Test
+    void shouldMatchWildcardsLikeTheWildcardRules() {
+        Random random = new Random(42);
+        for (String rules : WILDCARDS) {
+            NameMatcher matcher = GeneratedMatcher.wildcard(rules);
+            assertThat(rules, matcher, instanceOf(GeneratedMatcher.class));
+            WildcardRules expected = WildcardRules.compile(rules);
+            for (int i = 0; i < 2000; i++) {
+                String name = name(random);
+                assertThat(rules + " on " + name, matcher.matches(name), is(expected.matches(name)));
+            }
+        }
+    }
+
+    @Test
+    void shouldDecideLikeTheTransitionTable() {
+        Random random = new Random(42);
+        String[] lines = {"main\nrelease-*", "release-*-wip", "*", "*é*"};
+        DecisionAutomaton generated = DecisionAutomaton.compile(lines[0], lines[1], lines[2], lines[3]);
+        GeneratedMatcher.setEnabled(false);
+        DecisionAutomaton table = DecisionAutomaton.compile(lines[0], lines[1], lines[2], lines[3]);
+        for (int i = 0; i < 2000; i++) {
+            String target = name(random);
+            String origin = i % 3 == 0 ? null : name(random);
+            assertThat(target + " from " + origin, generated.isExcluded(target, origin),
+                    is(table.isExcluded(target, origin)));
+        }
+    }
+
+    @Test
+    void shouldFallBackToTheGenericEngines() {
+        // too large for the JIT to compile
+        Automaton large = Automaton.build(RegexParser.parse("[a-z]{600}"));
+        assertThat(large.isGenerated(), is(false));
+        assertThat(large.match("a".repeat(600)) >= 0, is(true));
+        StringBuilder rules = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            rules.append(" release-").append(i).append("-*");
+        }
+        NameMatcher wildcards = GeneratedMatcher.wildcard(rules.toString());
+        assertThat(wildcards, instanceOf(WildcardRules.class));
+        assertThat(wildcards.matches("release-999-rc1"), is(true));
+    }
+
+    @Test
+    void shouldOnlyGenerateWhenEnabled() {
+        assertThat(CompiledPatterns.regex("generated-.*"), instanceOf(BacktrackingRegex.class));
+        assertThat(CompiledPatterns.wildcard("generated-*"), instanceOf(GeneratedMatcher.class));
+        assertThat(Automaton.build(RegexParser.parse("generated-.*")).isGenerated(), is(true));
+        GeneratedMatcher.setEnabled(false);
+        assertThat(Automaton.build(RegexParser.parse("generated-.*")).isGenerated(), is(false));
+        assertThat(CompiledPatterns.regex("generated-.*"), instanceOf(BacktrackingRegex.class));
+        assertThat(CompiledPatterns.wildcard("generated-*"), instanceOf(WildcardRules.class));
+    }
+
+    private static String regex(Random random, int depth) {
+        switch (random.nextInt(depth == 0 ? 3 : 8)) {
+            case 0:
+                return Pattern.quote(String.valueOf(ALPHABET.charAt(random.nextInt(ALPHABET.length()))));
+            case 1:
+                return random.nextBoolean() ? "[a-c0-9]" : "[^x/]";
+            case 2:
+                return random.nextBoolean() ? "." : "\\w";
+            case 3:
+            case 4:
+                return regex(random, depth - 1) + regex(random, depth - 1);
+            case 5:
+                return "(" + regex(random, depth - 1) + "|" + regex(random, depth - 1) + ")";
+            case 6:
+                return "(" + regex(random, depth - 1) + ")" + (random.nextBoolean() ? "*" : "?");
+            default:
+                return "(" + regex(random, depth - 1) + "){1,3}";
+        }
+    }
+
+    private static String name(Random random) {
+        StringBuilder name = new StringBuilder();
+        for (int length = random.nextInt(8); name.length() < length; ) {
+            name.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+        }
+        return name.toString();
+    }
+}
@@ -0,0 +1,125 @@
+package net.gleske.scmfilter.impl.trait;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+import jenkins.scm.api.SCMHead;
+import jenkins.scm.api.trait.SCMSourceTrait;
+import jenkins.scm.impl.NullSCMSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+@WithJenkins
+public class HeadSnapshotsTest {
+
+    private static final List<SCMHead> HEADS = Arrays.asList(
+            TestHeads.branch("main"), TestHeads.branch("release-1"), TestHeads.branch("feature-1"),
+            TestHeads.tag("v1.0"), TestHeads.changeRequest("1", "main", "feature-2"),
+            TestHeads.changeRequest("2", "develop", "feature-3"));
+
+    @AfterEach
+    void reset() {
+        HeadSnapshots.reset();
+    }
+
+    @Test
+    void shouldComputeTheDeltaOfNewRules(JenkinsRule jenkinsRule) {
+        MutableSource source = new MutableSource(new WildcardSCMHeadFilterTrait("main release-*", "", "", ""));
+        Object scan = new Object();
+        for (SCMHead head : HEADS) {
+            HeadSnapshots.record("job::source", scan, source, head);
+        }
+        assertThat(HeadSnapshots.update("job::source", source), nullValue());
+        source.traits = new ArrayList<>(source.traits);
+        assertThat(HeadSnapshots.update("job::source", source), nullValue());
+        // saving the job binds new instances of the same traits
+        source.traits = Collections.singletonList(new WildcardSCMHeadFilterTrait("main release-*", "", "", ""));
+        assertThat(HeadSnapshots.update("job::source", source), nullValue());
+
+        source.traits = Collections.singletonList(new WildcardSCMHeadFilterTrait("main develop", "", "v*", ""));
+        HeadSnapshots.Delta delta = HeadSnapshots.update("job::source", source);
+        assertThat(delta.getIncluded(), is(new TreeSet<>(Arrays.asList("PR-2", "v1.0"))));
+        assertThat(delta.getExcluded(), is(new TreeSet<>(Collections.singletonList("release-1"))));
+        assertThat(delta.isScanNeeded(), is(true));
+        assertThat(HeadSnapshots.update("job::source", source), nullValue());
+
+        source.traits = Collections.singletonList(new WildcardSCMHeadFilterTrait("main", "", "v*", ""));
+        delta = HeadSnapshots.update("job::source", source);
+        assertThat(delta.getIncluded().isEmpty(), is(true));
+        assertThat(delta.getExcluded(), is(new TreeSet<>(Collections.singletonList("PR-2"))));
+        assertThat(delta.isScanNeeded(), is(false));
+    }
+
+    @Test
+    void shouldForgetHeadsMissingFromTheLastScan(JenkinsRule jenkinsRule) {
+        MutableSource source = new MutableSource(new WildcardSCMHeadFilterTrait("*", "", "", ""));
+        Object first = new Object();
+        HeadSnapshots.record("job::source", first, source, TestHeads.branch("main"));
+        HeadSnapshots.record("job::source", first, source, TestHeads.branch("deleted"));
+        Object second = new Object();
+        HeadSnapshots.record("job::source", second, source, TestHeads.branch("main"));
+        MutableSource other = new MutableSource(new WildcardSCMHeadFilterTrait("other", "", "", ""));
+        // the second scan may not have reached the head yet
+        assertThat(HeadSnapshots.update("job::source", other).getExcluded(),
+                is(new TreeSet<>(Arrays.asList("deleted", "main"))));
+
+        HeadSnapshots.record("job::source", new Object(), source, TestHeads.branch("main"));
+        assertThat(HeadSnapshots.update("job::source", other).getExcluded(),
+                is(new TreeSet<>(Collections.singletonList("main"))));
+    }
+
+    @Test
+    void shouldComputeTheDeltaOfTheRulesOfANavigator(JenkinsRule jenkinsRule) {
+        MutableSource source = new MutableSource(new WildcardSCMHeadFilterTrait("main release-*", "", "", ""));
+        Object scan = new Object();
+        for (SCMHead head : HEADS) {
+            HeadSnapshots.record("org/repo::source", scan, source, head);
+        }
+        // the sources of an organization folder keep their traits until the folder indexes them again
+        List<SCMSourceTrait> navigator = Collections.singletonList(
+                new WildcardSCMHeadFilterTrait("main", "", "", ""));
+        HeadSnapshots.Delta delta = HeadSnapshots.update("org/repo::source", source, navigator);
+        assertThat(delta.getExcluded(), is(new TreeSet<>(Collections.singletonList("release-1"))));
+        source.traits = Collections.singletonList(new WildcardSCMHeadFilterTrait("main", "", "", ""));
+        assertThat(HeadSnapshots.update("org/repo::source", source), nullValue());
+    }
+
+    @Test
+    void shouldFollowMovedAndDeletedJobs(JenkinsRule jenkinsRule) {
+        MutableSource source = new MutableSource(new WildcardSCMHeadFilterTrait("*", "", "", ""));
+        HeadSnapshots.record("folder/job::source", new Object(), source, TestHeads.branch("main"));
+        HeadSnapshots.moveJob("folder/job", "folder/renamed");
+        MutableSource other = new MutableSource(new WildcardSCMHeadFilterTrait("other", "", "", ""));
+        assertThat(HeadSnapshots.update("folder/job::source", other), nullValue());
+        assertThat(HeadSnapshots.update("folder/renamed::source", other).getExcluded(),
+                is(new TreeSet<>(Collections.singletonList("main"))));
+        HeadSnapshots.forgetJob("folder");
+        assertThat(HeadSnapshots.update("folder/renamed::source", source), nullValue());
+    }
+
+    @Test
+    void shouldIgnoreUnknownSources(JenkinsRule jenkinsRule) {
+        assertThat(HeadSnapshots.update("job::other", new MutableSource()), nullValue());
+    }
+
+    private static final class MutableSource extends NullSCMSource {
+        private List<SCMSourceTrait> traits;
+
+        private MutableSource(SCMSourceTrait... traits) {
+            this.traits = Arrays.asList(traits);
+        }
+
+        @Override
+        public List<SCMSourceTrait> getTraits() {
+            return traits;
+        }
+    }
+}
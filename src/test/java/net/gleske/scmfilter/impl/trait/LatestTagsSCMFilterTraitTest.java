@@ -0,0 +1,137 @@
+package net.gleske.scmfilter.impl.trait;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import jenkins.scm.api.SCMHead;
+import jenkins.scm.api.SCMHeadObserver;
+import jenkins.scm.api.SCMSource;
+import jenkins.scm.impl.NullSCMSource;
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class LatestTagsSCMFilterTraitTest {
+
+    private final SCMSource source = new NullSCMSource();
+
+    @Test
+    void shouldOrderVersionsBySemanticVersioningPrecedence() {
+        List<String> names = Arrays.asList("1.0.0-alpha", "v1.0.0-alpha.1", "1.0.0-alpha.beta", "1.0.0-beta",
+                "1.0.0-beta.2", "1.0.0-beta.11", "1.0.0-rc.1", "v1.0.0", "1.2", "1.9.2", "1.10.0+build.5", "2.0.0");
+        List<TagVersion> versions = new ArrayList<>();
+        for (String name : names) {
+            versions.add(TagVersion.parse(name));
+        }
+        List<TagVersion> sorted = new ArrayList<>(versions);
+        Collections.shuffle(sorted);
+        Collections.sort(sorted);
+        assertThat(sorted, is(versions));
+        assertThat(TagVersion.parse("v1.2"), is(TagVersion.parse("1.2.0+build")));
+        assertThat(TagVersion.parse("v2.1.0-rc.1").isPrerelease(), is(true));
+        assertThat(TagVersion.parse("v2.1.0-rc.1").getMajor(), is(2L));
+    }
+
+    @Test
+    void shouldNotParseOtherNames() {
+        for (String name : new String[] {"", "v", "1", "v1", "nightly", "1.2.3.4", "1.2.x", "1..2", "1.2-", "1.2.3-rc..1",
+                "1.2.3+", "1.2.3_rc1", "release-1.2.3", "1.2.3-rc.1+build+2", "1234567890123456789.0"}) {
+            assertThat(name, TagVersion.parse(name), is(nullValue()));
+        }
+    }
+
+    @Test
+    void shouldKeepTheLatestTagsWhenTheyAreKnownUpFront() {
+        TestSCMSourceContext context = TestSCMSourceContext.of(new LatestTagsSCMFilterTrait(3));
+        List<SCMHead> heads = Arrays.asList(TestHeads.tag("v1.0.0"), TestHeads.tag("v1.9.0"), TestHeads.tag("nightly"),
+                TestHeads.tag("v1.10.0"), TestHeads.branch("main"), TestHeads.tag("v2.0.0-rc.1"),
+                TestHeads.tag("v1.2.0"), TestHeads.changeRequest("1", "main", "fix"), TestHeads.tag("v2.0.0"));
+        assertThat(BatchPrefilter.included(source, context, heads), is(Arrays.asList(heads.get(3), heads.get(4),
+                heads.get(5), heads.get(7), heads.get(8))));
+    }
+
+    @Test
+    void shouldKeepTheLatestTagsPerMajorVersion() {
+        LatestTagsSCMFilterTrait trait = new LatestTagsSCMFilterTrait(2);
+        trait.setPerMajor(true);
+        TestSCMSourceContext context = TestSCMSourceContext.of(trait);
+        List<SCMHead> heads = new ArrayList<>();
+        for (int major = 1; major <= 3; major++) {
+            for (int minor = 0; minor < 5; minor++) {
+                heads.add(TestHeads.tag("v" + major + "." + minor + ".0"));
+            }
+        }
+        List<SCMHead> included = BatchPrefilter.included(source, context, heads);
+        assertThat(included, is(Arrays.asList(heads.get(3), heads.get(4), heads.get(8), heads.get(9), heads.get(13),
+                heads.get(14))));
+    }
+
+    @Test
+    void shouldKeepOnlyTheLatestTagsListedOldestFirst() {
+        SCMSource source = TestSCMSourceContext.sourceOf("latest-tags-ascending");
+        List<SCMHead> heads = Arrays.asList(TestHeads.tag("v1.0"), TestHeads.tag("v1.1"), TestHeads.tag("v1.2"),
+                TestHeads.tag("v1.3"));
+        // the first scan has nothing to start from, every tag listed oldest first is the latest so far
+        assertThat(included(source, new LatestTagsSCMFilterTrait(2), heads), is(heads));
+        // saving the job binds a new trait, the next scans start from the tags the last one kept
+        for (int scan = 0; scan < 2; scan++) {
+            assertThat(included(source, new LatestTagsSCMFilterTrait(2), heads),
+                    is(Arrays.asList(heads.get(2), heads.get(3))));
+        }
+        // a new tag pushes the oldest one out
+        List<SCMHead> pushed = new ArrayList<>(heads);
+        pushed.add(TestHeads.tag("v1.4"));
+        assertThat(included(source, new LatestTagsSCMFilterTrait(2), pushed),
+                is(Arrays.asList(heads.get(2), heads.get(3), pushed.get(4))));
+        assertThat(included(source, new LatestTagsSCMFilterTrait(2), pushed),
+                is(Arrays.asList(heads.get(3), pushed.get(4))));
+        // events compare their tags with the tags the last scan kept
+        TestSCMSourceContext event = new TestSCMSourceContext(SCMHeadObserver.select(TestHeads.tag("v1.2")))
+                .decoratedWith(new LatestTagsSCMFilterTrait(2));
+        assertThat(event.isExcluded(source, heads.get(2)), is(true));
+        assertThat(event.isExcluded(source, TestHeads.tag("v1.5")), is(false));
+    }
+
+    private static List<SCMHead> included(SCMSource source, LatestTagsSCMFilterTrait trait, List<SCMHead> heads) {
+        TestSCMSourceContext context = TestSCMSourceContext.of(trait);
+        List<SCMHead> included = new ArrayList<>();
+        for (SCMHead head : heads) {
+            if (!context.isExcluded(source, head)) {
+                included.add(head);
+            }
+        }
+        return included;
+    }
+
+    @Test
+    void shouldNotLearnFromEvents() {
+        TestSCMSourceContext context = new TestSCMSourceContext(SCMHeadObserver.select(TestHeads.tag("v1.3")))
+                .decoratedWith(new LatestTagsSCMFilterTrait(2));
+        FilterPrefilter.prepare(source, Arrays.asList(TestHeads.tag("v1.0"), TestHeads.tag("v1.1"),
+                TestHeads.tag("v1.2")), context.prefilters());
+        assertThat(context.isExcluded(source, TestHeads.tag("v1.0")), is(true));
+        assertThat(context.isExcluded(source, TestHeads.tag("v1.3")), is(false));
+        assertThat(context.isExcluded(source, TestHeads.tag("v1.4")), is(false));
+        assertThat(context.isExcluded(source, TestHeads.tag("v1.1")), is(false));
+    }
+
+    @Test
+    void shouldOrderEqualVersionsByName() {
+        TestSCMSourceContext context = TestSCMSourceContext.of(new LatestTagsSCMFilterTrait(1));
+        List<SCMHead> heads = Arrays.asList(TestHeads.tag("v1.0"), TestHeads.tag("1.0"), TestHeads.tag("1.0.0"));
+        assertThat(BatchPrefilter.included(source, context, heads), is(Collections.singletonList(heads.get(0))));
+    }
+
+    @Test
+    void shouldParseEachNameOnce() {
+        LatestTagsSCMFilterTrait trait = new LatestTagsSCMFilterTrait(1);
+        assertThat(trait.version("v1.2.3"), sameInstance(trait.version("v1.2.3")));
+        assertThat(trait.version("nightly"), is(nullValue()));
+        assertThrows(IllegalArgumentException.class, () -> new LatestTagsSCMFilterTrait(0));
+    }
+}
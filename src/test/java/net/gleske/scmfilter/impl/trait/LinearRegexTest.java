@@ -0,0 +1,97 @@
+package net.gleske.scmfilter.impl.trait;
+
+import java.util.regex.Pattern;
+import jenkins.scm.impl.NullSCMSource;
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class LinearRegexTest {
+
+    private static final String[] REGEXES = {
+        ".*", "(?!.*)", "master", "master|release-.*", "^(master|develop)$", "release-\\d+\\.\\d+(\\.\\d+)?",
+        "feature/[a-z0-9_-]+", "[^/]+", "PR-\\d{1,4}", "v[0-9]{2,}", "(?:hotfix|bugfix)/.+?", "(a+)+b", "a*?b?",
+        "\\Qrelease.1\\E.*", "[\\w.]+-lts", "\\S+\\s\\S+", "(?<name>x|y)z", "[]a]+", "[a-]+", "\\x41\\u0042\\x{43}",
+        ".", "a{0}", "a{2}b{0,1}", "(|a)b", "[^\\d]*", "\\.\\*\\+", "\\W*", "release-\\Q1.0\\E*", "\\Qab\\E{2}",
+        "\\Q.*\\E?", "\\Q\\E", "a\\Q\\E+", "[\\Q]-\\E]+", "\\Q\\\\Qa", "\\uD83D\\uDE00", "\\uD83D\\uDE00+", "\\uD83D"
+    };
+
+    private static final String[] NAMES = {
+        "", "master", "develop", "release-1.0", "release-1.0.2", "release-1", "feature/foo_bar-1", "feature/Foo",
+        "a/b", "PR-12", "PR-12345", "v1", "v10", "v123", "hotfix/x", "bugfix/", "aaaaab", "aaaa", "b", "ab",
+        "release.1-x", "2.0-lts", "foo bar", "foo\tbar", "xz", "yz", "]a]", "a-a", "ABC", "\n", "a", "aab",
+        " ", ".*+", "x\ny", "😀", "\ud83d"
+    };
+
+    @Test
+    void shouldMatchLikeDefaultEngine() {
+        for (String regex : REGEXES) {
+            LinearRegex linear = LinearRegex.compile(regex);
+            Pattern pattern = Pattern.compile(regex);
+            for (String name : NAMES) {
+                assertThat("/" + regex + "/ against [" + name + "]",
+                        linear.matches(name), is(pattern.matcher(name).matches()));
+            }
+        }
+    }
+
+    @Test
+    void shouldQuantifyOnlyTheLastQuotedCharacter() {
+        assertThat(LinearRegex.compile("release-\\Q1.0\\E*").matches("release-1."), is(true));
+        assertThat(LinearRegex.compile("\\Qab\\E{2}").matches("abab"), is(false));
+        assertThat(LinearRegex.compile("\\Qab\\E{2}").matches("abb"), is(true));
+        assertThat(LinearRegex.compile("\\Q.*\\E?").matches(""), is(false));
+        assertThat(LinearRegex.compile("\\Q.*\\E?").matches("."), is(true));
+        assertThat(LinearRegex.compile("\\Q.*\\E?").matches(".*"), is(true));
+    }
+
+    @Test
+    void shouldCombineEscapedSurrogates() {
+        assertThat(LinearRegex.compile("\\uD83D\\uDE00").matches("😀"), is(true));
+        assertThat(LinearRegex.compile("\\uD83D\\uDE00?").matches(""), is(true));
+        assertThat(LinearRegex.compile("\\uD83D\\uDE00?").matches("\ud83d"), is(false));
+    }
+
+    @Test
+    void shouldRejectUnsupportedConstructs() {
+        for (String regex : new String[] {"(a)\\1", "(?=a)a", "(?<!a)b", "a++", "(?>a)", "(?i)master", "\\bmaster",
+                "a^", "$a", "[a&&b]", "\\p{Alpha}", "a{1001}"}) {
+            assertThrows(IllegalArgumentException.class, () -> LinearRegex.compile(regex), regex);
+        }
+    }
+
+    @Test
+    void shouldMatchInLinearTime() {
+        StringBuilder name = new StringBuilder();
+        for (int i = 0; i < 100_000; i++) {
+            name.append('a');
+        }
+        // catastrophic backtracking with the default engine
+        assertThat(LinearRegex.compile("(a+)+b").matches(name.toString()), is(false));
+        assertThat(LinearRegex.compile("(a|aa)*c").matches(name.toString()), is(false));
+    }
+
+    @Test
+    void shouldFilterWithLinearTimeEngine() {
+        RegexSCMHeadFilterTrait trait = new RegexSCMHeadFilterTrait("(release-.*)+", "v\\d+");
+        trait.setLinearTime(true);
+        assertThat(trait.isLinearTime(), is(true));
+        TestSCMSourceContext context = TestSCMSourceContext.of(trait);
+        NullSCMSource source = new NullSCMSource();
+        assertThat(context.isExcluded(source, TestHeads.branch("release-1")), is(false));
+        assertThat(context.isExcluded(source, TestHeads.branch("master")), is(true));
+        assertThat(context.isExcluded(source, TestHeads.tag("v1")), is(false));
+
+    }
+
+    @Test
+    void shouldFailScansWithUnsupportedRegularExpression() {
+        RegexSCMHeadFilterTrait trait = new RegexSCMHeadFilterTrait("(a)\\1", "(?!.*)");
+        trait.setLinearTime(true);
+        assertThrows(IllegalStateException.class, () -> trait.applyToContext(new TestSCMSourceContext()));
+        trait.setLinearTime(false);
+        assertThat(TestSCMSourceContext.of(trait).isExcluded(new NullSCMSource(), TestHeads.branch("aa")), is(false));
+    }
+}
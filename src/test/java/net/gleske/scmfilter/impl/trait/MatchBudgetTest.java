@@ -0,0 +1,38 @@
+package net.gleske.scmfilter.impl.trait;
+
+import jenkins.scm.api.SCMSource;
+import jenkins.scm.impl.NullSCMSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.lessThan;
+
+public class MatchBudgetTest {
+
+    private final SCMSource source = new NullSCMSource();
+
+    @AfterEach
+    void clearBudget() {
+        System.clearProperty(MatchBudget.MILLIS);
+    }
+
+    @Test
+    void shouldExcludeForkWhenBudgetIsSpent() {
+        System.setProperty(MatchBudget.MILLIS, "50");
+        TestSCMSourceContext context = TestSCMSourceContext.of(new RegexSCMOriginFilterTrait("(a+)+b", "(?!.*)"));
+        long start = System.nanoTime();
+        String origin = "aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa!";
+        assertThat(context.isExcluded(source, TestHeads.changeRequest("1", "main", origin)), is(true));
+        assertThat((System.nanoTime() - start) / 1_000_000L, lessThan(10_000L));
+        assertThat(context.isExcluded(source, TestHeads.changeRequest("2", "main", "aaab")), is(false));
+    }
+
+    @Test
+    void shouldNotLimitWhenDisabled() {
+        System.setProperty(MatchBudget.MILLIS, "0");
+        assertThat(MatchBudget.nanos(), is(0L));
+        assertThat(MatchBudget.matches(CompiledPatterns.regex("a.*"), "abc", MatchBudget.nanos(), source), is(true));
+    }
+}
@@ -0,0 +1,66 @@
+package net.gleske.scmfilter.impl.trait;
+
+import jenkins.scm.api.SCMSource;
+import jenkins.scm.impl.NullSCMSource;
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class OrderedRulesSCMFilterTraitTest {
+
+    private final SCMSource source = new NullSCMSource();
+
+    @Test
+    void shouldLetTheFirstMatchingRuleDecide() {
+        TestSCMSourceContext context = TestSCMSourceContext.of(new OrderedRulesSCMFilterTrait(
+                "# platform features are built\n+feature/platform-*\n-feature/*\n\n+*", "+v*\n-*"));
+        assertThat(context.isExcluded(source, TestHeads.branch("feature/platform-ui")), is(false));
+        assertThat(context.isExcluded(source, TestHeads.branch("feature/login")), is(true));
+        assertThat(context.isExcluded(source, TestHeads.branch("main")), is(false));
+        assertThat(context.isExcluded(source, TestHeads.tag("v1.0")), is(false));
+        assertThat(context.isExcluded(source, TestHeads.tag("1.0")), is(true));
+        assertThat(context.isExcluded(source, TestHeads.changeRequest("1", "feature/login", "fix")), is(true));
+        assertThat(context.isExcluded(source, TestHeads.changeRequest("2", "feature/platform-x", "fix")), is(false));
+    }
+
+    @Test
+    void shouldExcludeNamesMatchingNoRule() {
+        TestSCMSourceContext context = TestSCMSourceContext.of(new OrderedRulesSCMFilterTrait(
+                "-release-0.*\n+release-* main\n+regex:hotfix-\\d+", ""));
+        assertThat(context.isExcluded(source, TestHeads.branch("release-1.0")), is(false));
+        assertThat(context.isExcluded(source, TestHeads.branch("release-0.9")), is(true));
+        assertThat(context.isExcluded(source, TestHeads.branch("hotfix-12")), is(false));
+        assertThat(context.isExcluded(source, TestHeads.branch("develop")), is(true));
+        assertThat(context.isExcluded(source, TestHeads.tag("v1.0")), is(true));
+    }
+
+    @Test
+    void shouldMatchLikeEvaluatingEachRuleInTurn() {
+        StringBuilder rules = new StringBuilder();
+        for (int i = 0; i < 500; i++) {
+            rules.append(i % 3 == 0 ? '-' : '+').append("team-").append(i).append("/*\n");
+        }
+        rules.append("-*-wip\n+*");
+        DecisionAutomaton compiled = DecisionAutomaton.compileOrdered(rules.toString());
+        String[] lines = rules.toString().split("\n");
+        for (String name : new String[] {"team-0/a", "team-1/a", "team-3/b-wip", "team-499/x", "team-500/x",
+                "main", "main-wip", "team-2"}) {
+            boolean expected = false;
+            for (String line : lines) {
+                if (WildcardRules.compile(line.substring(1)).matches(name)) {
+                    expected = line.charAt(0) == '+';
+                    break;
+                }
+            }
+            assertThat(name, compiled.isExcluded(name), is(!expected));
+        }
+    }
+
+    @Test
+    void shouldRejectRulesWithoutSign() {
+        assertThrows(IllegalArgumentException.class, () -> new OrderedRulesSCMFilterTrait("main", ""));
+        assertThrows(IllegalArgumentException.class, () -> new OrderedRulesSCMFilterTrait("+regex:(a)\\1", ""));
+    }
+}
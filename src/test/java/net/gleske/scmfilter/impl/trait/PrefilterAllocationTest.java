@@ -0,0 +1,120 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017-2020, Sam Gleske - https://github.com/samrocketman
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.gleske.scmfilter.impl.trait;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import jenkins.scm.api.SCMHead;
+import jenkins.scm.api.SCMSource;
+import jenkins.scm.api.trait.SCMHeadPrefilter;
+import jenkins.scm.api.trait.SCMSourceTrait;
+import jenkins.scm.impl.NullSCMSource;
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+public class PrefilterAllocationTest {
+
+    private static final int WARM_UP = 20_000;
+
+    private static final int DECISIONS = 100_000;
+
+    private static final SCMHead[] HEADS = {
+            TestHeads.branch("main"),
+            TestHeads.branch("feature/login"),
+            TestHeads.branch("release-1.2"),
+            TestHeads.tag("v1.2.3"),
+            TestHeads.tag("nightly-20200101"),
+            TestHeads.changeRequest("1", "main", "fix-typo"),
+            TestHeads.changeRequest("2", "develop", "release-2.0"),
+            TestHeads.changeRequestToTag("3", "v1.2.3", "hotfix")
+    };
+
+    @Test
+    void shouldNotAllocateMatchingWildcards() {
+        assertNoAllocation(new WildcardSCMHeadFilterTrait("main release-* feature/*", "feature/wip*", "v*",
+                "*-rc*"));
+        assertNoAllocation(new WildcardSCMOriginFilterTrait("main release-*", "", "v*", ""));
+    }
+
+    @Test
+    void shouldNotAllocateMatchingRegularExpressions() {
+        assertNoAllocation(new RegexSCMHeadFilterTrait("(main|release-.*)", "v\\d+(\\.\\d+)*"));
+        assertNoAllocation(new RegexSCMOriginFilterTrait("(main|release-.*|fix-.*)", "v.*"));
+    }
+
+    @Test
+    void shouldNotAllocateMatchingLinearRegularExpressions() {
+        RegexSCMHeadFilterTrait trait = new RegexSCMHeadFilterTrait("(main|release-.*)", "v[0-9]+(\\.[0-9]+)*");
+        trait.setLinearTime(true);
+        assertNoAllocation(trait);
+    }
+
+    @Test
+    void shouldNotAllocateMatchingCombinedRules() {
+        CombinedSCMFilterTrait trait = new CombinedSCMFilterTrait();
+        trait.setBranchIncludes("main\nrelease-*");
+        trait.setOriginExcludes("*wip*");
+        trait.setTagIncludes("v*");
+        assertNoAllocation(trait);
+    }
+
+    @Test
+    void shouldNotAllocateMatchingOrderedRules() {
+        assertNoAllocation(new OrderedRulesSCMFilterTrait("+feature/login\n-feature/*\n+*", "-*-rc*\n+v*"));
+    }
+
+    private static void assertNoAllocation(SCMSourceTrait trait) {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled());
+        SCMSource source = new NullSCMSource();
+        List<SCMHeadPrefilter> prefilters = TestSCMSourceContext.of(trait).prefilters();
+        decide(source, prefilters, WARM_UP);
+        long thread = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(thread);
+        decide(source, prefilters, DECISIONS);
+        long allocated = threads.getThreadAllocatedBytes(thread) - before;
+        // allow for the measurement itself and the odd lazily initialized field, but not for a byte per decision
+        assertThat(trait.getClass().getSimpleName() + " allocated " + allocated + " bytes", allocated,
+                lessThan((long) DECISIONS));
+    }
+
+    private static int decide(SCMSource source, List<SCMHeadPrefilter> prefilters, int decisions) {
+        int excluded = 0;
+        for (int i = 0; i < decisions; i++) {
+            SCMHead head = HEADS[i % HEADS.length];
+            for (int j = 0, size = prefilters.size(); j < size; j++) {
+                if (prefilters.get(j).isExcluded(source, head)) {
+                    excluded++;
+                    break;
+                }
+            }
+        }
+        return excluded;
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017-2020, Sam Gleske - https://github.com/samrocketman
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.gleske.scmfilter.impl.trait;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import jenkins.scm.api.SCMHead;
+import jenkins.scm.api.SCMSource;
+import jenkins.scm.api.trait.SCMHeadPrefilter;
+import jenkins.scm.api.trait.SCMSourceTrait;
+import jenkins.scm.impl.NullSCMSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the {@link SCMHeadPrefilter} produced by each trait's {@code decorateContext} against synthetic branches,
+ * tags and change requests. Each operation filters a single head, so the throughput is heads per millisecond and the
+ * {@code gc.alloc.rate.norm} reported by the GC profiler is the number of bytes allocated per head.
+ *
+ * @see BenchmarkRunner
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class PrefilterBenchmark {
+
+    @Param({"wildcardHead", "wildcardOrigin", "regexHead", "regexOrigin", "linearRegexHead"})
+    public String trait;
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int heads;
+
+    private SCMSource source;
+
+    private SCMHeadPrefilter prefilter;
+
+    private SCMHead[] candidates;
+
+    private int cursor;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        source = new NullSCMSource();
+        prefilter = TestSCMSourceContext.of(createTrait(trait)).prefilters().get(0);
+        candidates = createHeads(heads, new Random(heads));
+        cursor = 0;
+    }
+
+    @Benchmark
+    public boolean isExcluded() {
+        SCMHead head = candidates[cursor];
+        if (++cursor == candidates.length) {
+            cursor = 0;
+        }
+        return prefilter.isExcluded(source, head);
+    }
+
+    static SCMSourceTrait createTrait(String trait) {
+        switch (trait) {
+            case "wildcardHead":
+                return new WildcardSCMHeadFilterTrait("main master release-* hotfix-* feature/*/ci *-lts",
+                        "release-0.*", "v*", "*-rc*");
+            case "wildcardOrigin":
+                return new WildcardSCMOriginFilterTrait("main master release-* hotfix-* feature/*/ci *-lts",
+                        "release-0.*", "v*", "*-rc*");
+            case "regexHead":
+                return new RegexSCMHeadFilterTrait("(main|master|release-.*|hotfix-.*|feature/.*/ci|.*-lts)",
+                        "v[0-9]+(\\.[0-9]+)*");
+            case "regexOrigin":
+                return new RegexSCMOriginFilterTrait("(main|master|release-.*|hotfix-.*|feature/.*/ci|.*-lts)",
+                        "v[0-9]+(\\.[0-9]+)*");
+            case "linearRegexHead":
+                RegexSCMHeadFilterTrait linear = new RegexSCMHeadFilterTrait(
+                        "(main|master|release-.*|hotfix-.*|feature/.*/ci|.*-lts)", "v[0-9]+(\\.[0-9]+)*");
+                linear.setLinearTime(true);
+                return linear;
+            default:
+                throw new IllegalArgumentException(trait);
+        }
+    }
+
+    /**
+     * Creates a repeatable mix of roughly 80% branches, 10% tags and 10% change requests.
+     *
+     * @param count the number of heads.
+     * @param random the source of randomness.
+     * @return the heads.
+     */
+    static SCMHead[] createHeads(int count, Random random) {
+        SCMHead[] heads = new SCMHead[count];
+        for (int i = 0; i < count; i++) {
+            int kind = random.nextInt(10);
+            if (kind == 0) {
+                heads[i] = TestHeads.tag(random.nextBoolean() ? "v1." + i + ".0" : "v" + i + "-rc1");
+            } else if (kind == 1) {
+                String target = random.nextBoolean() ? "main" : "release-" + random.nextInt(10);
+                heads[i] = TestHeads.changeRequest(Integer.toString(i), target, "feature-" + i);
+            } else {
+                heads[i] = TestHeads.branch(branchName(i, random));
+            }
+        }
+        return heads;
+    }
+
+    private static String branchName(int i, Random random) {
+        switch (random.nextInt(5)) {
+            case 0:
+                return "feature/JIRA-" + i + "/ci";
+            case 1:
+                return "release-" + i;
+            case 2:
+                return "hotfix-" + i;
+            case 3:
+                return "user/" + i + "/topic";
+            default:
+                return "feature-" + i;
+        }
+    }
+}
@@ -1,11 +1,24 @@
 package net.gleske.scmfilter.impl.trait;
 
+import hudson.model.Items;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+import java.util.regex.PatternSyntaxException;
+import jenkins.scm.impl.NullSCMSource;
 import org.junit.jupiter.api.Test;
 import org.jvnet.hudson.test.JenkinsRule;
 import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
 
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.instanceOf;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.hasSize;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 @WithJenkins
 public class RegexSCMHeadFilterTraitTest  {
@@ -16,5 +29,56 @@ public class RegexSCMHeadFilterTraitTest  {
         assertThat(trait.getRegex(), is(".*"));
         assertThat(trait.getTagRegex(), is(".*"));
     }
-    
+
+    @Test
+    void shouldReportInvalidPersistedRegexWhenLoaded(JenkinsRule jenkinsRule) {
+        List<LogRecord> records = new ArrayList<>();
+        Handler handler = new Handler() {
+            @Override
+            public void publish(LogRecord record) {
+                records.add(record);
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        Logger logger = Logger.getLogger(RegexSCMHeadFilterTrait.class.getName());
+        logger.addHandler(handler);
+        RegexSCMHeadFilterTrait trait;
+        try {
+            trait = (RegexSCMHeadFilterTrait) Items.XSTREAM2.fromXML(
+                    "<net.gleske.scmfilter.impl.trait.RegexSCMHeadFilterTrait>"
+                    + "<regex>release-[0-9</regex><tagRegex>v.*</tagRegex>"
+                    + "</net.gleske.scmfilter.impl.trait.RegexSCMHeadFilterTrait>");
+        } finally {
+            logger.removeHandler(handler);
+        }
+        // reported once, when loaded
+        assertThat(records, hasSize(1));
+        assertThat(records.get(0).getLevel(), is(Level.WARNING));
+        assertThat(records.get(0).getMessage(), containsString("RegexSCMHeadFilterTrait"));
+        assertThat(trait.getRegex(), is("release-[0-9"));
+
+        // fails the scans before anything is fetched, with the error of the load as the cause
+        IllegalStateException e = assertThrows(IllegalStateException.class,
+                () -> trait.applyToContext(new TestSCMSourceContext()));
+        assertThat(e.getCause(), instanceOf(PatternSyntaxException.class));
+        assertThrows(PatternSyntaxException.class, trait::precompile);
+    }
+
+    @Test
+    void shouldFilterWithValidPersistedRegex(JenkinsRule jenkinsRule) {
+        RegexSCMHeadFilterTrait trait = (RegexSCMHeadFilterTrait) Items.XSTREAM2.fromXML(
+                Items.XSTREAM2.toXML(new RegexSCMHeadFilterTrait("release-.*", "(?!.*)")));
+        trait.precompile();
+        TestSCMSourceContext context = TestSCMSourceContext.of(trait);
+        NullSCMSource source = new NullSCMSource();
+        assertThat(context.isExcluded(source, TestHeads.branch("release-1")), is(false));
+        assertThat(context.isExcluded(source, TestHeads.branch("master")), is(true));
+    }
 }
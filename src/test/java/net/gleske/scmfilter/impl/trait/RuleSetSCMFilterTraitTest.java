@@ -0,0 +1,152 @@
+package net.gleske.scmfilter.impl.trait;
+
+import hudson.util.FormValidation;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import jenkins.model.Jenkins;
+import jenkins.scm.api.SCMSource;
+import jenkins.scm.impl.NullSCMSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@WithJenkins
+public class RuleSetSCMFilterTraitTest {
+
+    private final SCMSource source = new NullSCMSource();
+
+    @AfterEach
+    void stop() {
+        RuleSets.stop();
+    }
+
+    @Test
+    void shouldSplitBranchAndTagRules() {
+        RuleSets.Rules rules = RuleSets.Rules.parse("# policy\n+main\n-*\n\n[tags]\n+v*\n");
+        assertThat(rules.branches.isExcluded("main"), is(false));
+        assertThat(rules.branches.isExcluded("develop"), is(true));
+        assertThat(rules.tags.isExcluded("v1.0"), is(false));
+        assertThat(rules.tags.isExcluded("1.0"), is(true));
+        assertThat(RuleSets.Rules.parse("+*").tags.isExcluded("v1.0"), is(true));
+        assertThrows(IllegalArgumentException.class, () -> RuleSets.Rules.parse("main"));
+    }
+
+    @Test
+    void shouldRejectInvalidIds() {
+        assertThrows(IllegalArgumentException.class, () -> new RuleSetSCMFilterTrait("../config"));
+        assertThrows(IllegalArgumentException.class, () -> new RuleSetSCMFilterTrait(""));
+        assertThat(new RuleSetSCMFilterTrait("release-policy_2.0").getId(), is("release-policy_2.0"));
+    }
+
+    @Test
+    void shouldFilterWithTheSharedRuleSet(JenkinsRule jenkinsRule) throws IOException {
+        write("policy", "+main\n+release-*\n-*\n[tags]\n+v*");
+        TestSCMSourceContext context = TestSCMSourceContext.of(new RuleSetSCMFilterTrait("policy"));
+        assertThat(context.isExcluded(source, TestHeads.branch("release-1")), is(false));
+        assertThat(context.isExcluded(source, TestHeads.branch("feature")), is(true));
+        assertThat(context.isExcluded(source, TestHeads.tag("v1.0")), is(false));
+        assertThat(context.isExcluded(source, TestHeads.tag("1.0")), is(true));
+        assertThat(context.isExcluded(source, TestHeads.changeRequest("1", "main", "fix")), is(false));
+        assertThat(context.isExcluded(source, TestHeads.changeRequest("2", "feature", "fix")), is(true));
+        assertThat(RuleSets.get("policy"), sameInstance(RuleSets.get("policy")));
+    }
+
+    @Test
+    void shouldSwapTheRulesWhenTheFileChanges(JenkinsRule jenkinsRule) throws Exception {
+        write("policy", "+main\n-*");
+        // changes are picked up in order, so a change to this one shows that the ones before it were handled
+        write("other", "+*");
+        RuleSets.get("other");
+        TestSCMSourceContext first = TestSCMSourceContext.of(new RuleSetSCMFilterTrait("policy"));
+        assertThat(first.isExcluded(source, TestHeads.branch("develop")), is(true));
+
+        RuleSets.Rules before = RuleSets.get("policy").rules();
+        write("policy", "+main\n+develop\n-*");
+        awaitChange("policy", before);
+        // a scan keeps the rules it started with
+        assertThat(first.isExcluded(source, TestHeads.branch("develop")), is(true));
+        TestSCMSourceContext second = TestSCMSourceContext.of(new RuleSetSCMFilterTrait("policy"));
+        assertThat(second.isExcluded(source, TestHeads.branch("develop")), is(false));
+
+        // rules that do not compile leave the previous ones in place
+        before = RuleSets.get("policy").rules();
+        RuleSets.Rules other = RuleSets.get("other").rules();
+        write("policy", "develop");
+        write("other", "-*");
+        awaitChange("other", other);
+        assertThat(RuleSets.get("policy").rules(), sameInstance(before));
+        assertThat(TestSCMSourceContext.of(new RuleSetSCMFilterTrait("policy"))
+                .isExcluded(source, TestHeads.branch("develop")), is(false));
+    }
+
+    @Test
+    void shouldWatchTheDirectoryAgainWhenItIsReplaced(JenkinsRule jenkinsRule) throws Exception {
+        write("policy", "+main\n-*");
+        RuleSets.Rules before = RuleSets.get("policy").rules();
+        Path directory = RuleSets.directory();
+        Files.delete(directory.resolve("policy" + RuleSets.EXTENSION));
+        Files.delete(directory);
+        for (int i = 0; i < 1000 && isAvailable("policy"); i++) {
+            Thread.sleep(10);
+        }
+        assertThat(isAvailable("policy"), is(false));
+
+        write("policy", "+main\n+develop\n-*");
+        awaitChange("policy", before);
+        assertThat(TestSCMSourceContext.of(new RuleSetSCMFilterTrait("policy"))
+                .isExcluded(source, TestHeads.branch("develop")), is(false));
+    }
+
+    @Test
+    void shouldCheckIdsWithoutDisclosingTheJenkinsHome(JenkinsRule jenkinsRule) {
+        FormValidation validation = new RuleSetSCMFilterTrait.DescriptorImpl().doCheckId(null, "missing");
+        assertThat(validation.kind, is(FormValidation.Kind.WARNING));
+        assertThat(validation.getMessage(), containsString(RuleSets.DIRECTORY + "/missing.rules"));
+        assertThat(validation.getMessage(), not(containsString(Jenkins.get().getRootDir().getPath())));
+    }
+
+    @Test
+    void shouldFailScansWithoutTheRuleSet(JenkinsRule jenkinsRule) {
+        RuleSetSCMFilterTrait trait = new RuleSetSCMFilterTrait("missing");
+        assertThrows(IllegalStateException.class, () -> trait.applyToContext(new TestSCMSourceContext()));
+    }
+
+    private static void write(String id, String rules) throws IOException {
+        Path directory = RuleSets.directory();
+        Files.createDirectories(directory);
+        Path temporary = directory.resolve(id + ".tmp");
+        Files.write(temporary, rules.getBytes(StandardCharsets.UTF_8));
+        Files.move(temporary, directory.resolve(id + RuleSets.EXTENSION), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void awaitChange(String id, RuleSets.Rules before) throws InterruptedException {
+        for (int i = 0; i < 1000; i++) {
+            if (isAvailable(id) && RuleSets.get(id).rules() != before) {
+                return;
+            }
+            Thread.sleep(10);
+        }
+        throw new AssertionError("The rule set was not reloaded");
+    }
+
+    private static boolean isAvailable(String id) {
+        try {
+            RuleSets.get(id).rules();
+            return true;
+        } catch (IllegalStateException e) {
+            return false;
+        }
+    }
+}
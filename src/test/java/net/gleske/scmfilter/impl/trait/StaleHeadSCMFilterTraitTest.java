@@ -0,0 +1,141 @@
+package net.gleske.scmfilter.impl.trait;
+
+import hudson.model.TaskListener;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import jenkins.scm.api.SCMHead;
+import jenkins.scm.api.SCMHeadObserver;
+import jenkins.scm.api.SCMSource;
+import jenkins.scm.api.SCMSourceCriteria;
+import jenkins.scm.api.trait.SCMHeadFilter;
+import jenkins.scm.api.trait.SCMHeadPrefilter;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class StaleHeadSCMFilterTraitTest {
+
+    private final AtomicInteger probed = new AtomicInteger();
+
+    private final SCMSource source = TestSCMSourceContext.sourceOf("stale-heads");
+
+    @AfterEach
+    void clearRecheck() {
+        System.clearProperty(StaleHeadSCMFilterTrait.RECHECK_HOURS);
+    }
+
+    @Test
+    void shouldSkipBranchesAndChangeRequestsWithoutRecentCommits() throws Exception {
+        StaleHeadSCMFilterTrait trait = new StaleHeadSCMFilterTrait(30);
+        trait.setExemptions("main release-*");
+        TestSCMSourceContext context = TestSCMSourceContext.of(trait);
+        assertThat(process(context, TestHeads.branch("feature"), 2), is(true));
+        assertThat(process(context, TestHeads.branch("spike"), 400), is(false));
+        assertThat(process(context, TestHeads.changeRequest("1", "main", "fix"), 45), is(false));
+        assertThat(process(context, TestHeads.changeRequest("2", "main", "fix"), 1), is(true));
+        assertThat(process(context, TestHeads.branch("main"), 400), is(true));
+        assertThat(process(context, TestHeads.branch("release-1"), 400), is(true));
+        assertThat(process(context, TestHeads.tag("v1.0"), 400), is(true));
+        // sources which do not tell
+        assertThat(process(context, TestHeads.branch("unknown"), -1), is(true));
+    }
+
+    @Test
+    void shouldNotProbeHeadsKnownToBeStale() throws Exception {
+        StaleHeadSCMFilterTrait trait = new StaleHeadSCMFilterTrait(30);
+        assertThat(process(TestSCMSourceContext.of(trait), TestHeads.branch("spike"), 400), is(false));
+        assertThat(probed.get(), is(1));
+        // the next scan excludes it before it is probed, even once the job was saved again
+        assertThat(process(TestSCMSourceContext.of(new StaleHeadSCMFilterTrait(30)), TestHeads.branch("spike"), 1),
+                is(false));
+        assertThat(probed.get(), is(1));
+        // unless it is time to check again, in case it got new commits
+        System.setProperty(StaleHeadSCMFilterTrait.RECHECK_HOURS, "0");
+        try {
+            assertThat(process(TestSCMSourceContext.of(trait), TestHeads.branch("spike"), 1), is(true));
+        } finally {
+            System.clearProperty(StaleHeadSCMFilterTrait.RECHECK_HOURS);
+        }
+        assertThat(probed.get(), is(2));
+        assertThat(process(TestSCMSourceContext.of(trait), TestHeads.branch("spike"), 1), is(true));
+        assertThat(probed.get(), is(3));
+    }
+
+    @Test
+    void shouldReviveStaleHeadsOnEvents() throws Exception {
+        StaleHeadSCMFilterTrait trait = new StaleHeadSCMFilterTrait(30);
+        SCMHead spike = TestHeads.branch("spike");
+        assertThat(process(TestSCMSourceContext.of(trait), spike, 400), is(false));
+        // an event about the head probes it even though it is known to be stale
+        TestSCMSourceContext event = new TestSCMSourceContext(SCMHeadObserver.select(spike)).decoratedWith(trait);
+        assertThat(process(event, spike, 0), is(true));
+        assertThat(probed.get(), is(2));
+        // and the next scan knows it is active again
+        assertThat(process(TestSCMSourceContext.of(trait), spike, 0), is(true));
+        assertThat(probed.get(), is(3));
+    }
+
+    @Test
+    void shouldTellBranchesAndTagsWithTheSameNameApart() throws Exception {
+        StaleHeadSCMFilterTrait trait = new StaleHeadSCMFilterTrait(30);
+        assertThat(process(TestSCMSourceContext.of(trait), TestHeads.branch("v1.0"), 400), is(false));
+        // the tag is left to the other filters
+        assertThat(process(TestSCMSourceContext.of(trait), TestHeads.tag("v1.0"), 400), is(true));
+        assertThat(process(TestSCMSourceContext.of(trait), TestHeads.branch("v1.0"), 1), is(false));
+        assertThat(probed.get(), is(1));
+        // a change request named like a stale branch is probed
+        assertThat(process(TestSCMSourceContext.of(trait), TestHeads.branch("PR-1"), 400), is(false));
+        assertThat(process(TestSCMSourceContext.of(trait), TestHeads.changeRequest("1", "main", "fix"), 1),
+                is(true));
+        assertThat(probed.get(), is(3));
+    }
+
+    @Test
+    void shouldRequireAPositiveNumberOfDays() {
+        assertThrows(IllegalArgumentException.class, () -> new StaleHeadSCMFilterTrait(0));
+        assertThat(new StaleHeadSCMFilterTrait(7).getExemptions(), is(""));
+    }
+
+    /**
+     * Processes a head like a request would: prefilters and filters first, then the criteria on its probe.
+     */
+    private boolean process(TestSCMSourceContext context, SCMHead head, long daysAgo) throws Exception {
+        for (SCMHeadPrefilter prefilter : context.prefilters()) {
+            if (prefilter.isExcluded(source, head)) {
+                return false;
+            }
+        }
+        for (SCMHeadFilter filter : context.filters()) {
+            if (filter.isExcluded(null, head)) {
+                return false;
+            }
+        }
+        SCMSourceCriteria.Probe probe = new SCMSourceCriteria.Probe() {
+            @Override
+            public String name() {
+                return head.getName();
+            }
+
+            @Override
+            public long lastModified() {
+                probed.incrementAndGet();
+                return daysAgo < 0 ? 0L : System.currentTimeMillis() - TimeUnit.DAYS.toMillis(daysAgo);
+            }
+
+            @Override
+            public boolean exists(String path) throws IOException {
+                return false;
+            }
+        };
+        for (SCMSourceCriteria criteria : context.criteria()) {
+            if (!criteria.isHead(probe, TaskListener.NULL)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
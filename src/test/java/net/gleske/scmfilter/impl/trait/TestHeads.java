@@ -0,0 +1,91 @@
+package net.gleske.scmfilter.impl.trait;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import jenkins.scm.api.SCMHead;
+import jenkins.scm.api.SCMHeadOrigin;
+import jenkins.scm.api.mixin.ChangeRequestCheckoutStrategy;
+import jenkins.scm.api.mixin.ChangeRequestSCMHead2;
+import jenkins.scm.api.mixin.TagSCMHead;
+
+/**
+ * Synthetic heads for tests and benchmarks.
+ */
+final class TestHeads {
+
+    private TestHeads() {
+    }
+
+    static SCMHead branch(String name) {
+        return new SCMHead(name);
+    }
+
+    static SCMHead tag(String name) {
+        return new Tag(name);
+    }
+
+    static SCMHead changeRequest(String id, String target, String origin) {
+        return new ChangeRequest(id, new SCMHead(target), origin);
+    }
+
+    static SCMHead changeRequestToTag(String id, String target, String origin) {
+        return new ChangeRequest(id, new Tag(target), origin);
+    }
+
+    static final class Tag extends SCMHead implements TagSCMHead {
+
+        Tag(@NonNull String name) {
+            super(name);
+        }
+
+        @Override
+        public long getTimestamp() {
+            return 0L;
+        }
+    }
+
+    static final class ChangeRequest extends SCMHead implements ChangeRequestSCMHead2 {
+
+        private final String id;
+        private final SCMHead target;
+        private final String originName;
+        private final SCMHeadOrigin origin;
+
+        ChangeRequest(@NonNull String id, @NonNull SCMHead target, @NonNull String originName) {
+            super("PR-" + id);
+            this.id = id;
+            this.target = target;
+            this.originName = originName;
+            this.origin = new SCMHeadOrigin.Fork(originName);
+        }
+
+        @NonNull
+        @Override
+        public String getId() {
+            return id;
+        }
+
+        @NonNull
+        @Override
+        public SCMHead getTarget() {
+            return target;
+        }
+
+        @NonNull
+        @Override
+        public SCMHeadOrigin getOrigin() {
+            return origin;
+        }
+
+        @NonNull
+        @Override
+        public ChangeRequestCheckoutStrategy getCheckoutStrategy() {
+            return ChangeRequestCheckoutStrategy.HEAD;
+        }
+
+        @NonNull
+        @Override
+        public String getOriginName() {
+            return originName;
+        }
+    }
+}
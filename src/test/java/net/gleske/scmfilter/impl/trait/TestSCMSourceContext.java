@@ -0,0 +1,117 @@
+package net.gleske.scmfilter.impl.trait;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.model.TaskListener;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.List;
+import jenkins.scm.api.SCMHead;
+import jenkins.scm.api.SCMHeadObserver;
+import jenkins.scm.api.SCMSource;
+import jenkins.scm.api.SCMSourceOwner;
+import jenkins.scm.api.trait.SCMHeadPrefilter;
+import jenkins.scm.api.trait.SCMSourceContext;
+import jenkins.scm.api.trait.SCMSourceRequest;
+import jenkins.scm.api.trait.SCMSourceTrait;
+import jenkins.scm.impl.NullSCMSource;
+
+/**
+ * A context that only collects what the traits decorate it with.
+ */
+final class TestSCMSourceContext extends SCMSourceContext<TestSCMSourceContext, SCMSourceRequest> {
+
+    TestSCMSourceContext() {
+        this(SCMHeadObserver.collect());
+    }
+
+    TestSCMSourceContext(SCMHeadObserver observer) {
+        super(null, observer);
+    }
+
+    /**
+     * Decorates a new context with the traits. This calls {@link SCMSourceTrait#decorateContext} directly so that no
+     * Jenkins instance is needed to look up the trait descriptors.
+     *
+     * @param traits the traits.
+     * @return the decorated context.
+     */
+    static TestSCMSourceContext of(SCMSourceTrait... traits) {
+        return new TestSCMSourceContext().decoratedWith(traits);
+    }
+
+    /**
+     * Creates a source belonging to a job, so that the state filters keep per source is kept. The job only knows its
+     * full name, so no Jenkins instance is needed.
+     *
+     * @param job the full name of the job.
+     * @param traits the traits of the source.
+     * @return the source.
+     */
+    static SCMSource sourceOf(String job, SCMSourceTrait... traits) {
+        List<SCMSourceTrait> list = Arrays.asList(traits);
+        SCMSource source = new NullSCMSource() {
+            @Override
+            public List<SCMSourceTrait> getTraits() {
+                return list;
+            }
+        };
+        source.setOwner((SCMSourceOwner) Proxy.newProxyInstance(SCMSourceOwner.class.getClassLoader(),
+                new Class<?>[] {SCMSourceOwner.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getFullName":
+                        case "toString":
+                            return job;
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "equals":
+                            return proxy == args[0];
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                }));
+        return source;
+    }
+
+    /**
+     * Decorates this context with the traits, see {@link #of(SCMSourceTrait...)}.
+     *
+     * @param traits the traits.
+     * @return this context.
+     */
+    TestSCMSourceContext decoratedWith(SCMSourceTrait... traits) {
+        try {
+            Method decorateContext = SCMSourceTrait.class.getDeclaredMethod("decorateContext", SCMSourceContext.class);
+            decorateContext.setAccessible(true);
+            for (SCMSourceTrait trait : traits) {
+                decorateContext.invoke(trait, this);
+            }
+        } catch (ReflectiveOperationException e) {
+            throw new AssertionError(e);
+        }
+        return this;
+    }
+
+    /**
+     * Checks the head against all prefilters like a request would.
+     *
+     * @param source the source.
+     * @param head the head.
+     * @return {@code true} if any prefilter excludes the head.
+     */
+    boolean isExcluded(SCMSource source, SCMHead head) {
+        List<SCMHeadPrefilter> prefilters = prefilters();
+        for (int i = 0, size = prefilters.size(); i < size; i++) {
+            if (prefilters.get(i).isExcluded(source, head)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @NonNull
+    @Override
+    public SCMSourceRequest newRequest(@NonNull SCMSource source, TaskListener listener) {
+        throw new UnsupportedOperationException();
+    }
+}
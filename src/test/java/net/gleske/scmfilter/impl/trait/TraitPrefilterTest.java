@@ -0,0 +1,66 @@
+package net.gleske.scmfilter.impl.trait;
+
+import jenkins.scm.api.SCMHead;
+import jenkins.scm.api.SCMSource;
+import jenkins.scm.impl.NullSCMSource;
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class TraitPrefilterTest {
+
+    private final SCMSource source = new NullSCMSource();
+
+    @Test
+    void wildcardHeadFilterShouldMatchTargets() {
+        TestSCMSourceContext context = TestSCMSourceContext.of(
+                new WildcardSCMHeadFilterTrait("main release-*", "release-0.*", "v*", "*-rc*"));
+        assertIncluded(context, TestHeads.branch("main"));
+        assertIncluded(context, TestHeads.branch("release-1.0"));
+        assertExcluded(context, TestHeads.branch("release-0.9"));
+        assertExcluded(context, TestHeads.branch("feature"));
+        assertIncluded(context, TestHeads.tag("v1.0"));
+        assertExcluded(context, TestHeads.tag("v1.0-rc1"));
+        assertIncluded(context, TestHeads.changeRequest("1", "main", "feature"));
+        assertExcluded(context, TestHeads.changeRequest("2", "feature", "main"));
+    }
+
+    @Test
+    void wildcardOriginFilterShouldMatchOrigins() {
+        TestSCMSourceContext context = TestSCMSourceContext.of(
+                new WildcardSCMOriginFilterTrait("main feature-*", "", "", ""));
+        assertIncluded(context, TestHeads.branch("main"));
+        assertExcluded(context, TestHeads.tag("v1.0"));
+        assertIncluded(context, TestHeads.changeRequest("1", "develop", "feature-1"));
+        assertExcluded(context, TestHeads.changeRequest("2", "main", "bugfix-1"));
+    }
+
+    @Test
+    void regexHeadFilterShouldMatchTargets() {
+        TestSCMSourceContext context = TestSCMSourceContext.of(new RegexSCMHeadFilterTrait("main|release-.*", "v\\d+"));
+        assertIncluded(context, TestHeads.branch("release-1.0"));
+        assertExcluded(context, TestHeads.branch("feature"));
+        assertIncluded(context, TestHeads.tag("v1"));
+        assertExcluded(context, TestHeads.tag("v1.0"));
+        assertIncluded(context, TestHeads.changeRequest("1", "main", "feature"));
+        assertExcluded(context, TestHeads.changeRequest("2", "feature", "main"));
+    }
+
+    @Test
+    void regexOriginFilterShouldMatchOrigins() {
+        TestSCMSourceContext context = TestSCMSourceContext.of(new RegexSCMOriginFilterTrait("main|feature-.*", "(?!.*)"));
+        assertIncluded(context, TestHeads.branch("main"));
+        assertExcluded(context, TestHeads.tag("v1.0"));
+        assertIncluded(context, TestHeads.changeRequest("1", "develop", "feature-1"));
+        assertExcluded(context, TestHeads.changeRequest("2", "main", "bugfix-1"));
+    }
+
+    private void assertIncluded(TestSCMSourceContext context, SCMHead head) {
+        assertThat(head.getName(), context.isExcluded(source, head), is(false));
+    }
+
+    private void assertExcluded(TestSCMSourceContext context, SCMHead head) {
+        assertThat(head.getName(), context.isExcluded(source, head), is(true));
+    }
+}
@@ -0,0 +1,64 @@
+package net.gleske.scmfilter.impl.trait;
+
+import java.util.regex.Pattern;
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class WildcardRulesTest {
+
+    private static final String[] RULES = {
+        "*", "", "master", "master release*", "release-* hotfix-* feature/*/ci *-lts", "*-1.*", "a*b*c",
+        "**", "*a*", "a  b", " a", "feature/* -feature/x", "x\ny*", "* *"
+    };
+
+    private static final String[] NAMES = {
+        "", "master", "release", "release-1.0", "hotfix-2", "feature/foo/ci", "feature/ci", "2.0-lts", "-lts",
+        "foo-1.0", "abc", "aXbYc", "acb", "a", "b", "a b", "feature/x", "x\ny", "release\n", " ", "a b"
+    };
+
+    @Test
+    void shouldMatchLikeRegexTranslation() {
+        for (String rules : RULES) {
+            WildcardRules compiled = WildcardRules.compile(rules);
+            Pattern pattern = Pattern.compile(WildcardRules.toRegex(rules));
+            for (String name : NAMES) {
+                assertThat("[" + rules + "] against [" + name + "]",
+                        compiled.matches(name), is(pattern.matcher(name).matches()));
+            }
+        }
+    }
+
+    @Test
+    void shouldMatchWildcards() {
+        WildcardRules rules = WildcardRules.compile("release-* hotfix-* feature/*/ci *-lts");
+        assertThat(rules.matches("release-1.0"), is(true));
+        assertThat(rules.matches("feature/platform/ci"), is(true));
+        assertThat(rules.matches("2.0-lts"), is(true));
+        assertThat(rules.matches("feature/platform"), is(false));
+        assertThat(rules.matches("master"), is(false));
+    }
+
+    @Test
+    void shouldIndexLargeRuleLists() {
+        StringBuilder rules = new StringBuilder("release-* *-lts feature/*/ci");
+        for (int i = 0; i < 1000; i++) {
+            rules.append(" branch-").append(i);
+        }
+        WildcardRules compiled = WildcardRules.compile(rules.toString());
+        assertThat(compiled.matches("branch-0"), is(true));
+        assertThat(compiled.matches("branch-999"), is(true));
+        assertThat(compiled.matches("branch-1000"), is(false));
+        assertThat(compiled.matches("release-2.0"), is(true));
+        assertThat(compiled.matches("1.0-lts"), is(true));
+        assertThat(compiled.matches("feature/a/ci"), is(true));
+        assertThat(compiled.matches("release"), is(false));
+    }
+
+    @Test
+    void shouldShareCompiledRules() {
+        assertThat(CompiledPatterns.wildcard("release-*") == CompiledPatterns.wildcard("release-*"), is(true));
+        assertThat(CompiledPatterns.regex("release-.*") == CompiledPatterns.regex("release-.*"), is(true));
+    }
+}